@@ -4,7 +4,18 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -16,9 +27,54 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Scope scope;
     private Ast.Function function;
 
+    // Frame slots assigned to resolved variables, keyed by identity since
+    // Environment.Variable equality only compares names and types.
+    private final Map<Environment.Variable, Integer> globalSlots;
+    private final Map<Environment.Variable, Integer> localSlots = new IdentityHashMap<>();
+    private int nextSlot = 0;
+    private int frameSize = 0;
+
+    // Effects of each function body excluding its calls to other functions
+    // of the source, which are combined once every body has been visited.
+    private final Set<Environment.Function> declared;
+    private final Map<Environment.Function, Set<Environment.Effect>> effects = new IdentityHashMap<>();
+    private final Map<Environment.Function, Set<Environment.Function>> calls = new IdentityHashMap<>();
+
+    // Globals and function signatures each declaration refers to, by name
+    // for globals and name/arity for functions.
+    private final Map<Ast, Set<String>> dependencies = new IdentityHashMap<>();
+    private Ast declaration;
+
+    // Globals and functions of an earlier analysis, defined again instead of
+    // new ones when their signature is unchanged so that annotations kept
+    // from that analysis still refer to the objects in scope.
+    private final Map<String, Environment.Variable> previousVariables;
+    private final Map<String, Environment.Function> previousFunctions;
+
     public Analyzer(Scope parent) {
+        this(parent, Map.of(), Map.of());
+    }
+
+    Analyzer(Scope parent, Map<String, Environment.Variable> previousVariables, Map<String, Environment.Function> previousFunctions) {
         scope = new Scope(parent);
-        scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+        scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL)
+                .setEffects(EnumSet.of(Environment.Effect.IO));
+        globalSlots = new IdentityHashMap<>();
+        declared = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.previousVariables = previousVariables;
+        this.previousFunctions = previousFunctions;
+    }
+
+    /**
+     * Creates an analyzer for a single function body, which only reads the
+     * global scope and slots of the given analyzer.
+     */
+    private Analyzer(Analyzer parent) {
+        scope = parent.scope;
+        globalSlots = parent.globalSlots;
+        declared = parent.declared;
+        previousVariables = parent.previousVariables;
+        previousFunctions = parent.previousFunctions;
     }
 
     public Scope getScope() {
@@ -36,33 +92,142 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Source ast) {
         ast.getGlobals().forEach(this::visit);
         ast.getFunctions().forEach(this::visit);
+        finish();
+
+        return null;
+    }
+
+    /**
+     * Analyzes the source like {@link #visit(Ast.Source)}, but checks function
+     * bodies concurrently on the given executor. Globals and all function
+     * signatures are defined first, so functions may also call functions
+     * declared after them. Each body is then analyzed with its own scope over
+     * the global scope, which is no longer modified.
+     *
+     * If several bodies are invalid, the exception of the first one in the
+     * source is thrown, so errors do not depend on scheduling.
+     */
+    public Void visit(Ast.Source ast, ExecutorService executor) {
+        ast.getGlobals().forEach(this::visit);
+        ast.getFunctions().forEach(this::declare);
+
+        List<Future<Analyzer>> analyzers = new ArrayList<>();
+        for (Ast.Function function : ast.getFunctions()) {
+            analyzers.add(executor.submit(() -> {
+                Analyzer analyzer = new Analyzer(this);
+                analyzer.define(function);
+                return analyzer;
+            }));
+        }
+        RuntimeException error = null;
+        for (Future<Analyzer> future : analyzers) {
+            try {
+                Analyzer analyzer = future.get();
+                effects.putAll(analyzer.effects);
+                calls.putAll(analyzer.calls);
+                dependencies.putAll(analyzer.dependencies);
+            } catch (ExecutionException e) {
+                if (error == null)
+                    error = e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while analyzing functions", e);
+            }
+        }
+        if (error != null)
+            throw error;
+        finish();
+
+        return null;
+    }
+
+    /**
+     * Completes the analysis once every global and function was visited or
+     * reused.
+     */
+    void finish() {
+        summarizeEffects();
 
         if(!scope.lookupFunction("main", 0).getReturnType().equals(Environment.Type.INTEGER))
             throw new RuntimeException("Main does not have an Integer return type");
+    }
 
-        return null;
+    /**
+     * Defines a global analyzed by an earlier run, keeping its annotations.
+     */
+    void reuse(Ast.Global ast) {
+        scope.defineVariable(ast.getVariable());
+        globalSlots.put(ast.getVariable(), ast.getSlot());
+    }
+
+    /**
+     * Defines a function analyzed by an earlier run, keeping its annotations
+     * along with the effects and dependencies recorded for its body.
+     */
+    void reuse(Ast.Function ast, Set<Environment.Effect> bodyEffects, Set<String> bodyDependencies) {
+        declared.add(scope.defineFunction(ast.getFunction()));
+        effects.put(ast.getFunction(), EnumSet.copyOf(bodyEffects));
+        Set<Environment.Function> callees = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String dependency : bodyDependencies) {
+            int separator = dependency.lastIndexOf('/');
+            if (separator >= 0)
+                callees.add(scope.lookupFunction(dependency.substring(0, separator), Integer.parseInt(dependency.substring(separator + 1))));
+        }
+        calls.put(ast.getFunction(), callees);
+        dependencies.put(ast, bodyDependencies);
+    }
+
+    Set<String> getDependencies(Ast declaration) {
+        return dependencies.getOrDefault(declaration, Set.of());
+    }
+
+    /**
+     * Returns the effects of the function body itself, excluding those of the
+     * functions it calls.
+     */
+    Set<Environment.Effect> getBodyEffects(Environment.Function function) {
+        return effects.get(function);
     }
 
     @Override
     public Void visit(Ast.Global ast) {
+        declaration = ast;
+        dependencies.put(ast, new HashSet<>());
         if(ast.getValue().isPresent()) {
             visit(ast.getValue().get());
             if(ast.getValue().get() instanceof  Ast.Expression.PlcList){
                 ((Ast.Expression.PlcList) ast.getValue().get()).getValues().forEach(expression -> {
                    requireAssignable(Environment.getType(ast.getTypeName()), expression.getType());
                 });
+                ((Ast.Expression.PlcList) ast.getValue().get()).setType(Environment.getType(ast.getTypeName()));
             }
             else
                 requireAssignable(Environment.getType(ast.getTypeName()), ast.getValue().get().getType());
         }
-        scope.defineVariable(ast.getName(), ast.getName(), Environment.getType(ast.getTypeName()), ast.getMutable(), Environment.NIL);
-        ast.setVariable(scope.lookupVariable(ast.getName()));
+        Environment.Variable variable = new Environment.Variable(ast.getName(), ast.getName(), Environment.getType(ast.getTypeName()), ast.getMutable(), Environment.NIL);
+        Environment.Variable previous = previousVariables.get(ast.getName());
+        if (previous != null && previous.equals(variable))
+            variable = previous;
+        ast.setVariable(scope.defineVariable(variable));
+        ast.setSlot(globalSlots.size());
+        globalSlots.put(ast.getVariable(), ast.getSlot());
+        declaration = null;
 
         return null;
     }
 
     @Override
     public Void visit(Ast.Function ast) {
+        declare(ast);
+        define(ast);
+
+        return null;
+    }
+
+    /**
+     * Defines the signature of the function in the current scope.
+     */
+    private void declare(Ast.Function ast) {
         List<Environment.Type> parameterTypes = new ArrayList<>();
         ast.getParameterTypeNames().forEach(typeName -> {
             parameterTypes.add(Environment.getType(typeName));
@@ -70,17 +235,39 @@ public final class Analyzer implements Ast.Visitor<Void> {
         Environment.Type retType = Environment.Type.NIL;
         if(ast.getReturnTypeName().isPresent())
             retType = Environment.getType(ast.getReturnTypeName().get());
-        scope.defineFunction(ast.getName(), ast.getName(), parameterTypes, retType, args -> Environment.NIL);
-        ast.setFunction(scope.lookupFunction(ast.getName(), ast.getParameters().size()));
+        Environment.Function signature = new Environment.Function(ast.getName(), ast.getName(), parameterTypes, retType, args -> Environment.NIL);
+        Environment.Function previous = previousFunctions.get(ast.getName() + "/" + parameterTypes.size());
+        if (previous != null && previous.equals(signature))
+            signature = previous;
+        ast.setFunction(scope.defineFunction(signature));
+        declared.add(ast.getFunction());
+    }
+
+    /**
+     * Analyzes the body of a declared function.
+     */
+    private void define(Ast.Function ast) {
+        List<Environment.Type> parameterTypes = ast.getFunction().getParameterTypes();
+        Environment.Type retType = ast.getFunction().getReturnType();
+        function = ast;
+        declaration = ast;
+        dependencies.put(ast, new HashSet<>());
+        effects.put(ast.getFunction(), EnumSet.noneOf(Environment.Effect.class));
+        calls.put(ast.getFunction(), Collections.newSetFromMap(new IdentityHashMap<>()));
+        localSlots.clear();
+        nextSlot = 0;
+        frameSize = 0;
         scope = new Scope(scope);
         scope.defineVariable("retType", true, Environment.create(retType));
-        ast.getParameters().forEach(parameter -> {
-            scope.defineVariable(parameter, true, Environment.NIL);
-        });
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            String parameter = ast.getParameters().get(i);
+            allocateSlot(scope.defineVariable(parameter, parameter, parameterTypes.get(i), true, Environment.NIL));
+        }
         ast.getStatements().forEach(this::visit);
         scope = scope.getParent();
-
-        return null;
+        ast.setFrameSize(frameSize);
+        function = null;
+        declaration = null;
     }
 
     @Override
@@ -139,7 +326,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
         } else {
             throw new RuntimeException("Missing type in both typename or inferred type from value");
         }
-
+        if (function != null)
+            ast.setSlot(allocateSlot(ast.getVariable()));
 
         return null;
     }
@@ -153,9 +341,20 @@ public final class Analyzer implements Ast.Visitor<Void> {
         if(!(ast.getReceiver() instanceof  Ast.Expression.Access)){
             throw new RuntimeException("Not an access expression");
         }
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        boolean reads = function == null || effects.get(function.getFunction()).contains(Environment.Effect.READ);
         visit(ast.getReceiver());
+        if (function != null && receiver.getOffset().isEmpty()) {
+            // assigning a global does not read it
+            if (!reads)
+                effects.get(function.getFunction()).remove(Environment.Effect.READ);
+            if (globalSlots.containsKey(receiver.getVariable()))
+                addEffect(Environment.Effect.WRITE);
+        } else {
+            addEffect(Environment.Effect.WRITE);
+        }
         visit(ast.getValue());
-        Environment.Variable variable = scope.lookupVariable(((Ast.Expression.Access) ast.getReceiver()).getName());
+        Environment.Variable variable = receiver.getVariable();
 
         requireAssignable(variable.getType(),ast.getValue().getType());
 
@@ -192,6 +391,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(currCase.getValue().get());
             requireAssignable(conditionType, currCase.getValue().get().getType());              // Require matching type in Case
         }
+        table(ast.getCases()).ifPresent(ast::setTable);
         return null;
     }
 
@@ -204,14 +404,19 @@ public final class Analyzer implements Ast.Visitor<Void> {
     // Done in class
     @Override
     public Void visit(Ast.Statement.While ast) {
+        // loops may not terminate
+        addEffect(Environment.Effect.FAIL);
         visit(ast.getCondition());
         requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+        int slots = nextSlot;
         try{
             scope = new Scope(scope);
             ast.getStatements().forEach(this::visit);
         } finally {
             scope = scope.getParent();
+            nextSlot = slots;
         }
+        CountedLoop.of(ast).ifPresent(ast::setCounter);
         return null;
     }
 
@@ -262,22 +467,27 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Expression.Binary ast) {
         visit(ast.getLeft());
         visit(ast.getRight());
+        // only literal divisors and exponents are known not to throw
+        Object right = ast.getRight() instanceof Ast.Expression.Literal literal ? literal.getLiteral() : null;
+        if (ast.getOperator().equals("/") && !(right instanceof BigInteger i && i.signum() != 0 || right instanceof BigDecimal d && d.signum() != 0)
+                || ast.getOperator().equals("^") && !(right instanceof BigInteger i && i.signum() >= 0))
+            addEffect(Environment.Effect.FAIL);
         Environment.Type LHS = ast.getLeft().getType();
         Environment.Type RHS = ast.getRight().getType();
         switch (ast.getOperator()){
             case "||":
             case "&&":
-                requireAssignable(LHS, Environment.Type.BOOLEAN);
-                requireAssignable(RHS, Environment.Type.BOOLEAN);
+                requireAssignable(Environment.Type.BOOLEAN, LHS);
+                requireAssignable(Environment.Type.BOOLEAN, RHS);
                 ast.setType(Environment.Type.BOOLEAN);
                 break;
             case "<":
             case ">":
             case "==":
             case "!=":
-                requireAssignable(LHS, Environment.Type.COMPARABLE);
-                requireAssignable(RHS, Environment.Type.COMPARABLE);
-                requireAssignable(RHS, LHS);
+                requireAssignable(Environment.Type.COMPARABLE, LHS);
+                requireAssignable(Environment.Type.COMPARABLE, RHS);
+                requireAssignable(LHS, RHS);
                 ast.setType(Environment.Type.BOOLEAN);
                 break;
             case "+":
@@ -307,27 +517,24 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Expression.Access ast) {
         if(ast.getOffset().isPresent()) {
-            System.out.println(ast.getOffset().get().getType());
+            visit(ast.getOffset().get());
             requireAssignable(ast.getOffset().get().getType(), Environment.Type.INTEGER);
         }
 
-        switch (scope.lookupVariable(ast.getName()).getType().getName()){
-            case "Integer":
-                ast.setVariable(new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.INTEGER, true, Environment.NIL));
-                break;
-            case "String":
-                ast.setVariable(new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.STRING, true, Environment.NIL));
-                break;
-            case "Decimal":
-                ast.setVariable(new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.DECIMAL, true, Environment.NIL));
-                break;
-            case "Boolean":
-                ast.setVariable(new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.BOOLEAN, true, Environment.NIL));
-                break;
-            case "Character":
-                ast.setVariable(new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.CHARACTER, true, Environment.NIL));
-                break;
+        Environment.Variable variable = scope.lookupVariable(ast.getName());
+        ast.setVariable(variable);
+        if (ast.getOffset().isPresent()) {
+            addEffect(Environment.Effect.READ);
+            addEffect(Environment.Effect.FAIL);
+        } else if (globalSlots.containsKey(variable) && variable.getMutable()) {
+            addEffect(Environment.Effect.READ);
         }
+        if (globalSlots.containsKey(variable))
+            depend(ast.getName());
+        if (localSlots.containsKey(variable))
+            ast.setAddress(Ast.Expression.Access.LOCAL, localSlots.get(variable));
+        else if (globalSlots.containsKey(variable))
+            ast.setAddress(Ast.Expression.Access.GLOBAL, globalSlots.get(variable));
         return null;
     }
 
@@ -338,7 +545,15 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(ast.getArguments().get(i));
             requireAssignable(function.getParameterTypes().get(i), ast.getArguments().get(i).getType());
         }
-        ast.setFunction(new Environment.Function(ast.getName(), function.getJvmName(), function.getParameterTypes(), function.getReturnType(), args->  Environment.NIL ));
+        ast.setFunction(function);
+        if (declared.contains(function))
+            depend(ast.getName() + "/" + ast.getArguments().size());
+        if (this.function != null) {
+            if (declared.contains(function))
+                calls.get(this.function.getFunction()).add(function);
+            else
+                function.getEffects().forEach(this::addEffect);
+        }
         return null;
     }
 
@@ -348,14 +563,78 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return null;
     }
 
+    private void depend(String name) {
+        if (declaration != null)
+            dependencies.get(declaration).add(name);
+    }
+
+    private void addEffect(Environment.Effect effect) {
+        if (function != null)
+            effects.get(function.getFunction()).add(effect);
+    }
+
+    /**
+     * Sets the effects of each function of the source to those of its body
+     * and of every function it may call. Functions that can call themselves
+     * may recurse without end, so they may fail.
+     */
+    private void summarizeEffects() {
+        for (Environment.Function function : effects.keySet()) {
+            Set<Environment.Function> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Environment.Function> pending = new ArrayList<>(calls.get(function));
+            while (!pending.isEmpty()) {
+                Environment.Function callee = pending.removeLast();
+                if (reachable.add(callee))
+                    pending.addAll(calls.get(callee));
+            }
+            Set<Environment.Effect> summary = EnumSet.copyOf(effects.get(function));
+            reachable.forEach(callee -> summary.addAll(effects.get(callee)));
+            if (reachable.contains(function))
+                summary.add(Environment.Effect.FAIL);
+            function.setEffects(summary);
+        }
+    }
+
     public Void visit(List<Ast.Statement> statements){
+        int slots = nextSlot;
         scope = new Scope(scope);
         statements.forEach(this::visit);
         scope = scope.getParent();
+        nextSlot = slots;
 
         return null;
     }
 
+    /**
+     * Assigns the next free slot of the current function's frame to the given
+     * variable. Slots are released when the declaring block ends, so sibling
+     * blocks share slots and the frame size is the deepest nesting reached.
+     */
+    private int allocateSlot(Environment.Variable variable) {
+        int slot = nextSlot++;
+        frameSize = Math.max(frameSize, nextSlot);
+        localSlots.put(variable, slot);
+        return slot;
+    }
+
+    /**
+     * Returns the index of each case by its value if every case but the
+     * default has a distinct Integer, Character or String literal, so a
+     * switch can find its case with a single lookup.
+     */
+    public static Optional<Map<Object, Integer>> table(List<Ast.Statement.Case> cases) {
+        if (cases.isEmpty() || cases.getLast().getValue().isPresent())
+            return Optional.empty();
+        Map<Object, Integer> table = new HashMap<>();
+        for (int i = 0; i < cases.size() - 1; i++) {
+            if (!(cases.get(i).getValue().get() instanceof Ast.Expression.Literal literal)
+                    || !(literal.getLiteral() instanceof BigInteger || literal.getLiteral() instanceof Character || literal.getLiteral() instanceof String)
+                    || table.put(literal.getLiteral(), i) != null)
+                return Optional.empty();
+        }
+        return Optional.of(Collections.unmodifiableMap(table));
+    }
+
     public static void requireAssignable(Environment.Type target, Environment.Type type) {
         if(target.equals(Environment.Type.ANY))
             return;
@@ -2,6 +2,7 @@ package plc.project;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -53,6 +54,7 @@ public abstract class Ast {
         private final boolean mutable;
         private final Optional<Ast.Expression> value;
         private Environment.Variable variable = null;
+        private int slot = -1;
 
         public Global(String name, boolean mutable, Optional<Expression> value) {
             this(name, "Any", mutable, value);
@@ -93,6 +95,18 @@ public abstract class Ast {
             this.variable = variable;
         }
 
+        /**
+         * Returns the index of this global in the global frame, or -1 if the
+         * global has not been resolved by the {@link Analyzer}.
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        public void setSlot(int slot) {
+            this.slot = slot;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -125,7 +139,8 @@ public abstract class Ast {
         private final Optional<String> returnTypeName;
         private final List<Statement> statements;
         private Environment.Function function = null;
-        
+        private int frameSize = -1;
+
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
             for (int i = 0; i < parameters.size(); i++) {
@@ -173,6 +188,19 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns the number of local slots (parameters first, followed by
+         * declarations) needed to invoke this function, or -1 if the function
+         * has not been resolved by the {@link Analyzer}.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -235,6 +263,7 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private Optional<Ast.Expression> value;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Ast.Expression> value) {
                 this(name, Optional.empty(), value);
@@ -268,8 +297,20 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
-            
-            
+
+            /**
+             * Returns the index of this variable in the enclosing function's
+             * frame, or -1 if the declaration has not been resolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -374,6 +415,7 @@ public abstract class Ast {
 
             private final Ast.Expression condition;
             private final List<Ast.Statement.Case> cases;
+            private Map<Object, Integer> table = null;
 
             public Switch(Ast.Expression condition, List<Ast.Statement.Case> cases) {
                 this.condition = condition;
@@ -386,6 +428,18 @@ public abstract class Ast {
 
             public List<Ast.Statement.Case> getCases() { return cases; }
 
+            /**
+             * Returns the index of the case for each case value, set by the
+             * Analyzer when the values are distinct constants.
+             */
+            public Optional<Map<Object, Integer>> getTable() {
+                return Optional.ofNullable(table);
+            }
+
+            public void setTable(Map<Object, Integer> table) {
+                this.table = table;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Switch &&
@@ -442,6 +496,7 @@ public abstract class Ast {
 
             private final Ast.Expression condition;
             private final List<Statement> statements;
+            private CountedLoop counter = null;
 
             public While(Ast.Expression condition, List<Statement> statements) {
                 this.condition = condition;
@@ -456,6 +511,18 @@ public abstract class Ast {
                 return statements;
             }
 
+            /**
+             * Returns the loop's induction variable, set by the Analyzer when
+             * the loop counts towards a fixed bound.
+             */
+            public Optional<CountedLoop> getCounter() {
+                return Optional.ofNullable(counter);
+            }
+
+            public void setCounter(CountedLoop counter) {
+                this.counter = counter;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -600,6 +667,8 @@ public abstract class Ast {
             private final Ast.Expression left;
             private final Ast.Expression right;
             private Environment.Type type = null;
+            private Range range = null;
+            private BinaryNode node = null;
 
             public Binary(String operator, Ast.Expression left, Ast.Expression right) {
                 this.operator = operator;
@@ -631,6 +700,30 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            /**
+             * Returns the values an Integer result may take, if a
+             * {@link RangeAnalyzer} has annotated this expression.
+             */
+            public Optional<Range> getRange() {
+                return Optional.ofNullable(range);
+            }
+
+            public void setRange(Range range) {
+                this.range = range;
+            }
+
+            /**
+             * Returns the node the Interpreter executes this operation with,
+             * which has specialized itself on the operands seen so far.
+             */
+            public Optional<BinaryNode> getNode() {
+                return Optional.ofNullable(node);
+            }
+
+            public void setNode(BinaryNode node) {
+                this.node = node;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -655,9 +748,17 @@ public abstract class Ast {
 
         public static final class Access extends Ast.Expression {
 
+            public static final int LOCAL = 0;
+            public static final int GLOBAL = 1;
+
             private final Optional<Ast.Expression> offset;
             private final String name;
             private Environment.Variable variable = null;
+            private int depth = -1;
+            private int slot = -1;
+            private Range range = null;
+            private boolean inBounds = false;
+            private boolean nonNil = false;
 
             public Access(Optional<Ast.Expression> offset, String name) {
                 this.offset = offset;
@@ -683,6 +784,66 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns the number of frames between this access and the frame
+             * that defines the variable: {@link #LOCAL} for the enclosing
+             * function, {@link #GLOBAL} for the global frame, or -1 if the
+             * variable was not resolved to a slot (for example, variables
+             * defined directly in a {@link Scope}).
+             */
+            public int getDepth() {
+                return depth;
+            }
+
+            public int getSlot() {
+                return slot;
+            }
+
+            public boolean hasAddress() {
+                return depth >= 0;
+            }
+
+            public void setAddress(int depth, int slot) {
+                this.depth = depth;
+                this.slot = slot;
+            }
+
+            /**
+             * Returns the values an Integer variable may hold here, if a
+             * {@link RangeAnalyzer} has annotated this expression.
+             */
+            public Optional<Range> getRange() {
+                return Optional.ofNullable(range);
+            }
+
+            public void setRange(Range range) {
+                this.range = range;
+            }
+
+            /**
+             * Returns true if a {@link RangeAnalyzer} proved the offset is
+             * always within the bounds of the list, so it need not be checked.
+             */
+            public boolean isInBounds() {
+                return inBounds;
+            }
+
+            public void setInBounds(boolean inBounds) {
+                this.inBounds = inBounds;
+            }
+
+            /**
+             * Returns true if a {@link NilAnalyzer} proved the value read here
+             * is never NIL.
+             */
+            public boolean isNonNil() {
+                return nonNil;
+            }
+
+            public void setNonNil(boolean nonNil) {
+                this.nonNil = nonNil;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
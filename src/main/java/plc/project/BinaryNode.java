@@ -0,0 +1,143 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.function.BiFunction;
+
+/**
+ * An executable binary operation that specializes itself on the types of the
+ * operands it observes. It starts uninitialized, and its first execution
+ * rewrites it to the specialization for the classes of those operands, such
+ * as IntAdd, DecimalLt or StringConcat, whose guard is checked on every
+ * later execution. Once a guard fails the node rewrites itself to the
+ * generic operation of the {@link Interpreter} for good, so a site seeing a
+ * single type stays on its fast path and one seeing several stops
+ * respecializing.
+ *
+ * Specializations compute the same values and throw the same errors as the
+ * Interpreter, which is used for operators and types without one.
+ */
+public final class BinaryNode {
+
+    private static final Environment.PlcObject TRUE = Environment.create(Boolean.TRUE);
+    private static final Environment.PlcObject FALSE = Environment.create(Boolean.FALSE);
+
+    /**
+     * Returns the result of the operation, or null if the guard of the
+     * specialization fails.
+     */
+    @FunctionalInterface
+    private interface Specialization {
+
+        Environment.PlcObject execute(Environment.PlcObject left, Environment.PlcObject right);
+
+    }
+
+    private final Ast.Expression.Binary ast;
+    private final String operator;
+    private final Specialization generic;
+    private String name = "Uninitialized";
+    private Specialization specialization = this::initialize;
+
+    /**
+     * Creates a node for the operator of the expression, whose annotations
+     * are used by the generic operation.
+     */
+    public BinaryNode(Ast.Expression.Binary ast) {
+        this.ast = ast;
+        this.operator = ast.getOperator();
+        this.generic = (left, right) -> Interpreter.evaluate(this.ast, operator, left, right);
+    }
+
+    /**
+     * Returns the name of the current specialization, such as IntAdd,
+     * Uninitialized or Generic.
+     */
+    public String getSpecialization() {
+        return name;
+    }
+
+    public Environment.PlcObject execute(Environment.PlcObject left, Environment.PlcObject right) {
+        Environment.PlcObject result = specialization.execute(left, right);
+        if (result == null) {
+            rewrite("Generic", generic);
+            result = generic.execute(left, right);
+        }
+        return result;
+    }
+
+    private Environment.PlcObject initialize(Environment.PlcObject left, Environment.PlcObject right) {
+        Object l = left.getValue();
+        Object r = right.getValue();
+        if (l instanceof BigInteger && r instanceof BigInteger) {
+            switch (operator) {
+                case "+" -> rewrite("IntAdd", integers(BigInteger::add));
+                case "-" -> rewrite("IntSub", integers(BigInteger::subtract));
+                case "*" -> rewrite("IntMul", integers(BigInteger::multiply));
+                case "/" -> rewrite("IntDiv", integers((x, y) -> {
+                    if (y.signum() == 0)
+                        throw new RuntimeException("Divide by Zero");
+                    return x.divide(y);
+                }));
+                case ">>" -> rewrite("IntShr", integers((x, y) -> x.shiftRight(y.intValue())));
+                case "<" -> rewrite("IntLt", (a, b) -> a.getValue() instanceof BigInteger x && b.getValue() instanceof BigInteger y
+                        ? bool(x.compareTo(y) < 0) : null);
+                case ">" -> rewrite("IntGt", (a, b) -> a.getValue() instanceof BigInteger x && b.getValue() instanceof BigInteger y
+                        ? bool(x.compareTo(y) > 0) : null);
+                default -> {}
+            }
+        } else if (l instanceof BigDecimal && r instanceof BigDecimal) {
+            switch (operator) {
+                case "+" -> rewrite("DecimalAdd", decimals(BigDecimal::add));
+                case "-" -> rewrite("DecimalSub", decimals(BigDecimal::subtract));
+                case "*" -> rewrite("DecimalMul", decimals(BigDecimal::multiply));
+                case "/" -> rewrite("DecimalDiv", decimals((x, y) -> {
+                    // like the Interpreter, only a zero of scale 0 is rejected here
+                    if (y.equals(BigDecimal.ZERO))
+                        throw new RuntimeException("Divide by Zero");
+                    return x.divide(y, RoundingMode.HALF_EVEN);
+                }));
+                case "<" -> rewrite("DecimalLt", (a, b) -> a.getValue() instanceof BigDecimal x && b.getValue() instanceof BigDecimal y
+                        ? bool(x.compareTo(y) < 0) : null);
+                case ">" -> rewrite("DecimalGt", (a, b) -> a.getValue() instanceof BigDecimal x && b.getValue() instanceof BigDecimal y
+                        ? bool(x.compareTo(y) > 0) : null);
+                default -> {}
+            }
+        } else if (operator.equals("+") && (l instanceof String || r instanceof String)) {
+            rewrite("StringConcat", (a, b) -> a.getValue() instanceof String || b.getValue() instanceof String
+                    ? Environment.create(a.getValue().toString() + b.getValue().toString()) : null);
+        }
+        if (name.equals("Uninitialized")) {
+            if ((operator.equals("==") || operator.equals("!=")) && l.getClass().equals(r.getClass())) {
+                Class<?> type = l.getClass();
+                boolean equal = operator.equals("==");
+                rewrite(type.getSimpleName() + (equal ? "Eq" : "Ne"), (a, b) -> a.getValue().getClass() == type && b.getValue().getClass() == type
+                        ? bool(a.getValue().equals(b.getValue()) == equal) : null);
+            } else {
+                rewrite("Generic", generic);
+            }
+        }
+        return specialization.execute(left, right);
+    }
+
+    private void rewrite(String name, Specialization specialization) {
+        this.name = name;
+        this.specialization = specialization;
+    }
+
+    private static Specialization integers(BiFunction<BigInteger, BigInteger, BigInteger> operation) {
+        return (left, right) -> left.getValue() instanceof BigInteger l && right.getValue() instanceof BigInteger r
+                ? Environment.create(operation.apply(l, r)) : null;
+    }
+
+    private static Specialization decimals(BiFunction<BigDecimal, BigDecimal, BigDecimal> operation) {
+        return (left, right) -> left.getValue() instanceof BigDecimal l && right.getValue() instanceof BigDecimal r
+                ? Environment.create(operation.apply(l, r)) : null;
+    }
+
+    private static Environment.PlcObject bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+}
@@ -0,0 +1,316 @@
+package plc.project;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A register-based bytecode for PLC, produced by the {@link BytecodeCompiler}
+ * and run by the {@link VirtualMachine}. Each {@link Chunk} holds the code of
+ * a function as an {@code int[]} of opcodes, each followed by its operands:
+ * registers of the chunk's frame, indices into its pools of constants, names
+ * and switch tables, and absolute jump targets.
+ *
+ * A {@link Program} is a list of chunks for functions and a script chunk to
+ * run, and can be written to and read back from a stream.
+ */
+public final class Bytecode {
+
+    // r[a] = constants[c]
+    public static final int CONST = 0;
+    // r[a] = NIL
+    public static final int NIL = 1;
+    // r[a] = r[b]
+    public static final int MOVE = 2;
+    // r[a] = the variable names[n]
+    public static final int LOAD_GLOBAL = 3;
+    // the variable names[n] = r[b]
+    public static final int STORE_GLOBAL = 4;
+    // fails if the variable names[n] is immutable
+    public static final int CHECK_MUTABLE = 5;
+    // defines the variable names[n] = r[b], mutable if m is 1
+    public static final int DEFINE_GLOBAL = 6;
+    // defines the function of chunk f in the scope
+    public static final int DEFINE_FUNCTION = 7;
+    // r[a] = r[b] op r[c]
+    public static final int ADD = 8;
+    public static final int SUB = 9;
+    public static final int MUL = 10;
+    public static final int DIV = 11;
+    public static final int POW = 12;
+    public static final int SHR = 13;
+    public static final int LT = 14;
+    public static final int GT = 15;
+    public static final int EQ = 16;
+    public static final int NE = 17;
+    // r[a] = r[b] && r[c], or r[b] if r[c] is not a Boolean (likewise ||)
+    public static final int AND = 18;
+    public static final int OR = 19;
+    // fails if r[a] is not a Boolean
+    public static final int BOOLEAN = 20;
+    // pc = t
+    public static final int JUMP = 21;
+    // pc = t if r[a] is FALSE (or TRUE), failing if it is not a Boolean
+    public static final int JUMP_FALSE = 22;
+    public static final int JUMP_TRUE = 23;
+    // pc = t if r[a] and r[b] hold equal values
+    public static final int JUMP_EQUAL = 24;
+    // pc = the target of the case tables[s] gives r[a], followed by n
+    // targets, the last of which is taken if no case matches
+    public static final int SWITCH = 25;
+    // r[a] = the function names[n], or chunk f if not -1, called with the
+    // count registers from start
+    public static final int CALL = 26;
+    // r[a] = a list of the count registers from start
+    public static final int LIST = 27;
+    // r[a] = r[b][r[c]], checking the offset (or not, if proven in bounds)
+    public static final int INDEX = 28;
+    public static final int INDEX_UNCHECKED = 29;
+    // r[b][r[c]] = r[a]
+    public static final int SET_INDEX = 30;
+    public static final int SET_INDEX_UNCHECKED = 31;
+    // returns r[a] (or NIL)
+    public static final int RETURN = 32;
+    public static final int RETURN_NIL = 33;
+
+    private static final String[] NAMES = {
+            "CONST", "NIL", "MOVE", "LOAD_GLOBAL", "STORE_GLOBAL", "CHECK_MUTABLE", "DEFINE_GLOBAL", "DEFINE_FUNCTION",
+            "ADD", "SUB", "MUL", "DIV", "POW", "SHR", "LT", "GT", "EQ", "NE", "AND", "OR", "BOOLEAN",
+            "JUMP", "JUMP_FALSE", "JUMP_TRUE", "JUMP_EQUAL", "SWITCH", "CALL", "LIST",
+            "INDEX", "INDEX_UNCHECKED", "SET_INDEX", "SET_INDEX_UNCHECKED", "RETURN", "RETURN_NIL"
+    };
+
+    // the number of operands of each opcode; SWITCH is followed by its targets
+    private static final int[] OPERANDS = {
+            2, 1, 2, 2, 2, 1, 3, 1,
+            3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 1,
+            1, 2, 2, 3, 3, 5, 3,
+            3, 3, 3, 3, 1, 0
+    };
+
+    private static final int MAGIC = 0x504C4342; // "PLCB"
+    private static final int VERSION = 1;
+
+    private Bytecode() {}
+
+    /**
+     * Returns the number of ints taken by the instruction at the given
+     * position, including its opcode.
+     */
+    public static int size(int[] code, int pc) {
+        return code[pc] == SWITCH ? 4 + code[pc + 3] : 1 + OPERANDS[code[pc]];
+    }
+
+    public static final class Chunk {
+
+        private final String name;
+        private final int parameters;
+        private final int registers;
+        private final int[] code;
+        private final List<Object> constants;
+        private final List<String> names;
+        private final List<Map<Object, Integer>> tables;
+        private final Environment.PlcObject[] values;
+
+        public Chunk(String name, int parameters, int registers, int[] code, List<Object> constants, List<String> names, List<Map<Object, Integer>> tables) {
+            this.name = name;
+            this.parameters = parameters;
+            this.registers = registers;
+            this.code = code;
+            this.constants = constants;
+            this.names = names;
+            this.tables = tables;
+            values = new Environment.PlcObject[constants.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = constants.get(i) == null ? Environment.NIL : Environment.create(constants.get(i));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Returns the size of the frame, parameters first.
+         */
+        public int getRegisters() {
+            return registers;
+        }
+
+        public int[] getCode() {
+            return code;
+        }
+
+        public List<Object> getConstants() {
+            return constants;
+        }
+
+        /**
+         * Returns the constants as the objects loaded by {@link #CONST}.
+         */
+        Environment.PlcObject[] getValues() {
+            return values;
+        }
+
+        public List<String> getNames() {
+            return names;
+        }
+
+        public List<Map<Object, Integer>> getTables() {
+            return tables;
+        }
+
+        /**
+         * Returns one line per instruction, such as {@code 4: ADD r2, r0, r1}.
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(name + "/" + parameters + " (" + registers + " registers):");
+            for (int pc = 0; pc < code.length; pc += size(code, pc)) {
+                builder.append(System.lineSeparator()).append("    ").append(pc).append(": ").append(NAMES[code[pc]]);
+                for (int i = 1; i < size(code, pc); i++)
+                    builder.append(i == 1 ? " " : ", ").append(code[pc + i]);
+            }
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Program {
+
+        private final List<Chunk> functions;
+        private final Chunk script;
+
+        public Program(List<Chunk> functions, Chunk script) {
+            this.functions = functions;
+            this.script = script;
+        }
+
+        public List<Chunk> getFunctions() {
+            return functions;
+        }
+
+        /**
+         * Returns the chunk run by the {@link VirtualMachine}, which defines
+         * the globals and functions of a source and calls {@code main}.
+         */
+        public Chunk getScript() {
+            return script;
+        }
+
+        public void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(functions.size());
+            for (Chunk chunk : functions)
+                write(out, chunk);
+            write(out, script);
+        }
+
+        public static Program read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a PLC bytecode program of version " + VERSION + ".");
+            int count = in.readInt();
+            List<Chunk> functions = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+                functions.add(readChunk(in));
+            return new Program(functions, readChunk(in));
+        }
+
+        private static void write(DataOutputStream out, Chunk chunk) throws IOException {
+            out.writeUTF(chunk.name);
+            out.writeInt(chunk.parameters);
+            out.writeInt(chunk.registers);
+            out.writeInt(chunk.code.length);
+            for (int value : chunk.code)
+                out.writeInt(value);
+            out.writeInt(chunk.constants.size());
+            for (Object constant : chunk.constants)
+                writeConstant(out, constant);
+            out.writeInt(chunk.names.size());
+            for (String name : chunk.names)
+                out.writeUTF(name);
+            out.writeInt(chunk.tables.size());
+            for (Map<Object, Integer> table : chunk.tables) {
+                out.writeInt(table.size());
+                for (Map.Entry<Object, Integer> entry : table.entrySet()) {
+                    writeConstant(out, entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            }
+        }
+
+        private static Chunk readChunk(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            int parameters = in.readInt();
+            int registers = in.readInt();
+            int[] code = new int[in.readInt()];
+            for (int i = 0; i < code.length; i++)
+                code[i] = in.readInt();
+            List<Object> constants = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--)
+                constants.add(readConstant(in));
+            List<String> names = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--)
+                names.add(in.readUTF());
+            List<Map<Object, Integer>> tables = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                Map<Object, Integer> table = new HashMap<>();
+                for (int j = in.readInt(); j > 0; j--)
+                    table.put(readConstant(in), in.readInt());
+                tables.add(table);
+            }
+            return new Chunk(name, parameters, registers, code, constants, names, tables);
+        }
+
+        private static void writeConstant(DataOutputStream out, Object constant) throws IOException {
+            switch (constant) {
+                case null -> out.writeByte(0);
+                case Boolean b -> {
+                    out.writeByte(1);
+                    out.writeBoolean(b);
+                }
+                case BigInteger i -> {
+                    out.writeByte(2);
+                    out.writeUTF(i.toString());
+                }
+                case BigDecimal d -> {
+                    out.writeByte(3);
+                    out.writeUTF(d.toString());
+                }
+                case Character c -> {
+                    out.writeByte(4);
+                    out.writeChar(c);
+                }
+                case String s -> {
+                    out.writeByte(5);
+                    out.writeUTF(s);
+                }
+                default -> throw new IOException("Unexpected constant " + constant + ".");
+            }
+        }
+
+        private static Object readConstant(DataInputStream in) throws IOException {
+            return switch (in.readByte()) {
+                case 0 -> null;
+                case 1 -> in.readBoolean();
+                case 2 -> new BigInteger(in.readUTF());
+                case 3 -> new BigDecimal(in.readUTF());
+                case 4 -> in.readChar();
+                case 5 -> in.readUTF();
+                default -> throw new IOException("Unexpected constant tag.");
+            };
+        }
+
+    }
+
+}
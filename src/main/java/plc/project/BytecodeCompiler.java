@@ -0,0 +1,436 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an {@link Ast} to a {@link Bytecode.Program} for the
+ * {@link VirtualMachine}. A source compiles to a script that defines its
+ * globals and functions and returns the result of {@code main}, while a
+ * single global, function, statement or expression compiles to a script
+ * running just that, as the {@link Interpreter} would when visiting it.
+ *
+ * Registers are allocated per lexical scope, parameters first, so the
+ * Analyzer's slots are not needed and unanalyzed ASTs compile as well; names
+ * that are not locals are looked up in the scope of the machine. Temporaries
+ * are allocated above the locals and released after each statement. The
+ * Interpreter's evaluation order is kept, including its repeated evaluation
+ * of the operands of {@code &&} and {@code ||} when they call functions.
+ */
+public final class BytecodeCompiler implements Ast.Visitor<Integer> {
+
+    private static final Map<String, Integer> OPERATORS = Map.ofEntries(
+            Map.entry("+", Bytecode.ADD), Map.entry("-", Bytecode.SUB),
+            Map.entry("*", Bytecode.MUL), Map.entry("/", Bytecode.DIV),
+            Map.entry("^", Bytecode.POW), Map.entry(">>", Bytecode.SHR),
+            Map.entry("<", Bytecode.LT), Map.entry(">", Bytecode.GT),
+            Map.entry("==", Bytecode.EQ), Map.entry("!=", Bytecode.NE)
+    );
+
+    private final List<Bytecode.Chunk> functions = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private Builder builder = null;
+
+    public Bytecode.Program compile(Ast ast) {
+        functions.clear();
+        indices.clear();
+        builder = new Builder("<script>", List.of(), true);
+        if (ast instanceof Ast.Expression) {
+            builder.emit(Bytecode.RETURN, visit(ast));
+        } else {
+            visit(ast);
+            builder.emit(Bytecode.RETURN_NIL);
+        }
+        return new Bytecode.Program(new ArrayList<>(functions), builder.build());
+    }
+
+    @Override
+    public Integer visit(Ast.Source ast) {
+        ast.getGlobals().forEach(this::visit);
+        // functions are numbered first so that calls between them are direct
+        for (Ast.Function function : ast.getFunctions())
+            declare(function);
+        for (Ast.Function function : ast.getFunctions())
+            define(function);
+        int result = builder.temporary();
+        builder.emit(Bytecode.CALL, result, builder.name("main"), -1, builder.next, 0);
+        builder.emit(Bytecode.RETURN, result);
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Global ast) {
+        int value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : nil();
+        builder.emit(Bytecode.DEFINE_GLOBAL, builder.name(ast.getName()), value, ast.getMutable() ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Function ast) {
+        declare(ast);
+        define(ast);
+        return null;
+    }
+
+    private void declare(Ast.Function ast) {
+        indices.put(ast.getName() + "/" + ast.getParameters().size(), functions.size());
+        functions.add(null);
+    }
+
+    private void define(Ast.Function ast) {
+        int index = indices.get(ast.getName() + "/" + ast.getParameters().size());
+        Builder script = builder;
+        builder = new Builder(ast.getName(), ast.getParameters(), false);
+        ast.getStatements().forEach(this::statement);
+        builder.emit(Bytecode.RETURN_NIL);
+        functions.set(index, builder.build());
+        builder = script;
+        builder.emit(Bytecode.DEFINE_FUNCTION, index);
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Expression ast) {
+        // like the Interpreter, only calls are evaluated
+        if (ast.getExpression() instanceof Ast.Expression.Function)
+            visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Declaration ast) {
+        int value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : nil();
+        if (builder.script && builder.scopes.size() == 1) {
+            builder.emit(Bytecode.DEFINE_GLOBAL, builder.name(ast.getName()), value, 1);
+        } else {
+            int register = builder.local(ast.getName());
+            if (register != value)
+                builder.emit(Bytecode.MOVE, register, value);
+        }
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access receiver))
+            throw new RuntimeException("Expected Access Type");
+        Integer local = builder.lookup(receiver.getName());
+        if (local == null)
+            builder.emit(Bytecode.CHECK_MUTABLE, builder.name(receiver.getName()));
+
+        if (receiver.getOffset().isPresent()) {
+            int offset = visit(receiver.getOffset().get());
+            int list = local != null ? local : load(receiver.getName());
+            int value = visit(ast.getValue());
+            builder.emit(receiver.isInBounds() ? Bytecode.SET_INDEX_UNCHECKED : Bytecode.SET_INDEX, value, list, offset);
+        } else if (local != null) {
+            int value = visit(ast.getValue());
+            if (value != local)
+                builder.emit(Bytecode.MOVE, local, value);
+        } else {
+            builder.emit(Bytecode.STORE_GLOBAL, builder.name(receiver.getName()), visit(ast.getValue()));
+        }
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.If ast) {
+        int condition = visit(ast.getCondition());
+        int otherwise = builder.emit(Bytecode.JUMP_FALSE, condition, -1);
+        block(ast.getThenStatements());
+        if (ast.getElseStatements().isEmpty()) {
+            builder.patch(otherwise + 2);
+        } else {
+            int end = builder.emit(Bytecode.JUMP, -1);
+            builder.patch(otherwise + 2);
+            block(ast.getElseStatements());
+            builder.patch(end + 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Switch ast) {
+        List<Ast.Statement.Case> cases = ast.getCases();
+        int condition = visit(ast.getCondition());
+        int[] targets = new int[cases.size()];
+        if (ast.getTable().isPresent()) {
+            builder.tables.add(ast.getTable().get());
+            int[] operands = new int[4 + cases.size()];
+            operands[0] = Bytecode.SWITCH;
+            operands[1] = condition;
+            operands[2] = builder.tables.size() - 1;
+            operands[3] = cases.size();
+            int start = builder.emit(operands);
+            for (int i = 0; i < cases.size(); i++)
+                targets[i] = start + 4 + i;
+        } else {
+            // the case values are compared in order, falling back to the last case
+            for (int i = 0; i < cases.size() - 1; i++) {
+                if (cases.get(i).getValue().isPresent())
+                    targets[i] = builder.emit(Bytecode.JUMP_EQUAL, visit(cases.get(i).getValue().get()), condition, -1) + 3;
+                else
+                    targets[i] = -1;
+            }
+            targets[cases.size() - 1] = builder.emit(Bytecode.JUMP, -1) + 1;
+        }
+        List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < cases.size(); i++) {
+            if (targets[i] >= 0)
+                builder.patch(targets[i]);
+            visit(cases.get(i));
+            ends.add(builder.emit(Bytecode.JUMP, -1) + 1);
+        }
+        ends.forEach(builder::patch);
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Case ast) {
+        block(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.While ast) {
+        int start = builder.size;
+        int condition = visit(ast.getCondition());
+        int exit = builder.emit(Bytecode.JUMP_FALSE, condition, -1);
+        block(ast.getStatements());
+        builder.emit(Bytecode.JUMP, start);
+        builder.patch(exit + 2);
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Return ast) {
+        builder.emit(Bytecode.RETURN, visit(ast.getValue()));
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Literal ast) {
+        if (ast.getLiteral() == null)
+            return nil();
+        int register = builder.temporary();
+        builder.emit(Bytecode.CONST, register, builder.constant(ast.getLiteral()));
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Binary ast) {
+        boolean and = ast.getOperator().equals("&&");
+        if (!and && !ast.getOperator().equals("||")) {
+            int left = visit(ast.getLeft());
+            int right = visit(ast.getRight());
+            int register = builder.temporary();
+            builder.emit(OPERATORS.get(ast.getOperator()), register, left, right);
+            return register;
+        }
+        int jump = and ? Bytecode.JUMP_FALSE : Bytecode.JUMP_TRUE;
+        int register = builder.temporary();
+        if (!calls(ast.getLeft()) && !calls(ast.getRight())) {
+            int left = visit(ast.getLeft());
+            builder.emit(Bytecode.MOVE, register, left);
+            int end = builder.emit(jump, left, -1);
+            builder.emit(and ? Bytecode.AND : Bytecode.OR, register, left, visit(ast.getRight()));
+            builder.patch(end + 2);
+        } else {
+            // the Interpreter evaluates the left operand three times and the right twice
+            visit(ast.getLeft());
+            int left = visit(ast.getLeft());
+            builder.emit(Bytecode.MOVE, register, left);
+            int end = builder.emit(jump, left, -1);
+            visit(ast.getRight());
+            left = visit(ast.getLeft());
+            builder.emit(Bytecode.BOOLEAN, left);
+            builder.emit(and ? Bytecode.AND : Bytecode.OR, register, left, visit(ast.getRight()));
+            builder.patch(end + 2);
+        }
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Access ast) {
+        Integer local = builder.lookup(ast.getName());
+        if (ast.getOffset().isEmpty())
+            return local != null ? local : load(ast.getName());
+        int list;
+        int offset;
+        // mirrors the Interpreter, which loads the list first only when proven in bounds
+        if (ast.isInBounds()) {
+            list = local != null ? local : load(ast.getName());
+            offset = visit(ast.getOffset().get());
+        } else {
+            offset = visit(ast.getOffset().get());
+            list = local != null ? local : load(ast.getName());
+        }
+        int register = builder.temporary();
+        builder.emit(ast.isInBounds() ? Bytecode.INDEX_UNCHECKED : Bytecode.INDEX, register, list, offset);
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Function ast) {
+        int start = arguments(ast.getArguments());
+        Integer index = indices.get(ast.getName() + "/" + ast.getArguments().size());
+        int register = builder.temporary();
+        builder.emit(Bytecode.CALL, register, builder.name(ast.getName()), index != null ? index : -1, start, ast.getArguments().size());
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.PlcList ast) {
+        int start = arguments(ast.getValues());
+        int register = builder.temporary();
+        builder.emit(Bytecode.LIST, register, start, ast.getValues().size());
+        return register;
+    }
+
+    /**
+     * Evaluates the expressions in order and moves their values to
+     * consecutive registers, returning the first.
+     */
+    private int arguments(List<Ast.Expression> expressions) {
+        int[] values = new int[expressions.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = visit(expressions.get(i));
+        int start = builder.next;
+        for (int i = 0; i < values.length; i++)
+            builder.emit(Bytecode.MOVE, builder.temporary(), values[i]);
+        return start;
+    }
+
+    private void statement(Ast.Statement statement) {
+        visit(statement);
+        builder.next = builder.locals;
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        int locals = builder.locals;
+        builder.scopes.push(new HashMap<>());
+        statements.forEach(this::statement);
+        builder.scopes.pop();
+        builder.locals = locals;
+        builder.next = locals;
+    }
+
+    private int load(String name) {
+        int register = builder.temporary();
+        builder.emit(Bytecode.LOAD_GLOBAL, register, builder.name(name));
+        return register;
+    }
+
+    private int nil() {
+        int register = builder.temporary();
+        builder.emit(Bytecode.NIL, register);
+        return register;
+    }
+
+    /**
+     * Returns whether evaluating the expression may call a function, and so
+     * have effects that make repeated evaluation observable.
+     */
+    private static boolean calls(Ast.Expression ast) {
+        return switch (ast) {
+            case Ast.Expression.Function function -> true;
+            case Ast.Expression.Group group -> calls(group.getExpression());
+            case Ast.Expression.Binary binary -> calls(binary.getLeft()) || calls(binary.getRight());
+            case Ast.Expression.Access access -> access.getOffset().isPresent() && calls(access.getOffset().get());
+            case Ast.Expression.PlcList list -> list.getValues().stream().anyMatch(BytecodeCompiler::calls);
+            default -> false;
+        };
+    }
+
+    private static final class Builder {
+
+        private final String name;
+        private final int parameters;
+        private final boolean script;
+        private int[] code = new int[32];
+        private int size = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndices = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> nameIndices = new HashMap<>();
+        private final List<Map<Object, Integer>> tables = new ArrayList<>();
+        private final Deque<Map<String, Integer>> scopes = new ArrayDeque<>();
+        private int locals = 0;
+        private int next = 0;
+        private int registers = 0;
+
+        private Builder(String name, List<String> parameters, boolean script) {
+            this.name = name;
+            this.parameters = parameters.size();
+            this.script = script;
+            scopes.push(new HashMap<>());
+            parameters.forEach(this::local);
+        }
+
+        private int emit(int... operands) {
+            if (size + operands.length > code.length)
+                code = Arrays.copyOf(code, Math.max(2 * code.length, size + operands.length));
+            System.arraycopy(operands, 0, code, size, operands.length);
+            size += operands.length;
+            return size - operands.length;
+        }
+
+        /**
+         * Sets the jump target at the given position to the next instruction.
+         */
+        private void patch(int position) {
+            code[position] = size;
+        }
+
+        private int temporary() {
+            registers = Math.max(registers, next + 1);
+            return next++;
+        }
+
+        private int local(String name) {
+            // temporaries holding the initial value are above the locals
+            int register = locals++;
+            next = Math.max(next, locals);
+            registers = Math.max(registers, locals);
+            scopes.peek().put(name, register);
+            return register;
+        }
+
+        private Integer lookup(String name) {
+            for (Map<String, Integer> scope : scopes) {
+                if (scope.containsKey(name))
+                    return scope.get(name);
+            }
+            return null;
+        }
+
+        private int constant(Object value) {
+            return constantIndices.computeIfAbsent(value, v -> {
+                constants.add(v);
+                return constants.size() - 1;
+            });
+        }
+
+        private int name(String name) {
+            return nameIndices.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+        }
+
+        private Bytecode.Chunk build() {
+            return new Bytecode.Chunk(name, parameters, registers, Arrays.copyOf(code, size), constants, names, tables);
+        }
+
+    }
+
+}
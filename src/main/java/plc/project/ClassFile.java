@@ -0,0 +1,335 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal emitter of JVM class files, covering what the
+ * {@link JitCompiler} needs: a final class with static methods whose code
+ * loads and stores references, calls static and virtual methods and
+ * branches. Classes are written as version 49, which is verified by type
+ * inference, so no stack map frames are needed.
+ */
+final class ClassFile {
+
+    static final int ACONST_NULL = 0x01;
+    static final int ALOAD = 0x19;
+    static final int ASTORE = 0x3A;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int GOTO = 0xA7;
+    static final int ARETURN = 0xB0;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESTATIC = 0xB8;
+    static final int ANEWARRAY = 0xBD;
+    static final int CHECKCAST = 0xC0;
+
+    private static final int VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final String name;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int count = 1;
+    private final List<Method> methods = new ArrayList<>();
+
+    /**
+     * Creates a class with the given internal name, such as
+     * {@code plc/project/Code}.
+     */
+    ClassFile(String name) {
+        this.name = name;
+    }
+
+    Method method(String name, String descriptor) {
+        Method method = new Method(name, descriptor);
+        methods.add(method);
+        return method;
+    }
+
+    byte[] toBytes() {
+        int self = classRef(name);
+        int parent = classRef("java/lang/Object");
+        int code = utf8("Code");
+        List<int[]> signatures = new ArrayList<>();
+        for (Method method : methods)
+            signatures.add(new int[] {utf8(method.name), utf8(method.descriptor)});
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(count);
+            poolOut.flush();
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(self);
+            out.writeShort(parent);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                Method method = methods.get(i);
+                method.resolve();
+                out.writeShort(ACC_PUBLIC | ACC_STATIC);
+                out.writeShort(signatures.get(i)[0]);
+                out.writeShort(signatures.get(i)[1]);
+                out.writeShort(1);
+                out.writeShort(code);
+                out.writeInt(12 + method.code.size());
+                out.writeShort(method.maxStack);
+                out.writeShort(method.locals);
+                out.writeInt(method.code.size());
+                method.code.writeTo(out);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    private int classRef(String name) {
+        int utf8 = utf8(name);
+        return entry("C" + name, out -> {
+            out.writeByte(7);
+            out.writeShort(utf8);
+        });
+    }
+
+    private int integer(int value) {
+        return entry("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    private int methodRef(String owner, String name, String descriptor) {
+        int owning = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry("M" + owner + "." + name + descriptor, out -> {
+            out.writeByte(10);
+            out.writeShort(owning);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Returns the index of a constant pool entry, writing it if the key is
+     * new. None of the entries used are longs or doubles, which take two.
+     */
+    private int entry(String key, Writer writer) {
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.put(key, count);
+        return count++;
+    }
+
+    static final class Label {
+
+        private int position = -1;
+        private int stack = -1;
+        private final List<int[]> branches = new ArrayList<>();
+
+    }
+
+    /**
+     * The code of a static method, tracking the depth of the operand stack
+     * to compute its maximum.
+     */
+    final class Method {
+
+        private final String name;
+        private final String descriptor;
+        private int locals = 0;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int stack = 0;
+        private int maxStack = 0;
+
+        /**
+         * Creates a static method; its local variables are counted as they
+         * are used, starting with the parameters, which must be references.
+         */
+        private Method(String name, String descriptor) {
+            this.name = name;
+            this.descriptor = descriptor;
+            for (int i = 1; descriptor.charAt(i) != ')'; i = descriptor.indexOf(';', i) + 1)
+                locals++;
+        }
+
+        void load(int local) {
+            variable(ALOAD, local);
+            push(1);
+        }
+
+        void store(int local) {
+            variable(ASTORE, local);
+            push(-1);
+        }
+
+        /**
+         * Pushes an int constant, such as an index into an array.
+         */
+        void constant(int value) {
+            if (value >= -1 && value <= 5) {
+                write(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                write(0x10);
+                write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                write(0x11);
+                writeShort(value);
+            } else {
+                write(0x13); // ldc_w
+                writeShort(integer(value));
+            }
+            push(1);
+        }
+
+        /**
+         * Emits an instruction without operands, such as {@link #AALOAD}.
+         */
+        void instruction(int opcode) {
+            write(opcode);
+            switch (opcode) {
+                case ACONST_NULL, DUP -> push(1);
+                case AALOAD, POP -> push(-1);
+                case AASTORE -> push(-3);
+                case ARETURN -> stack = 0;
+                default -> throw new IllegalArgumentException("Unsupported opcode " + opcode + ".");
+            }
+        }
+
+        /**
+         * Emits an instruction taking a class, such as {@link #CHECKCAST}.
+         */
+        void type(int opcode, String type) {
+            write(opcode);
+            writeShort(classRef(type));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            write(opcode);
+            writeShort(methodRef(owner, name, descriptor));
+            int arguments = opcode == INVOKESTATIC ? 0 : 1;
+            for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+                char c = descriptor.charAt(i);
+                arguments += c == 'J' || c == 'D' ? 2 : 1;
+                while (descriptor.charAt(i) == '[')
+                    i++;
+                if (descriptor.charAt(i) == 'L')
+                    i = descriptor.indexOf(';', i);
+            }
+            char result = descriptor.charAt(descriptor.indexOf(')') + 1);
+            push((result == 'V' ? 0 : result == 'J' || result == 'D' ? 2 : 1) - arguments);
+        }
+
+        void jump(int opcode, Label label) {
+            if (opcode != GOTO)
+                push(-1);
+            if (label.stack < 0)
+                label.stack = stack;
+            label.branches.add(new int[] {code.size(), code.size() + 1});
+            if (!labels.contains(label))
+                labels.add(label);
+            write(opcode);
+            writeShort(0);
+            if (opcode == GOTO)
+                stack = 0;
+        }
+
+        void place(Label label) {
+            label.position = code.size();
+            if (label.stack >= 0)
+                stack = label.stack;
+            if (!labels.contains(label))
+                labels.add(label);
+        }
+
+        private void resolve() {
+            byte[] bytes = code.toByteArray();
+            for (Label label : labels) {
+                for (int[] branch : label.branches) {
+                    int offset = label.position - branch[0];
+                    if (label.position < 0 || offset != (short) offset)
+                        throw new IllegalStateException("Unresolved or distant jump in " + name + ".");
+                    bytes[branch[1]] = (byte) (offset >> 8);
+                    bytes[branch[1] + 1] = (byte) offset;
+                }
+            }
+            code.reset();
+            code.writeBytes(bytes);
+        }
+
+        private void variable(int opcode, int local) {
+            locals = Math.max(locals, local + 1);
+            if (local <= 3) {
+                write((opcode == ALOAD ? 0x2A : 0x4B) + local);
+            } else if (local <= 255) {
+                write(opcode);
+                write(local);
+            } else {
+                write(0xC4); // wide
+                write(opcode);
+                writeShort(local);
+            }
+        }
+
+        private void push(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void write(int value) {
+            code.write(value);
+        }
+
+        private void writeShort(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+    }
+
+}
@@ -0,0 +1,447 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compiles an analyzed {@link Ast.Source} into a tree of closures, deciding
+ * once per node what the {@link Interpreter} decides on every evaluation:
+ * which operator applies, whether a variable lives in a frame slot or a
+ * global, which function a call invokes. Running the closures gives the same
+ * results, output and errors as interpreting the source, including the
+ * repeated evaluation of impure {@code &&} and {@code ||} operands.
+ *
+ * Statements return null to continue, or the value of a {@code RETURN}, so
+ * returning does not throw. Globals are still initialized by an Interpreter,
+ * which also provides the builtin functions.
+ */
+public final class ClosureCompiler {
+
+    private static final Environment.PlcObject TRUE = Environment.create(Boolean.TRUE);
+    private static final Environment.PlcObject FALSE = Environment.create(Boolean.FALSE);
+
+    @FunctionalInterface
+    private interface Expression {
+
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame);
+
+    }
+
+    @FunctionalInterface
+    private interface Statement {
+
+        /**
+         * Returns the value returned by the function, or null if control
+         * continues past the statement.
+         */
+        Environment.PlcObject execute(Environment.PlcObject[] frame);
+
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right);
+
+    }
+
+    private static final class Function {
+
+        private final int frameSize;
+        private Statement body;
+
+        private Function(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
+        private Environment.PlcObject invoke(List<Environment.PlcObject> arguments) {
+            Environment.PlcObject[] frame = new Environment.PlcObject[frameSize];
+            for (int i = 0; i < arguments.size(); i++)
+                frame[i] = arguments.get(i);
+            Environment.PlcObject value = body.execute(frame);
+            return value != null ? value : Environment.NIL;
+        }
+
+    }
+
+    private final Scope parent;
+    private final Map<String, Function> functions = new HashMap<>();
+
+    // the scope and globals of the current execution
+    private Scope scope;
+    private Environment.Variable[] globals;
+
+    public ClosureCompiler(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Compiles the source, returning a supplier that runs its {@code main}
+     * function with freshly initialized globals each time it is called.
+     */
+    public Supplier<Environment.PlcObject> compile(Ast.Source ast) {
+        for (Ast.Function function : ast.getFunctions()) {
+            if (function.getFrameSize() < 0)
+                throw new RuntimeException("The function " + function.getName() + "/" + function.getParameters().size() + " must be analyzed before it is compiled.");
+            functions.put(function.getName() + "/" + function.getParameters().size(), new Function(function.getFrameSize()));
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            functions.get(function.getName() + "/" + function.getParameters().size()).body = compile(function.getStatements());
+        }
+        return () -> execute(ast);
+    }
+
+    private Environment.PlcObject execute(Ast.Source ast) {
+        Interpreter interpreter = new Interpreter(parent);
+        scope = interpreter.getScope();
+        globals = new Environment.Variable[ast.getGlobals().size()];
+        for (Ast.Global global : ast.getGlobals()) {
+            interpreter.visit(global);
+            if (global.getSlot() >= 0)
+                globals[global.getSlot()] = scope.lookupVariable(global.getName());
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            Function compiled = functions.get(function.getName() + "/" + function.getParameters().size());
+            scope.defineFunction(function.getName(), function.getParameters().size(), compiled::invoke);
+        }
+        return scope.lookupFunction("main", 0).invoke(new ArrayList<>());
+    }
+
+    private Statement compile(List<Ast.Statement> statements) {
+        List<Statement> compiled = new ArrayList<>();
+        for (Ast.Statement statement : statements) {
+            // the Interpreter ignores expression statements other than calls
+            if (!(statement instanceof Ast.Statement.Expression expression) || expression.getExpression() instanceof Ast.Expression.Function)
+                compiled.add(compile(statement));
+        }
+        return switch (compiled.size()) {
+            case 0 -> frame -> null;
+            case 1 -> compiled.getFirst();
+            default -> {
+                Statement[] block = compiled.toArray(new Statement[0]);
+                yield frame -> {
+                    for (Statement statement : block) {
+                        Environment.PlcObject value = statement.execute(frame);
+                        if (value != null)
+                            return value;
+                    }
+                    return null;
+                };
+            }
+        };
+    }
+
+    private Statement compile(Ast.Statement ast) {
+        switch (ast) {
+            case Ast.Statement.Expression statement: {
+                Expression expression = compile(statement.getExpression());
+                return frame -> {
+                    expression.evaluate(frame);
+                    return null;
+                };
+            }
+            case Ast.Statement.Declaration declaration: {
+                int slot = declaration.getSlot();
+                if (declaration.getValue().isEmpty())
+                    return frame -> {
+                        frame[slot] = Environment.NIL;
+                        return null;
+                    };
+                Expression value = compile(declaration.getValue().get());
+                return frame -> {
+                    frame[slot] = value.evaluate(frame);
+                    return null;
+                };
+            }
+            case Ast.Statement.Assignment assignment:
+                return assignment(assignment);
+            case Ast.Statement.If statement: {
+                Expression condition = compile(statement.getCondition());
+                Statement thenStatements = compile(statement.getThenStatements());
+                Statement elseStatements = compile(statement.getElseStatements());
+                return frame -> Interpreter.requireType(Boolean.class, condition.evaluate(frame))
+                        ? thenStatements.execute(frame) : elseStatements.execute(frame);
+            }
+            case Ast.Statement.Switch statement:
+                return switchStatement(statement);
+            case Ast.Statement.While statement:
+                return whileStatement(statement);
+            case Ast.Statement.Return statement: {
+                Expression value = compile(statement.getValue());
+                return value::evaluate;
+            }
+            default:
+                throw new RuntimeException("Unknown statement " + ast);
+        }
+    }
+
+    private Statement assignment(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access receiver))
+            throw new RuntimeException("Expected Access Type");
+        Expression value = compile(ast.getValue());
+        boolean local = receiver.hasAddress() && receiver.getDepth() == Ast.Expression.Access.LOCAL;
+        int slot = receiver.getSlot();
+        if (receiver.getOffset().isEmpty() && local)
+            return frame -> {
+                frame[slot] = value.evaluate(frame);
+                return null;
+            };
+        if (receiver.getOffset().isEmpty())
+            return frame -> {
+                Environment.Variable variable = variable(receiver);
+                if (!variable.getMutable())
+                    throw new RuntimeException("Modification of Immutable Type");
+                variable.setValue(value.evaluate(frame));
+                return null;
+            };
+        Expression offset = compile(receiver.getOffset().get());
+        boolean inBounds = receiver.isInBounds();
+        return frame -> {
+            Environment.Variable variable = local ? null : variable(receiver);
+            if (!local && !variable.getMutable())
+                throw new RuntimeException("Modification of Immutable Type");
+            if (inBounds) {
+                int index = ((BigInteger) offset.evaluate(frame).getValue()).intValue();
+                list(local ? frame[slot] : variable.getValue()).set(index, value.evaluate(frame).getValue());
+                return null;
+            }
+            if (!(offset.evaluate(frame).getValue() instanceof BigInteger index))
+                throw new RuntimeException("Expected BigInteger type for offset");
+            @SuppressWarnings("unchecked")
+            List<Object> list = Interpreter.requireType(List.class, local ? frame[slot] : variable.getValue());
+            list.set(index.intValue(), value.evaluate(frame).getValue());
+            return null;
+        };
+    }
+
+    private Statement switchStatement(Ast.Statement.Switch ast) {
+        Expression condition = compile(ast.getCondition());
+        List<Ast.Statement.Case> cases = ast.getCases();
+        Statement[] bodies = new Statement[cases.size()];
+        Expression[] values = new Expression[cases.size()];
+        for (int i = 0; i < cases.size(); i++) {
+            bodies[i] = compile(cases.get(i).getStatements());
+            values[i] = cases.get(i).getValue().map(this::compile).orElse(null);
+        }
+        if (ast.getTable().isPresent()) {
+            Map<Object, Integer> table = ast.getTable().get();
+            return frame -> {
+                Integer index = table.get(condition.evaluate(frame).getValue());
+                return bodies[index != null ? index : bodies.length - 1].execute(frame);
+            };
+        }
+        return frame -> {
+            Object value = condition.evaluate(frame).getValue();
+            for (int i = 0; i < bodies.length; i++) {
+                // the last case runs if no other matched, as in the Interpreter
+                if (values[i] != null && values[i].evaluate(frame).getValue().equals(value) || i == bodies.length - 1)
+                    return bodies[i].execute(frame);
+            }
+            return null;
+        };
+    }
+
+    private Statement whileStatement(Ast.Statement.While ast) {
+        Expression condition = compile(ast.getCondition());
+        Statement body = compile(ast.getStatements());
+        Statement loop = frame -> {
+            while (Interpreter.requireType(Boolean.class, condition.evaluate(frame))) {
+                Environment.PlcObject value = body.execute(frame);
+                if (value != null)
+                    return value;
+            }
+            return null;
+        };
+        if (ast.getCounter().isEmpty())
+            return loop;
+        // the counter is kept in a long as in Interpreter's counted loops
+        CountedLoop counter = ast.getCounter().get();
+        int slot = counter.getSlot();
+        long step = counter.getStep();
+        boolean read = counter.isRead();
+        Expression bound = compile(counter.getBound());
+        Statement counted = compile(ast.getStatements().subList(0, ast.getStatements().size() - 1));
+        return frame -> {
+            if (!(frame[slot].getValue() instanceof BigInteger start) || start.bitLength() > 62
+                    || !(bound.evaluate(frame).getValue() instanceof BigInteger end) || end.bitLength() > 62)
+                return loop.execute(frame);
+            long i = start.longValue();
+            long n = end.longValue();
+            while (step > 0 ? i < n : i > n) {
+                if (read)
+                    frame[slot] = Environment.create(BigInteger.valueOf(i));
+                Environment.PlcObject value = counted.execute(frame);
+                if (value != null)
+                    return value;
+                i += step;
+            }
+            frame[slot] = Environment.create(BigInteger.valueOf(i));
+            return null;
+        };
+    }
+
+    private Expression compile(Ast.Expression ast) {
+        switch (ast) {
+            case Ast.Expression.Literal literal: {
+                Environment.PlcObject value = literal.getLiteral() == null ? Environment.NIL : Environment.create(literal.getLiteral());
+                return frame -> value;
+            }
+            case Ast.Expression.Group group:
+                return compile(group.getExpression());
+            case Ast.Expression.Binary binary:
+                return binary(binary);
+            case Ast.Expression.Access access:
+                return access(access);
+            case Ast.Expression.Function call:
+                return call(call);
+            case Ast.Expression.PlcList list: {
+                Expression[] values = list.getValues().stream().map(this::compile).toArray(Expression[]::new);
+                return frame -> {
+                    List<Object> elements = new ArrayList<>();
+                    for (Expression value : values)
+                        elements.add(value.evaluate(frame).getValue());
+                    return Environment.create(elements);
+                };
+            }
+            default:
+                throw new RuntimeException("Unknown expression " + ast);
+        }
+    }
+
+    private Expression binary(Ast.Expression.Binary ast) {
+        if (ast.getOperator().equals("+") && ast.getLeft() instanceof Ast.Expression.Binary left && left.getOperator().equals("+"))
+            return addChain(ast);
+        Expression left = compile(ast.getLeft());
+        Expression right = compile(ast.getRight());
+        if (ast.getOperator().equals("&&") || ast.getOperator().equals("||")) {
+            boolean and = ast.getOperator().equals("&&");
+            if (Rewriter.isPure(ast.getLeft(), true) && Rewriter.isPure(ast.getRight(), true)) {
+                // a right operand that is not a Boolean gives the left one
+                return frame -> {
+                    boolean leftHand = Interpreter.requireType(Boolean.class, left.evaluate(frame));
+                    if (leftHand != and)
+                        return bool(leftHand);
+                    return right.evaluate(frame).getValue() instanceof Boolean rightHand ? bool(rightHand) : bool(leftHand);
+                };
+            }
+            // evaluates the operands as often as the Interpreter does
+            return frame -> {
+                left.evaluate(frame);
+                boolean leftHand = Interpreter.requireType(Boolean.class, left.evaluate(frame));
+                if (leftHand != and)
+                    return bool(leftHand);
+                right.evaluate(frame);
+                leftHand = Interpreter.requireType(Boolean.class, left.evaluate(frame));
+                try {
+                    boolean rightHand = Interpreter.requireType(Boolean.class, right.evaluate(frame));
+                    return bool(and ? leftHand && rightHand : leftHand || rightHand);
+                } catch (RuntimeException e) {
+                    return bool(leftHand);
+                }
+            };
+        }
+        Operation operation = operation(ast);
+        return frame -> operation.apply(left.evaluate(frame), right.evaluate(frame));
+    }
+
+    /**
+     * Returns the operation for the operator, a node of its own that
+     * specializes itself on the operands it sees, so its results and errors
+     * are the Interpreter's.
+     */
+    private static Operation operation(Ast.Expression.Binary ast) {
+        return new BinaryNode(ast)::execute;
+    }
+
+    /**
+     * Compiles a chain of additions as the Interpreter evaluates them,
+     * appending to a single builder once the value is a String.
+     */
+    private Expression addChain(Ast.Expression.Binary ast) {
+        List<Ast.Expression.Binary> chain = new ArrayList<>();
+        Ast.Expression operand = ast;
+        while (operand instanceof Ast.Expression.Binary binary && binary.getOperator().equals("+")) {
+            chain.add(binary);
+            operand = binary.getLeft();
+        }
+        Expression first = compile(operand);
+        List<Ast.Expression.Binary> additions = chain.reversed();
+        Expression[] operands = new Expression[additions.size()];
+        Operation[] operations = new Operation[additions.size()];
+        for (int i = 0; i < additions.size(); i++) {
+            operands[i] = compile(additions.get(i).getRight());
+            operations[i] = operation(additions.get(i));
+        }
+        return frame -> {
+            Environment.PlcObject value = first.evaluate(frame);
+            StringBuilder builder = null;
+            for (int i = 0; i < operands.length; i++) {
+                Environment.PlcObject right = operands[i].evaluate(frame);
+                if (builder != null)
+                    builder.append(right.getValue());
+                else if (value.getValue() instanceof String string)
+                    builder = new StringBuilder(string).append(right.getValue());
+                else
+                    value = operations[i].apply(value, right);
+            }
+            return builder == null ? value : Environment.create(builder.toString());
+        };
+    }
+
+    private Expression access(Ast.Expression.Access ast) {
+        boolean local = ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.LOCAL;
+        int slot = ast.getSlot();
+        Expression load = local ? frame -> frame[slot] : frame -> variable(ast).getValue();
+        if (ast.getOffset().isEmpty())
+            return load;
+        Expression offset = compile(ast.getOffset().get());
+        if (ast.isInBounds())
+            return frame -> Environment.create(list(load.evaluate(frame)).get(((BigInteger) offset.evaluate(frame).getValue()).intValue()));
+        return frame -> {
+            if (!(offset.evaluate(frame).getValue() instanceof BigInteger index))
+                throw new RuntimeException("Expected BigDecimal type for offset access");
+            @SuppressWarnings("unchecked")
+            List<Object> list = Interpreter.requireType(List.class, load.evaluate(frame));
+            if (index.intValue() < 0 || index.intValue() >= list.size())
+                throw new RuntimeException("Offset is out of list bounds");
+            return Environment.create(list.get(index.intValue()));
+        };
+    }
+
+    private Expression call(Ast.Expression.Function ast) {
+        Expression[] arguments = ast.getArguments().stream().map(this::compile).toArray(Expression[]::new);
+        Function function = functions.get(ast.getName() + "/" + arguments.length);
+        return frame -> {
+            List<Environment.PlcObject> values = new ArrayList<>(arguments.length);
+            for (Expression argument : arguments)
+                values.add(argument.evaluate(frame));
+            if (function != null)
+                return function.invoke(values);
+            return scope.lookupFunction(ast.getName(), arguments.length).invoke(values);
+        };
+    }
+
+    /**
+     * Returns the variable accessed, by its global slot if the Analyzer
+     * resolved one and by name otherwise.
+     */
+    private Environment.Variable variable(Ast.Expression.Access ast) {
+        if (ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.GLOBAL)
+            return globals[ast.getSlot()];
+        return scope.lookupVariable(ast.getName());
+    }
+
+    private static Environment.PlcObject bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Environment.PlcObject object) {
+        return (List<Object>) object.getValue();
+    }
+
+}
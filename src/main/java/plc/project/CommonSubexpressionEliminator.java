@@ -0,0 +1,238 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes an expression once when it is evaluated several times within a
+ * block. The value is stored in a {@code LET} temporary declared before the
+ * statement where it first occurs, and later occurrences in the same block
+ * (including nested blocks) read the temporary, up to the first statement
+ * that may change the value: one assigning a variable it uses, declaring
+ * one of the same name or, if it uses globals, calling a function that may
+ * write them. Within that statement, only the occurrences evaluated before
+ * the first such call are replaced. Occurrences must read the same
+ * variables, not just ones of the same name.
+ *
+ * Only pure operations and function calls whose values are immutable are
+ * shared. Since they cannot fail or have effects, computing them before the
+ * statement cannot be observed. {@code WHILE} conditions are evaluated on
+ * every iteration, so they only use temporaries for values the loop cannot
+ * change.
+ */
+public final class CommonSubexpressionEliminator extends Rewriter {
+
+    private static final Set<Environment.Type> IMMUTABLE = Set.of(Environment.Type.BOOLEAN,
+            Environment.Type.INTEGER, Environment.Type.DECIMAL, Environment.Type.CHARACTER, Environment.Type.STRING);
+
+    @Override
+    protected List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        // nested blocks first, so they only share what is common to them
+        List<Ast.Statement> block = new ArrayList<>();
+        statements.forEach(statement -> block.add((Ast.Statement) visit(statement)));
+        for (int i = 0; i < block.size(); i++) {
+            for (Ast.Expression common = common(block, i); common != null; common = common(block, i)) {
+                Ast.Statement.Declaration temporary = temporary(fresh("common"), common.getType(), common);
+                for (int j = i; j < block.size(); j++) {
+                    boolean changes = changes(block.get(j), common);
+                    block.set(j, new Occurrences(common, temporary, !changes).statement(block.get(j)));
+                    if (changes)
+                        break;
+                }
+                block.add(i++, temporary);
+            }
+        }
+        return same(block, statements) ? statements : block;
+    }
+
+    /**
+     * Returns the largest expression evaluated by the statement at the given
+     * index that is evaluated again before its value may change, or null if
+     * there is none.
+     */
+    private static Ast.Expression common(List<Ast.Statement> block, int index) {
+        List<Ast.Expression> candidates = new ArrayList<>();
+        new Occurrences(null, null, false) {
+            @Override
+            protected Ast.Expression rewrite(Ast.Expression expression) {
+                if (isCandidate(expression))
+                    candidates.add(unwrap(expression));
+                return super.rewrite(expression);
+            }
+        }.statement(block.get(index));
+        for (Ast.Expression candidate : candidates) {
+            int count = 0;
+            for (int j = index; j < block.size() && count < 2; j++) {
+                boolean changes = changes(block.get(j), candidate);
+                Occurrences occurrences = new Occurrences(candidate, null, !changes);
+                occurrences.statement(block.get(j));
+                count += occurrences.count;
+                if (changes)
+                    break;
+            }
+            if (count >= 2)
+                return candidate;
+        }
+        return null;
+    }
+
+    private static boolean isCandidate(Ast.Expression expression) {
+        Ast.Expression value = unwrap(expression);
+        if (!(value instanceof Ast.Expression.Binary || value instanceof Ast.Expression.Function)
+                || !IMMUTABLE.contains(value.getType()) || !isPure(value))
+            return false;
+        boolean[] lists = {false};
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.PlcList ast) {
+                lists[0] = true;
+                return ast;
+            }
+        }.visit(value);
+        return !lists[0];
+    }
+
+    /**
+     * Returns true if running the statement may change the value of the
+     * expression, or declares a variable shadowing one it uses.
+     */
+    private static boolean changes(Ast.Statement statement, Ast.Expression expression) {
+        Set<Environment.Variable> assigned = assigned(statement);
+        Set<String> declared = new HashSet<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Statement.Declaration ast) {
+                declared.add(ast.getName());
+                return super.visit(ast);
+            }
+        }.visit(statement);
+        boolean[] changes = {false};
+        boolean writes = writesGlobals(statement);
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (assigned.contains(ast.getVariable()) || declared.contains(ast.getName())
+                        || ast.getDepth() != Ast.Expression.Access.LOCAL && writes)
+                    changes[0] = true;
+                return ast;
+            }
+        }.visit(expression);
+        return changes[0];
+    }
+
+    /**
+     * Returns true if the expressions are equal and read the same variables.
+     * Equal accesses only have variables of the same name and type, which a
+     * declaration in a nested block may shadow.
+     */
+    private static boolean matches(Ast.Expression expression, Ast.Expression common) {
+        if (!expression.equals(common))
+            return false;
+        List<Environment.Variable> variables = variables(expression);
+        List<Environment.Variable> commonVariables = variables(common);
+        for (int i = 0; i < variables.size(); i++) {
+            if (variables.get(i) != commonVariables.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the variables the expression reads, in evaluation order.
+     */
+    private static List<Environment.Variable> variables(Ast.Expression expression) {
+        List<Environment.Variable> variables = new ArrayList<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                variables.add(ast.getVariable());
+                return super.visit(ast);
+            }
+        }.visit(expression);
+        return variables;
+    }
+
+    private static Ast.Expression unwrap(Ast.Expression expression) {
+        return expression instanceof Ast.Expression.Group group ? unwrap(group.getExpression()) : expression;
+    }
+
+    /**
+     * Counts the occurrences of an expression in a statement, replacing them
+     * with an access to the temporary if there is one. Unless nested blocks
+     * are included, only the expressions the statement evaluates before
+     * running any of its blocks are visited.
+     *
+     * If the expression uses globals, occurrences evaluated after a call
+     * that may write them are left alone. The Interpreter evaluates the
+     * operands of {@code &&} and {@code ||} again after their right
+     * operand, so one calling such a function stops before its operands.
+     */
+    private static class Occurrences extends Rewriter {
+
+        private final Ast.Expression common;
+        private final Ast.Statement.Declaration temporary;
+        private final boolean nested;
+        private final boolean globals;
+        private boolean written = false;
+        int count = 0;
+
+        private Occurrences(Ast.Expression common, Ast.Statement.Declaration temporary, boolean nested) {
+            this.common = common;
+            this.temporary = temporary;
+            this.nested = nested;
+            this.globals = common != null && readsGlobals(common);
+        }
+
+        Ast.Statement statement(Ast.Statement statement) {
+            return (Ast.Statement) visit(statement);
+        }
+
+        @Override
+        protected Ast.Expression rewrite(Ast.Expression expression) {
+            if (common == null || written || !matches(unwrap(expression), common))
+                return super.rewrite(expression);
+            count++;
+            if (temporary == null)
+                return expression;
+            Ast.Expression.Access access = access(temporary);
+            if (common instanceof Ast.Expression.Binary binary)
+                binary.getRange().ifPresent(access::setRange);
+            return access;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Binary ast) {
+            if (globals && (ast.getOperator().equals("&&") || ast.getOperator().equals("||")) && writesGlobals(ast))
+                written = true;
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            // the arguments are evaluated before the call
+            Ast result = super.visit(ast);
+            if (globals && ast.getFunction().getEffects().contains(Environment.Effect.WRITE))
+                written = true;
+            return result;
+        }
+
+        @Override
+        protected List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+            return nested ? super.rewrite(statements) : statements;
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.While ast) {
+            return nested ? super.visit(ast) : ast;
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Case ast) {
+            return nested ? super.visit(ast) : ast;
+        }
+
+    }
+
+}
@@ -0,0 +1,186 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Folds binary and group expressions whose operands are literals, and
+ * propagates the values of {@code LET} variables and {@code VAL} globals that
+ * are initialized with a constant and never reassigned. Elements of
+ * {@code LIST} globals at literal offsets are propagated too when the
+ * {@link ListAnalyzer} shows the list is never mutated.
+ *
+ * Folding follows the semantics of the {@link Interpreter}. Expressions that
+ * would fail at runtime (division by zero, negative exponents) or produce an
+ * Integer outside the range the {@link Analyzer} accepts for literals are left
+ * as they are, so both backends keep their current behavior for them. So is
+ * Decimal arithmetic and {@code ^}, which the {@link Generator} computes on
+ * doubles: a folded literal would print differently once generated.
+ */
+public final class ConstantFolder extends Rewriter {
+
+    private final Map<Environment.Variable, Ast.Expression.Literal> constants = new IdentityHashMap<>();
+    private final Map<Environment.Variable, Ast.Expression.PlcList> lists = new IdentityHashMap<>();
+    private Set<Environment.Variable> assigned = null;
+    private ListAnalyzer listAnalyzer = null;
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        assigned = assigned(ast);
+        listAnalyzer = new ListAnalyzer();
+        listAnalyzer.visit(ast);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Global ast) {
+        Ast.Global global = (Ast.Global) super.visit(ast);
+        if (!global.getMutable() && global.getValue().isPresent())
+            propagate(global.getVariable(), global.getValue().get());
+        // assigned() also holds lists with an element assigned directly
+        if (global.getValue().isPresent() && global.getValue().get() instanceof Ast.Expression.PlcList list
+                && listAnalyzer != null && !assigned.contains(global.getVariable()) && !listAnalyzer.isMutated(global.getVariable()))
+            lists.put(global.getVariable(), list);
+        return global;
+    }
+
+    @Override
+    public Ast visit(Ast.Function ast) {
+        if (assigned == null)
+            assigned = assigned(ast);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Declaration ast) {
+        Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) super.visit(ast);
+        if (declaration.getValue().isPresent())
+            propagate(declaration.getVariable(), declaration.getValue().get());
+        return declaration;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Group ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        if (expression instanceof Ast.Expression.Literal)
+            return expression;
+        if (expression == ast.getExpression())
+            return ast;
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        group.setType(ast.getType());
+        return group;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Binary ast) {
+        Ast.Expression left = rewrite(ast.getLeft());
+        if (left instanceof Ast.Expression.Literal literal && literal.getLiteral() instanceof Boolean value) {
+            // The right operand is never evaluated once these are decided.
+            if (ast.getOperator().equals("&&") && !value || ast.getOperator().equals("||") && value)
+                return literal(value);
+        }
+        Ast.Expression right = rewrite(ast.getRight());
+        if (left instanceof Ast.Expression.Literal l && right instanceof Ast.Expression.Literal r) {
+            Optional<Object> result = evaluate(ast.getOperator(), l.getLiteral(), r.getLiteral());
+            if (result.isPresent())
+                return literal(result.get());
+        }
+        if (left == ast.getLeft() && right == ast.getRight())
+            return ast;
+        return binary(ast.getOperator(), left, right, ast.getType());
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Access ast) {
+        if (ast.getOffset().isEmpty() && constants.containsKey(ast.getVariable()))
+            return literal(constants.get(ast.getVariable()).getLiteral());
+        Ast.Expression.Access access = (Ast.Expression.Access) super.visit(ast);
+        if (lists.containsKey(access.getVariable()) && access.getOffset().orElse(null) instanceof Ast.Expression.Literal offset
+                && offset.getLiteral() instanceof BigInteger index) {
+            // out of bounds offsets are left to fail at runtime
+            List<Ast.Expression> values = lists.get(access.getVariable()).getValues();
+            if (index.signum() >= 0 && index.compareTo(BigInteger.valueOf(values.size())) < 0
+                    && values.get(index.intValue()) instanceof Ast.Expression.Literal element && element.getLiteral() != null
+                    && element.getType().equals(access.getVariable().getType()))
+                return literal(element.getLiteral());
+        }
+        return access;
+    }
+
+    private void propagate(Environment.Variable variable, Ast.Expression value) {
+        if (value instanceof Ast.Expression.Literal literal
+                && literal.getLiteral() != null
+                && literal.getType().equals(variable.getType())
+                && (assigned == null || !assigned.contains(variable))) {
+            constants.put(variable, literal);
+        }
+    }
+
+    /**
+     * Evaluates a binary operator on two literal values, returning an empty
+     * result if the operation cannot be folded safely.
+     */
+    public static Optional<Object> evaluate(String operator, Object left, Object right) {
+        if (left == null || right == null)
+            return Optional.empty();
+        switch (operator) {
+            case "&&":
+                if (left instanceof Boolean l && right instanceof Boolean r)
+                    return Optional.of(l && r);
+                break;
+            case "||":
+                if (left instanceof Boolean l && right instanceof Boolean r)
+                    return Optional.of(l || r);
+                break;
+            case "<":
+            case ">":
+                if (left.getClass().equals(right.getClass()) && left instanceof Comparable) {
+                    @SuppressWarnings("unchecked")
+                    int compareResult = ((Comparable<Object>) left).compareTo(right);
+                    return Optional.of(operator.equals("<") ? compareResult < 0 : compareResult > 0);
+                }
+                break;
+            case "==":
+                if (left.getClass().equals(right.getClass()))
+                    return Optional.of(left.equals(right));
+                break;
+            case "!=":
+                if (left.getClass().equals(right.getClass()))
+                    return Optional.of(!left.equals(right));
+                break;
+            case "+":
+                if (left instanceof BigInteger l && right instanceof BigInteger r)
+                    return integer(l.add(r));
+                // Decimals print differently once generated as doubles, so
+                // only concatenations that read the same in Java are folded.
+                if ((left instanceof String || right instanceof String) && !(left instanceof BigDecimal) && !(right instanceof BigDecimal))
+                    return Optional.of(left.toString() + right.toString());
+                break;
+            case "-":
+                if (left instanceof BigInteger l && right instanceof BigInteger r)
+                    return integer(l.subtract(r));
+                break;
+            case "*":
+                if (left instanceof BigInteger l && right instanceof BigInteger r)
+                    return integer(l.multiply(r));
+                break;
+            case "/":
+                if (left instanceof BigInteger l && right instanceof BigInteger r && r.signum() != 0)
+                    return integer(l.divide(r));
+                break;
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Object> integer(BigInteger value) {
+        if (value.compareTo(BigInteger.valueOf(Integer.MIN_VALUE)) < 0 || value.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0)
+            return Optional.empty();
+        return Optional.of(value);
+    }
+
+}
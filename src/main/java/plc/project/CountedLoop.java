@@ -0,0 +1,108 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A {@code WHILE} loop counting a local Integer variable towards a bound by a
+ * fixed step, of the form {@code WHILE i < n DO ... i = i + 1; END} (or
+ * {@code >} with {@code -}). The step must be a positive literal, the bound a
+ * literal or a local variable, and neither variable may be assigned anywhere
+ * else in the body, so the loop can keep the counter in a primitive.
+ */
+public final class CountedLoop {
+
+    private final Environment.Variable variable;
+    private final int slot;
+    private final Ast.Expression bound;
+    private final long step;
+    private final boolean read;
+
+    private CountedLoop(Environment.Variable variable, int slot, Ast.Expression bound, long step, boolean read) {
+        this.variable = variable;
+        this.slot = slot;
+        this.bound = bound;
+        this.step = step;
+        this.read = read;
+    }
+
+    /**
+     * Recognizes a counted loop, once the {@link Analyzer} has resolved the
+     * variables in it to frame slots.
+     */
+    public static Optional<CountedLoop> of(Ast.Statement.While loop) {
+        List<Ast.Statement> statements = loop.getStatements();
+        if (!(loop.getCondition() instanceof Ast.Expression.Binary condition)
+                || !(condition.getOperator().equals("<") || condition.getOperator().equals(">"))
+                || !(condition.getLeft() instanceof Ast.Expression.Access counter) || !isLocal(counter)
+                || statements.isEmpty()
+                || !(statements.getLast() instanceof Ast.Statement.Assignment increment))
+            return Optional.empty();
+        Ast.Expression bound = condition.getRight();
+        if (!(bound instanceof Ast.Expression.Literal literal && literal.getLiteral() instanceof BigInteger
+                || bound instanceof Ast.Expression.Access access && isLocal(access) && access.getVariable() != counter.getVariable()))
+            return Optional.empty();
+
+        // i = i + c, adding when counting up and subtracting when counting down
+        String operator = condition.getOperator().equals("<") ? "+" : "-";
+        if (!(increment.getReceiver() instanceof Ast.Expression.Access receiver) || receiver.getOffset().isPresent()
+                || receiver.getVariable() != counter.getVariable()
+                || !(increment.getValue() instanceof Ast.Expression.Binary value) || !value.getOperator().equals(operator)
+                || !(value.getLeft() instanceof Ast.Expression.Access left) || left.getOffset().isPresent()
+                || left.getVariable() != counter.getVariable()
+                || !(value.getRight() instanceof Ast.Expression.Literal step) || !(step.getLiteral() instanceof BigInteger c)
+                || c.signum() <= 0 || c.bitLength() > 31)
+            return Optional.empty();
+
+        boolean read = false;
+        for (Ast.Statement statement : statements) {
+            if (Rewriter.assigned(statement).contains(counter.getVariable()) && statement != increment
+                    || bound instanceof Ast.Expression.Access access && Rewriter.assigned(statement).contains(access.getVariable()))
+                return Optional.empty();
+            read |= statement != increment && Rewriter.accessed(statement).contains(counter.getVariable());
+        }
+        return Optional.of(new CountedLoop(counter.getVariable(), counter.getSlot(), bound, operator.equals("+") ? c.longValue() : -c.longValue(), read));
+    }
+
+    private static boolean isLocal(Ast.Expression.Access access) {
+        return access.getOffset().isEmpty() && access.hasAddress() && access.getDepth() == Ast.Expression.Access.LOCAL
+                && access.getVariable().getType().equals(Environment.Type.INTEGER);
+    }
+
+    public Environment.Variable getVariable() {
+        return variable;
+    }
+
+    /**
+     * Returns the frame slot of the counter.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Returns the literal or local variable the counter is compared with,
+     * which keeps its value for the whole loop.
+     */
+    public Ast.Expression getBound() {
+        return bound;
+    }
+
+    /**
+     * Returns the amount added to the counter by each iteration, which is
+     * negative when counting down.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns true if the body reads the counter before the final increment,
+     * so its value must be kept in the frame during the loop.
+     */
+    public boolean isRead() {
+        return read;
+    }
+
+}
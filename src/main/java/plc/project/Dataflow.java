@@ -0,0 +1,122 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dataflow analysis over the blocks of an {@link Ir.Function}, solved by
+ * iterating until the facts at every block are stable. Subclasses give the
+ * direction, the lattice through {@link #initial} and {@link #join}, and the
+ * effect of a block through {@link #transfer}; the solver visits blocks in
+ * reverse postorder for forward analyses and in postorder for backward
+ * ones, so loops without nested loops usually need only two passes.
+ *
+ * @param <T> the facts computed at each block, which must implement equals
+ */
+public abstract class Dataflow<T> {
+
+    private final boolean forward;
+
+    protected Dataflow(boolean forward) {
+        this.forward = forward;
+    }
+
+    /**
+     * Returns the facts at the entry of the function for a forward analysis,
+     * or after each block ending in a return for a backward one.
+     */
+    protected abstract T boundary(Ir.Function function);
+
+    /**
+     * Returns the facts assumed at every other block before the first
+     * iteration, which must be the identity of {@link #join}.
+     */
+    protected abstract T initial(Ir.Function function);
+
+    protected abstract T join(T first, T second);
+
+    /**
+     * Returns the facts on the other side of the block from the given ones,
+     * which must not be modified.
+     */
+    protected abstract T transfer(Ir.Block block, T facts);
+
+    public final Result<T> solve(Ir.Function function) {
+        List<Ir.Block> order = reversePostorder(function);
+        if (!forward)
+            Collections.reverse(order);
+        Map<Ir.Block, T> before = new IdentityHashMap<>();
+        Map<Ir.Block, T> after = new IdentityHashMap<>();
+        for (Ir.Block block : order) {
+            (forward ? after : before).put(block, initial(function));
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ir.Block block : order) {
+                List<Ir.Block> sources = forward ? block.getPredecessors() : block.getSuccessors();
+                T facts = sources.isEmpty() || forward && block == function.getEntry() ? boundary(function) : null;
+                for (Ir.Block source : sources) {
+                    T incoming = (forward ? after : before).get(source);
+                    // sources that cannot be reached contribute nothing
+                    if (incoming != null)
+                        facts = facts == null ? incoming : join(facts, incoming);
+                }
+                if (facts == null)
+                    facts = initial(function);
+                (forward ? before : after).put(block, facts);
+                T result = transfer(block, facts);
+                if (!result.equals((forward ? after : before).put(block, result)))
+                    changed = true;
+            }
+        }
+        return new Result<>(before, after);
+    }
+
+    /**
+     * Returns the blocks reachable from the entry, each before its
+     * successors except along back edges.
+     */
+    public static List<Ir.Block> reversePostorder(Ir.Function function) {
+        List<Ir.Block> postorder = new ArrayList<>();
+        Set<Ir.Block> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        postorder(function.getEntry(), visited, postorder);
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    private static void postorder(Ir.Block block, Set<Ir.Block> visited, List<Ir.Block> postorder) {
+        if (!visited.add(block))
+            return;
+        block.getSuccessors().forEach(successor -> postorder(successor, visited, postorder));
+        postorder.add(block);
+    }
+
+    /**
+     * The facts before and after each block, in program order.
+     */
+    public static final class Result<T> {
+
+        private final Map<Ir.Block, T> before;
+        private final Map<Ir.Block, T> after;
+
+        private Result(Map<Ir.Block, T> before, Map<Ir.Block, T> after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        public T getBefore(Ir.Block block) {
+            return before.get(block);
+        }
+
+        public T getAfter(Ir.Block block) {
+            return after.get(block);
+        }
+
+    }
+
+}
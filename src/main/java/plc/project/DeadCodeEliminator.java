@@ -0,0 +1,120 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes code that can never run or whose result is never used: statements
+ * following a statement that always returns, {@code IF} branches and
+ * {@code SWITCH} cases ruled out by a literal condition, {@code WHILE} loops
+ * with a {@code FALSE} condition, cases repeating an earlier case value, and
+ * {@code LET} declarations that are never accessed and have a pure value.
+ *
+ * Conditions are only recognized once they are literals, so this pass is
+ * meant to run after the {@link ConstantFolder}, and after a
+ * {@link NilAnalyzer}, without which arithmetic on variables is never pure.
+ */
+public final class DeadCodeEliminator extends Rewriter {
+
+    private Set<Environment.Variable> accessed = null;
+
+    @Override
+    public Ast visit(Ast.Function ast) {
+        // Removing a declaration can leave others unused, so repeat until
+        // nothing else changes.
+        Ast.Function previous;
+        Ast.Function function = ast;
+        do {
+            previous = function;
+            accessed = accessed(function);
+            function = (Ast.Function) super.visit(function);
+        } while (function != previous);
+        accessed = null;
+        return function;
+    }
+
+    @Override
+    protected List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>();
+        for (Ast.Statement statement : statements) {
+            for (Ast.Statement live : eliminate(statement)) {
+                result.add(live);
+            }
+            if (!result.isEmpty() && terminates(result.getLast()))
+                break;
+        }
+        return same(result, statements) ? statements : result;
+    }
+
+    /**
+     * Returns the statements that replace the given one in its block.
+     */
+    private List<Ast.Statement> eliminate(Ast.Statement statement) {
+        switch (statement) {
+            case Ast.Statement.If ast when ast.getCondition() instanceof Ast.Expression.Literal literal:
+                return inline(ast, (Boolean) literal.getLiteral() ? ast.getThenStatements() : ast.getElseStatements());
+            case Ast.Statement.While ast when ast.getCondition() instanceof Ast.Expression.Literal literal && !(Boolean) literal.getLiteral():
+                return List.of();
+            case Ast.Statement.Switch ast:
+                return eliminate(ast);
+            case Ast.Statement.Declaration ast when accessed != null && !accessed.contains(ast.getVariable())
+                    && (ast.getValue().isEmpty() || isPure(ast.getValue().get())):
+                return List.of();
+            default:
+                return List.of((Ast.Statement) visit(statement));
+        }
+    }
+
+    private List<Ast.Statement> eliminate(Ast.Statement.Switch ast) {
+        Object condition = ast.getCondition() instanceof Ast.Expression.Literal literal ? literal.getLiteral() : null;
+        Ast.Statement.Case defaultCase = ast.getCases().getLast();
+        List<Object> values = new ArrayList<>();
+        List<Ast.Statement.Case> cases = new ArrayList<>();
+        for (Ast.Statement.Case currCase : ast.getCases()) {
+            if (currCase == defaultCase)
+                break;
+            if (!(currCase.getValue().get() instanceof Ast.Expression.Literal literal) || literal.getLiteral() == null) {
+                cases.add(currCase);
+                continue;
+            }
+            // an earlier case with the same value always matches first
+            if (values.contains(literal.getLiteral()))
+                continue;
+            values.add(literal.getLiteral());
+            if (condition == null) {
+                cases.add(currCase);
+            } else if (literal.getLiteral().equals(condition)) {
+                if (cases.isEmpty())
+                    return inline(ast, currCase.getStatements());
+                // cases after a guaranteed match are unreachable
+                cases.add(currCase);
+                break;
+            }
+        }
+        if (condition != null && cases.isEmpty())
+            return inline(ast, defaultCase.getStatements());
+        cases.add(defaultCase);
+        List<Ast.Statement.Case> rewritten = new ArrayList<>();
+        cases.forEach(currCase -> rewritten.add((Ast.Statement.Case) visit(currCase)));
+        if (same(rewritten, ast.getCases()))
+            return List.of(ast);
+        return List.of(switchStatement(ast, ast.getCondition(), rewritten));
+    }
+
+    /**
+     * Replaces a statement by the block it would always run. Blocks that
+     * declare variables keep their own scope so the names cannot clash with
+     * the enclosing block.
+     */
+    private List<Ast.Statement> inline(Ast.Statement statement, List<Ast.Statement> statements) {
+        List<Ast.Statement> block = rewrite(statements);
+        if (block.stream().noneMatch(declaration -> declaration instanceof Ast.Statement.Declaration))
+            return block;
+        if (statement instanceof Ast.Statement.If ast && (Boolean) ((Ast.Expression.Literal) ast.getCondition()).getLiteral()
+                && ast.getElseStatements().isEmpty() && same(block, ast.getThenStatements()))
+            return List.of(ast);
+        return List.of(new Ast.Statement.If(literal(true), block, new ArrayList<>()));
+    }
+
+}
@@ -2,9 +2,12 @@ package plc.project;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public final class Environment {
 
@@ -190,6 +193,21 @@ public final class Environment {
 
     }
 
+    /**
+     * Observable behavior a function call may have besides returning its
+     * result.
+     */
+    public enum Effect {
+        /** Reads a mutable global or a list element. */
+        READ,
+        /** Assigns a global or a list element. */
+        WRITE,
+        /** Performs input or output, such as {@code print}. */
+        IO,
+        /** May throw or never return, for example by dividing by zero, indexing out of bounds, looping or recursing. */
+        FAIL
+    }
+
     public static final class Function {
 
         private final String name;
@@ -197,6 +215,7 @@ public final class Environment {
         private final List<Type> parameterTypes;
         private final Type returnType;
         private final java.util.function.Function<List<PlcObject>, PlcObject> function;
+        private Set<Effect> effects = Collections.unmodifiableSet(EnumSet.allOf(Effect.class));
 
         public Function(String name, int arity, java.util.function.Function<List<PlcObject>, PlcObject> function) {
             this(name, name, new ArrayList<>(), Type.ANY, function);
@@ -229,6 +248,29 @@ public final class Environment {
             return returnType;
         }
 
+        /**
+         * Returns the effects a call may have. Functions the Analyzer has not
+         * summarized are assumed to have every effect.
+         */
+        public Set<Effect> getEffects() {
+            return effects;
+        }
+
+        public void setEffects(Set<Effect> effects) {
+            Set<Effect> copy = EnumSet.noneOf(Effect.class);
+            copy.addAll(effects);
+            this.effects = Collections.unmodifiableSet(copy);
+        }
+
+        /**
+         * Returns true if the result only depends on the arguments and calls
+         * change no state, so they may be memoized, reordered or run in
+         * parallel. Pure calls may still fail.
+         */
+        public boolean isPure() {
+            return !effects.contains(Effect.READ) && !effects.contains(Effect.WRITE) && !effects.contains(Effect.IO);
+        }
+
         // to maintain backwards compatibility, we include getArity
         public int getArity() {
             return parameterTypes.size();
@@ -255,6 +297,7 @@ public final class Environment {
                     ", arity=" + parameterTypes.size() +
                     ", parameterTypes=" + parameterTypes +
                     ", returnType=" + returnType +
+                    ", effects=" + effects +
                     ", function=" + function +
                     '}';
         }
@@ -0,0 +1,234 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Specializes functions for call sites passing literal arguments. The callee
+ * is cloned without the parameters given literals, which are instead declared
+ * with their values at the start of the clone, and the clone is folded by the
+ * {@link ConstantFolder} and {@link DeadCodeEliminator}. The call site then
+ * calls the clone, named after the original with a {@code $} suffix (which
+ * PLC identifiers cannot contain), and call sites passing the same literals
+ * share it.
+ *
+ * A clone is only kept if folding made it smaller than the original, and the
+ * clones of a source add at most a fixed number of nodes. Clones follow the
+ * function they were cloned from, and are ordinary functions to the
+ * {@link Interpreter} and {@link Generator}.
+ */
+public final class FunctionSpecializer extends Rewriter {
+
+    private final int maxSize;
+    private final int maxGrowth;
+
+    private final Map<String, Ast.Function> functions = new HashMap<>();
+    private final Map<String, Optional<Ast.Function>> clones = new HashMap<>();
+    private final Map<Ast.Function, List<Ast.Function>> cloned = new IdentityHashMap<>();
+    private final Set<String> names = new HashSet<>();
+    private int growth = 0;
+
+    /**
+     * Specializes functions of at most 128 nodes, adding at most 512 nodes
+     * to the source.
+     */
+    public FunctionSpecializer() {
+        this(128, 512);
+    }
+
+    /**
+     * @param maxSize the largest function specialized, as counted by {@link #size}
+     * @param maxGrowth the most nodes the clones may add to the source
+     */
+    public FunctionSpecializer(int maxSize, int maxGrowth) {
+        this.maxSize = maxSize;
+        this.maxGrowth = maxGrowth;
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        for (Ast.Function function : ast.getFunctions()) {
+            functions.put(key(function.getName(), function.getParameters().size()), function);
+            names.add(function.getName());
+        }
+        List<Ast.Function> rewritten = new ArrayList<>();
+        for (Ast.Function function : ast.getFunctions()) {
+            rewritten.add((Ast.Function) visit(function));
+        }
+        if (cloned.isEmpty())
+            return same(rewritten, ast.getFunctions()) ? ast : new Ast.Source(ast.getGlobals(), rewritten);
+        List<Ast.Function> result = new ArrayList<>();
+        for (int i = 0; i < rewritten.size(); i++) {
+            result.add(rewritten.get(i));
+            result.addAll(cloned.getOrDefault(ast.getFunctions().get(i), List.of()));
+        }
+        return new Ast.Source(ast.getGlobals(), result);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        Ast.Expression.Function call = (Ast.Expression.Function) super.visit(ast);
+        Ast.Function callee = functions.get(key(call.getName(), call.getArguments().size()));
+        if (callee == null || callee.getFrameSize() < 0 || size(callee) > maxSize)
+            return call;
+        StringBuilder key = new StringBuilder(key(call.getName(), call.getArguments().size()));
+        boolean[] constant = new boolean[call.getArguments().size()];
+        for (int i = 0; i < constant.length; i++) {
+            if (call.getArguments().get(i) instanceof Ast.Expression.Literal literal && literal.getLiteral() != null) {
+                constant[i] = true;
+                key.append(':').append(i).append('=').append(literal.getLiteral().getClass().getSimpleName()).append(' ').append(literal.getLiteral());
+            }
+        }
+        if (key.length() == key(call.getName(), call.getArguments().size()).length())
+            return call;
+        Optional<Ast.Function> clone = clones.get(key.toString());
+        if (clone == null) {
+            clone = specialize(callee, call.getArguments(), constant);
+            clones.put(key.toString(), clone);
+            if (clone.isPresent()) {
+                // calls within the clone may use it or other clones in turn
+                Ast.Function specialized = (Ast.Function) super.visit(clone.get());
+                clone = Optional.of(specialized);
+                clones.put(key.toString(), clone);
+                cloned.computeIfAbsent(callee, function -> new ArrayList<>()).add(specialized);
+            }
+        }
+        if (clone.isEmpty())
+            return call;
+        List<Ast.Expression> arguments = new ArrayList<>();
+        for (int i = 0; i < constant.length; i++) {
+            if (!constant[i])
+                arguments.add(call.getArguments().get(i));
+        }
+        Ast.Expression.Function specialized = new Ast.Expression.Function(clone.get().getName(), arguments);
+        specialized.setFunction(clone.get().getFunction());
+        return specialized;
+    }
+
+    /**
+     * Returns the callee specialized for the literal arguments, or empty if
+     * it is no smaller or would exceed the budget.
+     */
+    private Optional<Ast.Function> specialize(Ast.Function callee, List<Ast.Expression> arguments, boolean[] constant) {
+        String name = callee.getName() + "$1";
+        for (int i = 2; names.contains(name); i++)
+            name = callee.getName() + "$" + i;
+
+        // kept parameters take the first slots, followed by the declarations
+        // replacing the others
+        int[] slots = new int[constant.length];
+        List<String> parameters = new ArrayList<>();
+        List<String> parameterTypeNames = new ArrayList<>();
+        List<Environment.Type> parameterTypes = new ArrayList<>();
+        for (int i = 0; i < constant.length; i++) {
+            if (!constant[i]) {
+                slots[i] = parameters.size();
+                parameters.add(callee.getParameters().get(i));
+                parameterTypeNames.add(callee.getParameterTypeNames().get(i));
+                parameterTypes.add(callee.getFunction().getParameterTypes().get(i));
+            }
+        }
+        int next = parameters.size();
+        List<Ast.Statement> statements = new ArrayList<>();
+        Environment.Variable[] variables = new Environment.Variable[constant.length];
+        for (int i = 0; i < constant.length; i++) {
+            Environment.Type type = callee.getFunction().getParameterTypes().get(i);
+            variables[i] = new Environment.Variable(callee.getParameters().get(i), callee.getParameters().get(i), type, true, Environment.NIL);
+            if (constant[i]) {
+                slots[i] = next++;
+                Ast.Expression.Literal literal = (Ast.Expression.Literal) arguments.get(i);
+                Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(callee.getParameters().get(i),
+                        Optional.of(callee.getParameterTypeNames().get(i)), Optional.of(literal(literal.getLiteral())));
+                declaration.setVariable(variables[i]);
+                declaration.setSlot(slots[i]);
+                statements.add(declaration);
+            }
+        }
+        Copier copier = new Copier(slots, variables);
+        statements.addAll(copier.rewrite(callee.getStatements()));
+
+        Environment.Function function = new Environment.Function(name, name, parameterTypes, callee.getFunction().getReturnType(), args -> Environment.NIL);
+        function.setEffects(callee.getFunction().getEffects());
+        Ast.Function clone = new Ast.Function(name, parameters, parameterTypeNames, callee.getReturnTypeName(), statements);
+        clone.setFunction(function);
+        clone.setFrameSize(callee.getFrameSize());
+        clone = (Ast.Function) new ConstantFolder().visit(clone);
+        clone = (Ast.Function) new DeadCodeEliminator().visit(clone);
+
+        int size = size(clone);
+        if (size >= size(callee) || growth + size > maxGrowth)
+            return Optional.empty();
+        growth += size;
+        names.add(name);
+        return Optional.of(clone);
+    }
+
+    /**
+     * Copies a function body into a clone with its own variables and the
+     * clone's slots, copying every leaf so the two share no nodes.
+     */
+    private static final class Copier extends Rewriter {
+
+        private final int[] slots;
+        private final Environment.Variable[] parameters;
+        private final Map<Environment.Variable, Environment.Variable> variables = new IdentityHashMap<>();
+
+        private Copier(int[] slots, Environment.Variable[] parameters) {
+            this.slots = slots;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Declaration ast) {
+            Environment.Variable variable = variable(ast.getVariable());
+            Ast.Statement.Declaration declaration = declaration(ast, rewrite(ast.getValue()));
+            declaration.setVariable(variable);
+            return declaration;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Literal ast) {
+            Ast.Expression.Literal literal = new Ast.Expression.Literal(ast.getLiteral());
+            literal.setType(ast.getType());
+            return literal;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            Ast.Expression.Access access = access(ast, rewrite(ast.getOffset()));
+            if (ast.getDepth() == Ast.Expression.Access.LOCAL && ast.getSlot() < slots.length) {
+                access.setVariable(parameters[ast.getSlot()]);
+                access.setAddress(Ast.Expression.Access.LOCAL, slots[ast.getSlot()]);
+            } else if (ast.getDepth() == Ast.Expression.Access.LOCAL) {
+                access.setVariable(variable(ast.getVariable()));
+            }
+            return access;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            List<Ast.Expression> arguments = new ArrayList<>();
+            ast.getArguments().forEach(argument -> arguments.add(rewrite(argument)));
+            Ast.Expression.Function function = new Ast.Expression.Function(ast.getName(), arguments);
+            function.setFunction(ast.getFunction());
+            return function;
+        }
+
+        private Environment.Variable variable(Environment.Variable variable) {
+            return variables.computeIfAbsent(variable, original -> new Environment.Variable(original.getName(),
+                    original.getJvmName(), original.getType(), original.getMutable(), Environment.NIL));
+        }
+
+    }
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+}
@@ -5,9 +5,17 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public final class Generator implements Ast.Visitor<Void> {
 
+    // Overflow-checked forms of the int operators
+    private static final Map<String, String> EXACT = Map.of(
+            "+", "Math.addExact",
+            "-", "Math.subtractExact",
+            "*", "Math.multiplyExact"
+    );
+
     private final PrintWriter writer;
     private int indent = 0;
 
@@ -208,6 +216,9 @@ public final class Generator implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Statement.Switch ast) {
+        // With a case table the labels are distinct constants, which javac
+        // compiles into a tableswitch, or a lookupswitch on hash codes for
+        // Strings; the Analyzer does not build tables for other switches.
         print("switch (");
         print(ast.getCondition());
         print(") {");
@@ -305,6 +316,12 @@ public final class Generator implements Ast.Visitor<Void> {
             printList(Arrays.asList(ast.getLeft(), ast.getRight()));
             print(")");
         }
+        else if (ast.getRange().isPresent() && !ast.getRange().get().isInt() && EXACT.containsKey(ast.getOperator())){
+            // the RangeAnalyzer could not prove this fits in an int
+            print(EXACT.get(ast.getOperator()), "(");
+            printList(Arrays.asList(ast.getLeft(), ast.getRight()));
+            print(")");
+        }
         else{
             print(ast.getLeft());
             print(" ");
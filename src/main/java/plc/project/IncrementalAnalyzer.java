@@ -0,0 +1,141 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Analyzes successive versions of a source, such as the same file after each
+ * edit. Only globals and functions whose text changed, or that use a global or
+ * function signature that changed, are checked again; the others are reused
+ * from the previous version along with their annotations.
+ *
+ * Each source passed to {@link #analyze} must be newly parsed. If it is
+ * invalid, the exception of the {@link Analyzer} is thrown and the next
+ * version is compared with the last valid one.
+ */
+public final class IncrementalAnalyzer {
+
+    private record Declaration(Ast ast, String fingerprint, String signature, Set<String> dependencies, Set<Environment.Effect> effects) {}
+
+    private final Scope parent;
+    private Map<String, Declaration> declarations = new HashMap<>();
+    private final List<String> analyzed = new ArrayList<>();
+
+    public IncrementalAnalyzer(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the globals (by name) and functions (by name/arity) checked by
+     * the last call to {@link #analyze}, in source order.
+     */
+    public List<String> getAnalyzed() {
+        return analyzed;
+    }
+
+    /**
+     * Analyzes the source, returning a source holding the previous analyzed
+     * node for each declaration that could be reused and the given node,
+     * now analyzed, for the others.
+     */
+    public Ast.Source analyze(Ast.Source source) {
+        Map<String, String> signatures = new HashMap<>();
+        for (int i = 0; i < source.getGlobals().size(); i++) {
+            Ast.Global global = source.getGlobals().get(i);
+            // the slot is part of the signature, since accesses store it
+            signatures.put(global.getName(), global.getTypeName() + " " + global.getMutable() + " " + i);
+        }
+        for (Ast.Function function : source.getFunctions()) {
+            signatures.put(key(function), function.getParameterTypeNames() + " " + function.getReturnTypeName());
+        }
+        Set<String> changed = new HashSet<>();
+        signatures.forEach((key, signature) -> {
+            if (!declarations.containsKey(key) || !declarations.get(key).signature().equals(signature))
+                changed.add(key);
+        });
+        declarations.keySet().stream().filter(key -> !signatures.containsKey(key)).forEach(changed::add);
+
+        Map<String, Environment.Variable> variables = new HashMap<>();
+        Map<String, Environment.Function> functions = new HashMap<>();
+        declarations.forEach((key, declaration) -> {
+            if (declaration.ast() instanceof Ast.Global global)
+                variables.put(key, global.getVariable());
+            else
+                functions.put(key, ((Ast.Function) declaration.ast()).getFunction());
+        });
+        Analyzer analyzer = new Analyzer(parent, variables, functions);
+        Map<String, Declaration> current = new HashMap<>();
+        Set<String> defined = new HashSet<>();
+        List<String> checked = new ArrayList<>();
+
+        List<Ast.Global> globals = new ArrayList<>();
+        for (Ast.Global global : source.getGlobals()) {
+            String key = global.getName();
+            String fingerprint = global.toString();
+            Declaration previous = reusable(key, fingerprint, changed, defined);
+            if (previous != null) {
+                analyzer.reuse((Ast.Global) previous.ast());
+                globals.add((Ast.Global) previous.ast());
+                current.put(key, previous);
+            } else {
+                checked.add(key);
+                analyzer.visit(global);
+                globals.add(global);
+                current.put(key, new Declaration(global, fingerprint, signatures.get(key), analyzer.getDependencies(global), Set.of()));
+            }
+            defined.add(key);
+        }
+        List<Ast.Function> functionList = new ArrayList<>();
+        for (Ast.Function function : source.getFunctions()) {
+            String key = key(function);
+            String fingerprint = function.toString();
+            // functions may call themselves
+            defined.add(key);
+            Declaration previous = reusable(key, fingerprint, changed, defined);
+            if (previous != null) {
+                Ast.Function reused = (Ast.Function) previous.ast();
+                analyzer.reuse(reused, previous.effects(), previous.dependencies());
+                functionList.add(reused);
+                current.put(key, previous);
+            } else {
+                checked.add(key);
+                analyzer.visit(function);
+                functionList.add(function);
+                Set<Environment.Effect> effects = EnumSet.copyOf(analyzer.getBodyEffects(function.getFunction()));
+                current.put(key, new Declaration(function, fingerprint, signatures.get(key), analyzer.getDependencies(function), effects));
+            }
+        }
+        analyzer.finish();
+
+        declarations = current;
+        analyzed.clear();
+        analyzed.addAll(checked);
+        return new Ast.Source(globals, functionList);
+    }
+
+    /**
+     * Returns the previous declaration if it can be reused: its text is the
+     * same and every global and function it used is still defined before it
+     * with the same signature.
+     */
+    private Declaration reusable(String key, String fingerprint, Set<String> changed, Set<String> defined) {
+        Declaration previous = declarations.get(key);
+        if (previous == null || !previous.fingerprint().equals(fingerprint) || changed.contains(key))
+            return null;
+        for (String dependency : previous.dependencies()) {
+            if (changed.contains(dependency) || !defined.contains(dependency))
+                return null;
+        }
+        return previous;
+    }
+
+    private static String key(Ast.Function function) {
+        return function.getName() + "/" + function.getParameters().size();
+    }
+
+}
@@ -0,0 +1,231 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Inlines calls to small, non-recursive functions whose body is a sequence
+ * of {@code LET} declarations followed by a {@code RETURN}, all with pure
+ * values. The call is replaced by the returned expression; arguments other
+ * than literals and variables, and the callee's own declarations, become
+ * {@code LET} declarations placed before the calling statement under fresh
+ * names (containing {@code $}, which PLC identifiers cannot) and, in resolved
+ * functions, fresh frame slots.
+ *
+ * Since everything inlined is pure, evaluating it before the calling
+ * statement cannot be observed, unless it reads globals that something
+ * evaluated earlier in the statement may write; such calls are left alone,
+ * as are calls in {@code WHILE} conditions, which are evaluated on every
+ * iteration.
+ */
+public final class Inliner extends Rewriter {
+
+    private final int maxSize;
+    private final int maxGrowth;
+
+    private final Map<String, Ast.Function> candidates = new HashMap<>();
+    private List<Ast.Statement> hoisted = null;
+    // whether the current statement may have written globals so far
+    private boolean written = false;
+    private int growth;
+
+    /**
+     * Inlines functions of at most 24 nodes, adding at most 256 nodes to
+     * each caller.
+     */
+    public Inliner() {
+        this(24, 256);
+    }
+
+    /**
+     * @param maxSize the largest callee body, as counted by {@link #size}
+     * @param maxGrowth the most nodes inlining may add to a single caller
+     */
+    public Inliner(int maxSize, int maxGrowth) {
+        this.maxSize = maxSize;
+        this.maxGrowth = maxGrowth;
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        Map<String, Set<String>> calls = new HashMap<>();
+        for (Ast.Function function : ast.getFunctions()) {
+            calls.put(key(function.getName(), function.getParameters().size()), calls(function));
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            String key = key(function.getName(), function.getParameters().size());
+            if (inlinable(function) && !reaches(calls, key, key, new HashSet<>()))
+                candidates.put(key, function);
+        }
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Function ast) {
+        growth = 0;
+        return super.visit(ast);
+    }
+
+    @Override
+    protected List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        List<Ast.Statement> outer = hoisted;
+        boolean outerWritten = written;
+        List<Ast.Statement> result = new ArrayList<>();
+        for (Ast.Statement statement : statements) {
+            hoisted = new ArrayList<>();
+            written = false;
+            Ast.Statement rewritten = (Ast.Statement) visit(statement);
+            // a pure call whose value is discarded does nothing
+            if (rewritten instanceof Ast.Statement.Expression expression
+                    && !(expression.getExpression() instanceof Ast.Expression.Function))
+                continue;
+            result.addAll(hoisted);
+            result.add(rewritten);
+        }
+        hoisted = outer;
+        written = outerWritten;
+        return same(result, statements) ? statements : result;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.While ast) {
+        List<Ast.Statement> outer = hoisted;
+        hoisted = null;
+        Ast.Expression condition = rewrite(ast.getCondition());
+        hoisted = outer;
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (condition == ast.getCondition() && same(statements, ast.getStatements()))
+            return ast;
+        return whileStatement(condition, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Binary ast) {
+        // the Interpreter evaluates the left operand of && and || again after the right one
+        if ((ast.getOperator().equals("&&") || ast.getOperator().equals("||")) && writesGlobals(ast))
+            written = true;
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        Ast.Expression.Function call = (Ast.Expression.Function) super.visit(ast);
+        if (call.getFunction().getEffects().contains(Environment.Effect.WRITE))
+            written = true;
+        Ast.Function callee = candidates.get(key(call.getName(), call.getArguments().size()));
+        if (callee == null || hoisted == null || !call.getArguments().stream().allMatch(Rewriter::isPure))
+            return call;
+        int size = size(callee);
+        if (growth + size > maxGrowth)
+            return call;
+        String prefix = fresh(callee.getName());
+        List<Ast.Statement> declarations = new ArrayList<>();
+
+        Ast.Expression[] bindings = new Ast.Expression[callee.getFrameSize()];
+        for (int i = 0; i < call.getArguments().size(); i++) {
+            Ast.Expression argument = call.getArguments().get(i);
+            if (argument instanceof Ast.Expression.Literal || argument instanceof Ast.Expression.Access access && access.getOffset().isEmpty())
+                bindings[i] = argument;
+            else
+                bindings[i] = bind(declarations, prefix + "$" + callee.getParameters().get(i), callee.getFunction().getParameterTypes().get(i), argument);
+        }
+        // copies every leaf, so the callee and its call sites share no nodes
+        Rewriter substitution = new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Literal ast) {
+                return copy(ast);
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (ast.getDepth() == Ast.Expression.Access.LOCAL)
+                    return copy(bindings[ast.getSlot()]);
+                return access(ast, rewrite(ast.getOffset()));
+            }
+        };
+        for (Ast.Statement statement : callee.getStatements()) {
+            if (statement instanceof Ast.Statement.Declaration declaration) {
+                Ast.Expression value = (Ast.Expression) substitution.visit(declaration.getValue().get());
+                bindings[declaration.getSlot()] = bind(declarations, prefix + "$" + declaration.getName(), declaration.getVariable().getType(), value);
+            }
+        }
+        Ast.Statement.Return ret = (Ast.Statement.Return) callee.getStatements().getLast();
+        Ast.Expression result = (Ast.Expression) substitution.visit(ret.getValue());
+        // the declarations are evaluated before the statement, so before anything it evaluated earlier
+        if (written && declarations.stream().anyMatch(Rewriter::readsGlobals))
+            return call;
+        growth += size;
+        hoisted.addAll(declarations);
+        if (result instanceof Ast.Expression.Literal || result instanceof Ast.Expression.Access || result instanceof Ast.Expression.Group)
+            return result;
+        // keeps the precedence of the call when generated
+        Ast.Expression.Group group = new Ast.Expression.Group(result);
+        group.setType(result.getType());
+        return group;
+    }
+
+    /**
+     * Declares a fresh variable holding the given value, to be placed before
+     * the current statement, returning an access to it.
+     */
+    private Ast.Expression.Access bind(List<Ast.Statement> declarations, String name, Environment.Type type, Ast.Expression value) {
+        Ast.Statement.Declaration declaration = temporary(name, type, value);
+        declarations.add(declaration);
+        return access(declaration);
+    }
+
+    private boolean inlinable(Ast.Function function) {
+        List<Ast.Statement> statements = function.getStatements();
+        if (function.getFrameSize() < 0 || statements.isEmpty() || size(function) > maxSize
+                || !(statements.getLast() instanceof Ast.Statement.Return ret) || !isPure(ret.getValue()))
+            return false;
+        for (Ast.Statement statement : statements.subList(0, statements.size() - 1)) {
+            if (!(statement instanceof Ast.Statement.Declaration declaration)
+                    || declaration.getValue().isEmpty() || !isPure(declaration.getValue().get()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the functions called anywhere within the given function.
+     */
+    private static Set<String> calls(Ast.Function function) {
+        Set<String> calls = new HashSet<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Function ast) {
+                calls.add(key(ast.getName(), ast.getArguments().size()));
+                return super.visit(ast);
+            }
+        }.visit(function);
+        return calls;
+    }
+
+    private static boolean reaches(Map<String, Set<String>> calls, String from, String to, Set<String> visited) {
+        for (String callee : calls.getOrDefault(from, Set.of())) {
+            if (callee.equals(to) || visited.add(callee) && reaches(calls, callee, to, visited))
+                return true;
+        }
+        return false;
+    }
+
+    private static Ast.Expression copy(Ast.Expression expression) {
+        if (expression instanceof Ast.Expression.Literal literal) {
+            Ast.Expression.Literal copy = new Ast.Expression.Literal(literal.getLiteral());
+            copy.setType(literal.getType());
+            return copy;
+        }
+        return access((Ast.Expression.Access) expression, Optional.empty());
+    }
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+}
@@ -6,13 +6,27 @@ import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
 
+    // Array-indexed storage for variables resolved by the Analyzer; the frame
+    // belongs to the function currently executing (null outside of one).
+    private Environment.PlcObject[] frame = null;
+    private final List<Environment.Variable> globals = new ArrayList<>();
+
+    // Invocations and loop iterations of the function currently executing,
+    // which is compiled to JVM bytecode once they reach the threshold.
+    private Profile profile = null;
+    private long threshold = 1000;
+    private final List<String> compiled = new ArrayList<>();
+    private final List<String> compiledLoops = new ArrayList<>();
 
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
@@ -48,6 +62,32 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return scope;
     }   
 
+    /**
+     * Sets the number of invocations and loop iterations after which an
+     * analyzed function is compiled by the {@link JitCompiler}, which is also
+     * the number of iterations after which a loop still running in the
+     * Interpreter is compiled and replaced on the stack. {@link Long#MAX_VALUE}
+     * leaves everything interpreted.
+     */
+    public void setJitThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the names of the functions compiled so far, in order.
+     */
+    public List<String> getCompiledFunctions() {
+        return compiled;
+    }
+
+    /**
+     * Returns the names of the functions each loop compiled so far is in,
+     * in order.
+     */
+    public List<String> getCompiledLoops() {
+        return compiledLoops;
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Source ast) {
         ast.getGlobals().forEach(this::visit);
@@ -63,6 +103,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         } else {
             scope.defineVariable(ast.getName(), ast.getMutable(), Environment.NIL);
         }
+        if (ast.getSlot() >= 0) {
+            while (globals.size() <= ast.getSlot())
+                globals.add(null);
+            globals.set(ast.getSlot(), scope.lookupVariable(ast.getName()));
+        }
         return Environment.NIL;
     }
 
@@ -75,12 +120,28 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Function ast) {
         Scope functionScope = new Scope(scope);
+        Profile functionProfile = new Profile(ast, functionScope);
         scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
+            if (functionProfile.code == null && !functionProfile.failed && ++functionProfile.count >= threshold)
+                compile(ast, functionScope, functionProfile);
+            if (functionProfile.code != null)
+                return functionProfile.code.apply(args);
+            Environment.PlcObject[] callerFrame = frame;
+            Profile callerProfile = profile;
             try{
                 scope = functionScope;
-                List<String> parameter = ast.getParameters();
-                for(int i = 0; i <ast.getParameters().size(); i++){
-                    scope.defineVariable(parameter.get(i), true, Environment.create(args.get(i).getValue()));
+                profile = functionProfile;
+                if (ast.getFrameSize() >= 0) {
+                    frame = new Environment.PlcObject[ast.getFrameSize()];
+                    for (int i = 0; i < args.size(); i++) {
+                        frame[i] = args.get(i);
+                    }
+                } else {
+                    frame = null;
+                    List<String> parameter = ast.getParameters();
+                    for (int i = 0; i < ast.getParameters().size(); i++) {
+                        scope.defineVariable(parameter.get(i), true, Environment.create(args.get(i).getValue()));
+                    }
                 }
                 ast.getStatements().forEach(this::visit);
             }
@@ -90,6 +151,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             }
             finally {
                 scope = functionScope.getParent();
+                frame = callerFrame;
+                profile = callerProfile;
             }
             return Environment.NIL;
         });
@@ -107,6 +170,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Declaration ast) {
+        if (ast.getSlot() >= 0 && frame != null) {
+            frame[ast.getSlot()] = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
+            return Environment.NIL;
+        }
         if(ast.getValue().isPresent()){
             scope.defineVariable(ast.getName(), true, visit(ast.getValue().get()));
         } else {
@@ -117,23 +184,29 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Assignment ast) {
-        if (!(ast.getReceiver() instanceof Ast.Expression.Access))
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access receiver))
             throw new RuntimeException("Expected Access Type");
-        if (!scope.lookupVariable(((Ast.Expression.Access) ast.getReceiver()).getName()).getMutable())
+        boolean local = receiver.hasAddress() && receiver.getDepth() == Ast.Expression.Access.LOCAL;
+        Environment.Variable variable = local ? null : lookupVariable(receiver);
+        if (!local && !variable.getMutable())
             throw new RuntimeException("Modification of Immutable Type");
 
-        if (((Ast.Expression.Access) ast.getReceiver()).getOffset().isPresent()){
-            Environment.PlcObject receiver = visit(((Ast.Expression.Access) ast.getReceiver()).getOffset().get());
-            if(!(receiver.getValue() instanceof BigInteger offset))
+        if (receiver.getOffset().isPresent() && receiver.isInBounds()) {
+            int offset = ((BigInteger) visit(receiver.getOffset().get()).getValue()).intValue();
+            list(local ? frame[receiver.getSlot()] : variable.getValue()).set(offset, visit(ast.getValue()).getValue());
+        } else if (receiver.getOffset().isPresent()){
+            Environment.PlcObject offsetValue = visit(receiver.getOffset().get());
+            if(!(offsetValue.getValue() instanceof BigInteger offset))
                 throw new RuntimeException("Expected BigInteger type for offset");
 
-            Environment.Variable variable = scope.lookupVariable(((Ast.Expression.Access) ast.getReceiver()).getName());
             // Warning here says unchecked cast, just ignore it :skull_emoji:
             @SuppressWarnings("unchecked")
-            List<Object> list = requireType(List.class, variable.getValue());
+            List<Object> list = requireType(List.class, local ? frame[receiver.getSlot()] : variable.getValue());
             list.set(offset.intValue(), visit(ast.getValue()).getValue());
+        } else if (local) {
+            frame[receiver.getSlot()] = visit(ast.getValue());
         } else{
-            scope.lookupVariable(((Ast.Expression.Access) ast.getReceiver()).getName()).setValue(visit(ast.getValue()));
+            variable.setValue(visit(ast.getValue()));
         }
 
         return Environment.NIL;
@@ -143,22 +216,28 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.If ast) {
 
         try {
-            scope = new Scope(scope);
+            scope = enterBlock();
             if (requireType(Boolean.class, visit(ast.getCondition()))) {
                 ast.getThenStatements().forEach(this::visit);
             } else {
                 ast.getElseStatements().forEach(this::visit);
             }
         } finally {
-            scope = scope.getParent();
+            scope = exitBlock();
         }
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Switch ast) {
+        if (ast.getTable().isPresent()) {
+            // the case values are constants, so only the condition needs evaluating
+            Integer index = ast.getTable().get().get(visit(ast.getCondition()).getValue());
+            visit(ast.getCases().get(index != null ? index : ast.getCases().size() - 1));
+            return Environment.NIL;
+        }
         try {
-            scope = new Scope(scope);
+            scope = enterBlock();
             Environment.PlcObject condition = visit(ast.getCondition());
 
             int size = 0;
@@ -173,7 +252,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 size++;
             }
         } finally {
-            scope = scope.getParent();
+            scope = exitBlock();
         }
         return Environment.NIL;
     }
@@ -182,25 +261,34 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.Case ast) {
 
         try{
-            scope = new Scope(scope);
+            scope = enterBlock();
             ast.getStatements().forEach(this::visit);
         }
         finally {
-            scope = scope.getParent();
+            scope = exitBlock();
         }
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.While ast) {
+        Loop loop = frame != null && profile != null ? profile.loops.computeIfAbsent(ast, key -> new Loop()) : null;
+        if (loop != null && loop.code != null)
+            return replace(loop);
+        if (ast.getCounter().isPresent() && frame != null && counted(ast, ast.getCounter().get(), loop))
+            return Environment.NIL;
 
         while(requireType(Boolean.class, visit(ast.getCondition()))){
+            if (profile != null)
+                profile.count++;
             try {
-                scope = new Scope(scope);
+                scope = enterBlock();
                 ast.getStatements().forEach(this::visit);
             } finally {
-                scope = scope.getParent();
+                scope = exitBlock();
             }
+            if (loop != null && backEdge(ast, loop))
+                return replace(loop);
         }
         return Environment.NIL;
     }
@@ -224,6 +312,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Binary ast) {
+        if (ast.getOperator().equals("+") && ast.getLeft() instanceof Ast.Expression.Binary left && left.getOperator().equals("+"))
+            return addChain(ast);
         Environment.PlcObject LHS = visit(ast.getLeft());
         Boolean leftHand;
 
@@ -263,12 +353,25 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 catch (RuntimeException e){
                     return Environment.create(leftHand);
                 }
+        }
+
+        return node(ast).execute(LHS, RHS);
+    }
+
+    /**
+     * Applies an operator other than the short-circuiting {@code &&} and
+     * {@code ||} to evaluated operands. The expression is only consulted for
+     * annotations, so it may be null for operations that are not part of an
+     * Ast, such as those of an {@link Ir}.
+     */
+    static Environment.PlcObject evaluate(Ast.Expression.Binary ast, String operator, Environment.PlcObject LHS, Environment.PlcObject RHS) {
+        switch(operator){
             case "<":
                 if(RHS.getValue() instanceof Comparable && LHS.getValue() instanceof Comparable){
                     if(LHS.getValue().getClass().equals(RHS.getValue().getClass())){
                         if(LHS.getValue() instanceof BigInteger){
                             int compareResult = requireType(BigInteger.class, LHS).compareTo(requireType(BigInteger.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                     return Environment.create(Boolean.TRUE);
                                 case 0:
@@ -277,7 +380,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         }else if(LHS.getValue() instanceof BigDecimal){
                             int compareResult = requireType(BigDecimal.class, LHS).compareTo(requireType(BigDecimal.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                     return Environment.create(Boolean.TRUE);
                                 case 0:
@@ -286,7 +389,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         } else if(LHS.getValue() instanceof Boolean){
                             int compareResult = requireType(Boolean.class, LHS).compareTo(requireType(Boolean.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                     return Environment.create(Boolean.TRUE);
                                 case 0:
@@ -295,7 +398,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         } else if(LHS.getValue() instanceof Character){
                             int compareResult = requireType(Character.class, LHS).compareTo(requireType(Character.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                     return Environment.create(Boolean.TRUE);
                                 case 0:
@@ -305,7 +408,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                         }
                         else if(LHS.getValue() instanceof String){
                             int compareResult = requireType(String.class, LHS).compareTo(requireType(String.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                     return Environment.create(Boolean.TRUE);
                                 case 0:
@@ -321,7 +424,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     if(LHS.getValue().getClass().equals(RHS.getValue().getClass())){
                         if(LHS.getValue() instanceof BigInteger){
                             int compareResult = requireType(BigInteger.class, LHS).compareTo(requireType(BigInteger.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                 case 0:
                                     return Environment.create(Boolean.FALSE);
@@ -330,7 +433,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         }else if(LHS.getValue() instanceof BigDecimal){
                             int compareResult = requireType(BigDecimal.class, LHS).compareTo(requireType(BigDecimal.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                 case 0:
                                     return Environment.create(Boolean.FALSE);
@@ -339,7 +442,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         }else if(LHS.getValue() instanceof Boolean){
                             int compareResult = requireType(Boolean.class, LHS).compareTo(requireType(Boolean.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                 case 0:
                                     return Environment.create(Boolean.FALSE);
@@ -348,7 +451,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         }else if(LHS.getValue() instanceof Character){
                             int compareResult = requireType(Character.class, LHS).compareTo(requireType(Character.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                 case 0:
                                     return Environment.create(Boolean.FALSE);
@@ -357,7 +460,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                             }
                         }else if(LHS.getValue() instanceof String){
                             int compareResult = requireType(String.class, LHS).compareTo(requireType(String.class, RHS));
-                            switch (compareResult){
+                            switch (Integer.signum(compareResult)){
                                 case -1:
                                 case 0:
                                     return Environment.create(Boolean.FALSE);
@@ -379,25 +482,14 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 }
                 break;
             case "+":
-                if (LHS.getValue() instanceof BigDecimal && RHS.getValue() instanceof BigDecimal){
-                    return Environment.create(((BigDecimal) LHS.getValue()).add((BigDecimal) RHS.getValue()));
-                }
-                if (LHS.getValue() instanceof BigInteger && RHS.getValue() instanceof BigInteger){
-                    return Environment.create(((BigInteger) LHS.getValue()).add((BigInteger) RHS.getValue()));
-                }
-                if (LHS.getValue() instanceof String || RHS.getValue() instanceof String){
-                    return Environment.create(LHS.getValue().toString() + RHS.getValue().toString());
-                }
-                if (LHS.getValue().toString().equals("nil") || RHS.getValue().toString().equals("nil"))
-                    return Environment.create(LHS.toString().concat(RHS.toString()));
-                System.out.println(LHS.getValue().getClass());
-                System.out.println(RHS.getValue().getClass());
-                throw new RuntimeException("LHS and RHS must match type or one must be a string");
+                return add(ast, LHS, RHS);
             case "-":
                 if (LHS.getValue() instanceof BigDecimal && RHS.getValue() instanceof BigDecimal){
                     return Environment.create(((BigDecimal) LHS.getValue()).subtract((BigDecimal) RHS.getValue()));
                 }
                 if (LHS.getValue() instanceof BigInteger && RHS.getValue() instanceof BigInteger){
+                    if (isLong(ast, LHS, RHS))
+                        return Environment.create(BigInteger.valueOf(((BigInteger) LHS.getValue()).longValue() - ((BigInteger) RHS.getValue()).longValue()));
                     return Environment.create(((BigInteger) LHS.getValue()).subtract((BigInteger) RHS.getValue()));
                 }
                 throw new RuntimeException("LHS and RHS must match type");
@@ -406,6 +498,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     return Environment.create(((BigDecimal) LHS.getValue()).multiply((BigDecimal) RHS.getValue()));
                 }
                 if (LHS.getValue() instanceof BigInteger && RHS.getValue() instanceof BigInteger){
+                    if (isLong(ast, LHS, RHS))
+                        return Environment.create(BigInteger.valueOf(((BigInteger) LHS.getValue()).longValue() * ((BigInteger) RHS.getValue()).longValue()));
                     return Environment.create(((BigInteger) LHS.getValue()).multiply((BigInteger) RHS.getValue()));
                 }
                 throw new RuntimeException("LHS and RHS must match type");
@@ -426,9 +520,24 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 if (!(LHS.getValue() instanceof BigInteger) || !(RHS.getValue() instanceof BigInteger))
                     throw new RuntimeException("Exponentiation on invalid type");
 
+                if (isLong(ast, LHS, RHS)) {
+                    // squares and multiplies, ignoring the overflow of squares
+                    // past the last one used
+                    long base = ((BigInteger) LHS.getValue()).longValue();
+                    long power = 1;
+                    for (long exponent = ((BigInteger) RHS.getValue()).longValue(); exponent > 0; exponent >>= 1) {
+                        if ((exponent & 1) != 0)
+                            power *= base;
+                        base *= base;
+                    }
+                    return Environment.create(BigInteger.valueOf(power));
+                }
                 BigInteger res = ((BigInteger) LHS.getValue()).pow(((BigInteger) RHS.getValue()).intValue());
 
                 return  Environment.create(res);
+            case ">>":
+                // only produced by the StrengthReducer, for non-negative Integers
+                return Environment.create(requireType(BigInteger.class, LHS).shiftRight(requireType(BigInteger.class, RHS).intValue()));
         }
 
         return Environment.NIL;
@@ -438,17 +547,18 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Expression.Access ast) {
         // Case of direct access to variable
         if (ast.getOffset().isEmpty())
-            return scope.lookupVariable(ast.getName()).getValue();
+            return load(ast);
+
+        // The RangeAnalyzer proved the offset is an Integer within bounds
+        if (ast.isInBounds())
+            return Environment.create(list(load(ast)).get(((BigInteger) visit(ast.getOffset().get()).getValue()).intValue()));
 
         // Offset is of incorrect type
         if (!(visit(ast.getOffset().get()).getValue() instanceof BigInteger offset))
             throw new RuntimeException("Expected BigDecimal type for offset access");
 
-        // Search for list variable in scope or parent scopes
-        Environment.Variable variable = scope.lookupVariable(ast.getName());
-
         @SuppressWarnings("unchecked")
-        List<Ast.Expression> list = requireType(List.class, variable.getValue());
+        List<Ast.Expression> list = requireType(List.class, load(ast));
 
         // Offset value is out of bounds
         if (offset.intValue() < 0 || offset.intValue() >= list.size())
@@ -487,10 +597,208 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         // throw new UnsupportedOperationException(); //TODO
     }
 
+    /**
+     * Evaluates an addition, which concatenates if either operand is a
+     * String.
+     */
+    private static Environment.PlcObject add(Ast.Expression.Binary ast, Environment.PlcObject LHS, Environment.PlcObject RHS) {
+        if (LHS.getValue() instanceof BigDecimal && RHS.getValue() instanceof BigDecimal){
+            return Environment.create(((BigDecimal) LHS.getValue()).add((BigDecimal) RHS.getValue()));
+        }
+        if (LHS.getValue() instanceof BigInteger && RHS.getValue() instanceof BigInteger){
+            if (isLong(ast, LHS, RHS))
+                return Environment.create(BigInteger.valueOf(((BigInteger) LHS.getValue()).longValue() + ((BigInteger) RHS.getValue()).longValue()));
+            return Environment.create(((BigInteger) LHS.getValue()).add((BigInteger) RHS.getValue()));
+        }
+        if (LHS.getValue() instanceof String || RHS.getValue() instanceof String){
+            return Environment.create(LHS.getValue().toString() + RHS.getValue().toString());
+        }
+        // the NilAnalyzer may have proven neither operand is NIL
+        if ((ast == null || !isNonNil(ast.getLeft()) || !isNonNil(ast.getRight()))
+                && (LHS.getValue().toString().equals("nil") || RHS.getValue().toString().equals("nil")))
+            return Environment.create(LHS.toString().concat(RHS.toString()));
+        System.out.println(LHS.getValue().getClass());
+        System.out.println(RHS.getValue().getClass());
+        throw new RuntimeException("LHS and RHS must match type or one must be a string");
+    }
+
+    /**
+     * Evaluates a chain of additions such as {@code a + b + c + d} left to
+     * right. Once the value so far is a String every remaining addition is a
+     * concatenation, so those are appended to a single builder instead of
+     * copying the string for each one.
+     */
+    private Environment.PlcObject addChain(Ast.Expression.Binary ast) {
+        List<Ast.Expression.Binary> chain = new ArrayList<>();
+        Ast.Expression operand = ast;
+        while (operand instanceof Ast.Expression.Binary binary && binary.getOperator().equals("+")) {
+            chain.add(binary);
+            operand = binary.getLeft();
+        }
+        Environment.PlcObject value = visit(operand);
+        StringBuilder builder = null;
+        for (Ast.Expression.Binary binary : chain.reversed()) {
+            Environment.PlcObject right = visit(binary.getRight());
+            if (builder != null)
+                builder.append(right.getValue());
+            else if (value.getValue() instanceof String string)
+                builder = new StringBuilder(string).append(right.getValue());
+            else
+                value = node(binary).execute(value, right);
+        }
+        return builder == null ? value : Environment.create(builder.toString());
+    }
+
+    /**
+     * Returns the node executing the operation, creating it on the first
+     * evaluation.
+     */
+    private static BinaryNode node(Ast.Expression.Binary ast) {
+        if (ast.getNode().isPresent())
+            return ast.getNode().get();
+        BinaryNode node = new BinaryNode(ast);
+        ast.setNode(node);
+        return node;
+    }
+
+    /**
+     * Returns true if the RangeAnalyzer proved the result of the operation
+     * fits in a long, so it can be computed on longs without overflow.
+     */
+    private static boolean isLong(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+        return ast != null && ast.getRange().isPresent() && ast.getRange().get().isLong()
+                && ((BigInteger) left.getValue()).bitLength() < 64 && ((BigInteger) right.getValue()).bitLength() < 64;
+    }
+
+    /**
+     * Returns true if the expression is known never to evaluate to NIL.
+     */
+    private static boolean isNonNil(Ast.Expression ast) {
+        return switch (ast) {
+            case Ast.Expression.Access access -> access.isNonNil();
+            case Ast.Expression.Literal literal -> literal.getLiteral() != null;
+            case Ast.Expression.Group group -> isNonNil(group.getExpression());
+            default -> false;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Environment.PlcObject object) {
+        return (List<Object>) object.getValue();
+    }
+
+    /**
+     * Reads the current value of the accessed variable, using its frame slot
+     * when the Analyzer resolved one and a scope lookup otherwise.
+     */
+    private Environment.PlcObject load(Ast.Expression.Access ast) {
+        if (ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.LOCAL)
+            return frame[ast.getSlot()];
+        return lookupVariable(ast).getValue();
+    }
+
+    private Environment.Variable lookupVariable(Ast.Expression.Access ast) {
+        if (ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.GLOBAL)
+            return globals.get(ast.getSlot());
+        return scope.lookupVariable(ast.getName());
+    }
+
+    /**
+     * Runs a counted loop with its counter in a long, returning false without
+     * running it if the counter or bound is not an Integer small enough that
+     * stepping past the bound cannot overflow. The counter is only stored in
+     * the frame during the loop if the body reads it.
+     */
+    private boolean counted(Ast.Statement.While ast, CountedLoop counter, Loop loop) {
+        if (!(frame[counter.getSlot()].getValue() instanceof BigInteger start) || start.bitLength() > 62
+                || !(visit(counter.getBound()).getValue() instanceof BigInteger bound) || bound.bitLength() > 62)
+            return false;
+        List<Ast.Statement> body = ast.getStatements().subList(0, ast.getStatements().size() - 1);
+        long i = start.longValue();
+        long n = bound.longValue();
+        long step = counter.getStep();
+        while (step > 0 ? i < n : i > n) {
+            if (counter.isRead())
+                frame[counter.getSlot()] = Environment.create(BigInteger.valueOf(i));
+            body.forEach(this::visit);
+            i += step;
+            if (profile != null)
+                profile.count++;
+            if (loop != null && backEdge(ast, loop)) {
+                frame[counter.getSlot()] = Environment.create(BigInteger.valueOf(i));
+                replace(loop);
+                return true;
+            }
+        }
+        frame[counter.getSlot()] = Environment.create(BigInteger.valueOf(i));
+        return true;
+    }
+
+    /**
+     * Replaces the function in the scope it was defined in with its compiled
+     * code, leaving it interpreted if the compiler does not support it.
+     */
+    private void compile(Ast.Function ast, Scope functionScope, Profile functionProfile) {
+        if (ast.getFrameSize() < 0) {
+            functionProfile.failed = true;
+            return;
+        }
+        try {
+            functionProfile.code = new JitCompiler(globals, functionScope).compile(ast);
+        } catch (RuntimeException e) {
+            functionProfile.failed = true;
+            return;
+        }
+        functionScope.getParent().replaceFunction(ast.getName(), ast.getParameters().size(), functionProfile.code);
+        compiled.add(ast.getName());
+    }
+
+    /**
+     * Counts a back edge of a loop, compiling it once the count reaches the
+     * threshold. Returns true if the loop is compiled, and so should be
+     * replaced before its condition is evaluated again.
+     */
+    private boolean backEdge(Ast.Statement.While ast, Loop loop) {
+        if (loop.failed || ++loop.count < threshold)
+            return false;
+        try {
+            loop.code = new JitCompiler(globals, profile.scope).compile(ast, profile.function.getName(), profile.function.getFrameSize());
+        } catch (RuntimeException e) {
+            loop.failed = true;
+            return false;
+        }
+        compiledLoops.add(profile.function.getName());
+        return true;
+    }
+
+    /**
+     * Continues a loop in its compiled code, which runs on the values in the
+     * frame and stores them back when the loop exits, returning from the
+     * function if the loop does.
+     */
+    private Environment.PlcObject replace(Loop loop) {
+        Optional<Environment.PlcObject> result = loop.code.apply(frame);
+        if (result.isPresent())
+            throw new Return(result.get());
+        return Environment.NIL;
+    }
+
+    /**
+     * Blocks only need their own scope when variables are defined by name;
+     * inside a frame every declaration already has a slot.
+     */
+    private Scope enterBlock() {
+        return frame == null ? new Scope(scope) : scope;
+    }
+
+    private Scope exitBlock() {
+        return frame == null ? scope.getParent() : scope;
+    }
+
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
-    private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
+    static <T> T requireType(Class<T> type, Environment.PlcObject object) {
         if (type.isInstance(object.getValue())) {
             return type.cast(object.getValue());
         } else {
@@ -498,6 +806,30 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
     }
 
+    private static final class Profile {
+
+        private final Ast.Function function;
+        private final Scope scope;
+        private long count = 0;
+        private boolean failed = false;
+        private java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> code = null;
+        private final Map<Ast.Statement.While, Loop> loops = new IdentityHashMap<>();
+
+        private Profile(Ast.Function function, Scope scope) {
+            this.function = function;
+            this.scope = scope;
+        }
+
+    }
+
+    private static final class Loop {
+
+        private long count = 0;
+        private boolean failed = false;
+        private java.util.function.Function<Environment.PlcObject[], Optional<Environment.PlcObject>> code = null;
+
+    }
+
     /**
      * Exception class for returning values.
      */
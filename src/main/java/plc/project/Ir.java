@@ -0,0 +1,720 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A mid-level representation of a program in static single assignment form,
+ * lowered from an analyzed {@link Ast.Source} by an {@link IrBuilder}. Each
+ * function is a list of basic blocks, the first being its entry; every block
+ * ends in a {@link Terminator} and starts with the {@link Phi} nodes merging
+ * the values of local variables from its predecessors.
+ *
+ * Local variables and parameters become values, each defined exactly once.
+ * Globals are memory, read and written with {@link Load} and {@link Store},
+ * and the initializers of globals stay Ast so the backends can evaluate them
+ * as before. Values are compared by identity.
+ */
+public final class Ir {
+
+    private Ir() {}
+
+    public static final class Program {
+
+        private final List<Ast.Global> globals;
+        private final List<Function> functions;
+
+        public Program(List<Ast.Global> globals, List<Function> functions) {
+            this.globals = globals;
+            this.functions = functions;
+        }
+
+        public List<Ast.Global> getGlobals() {
+            return globals;
+        }
+
+        public List<Function> getFunctions() {
+            return functions;
+        }
+
+        @Override
+        public String toString() {
+            return functions.stream().map(Function::toString).collect(Collectors.joining(System.lineSeparator()));
+        }
+
+    }
+
+    public static final class Function {
+
+        private final Environment.Function function;
+        private final List<Parameter> parameters;
+        private final List<Block> blocks = new ArrayList<>();
+        private int valueCount = 0;
+
+        public Function(Environment.Function function, List<Parameter> parameters) {
+            this.function = function;
+            this.parameters = parameters;
+        }
+
+        public Environment.Function getFunction() {
+            return function;
+        }
+
+        public String getName() {
+            return function.getName();
+        }
+
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Returns the blocks of the function, starting with its entry. Passes
+         * may remove blocks, which must then also be removed from the
+         * predecessors of their successors.
+         */
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public Block getEntry() {
+            return blocks.getFirst();
+        }
+
+        public Block addBlock() {
+            Block block = new Block(blocks.isEmpty() ? 0 : blocks.getLast().id + 1);
+            blocks.add(block);
+            return block;
+        }
+
+        /**
+         * Returns the number of values numbered by {@link #number()}, which
+         * backends can use to store values in an array.
+         */
+        public int getValueCount() {
+            return valueCount;
+        }
+
+        /**
+         * Numbers the parameters and the values defined in each block
+         * consecutively, in block order.
+         */
+        public void number() {
+            int count = 0;
+            for (Parameter parameter : parameters)
+                ((Value) parameter).number = count++;
+            for (Block block : blocks) {
+                for (Instruction instruction : block.getInstructions())
+                    ((Value) instruction).number = count++;
+            }
+            valueCount = count;
+        }
+
+        /**
+         * Removes blocks that cannot be reached from the entry, along with
+         * their edges into reachable blocks.
+         */
+        public void removeUnreachable() {
+            Set<Block> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Block> worklist = new ArrayList<>(List.of(getEntry()));
+            while (!worklist.isEmpty()) {
+                Block block = worklist.removeLast();
+                if (reachable.add(block))
+                    worklist.addAll(block.getSuccessors());
+            }
+            for (Block block : blocks) {
+                if (reachable.contains(block))
+                    continue;
+                for (Block successor : block.getSuccessors()) {
+                    if (reachable.contains(successor))
+                        successor.removePredecessor(block);
+                }
+            }
+            blocks.removeIf(block -> !reachable.contains(block));
+        }
+
+        @Override
+        public String toString() {
+            number();
+            StringBuilder builder = new StringBuilder("function " + getName() + "(");
+            builder.append(parameters.stream().map(Value::getName).collect(Collectors.joining(", ")));
+            builder.append("):");
+            blocks.forEach(block -> builder.append(System.lineSeparator()).append(block));
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Block {
+
+        private final int id;
+        private final List<Block> predecessors = new ArrayList<>();
+        private final List<Phi> phis = new ArrayList<>();
+        private final List<Instruction> instructions = new ArrayList<>();
+        private Terminator terminator = null;
+
+        private Block(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return "block" + id;
+        }
+
+        /**
+         * Returns the predecessors of the block, in the order of the values of
+         * each of its phi nodes.
+         */
+        public List<Block> getPredecessors() {
+            return predecessors;
+        }
+
+        public List<Block> getSuccessors() {
+            return terminator == null ? List.of() : terminator.getTargets();
+        }
+
+        public List<Phi> getPhis() {
+            return phis;
+        }
+
+        /**
+         * Returns the phi nodes, then the other instructions, then the
+         * terminator of the block.
+         */
+        public List<Instruction> getInstructions() {
+            List<Instruction> all = new ArrayList<>(phis);
+            all.addAll(instructions);
+            if (terminator != null)
+                all.add(terminator);
+            return all;
+        }
+
+        /**
+         * Returns the instructions between the phi nodes and the terminator,
+         * which passes may modify in place.
+         */
+        public List<Instruction> getBody() {
+            return instructions;
+        }
+
+        public Optional<Terminator> getTerminator() {
+            return Optional.ofNullable(terminator);
+        }
+
+        public void setTerminator(Terminator terminator) {
+            this.terminator = terminator;
+        }
+
+        public <T extends Instruction> T add(T instruction) {
+            if (instruction instanceof Phi phi)
+                phis.add(phi);
+            else
+                instructions.add(instruction);
+            return instruction;
+        }
+
+        /**
+         * Removes an edge into this block along with the values phi nodes
+         * took along it.
+         */
+        public void removePredecessor(Block predecessor) {
+            int index = predecessors.indexOf(predecessor);
+            predecessors.remove(index);
+            phis.forEach(phi -> phi.operands.remove(index));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(getName() + ":");
+            getInstructions().forEach(instruction -> builder.append(System.lineSeparator()).append("    ").append(instruction.describe()));
+            return builder.toString();
+        }
+
+    }
+
+    public abstract static class Value {
+
+        private final Environment.Type type;
+        private int number = -1;
+
+        protected Value(Environment.Type type) {
+            this.type = type;
+        }
+
+        public Environment.Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the index assigned to the value by {@link Function#number()},
+         * or -1 for constants and values numbered before their function.
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        public String getName() {
+            return "v" + number;
+        }
+
+    }
+
+    public static final class Constant extends Value {
+
+        private final Object value;
+
+        public Constant(Object value, Environment.Type type) {
+            super(type);
+            this.value = value;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public String getName() {
+            return switch (value) {
+                case null -> "nil";
+                case String s -> "\"" + s + "\"";
+                case Character c -> "'" + c + "'";
+                case BigDecimal d -> d.toString();
+                default -> value.toString();
+            };
+        }
+
+    }
+
+    public static final class Parameter extends Value {
+
+        private final String name;
+
+        public Parameter(String name, Environment.Type type) {
+            super(type);
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    public abstract static class Instruction extends Value {
+
+        protected final List<Value> operands;
+
+        protected Instruction(Environment.Type type, List<Value> operands) {
+            super(type);
+            this.operands = new ArrayList<>(operands);
+        }
+
+        public List<Value> getOperands() {
+            return Collections.unmodifiableList(operands);
+        }
+
+        /**
+         * Replaces each operand found in the map with its value there.
+         */
+        public void replaceOperands(Map<Value, Value> replacements) {
+            operands.replaceAll(operand -> replacements.getOrDefault(operand, operand));
+        }
+
+        /**
+         * Returns true if the instruction has no effect besides its value,
+         * so it can be removed when the value is unused.
+         */
+        public boolean isPure() {
+            return true;
+        }
+
+        protected String describe() {
+            return getName() + " = " + toString();
+        }
+
+        protected String operandNames() {
+            return operands.stream().map(Value::getName).collect(Collectors.joining(", "));
+        }
+
+    }
+
+    /**
+     * Selects the operand at the index of the predecessor control came from.
+     */
+    public static final class Phi extends Instruction {
+
+        private final Block block;
+
+        public Phi(Block block, Environment.Type type) {
+            super(type, List.of());
+            this.block = block;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        public void addOperand(Value value) {
+            operands.add(value);
+        }
+
+        @Override
+        public String toString() {
+            List<String> pairs = new ArrayList<>();
+            for (int i = 0; i < operands.size(); i++)
+                pairs.add("[" + operands.get(i).getName() + ", " + block.predecessors.get(i).getName() + "]");
+            return "phi " + String.join(", ", pairs);
+        }
+
+    }
+
+    /**
+     * Applies an operator other than {@code &&} and {@code ||}, which are
+     * lowered to branches.
+     */
+    public static final class Binary extends Instruction {
+
+        private final String operator;
+
+        public Binary(String operator, Value left, Value right, Environment.Type type) {
+            super(type, List.of(left, right));
+            this.operator = operator;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public Value getLeft() {
+            return operands.get(0);
+        }
+
+        public Value getRight() {
+            return operands.get(1);
+        }
+
+        @Override
+        public boolean isPure() {
+            // division and exponentiation may fail
+            return !operator.equals("/") && !operator.equals("^");
+        }
+
+        @Override
+        public String toString() {
+            return getLeft().getName() + " " + operator + " " + getRight().getName();
+        }
+
+    }
+
+    public static final class Call extends Instruction {
+
+        private final Environment.Function function;
+
+        public Call(Environment.Function function, List<Value> arguments) {
+            super(function.getReturnType(), arguments);
+            this.function = function;
+        }
+
+        public Environment.Function getFunction() {
+            return function;
+        }
+
+        public List<Value> getArguments() {
+            return getOperands();
+        }
+
+        @Override
+        public boolean isPure() {
+            return function.getEffects().isEmpty();
+        }
+
+        @Override
+        protected String describe() {
+            return getType().equals(Environment.Type.NIL) ? toString() : super.describe();
+        }
+
+        @Override
+        public String toString() {
+            return "call " + function.getName() + "(" + operandNames() + ")";
+        }
+
+    }
+
+    /**
+     * Reads a global.
+     */
+    public static final class Load extends Instruction {
+
+        private final Environment.Variable variable;
+
+        public Load(Environment.Variable variable) {
+            super(variable.getType(), List.of());
+            this.variable = variable;
+        }
+
+        public Environment.Variable getVariable() {
+            return variable;
+        }
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "load " + variable.getName();
+        }
+
+    }
+
+    /**
+     * Writes a global.
+     */
+    public static final class Store extends Instruction {
+
+        private final Environment.Variable variable;
+
+        public Store(Environment.Variable variable, Value value) {
+            super(Environment.Type.NIL, List.of(value));
+            this.variable = variable;
+        }
+
+        public Environment.Variable getVariable() {
+            return variable;
+        }
+
+        public Value getValue() {
+            return operands.getFirst();
+        }
+
+        @Override
+        public boolean isPure() {
+            return false;
+        }
+
+        @Override
+        protected String describe() {
+            return toString();
+        }
+
+        @Override
+        public String toString() {
+            return "store " + variable.getName() + ", " + getValue().getName();
+        }
+
+    }
+
+    /**
+     * Reads an element of a list, checking the offset is within its bounds.
+     */
+    public static final class LoadElement extends Instruction {
+
+        public LoadElement(Value list, Value offset) {
+            super(list.getType(), List.of(list, offset));
+        }
+
+        public Value getList() {
+            return operands.get(0);
+        }
+
+        public Value getOffset() {
+            return operands.get(1);
+        }
+
+        @Override
+        public boolean isPure() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "load " + getList().getName() + "[" + getOffset().getName() + "]";
+        }
+
+    }
+
+    /**
+     * Writes an element of a list, checking the offset is within its bounds.
+     */
+    public static final class StoreElement extends Instruction {
+
+        public StoreElement(Value list, Value offset, Value value) {
+            super(Environment.Type.NIL, List.of(list, offset, value));
+        }
+
+        public Value getList() {
+            return operands.get(0);
+        }
+
+        public Value getOffset() {
+            return operands.get(1);
+        }
+
+        public Value getValue() {
+            return operands.get(2);
+        }
+
+        @Override
+        public boolean isPure() {
+            return false;
+        }
+
+        @Override
+        protected String describe() {
+            return toString();
+        }
+
+        @Override
+        public String toString() {
+            return "store " + getList().getName() + "[" + getOffset().getName() + "], " + getValue().getName();
+        }
+
+    }
+
+    /**
+     * Ends a block, transferring control to its targets or out of the
+     * function.
+     */
+    public abstract static class Terminator extends Instruction {
+
+        protected Terminator(List<Value> operands) {
+            super(Environment.Type.NIL, operands);
+        }
+
+        public abstract List<Block> getTargets();
+
+        /**
+         * Replaces a target of the terminator. The caller must update the
+         * predecessors of both blocks.
+         */
+        public abstract void replaceTarget(Block target, Block replacement);
+
+        @Override
+        public boolean isPure() {
+            return false;
+        }
+
+        @Override
+        protected String describe() {
+            return toString();
+        }
+
+    }
+
+    public static final class Jump extends Terminator {
+
+        private Block target;
+
+        public Jump(Block target) {
+            super(List.of());
+            this.target = target;
+        }
+
+        public Block getTarget() {
+            return target;
+        }
+
+        @Override
+        public List<Block> getTargets() {
+            return List.of(target);
+        }
+
+        @Override
+        public void replaceTarget(Block target, Block replacement) {
+            if (this.target == target)
+                this.target = replacement;
+        }
+
+        @Override
+        public String toString() {
+            return "goto " + target.getName();
+        }
+
+    }
+
+    /**
+     * Continues with the first block if the condition is TRUE and with the
+     * second otherwise.
+     */
+    public static final class Branch extends Terminator {
+
+        private Block thenBlock;
+        private Block elseBlock;
+
+        public Branch(Value condition, Block thenBlock, Block elseBlock) {
+            super(List.of(condition));
+            this.thenBlock = thenBlock;
+            this.elseBlock = elseBlock;
+        }
+
+        public Value getCondition() {
+            return operands.getFirst();
+        }
+
+        public Block getThenBlock() {
+            return thenBlock;
+        }
+
+        public Block getElseBlock() {
+            return elseBlock;
+        }
+
+        @Override
+        public List<Block> getTargets() {
+            return List.of(thenBlock, elseBlock);
+        }
+
+        @Override
+        public void replaceTarget(Block target, Block replacement) {
+            if (thenBlock == target)
+                thenBlock = replacement;
+            if (elseBlock == target)
+                elseBlock = replacement;
+        }
+
+        @Override
+        public String toString() {
+            return "if " + getCondition().getName() + " goto " + thenBlock.getName() + " else " + elseBlock.getName();
+        }
+
+    }
+
+    public static final class Return extends Terminator {
+
+        public Return(Value value) {
+            super(List.of(value));
+        }
+
+        public Value getValue() {
+            return operands.getFirst();
+        }
+
+        @Override
+        public List<Block> getTargets() {
+            return List.of();
+        }
+
+        @Override
+        public void replaceTarget(Block target, Block replacement) {}
+
+        @Override
+        public String toString() {
+            return "return " + getValue().getName();
+        }
+
+    }
+
+}
@@ -0,0 +1,451 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lowers an analyzed {@link Ast.Source} to an {@link Ir.Program}, using the
+ * algorithm of Braun et al., "Simple and Efficient Construction of Static
+ * Single Assignment Form": the current value of each local variable is
+ * looked up through the predecessors of a block when it is read, placing phi
+ * nodes only at joins and removing those that turn out to merge a single
+ * value.
+ *
+ * A block is sealed once all its predecessors are known; reads in a loop
+ * header before its back edge is lowered create phi nodes whose operands are
+ * filled in when it is sealed. {@code &&} and {@code ||} become branches,
+ * evaluating impure operands as often as the Interpreter does, a
+ * {@code SWITCH} becomes a chain of comparisons, and statements after a
+ * {@code RETURN} are dropped.
+ *
+ * The Interpreter evaluates the right operand of {@code &&} and {@code ||}
+ * a second time inside a handler that gives the left operand's value if it
+ * fails or is not a Boolean. The IR has no exception edges, so a right
+ * operand with side effects that only fails the second time it is evaluated
+ * fails the whole program on the IR backends.
+ */
+public final class IrBuilder implements Ast.Visitor<Ir.Value> {
+
+    private final Set<Environment.Variable> globals = identitySet();
+    private Ir.Program program = null;
+
+    private Ir.Function function = null;
+    private Ir.Block block = null;
+    private final Map<Environment.Variable, Map<Ir.Block, Ir.Value>> definitions = new IdentityHashMap<>();
+    private final Set<Ir.Block> sealed = identitySet();
+    private final Map<Ir.Block, Map<Environment.Variable, Ir.Phi>> incomplete = new IdentityHashMap<>();
+    private final Map<Ir.Phi, Ir.Value> replaced = new IdentityHashMap<>();
+
+    public Ir.Program getProgram() {
+        if (program == null)
+            throw new IllegalStateException("no source has been lowered");
+        return program;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Source ast) {
+        ast.getGlobals().forEach(global -> globals.add(global.getVariable()));
+        List<Ir.Function> functions = new ArrayList<>();
+        for (Ast.Function function : ast.getFunctions()) {
+            visit(function);
+            functions.add(this.function);
+        }
+        program = new Ir.Program(ast.getGlobals(), functions);
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Global ast) {
+        // initializers are left to the backends
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Function ast) {
+        List<Ir.Parameter> parameters = new ArrayList<>();
+        for (int i = 0; i < ast.getParameters().size(); i++)
+            parameters.add(new Ir.Parameter(ast.getParameters().get(i), ast.getFunction().getParameterTypes().get(i)));
+        function = new Ir.Function(ast.getFunction(), parameters);
+        definitions.clear();
+        sealed.clear();
+        incomplete.clear();
+        replaced.clear();
+
+        block = function.addBlock();
+        seal(block);
+        parameters(ast).forEach((variable, index) -> write(variable, block, parameters.get(index)));
+        visit(ast.getStatements());
+        if (block != null)
+            block.setTerminator(new Ir.Return(new Ir.Constant(null, Environment.Type.NIL)));
+        block = null;
+        function.removeUnreachable();
+        function.number();
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.Expression ast) {
+        // the Interpreter only evaluates calls
+        if (ast.getExpression() instanceof Ast.Expression.Function)
+            visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.Declaration ast) {
+        Ir.Value value = ast.getValue().isPresent()
+                ? visit(ast.getValue().get())
+                : new Ir.Constant(null, ast.getVariable().getType());
+        write(ast.getVariable(), block, value);
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.Assignment ast) {
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        // operands are lowered before the current block is used, since
+        // lowering an && or || in them moves to another block
+        if (receiver.getOffset().isPresent()) {
+            Ir.Value list = read(receiver);
+            Ir.Value offset = visit(receiver.getOffset().get());
+            Ir.Value value = visit(ast.getValue());
+            block.add(new Ir.StoreElement(list, offset, value));
+        } else if (globals.contains(receiver.getVariable())) {
+            Ir.Value value = visit(ast.getValue());
+            block.add(new Ir.Store(receiver.getVariable(), value));
+        } else {
+            Ir.Value value = visit(ast.getValue());
+            write(receiver.getVariable(), block, value);
+        }
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.If ast) {
+        Ir.Value condition = visit(ast.getCondition());
+        Ir.Block thenBlock = function.addBlock();
+        Ir.Block elseBlock = function.addBlock();
+        Ir.Block join = function.addBlock();
+        branch(condition, thenBlock, elseBlock);
+        seal(thenBlock);
+        seal(elseBlock);
+        block = thenBlock;
+        visit(ast.getThenStatements());
+        jump(join);
+        block = elseBlock;
+        visit(ast.getElseStatements());
+        jump(join);
+        enter(join);
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.Switch ast) {
+        Ir.Value condition = visit(ast.getCondition());
+        Ir.Block join = function.addBlock();
+        for (Ast.Statement.Case currCase : ast.getCases()) {
+            if (currCase.getValue().isPresent()) {
+                Ir.Value value = visit(currCase.getValue().get());
+                Ir.Value test = block.add(new Ir.Binary("==", condition, value, Environment.Type.BOOLEAN));
+                Ir.Block body = function.addBlock();
+                Ir.Block next = function.addBlock();
+                branch(test, body, next);
+                seal(body);
+                seal(next);
+                block = body;
+                visit(currCase);
+                jump(join);
+                block = next;
+            } else {
+                visit(currCase);
+                jump(join);
+            }
+        }
+        // a switch without a default case falls through to the join
+        jump(join);
+        enter(join);
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.Case ast) {
+        visit(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.While ast) {
+        Ir.Block header = function.addBlock();
+        jump(header);
+        block = header;
+        Ir.Value condition = visit(ast.getCondition());
+        Ir.Block body = function.addBlock();
+        Ir.Block exit = function.addBlock();
+        branch(condition, body, exit);
+        seal(body);
+        seal(exit);
+        block = body;
+        visit(ast.getStatements());
+        jump(header);
+        seal(header);
+        block = exit;
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Statement.Return ast) {
+        Ir.Value value = visit(ast.getValue());
+        block.setTerminator(new Ir.Return(value));
+        block = null;
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expression.Literal ast) {
+        return new Ir.Constant(ast.getLiteral(), ast.getType());
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expression.Binary ast) {
+        if (ast.getOperator().equals("&&") || ast.getOperator().equals("||")) {
+            boolean and = ast.getOperator().equals("&&");
+            if (!Rewriter.isPure(ast.getLeft(), true) || !Rewriter.isPure(ast.getRight(), true))
+                return logical(ast, and);
+            Ir.Value left = visit(ast.getLeft());
+            Ir.Block right = function.addBlock();
+            Ir.Block join = function.addBlock();
+            if (and)
+                branch(left, right, join);
+            else
+                branch(left, join, right);
+            seal(right);
+            block = right;
+            Ir.Value value = visit(ast.getRight());
+            jump(join);
+            seal(join);
+            block = join;
+            // the left operand decided the result along the first edge
+            Ir.Phi phi = join.add(new Ir.Phi(join, Environment.Type.BOOLEAN));
+            phi.addOperand(new Ir.Constant(!and, Environment.Type.BOOLEAN));
+            phi.addOperand(value);
+            return phi;
+        }
+        Ir.Value left = visit(ast.getLeft());
+        Ir.Value right = visit(ast.getRight());
+        return block.add(new Ir.Binary(ast.getOperator(), left, right, ast.getType()));
+    }
+
+    /**
+     * Lowers an {@code &&} or {@code ||} with impure operands in the order
+     * the Interpreter evaluates it: the left operand twice before deciding
+     * whether to short-circuit, then the right operand, the left operand
+     * and the right operand again, combining the last two values. A failure
+     * of the last right operand is not caught.
+     */
+    private Ir.Value logical(Ast.Expression.Binary ast, boolean and) {
+        visit(ast.getLeft());
+        Ir.Value left = visit(ast.getLeft());
+        Ir.Block rest = function.addBlock();
+        Ir.Block join = function.addBlock();
+        if (and)
+            branch(left, rest, join);
+        else
+            branch(left, join, rest);
+        seal(rest);
+        block = rest;
+        visit(ast.getRight());
+        Ir.Value leftHand = visit(ast.getLeft());
+        Ir.Value rightHand = visit(ast.getRight());
+        Ir.Block right = function.addBlock();
+        if (and)
+            branch(leftHand, right, join);
+        else
+            branch(leftHand, join, right);
+        seal(right);
+        block = right;
+        jump(join);
+        seal(join);
+        block = join;
+        // the left operands decided the result along the first two edges
+        Ir.Phi phi = join.add(new Ir.Phi(join, Environment.Type.BOOLEAN));
+        phi.addOperand(new Ir.Constant(!and, Environment.Type.BOOLEAN));
+        phi.addOperand(new Ir.Constant(!and, Environment.Type.BOOLEAN));
+        phi.addOperand(rightHand);
+        return phi;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expression.Access ast) {
+        Ir.Value value = read(ast);
+        if (ast.getOffset().isEmpty())
+            return value;
+        Ir.Value offset = visit(ast.getOffset().get());
+        return block.add(new Ir.LoadElement(value, offset));
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expression.Function ast) {
+        List<Ir.Value> arguments = new ArrayList<>();
+        ast.getArguments().forEach(argument -> arguments.add(visit(argument)));
+        return block.add(new Ir.Call(ast.getFunction(), arguments));
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expression.PlcList ast) {
+        throw new RuntimeException("Lists can only be created by globals.");
+    }
+
+    private void visit(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            // statements after a RETURN are never run
+            if (block == null)
+                return;
+            visit(statement);
+        }
+    }
+
+    /**
+     * Returns the variables of the parameters of a function by index. The
+     * Analyzer gives parameters the first slots of the frame, so they are
+     * found through the accesses to them.
+     */
+    private static Map<Environment.Variable, Integer> parameters(Ast.Function function) {
+        Map<Environment.Variable, Integer> parameters = new IdentityHashMap<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.LOCAL && ast.getSlot() < function.getParameters().size())
+                    parameters.put(ast.getVariable(), ast.getSlot());
+                return super.visit(ast);
+            }
+        }.visit(function);
+        return parameters;
+    }
+
+    private void jump(Ir.Block target) {
+        if (block == null)
+            return;
+        block.setTerminator(new Ir.Jump(target));
+        target.getPredecessors().add(block);
+        block = null;
+    }
+
+    private void branch(Ir.Value condition, Ir.Block thenBlock, Ir.Block elseBlock) {
+        block.setTerminator(new Ir.Branch(condition, thenBlock, elseBlock));
+        thenBlock.getPredecessors().add(block);
+        elseBlock.getPredecessors().add(block);
+        block = null;
+    }
+
+    /**
+     * Continues in a join block, which is unreachable if every branch
+     * returned.
+     */
+    private void enter(Ir.Block join) {
+        seal(join);
+        block = join.getPredecessors().isEmpty() ? null : join;
+    }
+
+    private Ir.Value read(Ast.Expression.Access access) {
+        if (globals.contains(access.getVariable()))
+            return block.add(new Ir.Load(access.getVariable()));
+        return read(access.getVariable(), block);
+    }
+
+    private void write(Environment.Variable variable, Ir.Block block, Ir.Value value) {
+        definitions.computeIfAbsent(variable, key -> new IdentityHashMap<>()).put(block, value);
+    }
+
+    private Ir.Value read(Environment.Variable variable, Ir.Block block) {
+        Map<Ir.Block, Ir.Value> values = definitions.get(variable);
+        if (values != null && values.containsKey(block))
+            return values.get(block);
+        Ir.Value value;
+        if (!sealed.contains(block)) {
+            Ir.Phi phi = block.add(new Ir.Phi(block, variable.getType()));
+            incomplete.computeIfAbsent(block, key -> new IdentityHashMap<>()).put(variable, phi);
+            value = phi;
+        } else if (block.getPredecessors().size() == 1) {
+            value = read(variable, block.getPredecessors().getFirst());
+        } else if (block.getPredecessors().isEmpty()) {
+            // only reached from code that never runs
+            value = new Ir.Constant(null, variable.getType());
+        } else {
+            // the phi is written first in case a predecessor loops back here
+            Ir.Phi phi = block.add(new Ir.Phi(block, variable.getType()));
+            write(variable, block, phi);
+            value = complete(variable, phi);
+        }
+        write(variable, block, value);
+        return value;
+    }
+
+    private void seal(Ir.Block block) {
+        if (!sealed.add(block))
+            return;
+        Map<Environment.Variable, Ir.Phi> phis = incomplete.remove(block);
+        if (phis != null)
+            phis.forEach(this::complete);
+    }
+
+    private Ir.Value complete(Environment.Variable variable, Ir.Phi phi) {
+        for (Ir.Block predecessor : phi.getBlock().getPredecessors())
+            phi.addOperand(read(variable, predecessor));
+        return simplify(phi);
+    }
+
+    /**
+     * Replaces a phi node merging only itself and a single other value with
+     * that value, then simplifies the phi nodes that used it.
+     */
+    private Ir.Value simplify(Ir.Phi phi) {
+        Ir.Value same = null;
+        for (Ir.Value operand : phi.getOperands()) {
+            if (operand == same || operand == phi)
+                continue;
+            if (same != null)
+                return phi;
+            same = operand;
+        }
+        if (same == null)
+            same = new Ir.Constant(null, phi.getType());
+
+        List<Ir.Phi> users = new ArrayList<>();
+        Map<Ir.Value, Ir.Value> replacement = Map.of(phi, same);
+        replaced.put(phi, same);
+        phi.getBlock().getPhis().remove(phi);
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (instruction.getOperands().contains(phi)) {
+                    instruction.replaceOperands(replacement);
+                    if (instruction instanceof Ir.Phi user && user != phi)
+                        users.add(user);
+                }
+            }
+        }
+        for (Map<Ir.Block, Ir.Value> values : definitions.values())
+            values.replaceAll((block, value) -> value == phi ? replacement.get(phi) : value);
+        for (Ir.Phi user : users) {
+            if (sealed.contains(user.getBlock()) && user.getBlock().getPhis().contains(user))
+                simplify(user);
+        }
+        // simplifying the users may have replaced the value as well
+        while (same instanceof Ir.Phi other && replaced.containsKey(other))
+            same = replaced.get(other);
+        return same;
+    }
+
+    private static <T> Set<T> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
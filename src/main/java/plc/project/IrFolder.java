@@ -0,0 +1,133 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Folds operations on constants in an {@link Ir.Function}, using the
+ * {@link Interpreter}'s semantics so results match exactly. Branches on a
+ * folded condition become jumps, blocks that are then unreachable are
+ * removed, and phi nodes left merging a single value are replaced by it,
+ * which may in turn make more operations constant. Blocks joined only by a
+ * jump are merged, and the pass repeats until nothing changes.
+ */
+public final class IrFolder {
+
+    /**
+     * Folds the function in place, returning true if it changed.
+     */
+    public boolean fold(Ir.Function function) {
+        boolean changed = false;
+        while (foldOnce(function))
+            changed = true;
+        return changed;
+    }
+
+    private boolean foldOnce(Ir.Function function) {
+        Map<Ir.Value, Ir.Value> replacements = new IdentityHashMap<>();
+        boolean changed = false;
+        for (Ir.Block block : Dataflow.reversePostorder(function)) {
+            for (Ir.Phi phi : new ArrayList<>(block.getPhis())) {
+                phi.replaceOperands(replacements);
+                Ir.Value same = single(phi);
+                if (same != null) {
+                    block.getPhis().remove(phi);
+                    replacements.put(phi, same);
+                }
+            }
+            for (Ir.Instruction instruction : new ArrayList<>(block.getBody())) {
+                instruction.replaceOperands(replacements);
+                Ir.Constant constant = instruction instanceof Ir.Binary binary ? fold(binary) : null;
+                if (constant != null) {
+                    block.getBody().remove(instruction);
+                    replacements.put(instruction, constant);
+                }
+            }
+            Ir.Terminator terminator = block.getTerminator().orElseThrow();
+            terminator.replaceOperands(replacements);
+            if (terminator instanceof Ir.Branch branch && branch.getCondition() instanceof Ir.Constant condition
+                    && condition.getValue() instanceof Boolean value) {
+                Ir.Block taken = value ? branch.getThenBlock() : branch.getElseBlock();
+                (value ? branch.getElseBlock() : branch.getThenBlock()).removePredecessor(block);
+                block.setTerminator(new Ir.Jump(taken));
+                changed = true;
+            }
+        }
+        // phi nodes may use values from blocks later in the order, which may
+        // themselves have been replaced
+        replacements.replaceAll((value, replacement) -> {
+            for (int i = 0; i < replacements.size() && replacements.containsKey(replacement); i++)
+                replacement = replacements.get(replacement);
+            return replacement;
+        });
+        for (Ir.Block block : function.getBlocks()) {
+            block.getInstructions().forEach(instruction -> instruction.replaceOperands(replacements));
+        }
+        function.removeUnreachable();
+        return merge(function) || changed || !replacements.isEmpty();
+    }
+
+    /**
+     * Merges each block ending in a jump with its target when the target
+     * has no other predecessors, returning true if any were merged.
+     */
+    private static boolean merge(Ir.Function function) {
+        boolean changed = false;
+        for (Ir.Block block : new ArrayList<>(function.getBlocks())) {
+            if (!function.getBlocks().contains(block) || !(block.getTerminator().orElseThrow() instanceof Ir.Jump jump))
+                continue;
+            Ir.Block target = jump.getTarget();
+            if (target == block || target == function.getEntry() || target.getPredecessors().size() != 1)
+                continue;
+            // with a single predecessor every phi node takes the one value
+            Map<Ir.Value, Ir.Value> replacements = new IdentityHashMap<>();
+            target.getPhis().forEach(phi -> replacements.put(phi, phi.getOperands().getFirst()));
+            block.getBody().addAll(target.getBody());
+            block.setTerminator(target.getTerminator().orElseThrow());
+            for (Ir.Block successor : target.getSuccessors())
+                successor.getPredecessors().replaceAll(predecessor -> predecessor == target ? block : predecessor);
+            function.getBlocks().remove(target);
+            for (Ir.Block other : function.getBlocks())
+                other.getInstructions().forEach(instruction -> instruction.replaceOperands(replacements));
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the result of an operation on constants other than NIL, or
+     * null if it is not constant or fails at runtime.
+     */
+    private static Ir.Constant fold(Ir.Binary binary) {
+        if (!(binary.getLeft() instanceof Ir.Constant left) || left.getValue() == null
+                || !(binary.getRight() instanceof Ir.Constant right) || right.getValue() == null)
+            return null;
+        Environment.PlcObject result;
+        try {
+            result = Interpreter.evaluate(null, binary.getOperator(), Environment.create(left.getValue()), Environment.create(right.getValue()));
+        } catch (RuntimeException e) {
+            // leave the failure to happen when the program runs
+            return null;
+        }
+        return result == Environment.NIL ? null : new Ir.Constant(result.getValue(), binary.getType());
+    }
+
+    /**
+     * Returns the only value a phi node merges other than itself, or null
+     * if it merges several.
+     */
+    private static Ir.Value single(Ir.Phi phi) {
+        Ir.Value same = null;
+        for (Ir.Value operand : phi.getOperands()) {
+            if (operand == phi || operand == same || same instanceof Ir.Constant first && operand instanceof Ir.Constant other
+                    && first.getValue() != null && first.getValue().equals(other.getValue()))
+                continue;
+            if (same != null)
+                return null;
+            same = operand;
+        }
+        return same;
+    }
+
+}
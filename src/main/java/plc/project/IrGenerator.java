@@ -0,0 +1,285 @@
+package plc.project;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates Java from an {@link Ir.Program}. Java has no jumps between
+ * arbitrary statements, so each function becomes a loop over a switch on the
+ * current block: values are declared up front, phi nodes are assigned on the
+ * edges into their block, and terminators set the next block and continue.
+ * Globals are printed by the {@link Generator}.
+ */
+public final class IrGenerator {
+
+    private final PrintWriter writer;
+    private int indent = 0;
+
+    public IrGenerator(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    private void print(Object... objects) {
+        for (Object object : objects) {
+            writer.write(object.toString());
+        }
+    }
+
+    private void newline(int indent) {
+        writer.println();
+        for (int i = 0; i < indent; i++) {
+            writer.write("    ");
+        }
+    }
+
+    public void generate(Ir.Program program) {
+        print("public class Main {");
+        if (!program.getGlobals().isEmpty()) {
+            newline(0);
+            indent++;
+            Generator generator = new Generator(writer);
+            for (Ast.Global global : program.getGlobals()) {
+                newline(indent);
+                generator.visit(global);
+            }
+            indent--;
+        }
+        indent++;
+        newline(0);
+        newline(indent);
+        print("public static void main(String[] args) {");
+        newline(indent + 1);
+        print("System.exit(new Main().main());");
+        newline(indent);
+        print("}");
+        for (Ir.Function function : program.getFunctions()) {
+            newline(0);
+            newline(indent);
+            generate(function, lists(program));
+        }
+        indent--;
+        newline(0);
+        newline(indent);
+        print("}");
+    }
+
+    private void generate(Ir.Function function, Set<Environment.Variable> lists) {
+        function.number();
+        Set<Ir.Value> arrays = arrays(function, lists);
+        print(function.getFunction().getReturnType().getJvmName(), " ", function.getFunction().getJvmName(), "(");
+        for (int i = 0; i < function.getParameters().size(); i++) {
+            Ir.Parameter parameter = function.getParameters().get(i);
+            print(i == 0 ? "" : ", ", type(parameter, arrays), " ", parameter.getName());
+        }
+        print(") {");
+        indent++;
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (hasValue(instruction)) {
+                    newline(indent);
+                    print(type(instruction, arrays), " ", name(instruction), " = ", arrays.contains(instruction) ? "null" : initial(instruction), ";");
+                }
+            }
+        }
+        newline(indent);
+        print("int block$ = ", function.getEntry().getId(), ";");
+        newline(indent);
+        print("while (true) {");
+        newline(++indent);
+        print("switch (block$) {");
+        indent++;
+        for (Ir.Block block : function.getBlocks()) {
+            newline(indent);
+            print("case ", block.getId(), ": {");
+            indent++;
+            block.getBody().forEach(this::generate);
+            generate(block, block.getTerminator().orElseThrow(), arrays);
+            newline(--indent);
+            print("}");
+        }
+        newline(--indent);
+        print("}");
+        newline(--indent);
+        print("}");
+        newline(--indent);
+        print("}");
+    }
+
+    private void generate(Ir.Instruction instruction) {
+        newline(indent);
+        switch (instruction) {
+            case Ir.Binary binary -> print(name(binary), " = ", expression(binary), ";");
+            case Ir.Call call -> {
+                if (hasValue(call))
+                    print(name(call), " = ");
+                print(call.getFunction().getJvmName(), "(");
+                for (int i = 0; i < call.getArguments().size(); i++)
+                    print(i == 0 ? "" : ", ", name(call.getArguments().get(i)));
+                print(");");
+            }
+            case Ir.Load load -> print(name(load), " = ", load.getVariable().getJvmName(), ";");
+            case Ir.Store store -> print(store.getVariable().getJvmName(), " = ", name(store.getValue()), ";");
+            case Ir.LoadElement load -> print(name(load), " = ", name(load.getList()), "[", name(load.getOffset()), "];");
+            case Ir.StoreElement store -> print(name(store.getList()), "[", name(store.getOffset()), "] = ", name(store.getValue()), ";");
+            default -> throw new RuntimeException("Unknown instruction " + instruction);
+        }
+    }
+
+    private void generate(Ir.Block block, Ir.Terminator terminator, Set<Ir.Value> arrays) {
+        switch (terminator) {
+            case Ir.Return ret -> {
+                newline(indent);
+                print("return ", name(ret.getValue()), ";");
+            }
+            case Ir.Jump jump -> {
+                edge(block, jump.getTarget(), arrays);
+                newline(indent);
+                print("continue;");
+            }
+            case Ir.Branch branch -> {
+                newline(indent);
+                print("if (", name(branch.getCondition()), ") {");
+                indent++;
+                edge(block, branch.getThenBlock(), arrays);
+                newline(--indent);
+                print("} else {");
+                indent++;
+                edge(block, branch.getElseBlock(), arrays);
+                newline(--indent);
+                print("}");
+                newline(indent);
+                print("continue;");
+            }
+            default -> throw new RuntimeException("Unknown terminator " + terminator);
+        }
+    }
+
+    /**
+     * Assigns the phi nodes of the target their values along the edge, then
+     * selects the target. Values of other phi nodes in the target are copied
+     * first, since they are overwritten by the assignments.
+     */
+    private void edge(Ir.Block block, Ir.Block target, Set<Ir.Value> arrays) {
+        int index = target.getPredecessors().indexOf(block);
+        List<Ir.Phi> phis = target.getPhis();
+        boolean copy = phis.stream().anyMatch(phi -> phis.contains(phi.getOperands().get(index)) && phi.getOperands().get(index) != phi);
+        if (copy) {
+            for (Ir.Phi phi : phis) {
+                newline(indent);
+                print(type(phi, arrays), " ", name(phi), "$ = ", name(phi.getOperands().get(index)), ";");
+            }
+        }
+        for (Ir.Phi phi : phis) {
+            if (phi.getOperands().get(index) == phi)
+                continue;
+            newline(indent);
+            print(name(phi), " = ", copy ? name(phi) + "$" : name(phi.getOperands().get(index)), ";");
+        }
+        newline(indent);
+        print("block$ = ", target.getId(), ";");
+    }
+
+    private static String expression(Ir.Binary binary) {
+        String left = name(binary.getLeft());
+        String right = name(binary.getRight());
+        // Strings are compared by value in PLC
+        if (binary.getLeft().getType().equals(Environment.Type.STRING) && binary.getOperator().equals("=="))
+            return left + ".equals(" + right + ")";
+        if (binary.getLeft().getType().equals(Environment.Type.STRING) && binary.getOperator().equals("!="))
+            return "!" + left + ".equals(" + right + ")";
+        if (binary.getOperator().equals("^"))
+            return "(int) Math.pow(" + left + ", " + right + ")";
+        return left + " " + binary.getOperator() + " " + right;
+    }
+
+    private static String name(Ir.Value value) {
+        return switch (value) {
+            case Ir.Constant constant -> constant(constant);
+            case Ir.Parameter parameter -> parameter.getName();
+            default -> "v$" + value.getNumber();
+        };
+    }
+
+    private static String constant(Ir.Constant constant) {
+        return switch (constant.getValue()) {
+            // NIL values of primitive types are only read before assignment
+            case null -> initial(constant);
+            case String s -> "\"" + s + "\"";
+            case Character c -> "'" + c + "'";
+            case BigDecimal d -> d.toString();
+            default -> constant.getValue().toString();
+        };
+    }
+
+    private static String initial(Ir.Value value) {
+        Environment.Type type = value.getType();
+        if (type.equals(Environment.Type.INTEGER))
+            return "0";
+        if (type.equals(Environment.Type.DECIMAL))
+            return "0.0";
+        if (type.equals(Environment.Type.BOOLEAN))
+            return "false";
+        if (type.equals(Environment.Type.CHARACTER))
+            return "'\\0'";
+        return "null";
+    }
+
+    private static String type(Ir.Value value, Set<Ir.Value> arrays) {
+        return value.getType().getJvmName() + (arrays.contains(value) ? "[]" : "");
+    }
+
+    /**
+     * Returns true if the instruction produces a value Java can store.
+     */
+    private static boolean hasValue(Ir.Instruction instruction) {
+        return !(instruction instanceof Ir.Terminator) && !instruction.getType().equals(Environment.Type.NIL);
+    }
+
+    private static Set<Environment.Variable> lists(Ir.Program program) {
+        Set<Environment.Variable> lists = identitySet();
+        for (Ast.Global global : program.getGlobals()) {
+            if (global.getValue().isPresent() && global.getValue().get() instanceof Ast.Expression.PlcList)
+                lists.add(global.getVariable());
+        }
+        return lists;
+    }
+
+    /**
+     * Returns the values holding lists, which are arrays in Java: loads of
+     * {@code LIST} globals, parameters indexed in the function, and phi nodes
+     * merging any of those.
+     */
+    private static Set<Ir.Value> arrays(Ir.Function function, Set<Environment.Variable> lists) {
+        Set<Ir.Value> arrays = identitySet();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (instruction instanceof Ir.Load load && lists.contains(load.getVariable()))
+                    arrays.add(load);
+                else if (instruction instanceof Ir.LoadElement load)
+                    arrays.add(load.getList());
+                else if (instruction instanceof Ir.StoreElement store)
+                    arrays.add(store.getList());
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                for (Ir.Phi phi : block.getPhis()) {
+                    if (phi.getOperands().stream().anyMatch(arrays::contains))
+                        changed |= arrays.add(phi);
+                }
+            }
+        }
+        return arrays;
+    }
+
+    private static <T> Set<T> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
@@ -0,0 +1,130 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs an {@link Ir.Program} with the same results as the {@link Interpreter}
+ * running the source it was lowered from. The Interpreter still evaluates the
+ * initializers of globals and provides the builtin functions, and operators
+ * share its implementation; the values of each call are kept in an array
+ * indexed by their numbers.
+ */
+public final class IrInterpreter {
+
+    private final Interpreter interpreter;
+    private final Map<Environment.Function, Ir.Function> functions = new IdentityHashMap<>();
+    private final Map<Environment.Variable, Environment.Variable> globals = new IdentityHashMap<>();
+
+    public IrInterpreter(Scope parent) {
+        interpreter = new Interpreter(parent);
+    }
+
+    /**
+     * Defines the globals and functions of the program, then calls its
+     * {@code main} function.
+     */
+    public Environment.PlcObject execute(Ir.Program program) {
+        for (Ast.Global global : program.getGlobals()) {
+            interpreter.visit(global);
+            globals.put(global.getVariable(), interpreter.getScope().lookupVariable(global.getName()));
+        }
+        for (Ir.Function function : program.getFunctions()) {
+            function.number();
+            functions.put(function.getFunction(), function);
+        }
+        Ir.Function main = program.getFunctions().stream()
+                .filter(function -> function.getName().equals("main") && function.getParameters().isEmpty())
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("The function main/0 is not defined."));
+        return call(main, List.of());
+    }
+
+    private Environment.PlcObject call(Ir.Function function, List<Environment.PlcObject> arguments) {
+        Environment.PlcObject[] values = new Environment.PlcObject[function.getValueCount()];
+        for (int i = 0; i < arguments.size(); i++)
+            values[function.getParameters().get(i).getNumber()] = arguments.get(i);
+        Ir.Block previous = null;
+        Ir.Block block = function.getEntry();
+        while (true) {
+            if (!block.getPhis().isEmpty()) {
+                // phi nodes all take their values along the edge at once
+                int index = block.getPredecessors().indexOf(previous);
+                Environment.PlcObject[] incoming = new Environment.PlcObject[block.getPhis().size()];
+                for (int i = 0; i < incoming.length; i++)
+                    incoming[i] = value(block.getPhis().get(i).getOperands().get(index), values);
+                for (int i = 0; i < incoming.length; i++)
+                    values[block.getPhis().get(i).getNumber()] = incoming[i];
+            }
+            for (Ir.Instruction instruction : block.getBody())
+                values[instruction.getNumber()] = execute(instruction, values);
+            previous = block;
+            switch (block.getTerminator().orElseThrow()) {
+                case Ir.Return ret -> {
+                    return value(ret.getValue(), values);
+                }
+                case Ir.Jump jump -> block = jump.getTarget();
+                case Ir.Branch branch -> block = Boolean.TRUE.equals(value(branch.getCondition(), values).getValue())
+                        ? branch.getThenBlock() : branch.getElseBlock();
+                default -> throw new RuntimeException("Unknown terminator " + block.getTerminator().get());
+            }
+        }
+    }
+
+    private Environment.PlcObject execute(Ir.Instruction instruction, Environment.PlcObject[] values) {
+        switch (instruction) {
+            case Ir.Binary binary:
+                return Interpreter.evaluate(null, binary.getOperator(), value(binary.getLeft(), values), value(binary.getRight(), values));
+            case Ir.Call call:
+                List<Environment.PlcObject> arguments = new ArrayList<>();
+                call.getArguments().forEach(argument -> arguments.add(value(argument, values)));
+                if (functions.containsKey(call.getFunction()))
+                    return call(functions.get(call.getFunction()), arguments);
+                return interpreter.getScope().lookupFunction(call.getFunction().getName(), arguments.size()).invoke(arguments);
+            case Ir.Load load:
+                return global(load.getVariable()).getValue();
+            case Ir.Store store:
+                global(store.getVariable()).setValue(value(store.getValue(), values));
+                return Environment.NIL;
+            case Ir.LoadElement load:
+                return Environment.create(list(load.getList(), values).get(offset(load.getList(), load.getOffset(), values)));
+            case Ir.StoreElement store:
+                list(store.getList(), values).set(offset(store.getList(), store.getOffset(), values), value(store.getValue(), values).getValue());
+                return Environment.NIL;
+            default:
+                throw new RuntimeException("Unknown instruction " + instruction);
+        }
+    }
+
+    private Environment.Variable global(Environment.Variable variable) {
+        Environment.Variable global = globals.get(variable);
+        if (global == null)
+            throw new RuntimeException("The variable " + variable.getName() + " is not defined in this scope.");
+        return global;
+    }
+
+    private static Environment.PlcObject value(Ir.Value value, Environment.PlcObject[] values) {
+        if (value instanceof Ir.Constant constant)
+            return constant.getValue() == null ? Environment.NIL : Environment.create(constant.getValue());
+        return values[value.getNumber()];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Ir.Value list, Environment.PlcObject[] values) {
+        if (!(value(list, values).getValue() instanceof List<?> elements))
+            throw new RuntimeException("Expected type java.util.List, received " + value(list, values).getValue().getClass().getName() + ".");
+        return (List<Object>) elements;
+    }
+
+    private static int offset(Ir.Value list, Ir.Value offset, Environment.PlcObject[] values) {
+        if (!(value(offset, values).getValue() instanceof BigInteger index))
+            throw new RuntimeException("Expected BigInteger type for offset");
+        if (index.signum() < 0 || index.compareTo(BigInteger.valueOf(list(list, values).size())) >= 0)
+            throw new RuntimeException("Offset is out of list bounds");
+        return index.intValue();
+    }
+
+}
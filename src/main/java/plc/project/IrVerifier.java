@@ -0,0 +1,117 @@
+package plc.project;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks that an {@link Ir.Function} is well formed: every block ends in a
+ * terminator, the predecessors of each block match the edges into it, each
+ * phi node has one operand per predecessor, and every value is defined
+ * before it is used on all paths, which in SSA form means its definition
+ * dominates the use. Passes over the IR can be checked with this between
+ * runs.
+ */
+public final class IrVerifier {
+
+    private IrVerifier() {}
+
+    public static void verify(Ir.Program program) {
+        program.getFunctions().forEach(IrVerifier::verify);
+    }
+
+    public static void verify(Ir.Function function) {
+        Map<Ir.Value, Ir.Block> definitions = new IdentityHashMap<>();
+        for (Ir.Block block : function.getBlocks()) {
+            if (block.getTerminator().isEmpty())
+                throw new RuntimeException(block.getName() + " in " + function.getName() + " has no terminator.");
+            for (Ir.Block successor : block.getSuccessors()) {
+                if (!function.getBlocks().contains(successor))
+                    throw new RuntimeException(block.getName() + " in " + function.getName() + " jumps to a removed block.");
+                long edges = block.getSuccessors().stream().filter(target -> target == successor).count();
+                long entries = successor.getPredecessors().stream().filter(predecessor -> predecessor == block).count();
+                if (edges != entries)
+                    throw new RuntimeException(successor.getName() + " in " + function.getName() + " does not list " + block.getName() + " as a predecessor.");
+            }
+            for (Ir.Block predecessor : block.getPredecessors()) {
+                if (!predecessor.getSuccessors().contains(block))
+                    throw new RuntimeException(block.getName() + " in " + function.getName() + " lists " + predecessor.getName() + " as a predecessor.");
+            }
+            for (Ir.Phi phi : block.getPhis()) {
+                if (phi.getOperands().size() != block.getPredecessors().size())
+                    throw new RuntimeException("A phi node in " + block.getName() + " of " + function.getName() + " does not match its predecessors.");
+            }
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (definitions.put(instruction, block) != null)
+                    throw new RuntimeException("An instruction appears twice in " + function.getName() + ".");
+            }
+        }
+        function.getParameters().forEach(parameter -> definitions.put(parameter, function.getEntry()));
+
+        Dataflow.Result<Set<Ir.Block>> dominators = new Dominators().solve(function);
+        for (Ir.Block block : Dataflow.reversePostorder(function)) {
+            List<Ir.Instruction> instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                Ir.Instruction instruction = instructions.get(i);
+                for (int j = 0; j < instruction.getOperands().size(); j++) {
+                    Ir.Value operand = instruction.getOperands().get(j);
+                    if (operand instanceof Ir.Constant)
+                        continue;
+                    Ir.Block definition = definitions.get(operand);
+                    // phi operands are used at the end of their predecessor
+                    Ir.Block use = instruction instanceof Ir.Phi ? block.getPredecessors().get(j) : block;
+                    boolean dominates = definition != null && dominators.getAfter(use).contains(definition)
+                            && (definition != block || instruction instanceof Ir.Phi || operand instanceof Ir.Parameter
+                                || instructions.subList(0, i).contains(operand));
+                    if (!dominates)
+                        throw new RuntimeException(operand.getName() + " may be used before it is defined in " + function.getName() + ".");
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the blocks on every path from the entry to each block,
+     * including the block itself.
+     */
+    private static final class Dominators extends Dataflow<Set<Ir.Block>> {
+
+        private Dominators() {
+            super(true);
+        }
+
+        @Override
+        protected Set<Ir.Block> boundary(Ir.Function function) {
+            return Set.of();
+        }
+
+        @Override
+        protected Set<Ir.Block> initial(Ir.Function function) {
+            return identitySet(function.getBlocks());
+        }
+
+        @Override
+        protected Set<Ir.Block> join(Set<Ir.Block> first, Set<Ir.Block> second) {
+            Set<Ir.Block> joined = identitySet(first);
+            joined.retainAll(second);
+            return joined;
+        }
+
+        @Override
+        protected Set<Ir.Block> transfer(Ir.Block block, Set<Ir.Block> facts) {
+            Set<Ir.Block> dominators = identitySet(facts);
+            dominators.add(block);
+            return dominators;
+        }
+
+        private static Set<Ir.Block> identitySet(Iterable<Ir.Block> blocks) {
+            Set<Ir.Block> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            blocks.forEach(set::add);
+            return set;
+        }
+
+    }
+
+}
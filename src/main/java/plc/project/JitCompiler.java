@@ -0,0 +1,494 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Compiles an analyzed {@link Ast.Function} to JVM bytecode, the top tier of
+ * the {@link Interpreter}. The function becomes a static method of a hidden
+ * class taking an array of constants and the arguments, with its frame slots
+ * in local variables and its values unwrapped from their PlcObjects.
+ * Operations call the static helpers below, which handle Integers directly
+ * and delegate everything else to the Interpreter, and calls look up the
+ * function in the scope each time so that they reach compiled callees.
+ *
+ * A single loop can also be compiled, for on-stack replacement of a loop
+ * that runs long in a function that is invoked rarely.
+ *
+ * Functions with names the Analyzer did not resolve, or with {@code &&} or
+ * {@code ||} operands calling functions, which the Interpreter evaluates
+ * repeatedly, are not compiled.
+ */
+final class JitCompiler {
+
+    private static final String SELF = "plc/project/JitCompiler";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String BINARY = "(" + OBJECT + OBJECT + ")" + OBJECT;
+    // returned by a loop compiled for on-stack replacement once it exits
+    private static final Object EXIT = new Object();
+
+    private final List<Environment.Variable> globals;
+    private final Scope scope;
+    private final List<Object> constants = new ArrayList<>();
+    private ClassFile.Method code = null;
+    private int frameSize = 0;
+    private int switches = 0;
+
+    /**
+     * Creates a compiler for functions of a source whose globals are those
+     * defined by the Interpreter, indexed by slot, and whose calls are
+     * looked up in the given scope.
+     */
+    JitCompiler(List<Environment.Variable> globals, Scope scope) {
+        this.globals = globals;
+        this.scope = scope;
+    }
+
+    /**
+     * Returns the compiled function, throwing a RuntimeException if it
+     * cannot be compiled.
+     */
+    java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> compile(Ast.Function ast) {
+        if (ast.getFrameSize() < 0)
+            throw new RuntimeException("The function " + ast.getName() + " has not been analyzed.");
+        ClassFile file = begin(ast.getName(), ast.getFrameSize());
+        for (int slot = 0; slot < frameSize; slot++) {
+            if (slot < ast.getParameters().size()) {
+                code.load(1);
+                code.constant(slot);
+                code.instruction(ClassFile.AALOAD);
+            } else {
+                code.instruction(ClassFile.ACONST_NULL);
+            }
+            code.store(2 + slot);
+        }
+        ast.getStatements().forEach(this::statement);
+        constant(Environment.NIL.getValue());
+        code.instruction(ClassFile.ARETURN);
+
+        MethodHandle run = load(file, ast.getName());
+        return args -> {
+            Object[] values = new Object[args.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = args.get(i).getValue();
+            return wrap(invoke(run, values));
+        };
+    }
+
+    /**
+     * Compiles a loop of a function for on-stack replacement. The result
+     * runs the loop from its condition on the values in the frame, stores
+     * them back once it exits and returns empty, or returns the value of a
+     * RETURN in the loop.
+     */
+    java.util.function.Function<Environment.PlcObject[], Optional<Environment.PlcObject>> compile(Ast.Statement.While ast, String function, int frameSize) {
+        ClassFile file = begin(function, frameSize);
+        for (int slot = 0; slot < frameSize; slot++) {
+            code.load(1);
+            code.constant(slot);
+            code.instruction(ClassFile.AALOAD);
+            code.store(2 + slot);
+        }
+        statement(ast);
+        for (int slot = 0; slot < frameSize; slot++) {
+            code.load(1);
+            code.constant(slot);
+            code.load(2 + slot);
+            code.instruction(ClassFile.AASTORE);
+        }
+        constant(EXIT);
+        code.instruction(ClassFile.ARETURN);
+
+        MethodHandle run = load(file, function);
+        return frame -> {
+            Object[] values = new Object[frame.length];
+            for (int i = 0; i < values.length; i++)
+                values[i] = frame[i] == null ? null : frame[i].getValue();
+            Object result = invoke(run, values);
+            if (result != EXIT)
+                return Optional.of(wrap(result));
+            for (int i = 0; i < values.length; i++)
+                frame[i] = values[i] == null ? null : wrap(values[i]);
+            return Optional.empty();
+        };
+    }
+
+    private ClassFile begin(String name, int frameSize) {
+        ClassFile file = new ClassFile("plc/project/Jit$" + name);
+        code = file.method("run", "([Ljava/lang/Object;[Ljava/lang/Object;)" + OBJECT);
+        this.frameSize = frameSize;
+        return file;
+    }
+
+    /**
+     * Defines the class as a hidden class and returns its method, with the
+     * constants bound as the first argument.
+     */
+    private MethodHandle load(ClassFile file, String name) {
+        MethodHandle handle;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(file.toBytes(), true);
+            handle = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(Object.class, Object[].class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("The function " + name + " could not be loaded.", e);
+        }
+        return MethodHandles.insertArguments(handle, 0, (Object) constants.toArray());
+    }
+
+    private static Object invoke(MethodHandle run, Object[] values) {
+        try {
+            return (Object) run.invokeExact(values);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void statement(Ast.Statement ast) {
+        switch (ast) {
+            case Ast.Statement.Expression statement -> {
+                // like the Interpreter, only calls are evaluated
+                if (statement.getExpression() instanceof Ast.Expression.Function) {
+                    expression(statement.getExpression());
+                    code.instruction(ClassFile.POP);
+                }
+            }
+            case Ast.Statement.Declaration declaration -> {
+                if (declaration.getValue().isPresent())
+                    expression(declaration.getValue().get());
+                else
+                    constant(Environment.NIL.getValue());
+                code.store(local(declaration.getSlot()));
+            }
+            case Ast.Statement.Assignment assignment -> assignment(assignment);
+            case Ast.Statement.If statement -> {
+                ClassFile.Label otherwise = new ClassFile.Label();
+                ClassFile.Label end = new ClassFile.Label();
+                condition(statement.getCondition());
+                code.jump(ClassFile.IFEQ, otherwise);
+                statement.getThenStatements().forEach(this::statement);
+                code.jump(ClassFile.GOTO, end);
+                code.place(otherwise);
+                statement.getElseStatements().forEach(this::statement);
+                code.place(end);
+            }
+            case Ast.Statement.Switch statement -> switchStatement(statement);
+            case Ast.Statement.Case statement -> statement.getStatements().forEach(this::statement);
+            case Ast.Statement.While statement -> {
+                ClassFile.Label start = new ClassFile.Label();
+                ClassFile.Label end = new ClassFile.Label();
+                code.place(start);
+                condition(statement.getCondition());
+                code.jump(ClassFile.IFEQ, end);
+                statement.getStatements().forEach(this::statement);
+                code.jump(ClassFile.GOTO, start);
+                code.place(end);
+            }
+            case Ast.Statement.Return statement -> {
+                expression(statement.getValue());
+                code.instruction(ClassFile.ARETURN);
+            }
+            default -> throw new AssertionError(ast.getClass());
+        }
+    }
+
+    private void assignment(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access receiver))
+            throw new RuntimeException("Expected Access Type");
+        boolean local = isLocal(receiver);
+        if (!local) {
+            constant(global(receiver));
+            invoke("mutable", "(" + OBJECT + ")" + OBJECT);
+        } else if (receiver.getOffset().isPresent()) {
+            code.load(local(receiver.getSlot()));
+        }
+        if (receiver.getOffset().isPresent()) {
+            expression(receiver.getOffset().get());
+            expression(ast.getValue());
+            invoke(local ? "set" : "setGlobal", "(" + OBJECT + OBJECT + OBJECT + ")V");
+        } else if (local) {
+            expression(ast.getValue());
+            code.store(local(receiver.getSlot()));
+        } else {
+            expression(ast.getValue());
+            invoke("store", "(" + OBJECT + OBJECT + ")V");
+        }
+    }
+
+    /**
+     * Compiles a switch to a chain of comparisons, which finds the same case
+     * as the Analyzer's table since case values are distinct literals.
+     */
+    private void switchStatement(Ast.Statement.Switch ast) {
+        int condition = 2 + frameSize + switches++;
+        expression(ast.getCondition());
+        code.store(condition);
+        List<Ast.Statement.Case> cases = ast.getCases();
+        List<ClassFile.Label> labels = new ArrayList<>();
+        for (int i = 0; i < cases.size(); i++) {
+            labels.add(new ClassFile.Label());
+            if (i < cases.size() - 1 && cases.get(i).getValue().isPresent()) {
+                expression(cases.get(i).getValue().get());
+                code.load(condition);
+                code.invoke(ClassFile.INVOKEVIRTUAL, "java/lang/Object", "equals", "(" + OBJECT + ")Z");
+                code.jump(ClassFile.IFNE, labels.get(i));
+            }
+        }
+        code.jump(ClassFile.GOTO, labels.getLast());
+        ClassFile.Label end = new ClassFile.Label();
+        for (int i = 0; i < cases.size(); i++) {
+            code.place(labels.get(i));
+            statement(cases.get(i));
+            code.jump(ClassFile.GOTO, end);
+        }
+        code.place(end);
+        switches--;
+    }
+
+    private void condition(Ast.Expression ast) {
+        expression(ast);
+        invoke("test", "(" + OBJECT + ")Z");
+    }
+
+    private void expression(Ast.Expression ast) {
+        switch (ast) {
+            case Ast.Expression.Literal literal -> constant(literal.getLiteral() == null ? Environment.NIL.getValue() : literal.getLiteral());
+            case Ast.Expression.Group group -> expression(group.getExpression());
+            case Ast.Expression.Binary binary -> binary(binary);
+            case Ast.Expression.Access access -> {
+                if (access.getOffset().isEmpty()) {
+                    load(access);
+                } else if (access.isInBounds()) {
+                    load(access);
+                    expression(access.getOffset().get());
+                    invoke("element", BINARY);
+                } else {
+                    expression(access.getOffset().get());
+                    load(access);
+                    invoke("index", BINARY);
+                }
+            }
+            case Ast.Expression.Function function -> {
+                constant(new Call(scope, function.getName(), function.getArguments().size()));
+                array(function.getArguments());
+                invoke("call", "(" + OBJECT + "[" + OBJECT + ")" + OBJECT);
+            }
+            case Ast.Expression.PlcList list -> {
+                array(list.getValues());
+                invoke("list", "([" + OBJECT + ")" + OBJECT);
+            }
+            default -> throw new AssertionError(ast.getClass());
+        }
+    }
+
+    private void binary(Ast.Expression.Binary ast) {
+        switch (ast.getOperator()) {
+            case "&&", "||" -> {
+                if (calls(ast.getLeft()) || calls(ast.getRight()))
+                    throw new RuntimeException("Operands of " + ast.getOperator() + " calling functions are not compiled.");
+                boolean and = ast.getOperator().equals("&&");
+                ClassFile.Label shortCircuit = new ClassFile.Label();
+                ClassFile.Label end = new ClassFile.Label();
+                condition(ast.getLeft());
+                code.jump(and ? ClassFile.IFEQ : ClassFile.IFNE, shortCircuit);
+                expression(ast.getRight());
+                invoke(and ? "and" : "or", "(" + OBJECT + ")" + OBJECT);
+                code.jump(ClassFile.GOTO, end);
+                code.place(shortCircuit);
+                constant(!and);
+                code.place(end);
+            }
+            case "+", "-", "*", "<", ">" -> {
+                expression(ast.getLeft());
+                expression(ast.getRight());
+                invoke(switch (ast.getOperator()) {
+                    case "+" -> "add";
+                    case "-" -> "subtract";
+                    case "*" -> "multiply";
+                    case "<" -> "less";
+                    default -> "greater";
+                }, BINARY);
+            }
+            default -> {
+                constant(ast.getOperator());
+                expression(ast.getLeft());
+                expression(ast.getRight());
+                invoke("binary", "(" + OBJECT + OBJECT + OBJECT + ")" + OBJECT);
+            }
+        }
+    }
+
+    private void load(Ast.Expression.Access ast) {
+        if (isLocal(ast)) {
+            code.load(local(ast.getSlot()));
+        } else {
+            constant(global(ast));
+            invoke("load", "(" + OBJECT + ")" + OBJECT);
+        }
+    }
+
+    /**
+     * Pushes a new array of the values of the expressions.
+     */
+    private void array(List<Ast.Expression> expressions) {
+        code.constant(expressions.size());
+        code.type(ClassFile.ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < expressions.size(); i++) {
+            code.instruction(ClassFile.DUP);
+            code.constant(i);
+            expression(expressions.get(i));
+            code.instruction(ClassFile.AASTORE);
+        }
+    }
+
+    private void constant(Object value) {
+        code.load(0);
+        code.constant(constants.size());
+        code.instruction(ClassFile.AALOAD);
+        constants.add(value);
+    }
+
+    private void invoke(String name, String descriptor) {
+        code.invoke(ClassFile.INVOKESTATIC, SELF, name, descriptor);
+    }
+
+    private int local(int slot) {
+        if (slot < 0 || slot >= frameSize)
+            throw new RuntimeException("The slot " + slot + " is not in the frame.");
+        return 2 + slot;
+    }
+
+    private static boolean isLocal(Ast.Expression.Access ast) {
+        if (!ast.hasAddress())
+            throw new RuntimeException("The variable " + ast.getName() + " has not been resolved.");
+        return ast.getDepth() == Ast.Expression.Access.LOCAL;
+    }
+
+    private Environment.Variable global(Ast.Expression.Access ast) {
+        if (ast.getSlot() >= globals.size() || globals.get(ast.getSlot()) == null)
+            throw new RuntimeException("The global " + ast.getName() + " has not been defined.");
+        return globals.get(ast.getSlot());
+    }
+
+    private static boolean calls(Ast.Expression ast) {
+        return switch (ast) {
+            case Ast.Expression.Function function -> true;
+            case Ast.Expression.Group group -> calls(group.getExpression());
+            case Ast.Expression.Binary binary -> calls(binary.getLeft()) || calls(binary.getRight());
+            case Ast.Expression.Access access -> access.getOffset().isPresent() && calls(access.getOffset().get());
+            case Ast.Expression.PlcList list -> list.getValues().stream().anyMatch(JitCompiler::calls);
+            default -> false;
+        };
+    }
+
+    private record Call(Scope scope, String name, int arity) {}
+
+    static Environment.PlcObject wrap(Object value) {
+        return value == Environment.NIL.getValue() ? Environment.NIL : Environment.create(value);
+    }
+
+    static Object load(Object variable) {
+        return ((Environment.Variable) variable).getValue().getValue();
+    }
+
+    static Object mutable(Object variable) {
+        if (!((Environment.Variable) variable).getMutable())
+            throw new RuntimeException("Modification of Immutable Type");
+        return variable;
+    }
+
+    static void store(Object variable, Object value) {
+        ((Environment.Variable) variable).setValue(wrap(value));
+    }
+
+    static boolean test(Object value) {
+        return Interpreter.requireType(Boolean.class, wrap(value));
+    }
+
+    static Object and(Object right) {
+        return right instanceof Boolean ? right : Boolean.TRUE;
+    }
+
+    static Object or(Object right) {
+        return right instanceof Boolean ? right : Boolean.FALSE;
+    }
+
+    static Object add(Object left, Object right) {
+        if (left instanceof BigInteger l && right instanceof BigInteger r)
+            return l.add(r);
+        return binary("+", left, right);
+    }
+
+    static Object subtract(Object left, Object right) {
+        if (left instanceof BigInteger l && right instanceof BigInteger r)
+            return l.subtract(r);
+        return binary("-", left, right);
+    }
+
+    static Object multiply(Object left, Object right) {
+        if (left instanceof BigInteger l && right instanceof BigInteger r)
+            return l.multiply(r);
+        return binary("*", left, right);
+    }
+
+    static Object less(Object left, Object right) {
+        if (left instanceof BigInteger l && right instanceof BigInteger r)
+            return l.compareTo(r) < 0;
+        return binary("<", left, right);
+    }
+
+    static Object greater(Object left, Object right) {
+        if (left instanceof BigInteger l && right instanceof BigInteger r)
+            return l.compareTo(r) > 0;
+        return binary(">", left, right);
+    }
+
+    static Object binary(Object operator, Object left, Object right) {
+        return Interpreter.evaluate(null, (String) operator, wrap(left), wrap(right)).getValue();
+    }
+
+    static Object index(Object offset, Object list) {
+        if (!(offset instanceof BigInteger index))
+            throw new RuntimeException("Expected BigDecimal type for offset access");
+        List<?> values = Interpreter.requireType(List.class, wrap(list));
+        if (index.intValue() < 0 || index.intValue() >= values.size())
+            throw new RuntimeException("Offset is out of list bounds");
+        return values.get(index.intValue());
+    }
+
+    static Object element(Object list, Object offset) {
+        return ((List<?>) list).get(((BigInteger) offset).intValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    static void set(Object list, Object offset, Object value) {
+        if (!(offset instanceof BigInteger index))
+            throw new RuntimeException("Expected BigInteger type for offset");
+        Interpreter.requireType(List.class, wrap(list)).set(index.intValue(), value);
+    }
+
+    static void setGlobal(Object variable, Object offset, Object value) {
+        set(load(variable), offset, value);
+    }
+
+    static Object call(Object site, Object[] arguments) {
+        Call call = (Call) site;
+        Environment.Function function = call.scope().lookupFunction(call.name(), call.arity());
+        List<Environment.PlcObject> values = new ArrayList<>(arguments.length);
+        for (Object argument : arguments)
+            values.add(wrap(argument));
+        return function.invoke(values).getValue();
+    }
+
+    static Object list(Object[] values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+}
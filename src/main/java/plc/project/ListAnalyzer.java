@@ -0,0 +1,296 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which variables may hold each list created by a {@code LIST}
+ * global. Lists are shared by reference, so assigning an element through any
+ * of those aliases (including parameters of functions it is passed to and
+ * variables holding their results) changes the list for all of them.
+ *
+ * A list escapes when it is passed to a function without a body in the
+ * source (such as {@code print}) or stored as an element of a list, since
+ * the analysis cannot follow it from there; escaped lists are assumed to be
+ * mutated. Lists that are never mutated can be treated as constants by
+ * later passes, which should also check that the global itself is never
+ * reassigned. The analysis is flow-insensitive: a variable that holds a list
+ * anywhere in a function is considered an alias everywhere.
+ */
+public final class ListAnalyzer implements Ast.Visitor<Set<ListAnalyzer.Node>> {
+
+    /**
+     * A variable, parameter or function result that may hold lists.
+     */
+    static final class Node {
+
+        private Environment.Variable variable = null;
+        private final Set<Node> targets = identitySet();
+        private final Set<Ast.Global> lists = identitySet();
+        private boolean mutated = false;
+        private boolean escaped = false;
+
+    }
+
+    private final Map<Environment.Variable, Ast.Global> globals = new IdentityHashMap<>();
+    private final Map<Environment.Function, Ast.Function> functions = new IdentityHashMap<>();
+    private final Map<Environment.Variable, Node> variables = new IdentityHashMap<>();
+    private final Map<Environment.Function, Node[]> parameters = new IdentityHashMap<>();
+    private final Map<Environment.Function, Node> results = new IdentityHashMap<>();
+    private Ast.Function function = null;
+
+    /**
+     * Returns true if an element of the list created by the given global may
+     * be assigned after its creation.
+     */
+    public boolean isMutated(Environment.Variable list) {
+        return holders(list).stream().anyMatch(node -> node.mutated || node.escaped);
+    }
+
+    /**
+     * Returns true if the list created by the given global may reach code
+     * the analysis cannot see.
+     */
+    public boolean escapes(Environment.Variable list) {
+        return holders(list).stream().anyMatch(node -> node.escaped);
+    }
+
+    /**
+     * Returns the variables and parameters other than the global itself that
+     * may hold the list created by the given global.
+     */
+    public Set<Environment.Variable> getAliases(Environment.Variable list) {
+        Set<Environment.Variable> aliases = identitySet();
+        for (Node node : holders(list)) {
+            if (node.variable != null && node.variable != list)
+                aliases.add(node.variable);
+        }
+        return aliases;
+    }
+
+    private List<Node> holders(Environment.Variable list) {
+        Ast.Global global = globals.get(list);
+        if (global == null)
+            throw new IllegalArgumentException("The variable " + list.getName() + " is not a list.");
+        List<Node> holders = new ArrayList<>();
+        for (Node node : nodes()) {
+            if (node.lists.contains(global))
+                holders.add(node);
+        }
+        return holders;
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Source ast) {
+        ast.getFunctions().forEach(function -> functions.put(function.getFunction(), function));
+        ast.getGlobals().forEach(this::visit);
+        ast.getFunctions().forEach(this::visit);
+        propagate();
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Global ast) {
+        Node node = node(ast.getVariable());
+        if (ast.getValue().isPresent() && ast.getValue().get() instanceof Ast.Expression.PlcList list) {
+            globals.put(ast.getVariable(), ast);
+            node.lists.add(ast);
+            visit(list);
+        } else if (ast.getValue().isPresent()) {
+            flow(visit(ast.getValue().get()), node);
+        }
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Function ast) {
+        function = ast;
+        ast.getStatements().forEach(this::visit);
+        function = null;
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.Expression ast) {
+        visit(ast.getExpression());
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.Declaration ast) {
+        if (ast.getValue().isPresent())
+            flow(visit(ast.getValue().get()), node(ast.getVariable()));
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.Assignment ast) {
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        if (receiver.getOffset().isPresent()) {
+            visit(receiver.getOffset().get());
+            node(receiver).mutated = true;
+            // a list stored in another list can no longer be followed
+            visit(ast.getValue()).forEach(node -> node.escaped = true);
+        } else {
+            flow(visit(ast.getValue()), node(receiver));
+        }
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.If ast) {
+        visit(ast.getCondition());
+        ast.getThenStatements().forEach(this::visit);
+        ast.getElseStatements().forEach(this::visit);
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.Switch ast) {
+        visit(ast.getCondition());
+        ast.getCases().forEach(this::visit);
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.Case ast) {
+        ast.getValue().ifPresent(this::visit);
+        ast.getStatements().forEach(this::visit);
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.While ast) {
+        visit(ast.getCondition());
+        ast.getStatements().forEach(this::visit);
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Statement.Return ast) {
+        Set<Node> values = visit(ast.getValue());
+        if (function != null)
+            flow(values, result(function.getFunction()));
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Expression.Literal ast) {
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Expression.Binary ast) {
+        // operators only read their operands, and never produce a list
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Expression.Access ast) {
+        if (ast.getOffset().isEmpty())
+            return Set.of(node(ast));
+        // elements holding lists have escaped already
+        visit(ast.getOffset().get());
+        return Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Expression.Function ast) {
+        Ast.Function callee = functions.get(ast.getFunction());
+        for (int i = 0; i < ast.getArguments().size(); i++) {
+            Set<Node> values = visit(ast.getArguments().get(i));
+            if (callee != null)
+                flow(values, parameter(callee.getFunction(), i));
+            else
+                values.forEach(node -> node.escaped = true);
+        }
+        return callee != null ? Set.of(result(callee.getFunction())) : Set.of();
+    }
+
+    @Override
+    public Set<Node> visit(Ast.Expression.PlcList ast) {
+        for (Ast.Expression value : ast.getValues()) {
+            visit(value).forEach(node -> node.escaped = true);
+        }
+        return Set.of();
+    }
+
+    private Node node(Environment.Variable variable) {
+        return variables.computeIfAbsent(variable, key -> {
+            Node node = new Node();
+            node.variable = key;
+            return node;
+        });
+    }
+
+    private Node node(Ast.Expression.Access access) {
+        // parameters take the first slots of their function's frame
+        if (function != null && access.hasAddress() && access.getDepth() == Ast.Expression.Access.LOCAL
+                && access.getSlot() < function.getParameters().size()) {
+            Node node = parameter(function.getFunction(), access.getSlot());
+            node.variable = access.getVariable();
+            return node;
+        }
+        return node(access.getVariable());
+    }
+
+    private Node parameter(Environment.Function function, int index) {
+        Node[] nodes = parameters.computeIfAbsent(function, key -> new Node[key.getArity()]);
+        if (nodes[index] == null)
+            nodes[index] = new Node();
+        return nodes[index];
+    }
+
+    private Node result(Environment.Function function) {
+        return results.computeIfAbsent(function, key -> new Node());
+    }
+
+    private static void flow(Set<Node> sources, Node target) {
+        sources.forEach(source -> source.targets.add(target));
+    }
+
+    /**
+     * Moves the lists each node may hold along its flows until no node
+     * gains another.
+     */
+    private void propagate() {
+        Deque<Node> worklist = new ArrayDeque<>(nodes());
+        while (!worklist.isEmpty()) {
+            Node node = worklist.pop();
+            for (Node target : node.targets) {
+                if (target.lists.addAll(node.lists))
+                    worklist.push(target);
+            }
+        }
+    }
+
+    private List<Node> nodes() {
+        List<Node> nodes = new ArrayList<>(variables.values());
+        parameters.values().forEach(array -> {
+            for (Node node : array) {
+                if (node != null)
+                    nodes.add(node);
+            }
+        });
+        nodes.addAll(results.values());
+        return nodes;
+    }
+
+    private static <T> Set<T> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
@@ -0,0 +1,134 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves expressions out of {@code WHILE} loops when they are computed the
+ * same way on every iteration: pure expressions whose variables are neither
+ * assigned nor declared in the loop. Each is evaluated once into a
+ * {@code LET} temporary placed before the loop, and equal expressions share
+ * a temporary.
+ *
+ * Since moved expressions cannot fail or have effects, evaluating them even
+ * when the loop runs zero times cannot be observed. That includes failing on
+ * a variable that is still NIL, since arithmetic on a variable is only pure
+ * where the {@link NilAnalyzer} proved it assigned. Globals are considered
+ * invariant unless the loop calls a function that may write them. Inner
+ * loops are processed first, so an expression invariant in several nested
+ * loops moves out of all of them.
+ */
+public final class LoopInvariantMotion extends Rewriter {
+
+    // temporaries this pass declared for inner loops, which may move further
+    private final Set<Ast.Statement.Declaration> temporaries = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @Override
+    protected List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>();
+        for (Ast.Statement statement : statements) {
+            Ast.Statement rewritten = (Ast.Statement) visit(statement);
+            if (rewritten instanceof Ast.Statement.While loop)
+                result.addAll(hoist(loop));
+            else
+                result.add(rewritten);
+        }
+        return same(result, statements) ? statements : result;
+    }
+
+    /**
+     * Returns the temporaries for the loop's invariant expressions followed
+     * by the loop using them.
+     */
+    private List<Ast.Statement> hoist(Ast.Statement.While loop) {
+        Set<Environment.Variable> variant = assigned(loop);
+        variant.addAll(declared(loop));
+        boolean writesGlobals = writesGlobals(loop);
+
+        // Temporaries of inner loops at the top of the body move along with
+        // their values, once the variables they use are known invariant.
+        List<Ast.Statement> moved = new ArrayList<>();
+        List<Ast.Statement> body = new ArrayList<>();
+        for (Ast.Statement statement : loop.getStatements()) {
+            if (statement instanceof Ast.Statement.Declaration declaration && this.temporaries.contains(declaration)
+                    && usesInvariants(declaration.getValue().get(), variant, writesGlobals)) {
+                moved.add(declaration);
+                variant.remove(declaration.getVariable());
+            } else {
+                body.add(statement);
+            }
+        }
+
+        List<Ast.Statement.Declaration> temporaries = new ArrayList<>();
+        Rewriter motion = new Rewriter() {
+            @Override
+            protected Ast.Expression rewrite(Ast.Expression expression) {
+                if (!isInvariant(expression, variant, writesGlobals))
+                    return super.rewrite(expression);
+                // the temporary makes the parentheses unnecessary
+                Ast.Expression value = expression instanceof Ast.Expression.Group group ? group.getExpression() : expression;
+                for (Ast.Statement.Declaration temporary : temporaries) {
+                    if (temporary.getValue().get().equals(value))
+                        return access(temporary);
+                }
+                Ast.Statement.Declaration temporary = LoopInvariantMotion.this.temporary(LoopInvariantMotion.this.fresh("loop"), value.getType(), value);
+                temporaries.add(temporary);
+                LoopInvariantMotion.this.temporaries.add(temporary);
+                return access(temporary);
+            }
+        };
+        Ast.Expression condition = motion.rewrite(loop.getCondition());
+        List<Ast.Statement> statements = new ArrayList<>();
+        body.forEach(statement -> statements.add((Ast.Statement) motion.visit(statement)));
+        if (moved.isEmpty() && temporaries.isEmpty())
+            return List.of(loop);
+        List<Ast.Statement> result = new ArrayList<>(moved);
+        result.addAll(temporaries);
+        result.add(whileStatement(condition, statements));
+        return result;
+    }
+
+    /**
+     * Returns true if the expression is worth computing once before the loop
+     * and gives the same value on every iteration.
+     */
+    private static boolean isInvariant(Ast.Expression expression, Set<Environment.Variable> variant, boolean writesGlobals) {
+        if (expression instanceof Ast.Expression.Literal || expression instanceof Ast.Expression.Access
+                || expression instanceof Ast.Expression.Group group && !(group.getExpression() instanceof Ast.Expression.Binary))
+            return false;
+        return isPure(expression) && usesInvariants(expression, variant, writesGlobals);
+    }
+
+    /**
+     * Returns true if the expression only uses variables that do not change
+     * during the loop.
+     */
+    private static boolean usesInvariants(Ast.Expression expression, Set<Environment.Variable> variant, boolean writesGlobals) {
+        boolean[] invariant = {true};
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (variant.contains(ast.getVariable()) || ast.getDepth() != Ast.Expression.Access.LOCAL && writesGlobals)
+                    invariant[0] = false;
+                return ast;
+            }
+        }.visit(expression);
+        return invariant[0];
+    }
+
+    private static Set<Environment.Variable> declared(Ast ast) {
+        Set<Environment.Variable> variables = Collections.newSetFromMap(new IdentityHashMap<>());
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Statement.Declaration ast) {
+                variables.add(ast.getVariable());
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return variables;
+    }
+
+}
@@ -0,0 +1,466 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compiles an analyzed {@link Ast.Source} into trees of method handles over
+ * the frame of each function, composed with the combinators of
+ * {@link MethodHandles}: {@code guardWithTest} for branches,
+ * {@code filterArguments} to evaluate operands, {@code foldArguments} to
+ * sequence statements and {@code whileLoop} for loops. Since every handle
+ * in a tree is a constant, the JVM can inline through the whole tree of a
+ * hot function.
+ *
+ * Expressions take the frame and return their value, and statements return
+ * null to continue or the value of a {@code RETURN}, as in the
+ * {@link ClosureCompiler}. A function using something the compiler does not
+ * support, such as an impure operand of {@code &&} or {@code ||}, is left to
+ * an Interpreter, which also initializes the globals and provides the
+ * builtin functions.
+ */
+public final class MethodHandleCompiler {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Class<?> FRAME = Environment.PlcObject[].class;
+    private static final Class<?> OBJECT = Environment.PlcObject.class;
+
+    private static final Environment.PlcObject TRUE = Environment.create(Boolean.TRUE);
+    private static final Environment.PlcObject FALSE = Environment.create(Boolean.FALSE);
+
+    private static final MethodHandle CONTINUE = MethodHandles.empty(MethodType.methodType(OBJECT, FRAME));
+    private static final MethodHandle RETURNED = MethodHandles.dropArguments(find("returned", boolean.class, OBJECT), 1, FRAME);
+    private static final MethodHandle RESULT = MethodHandles.dropArguments(MethodHandles.identity(OBJECT), 1, FRAME);
+    private static final MethodHandle TEST = find("test", boolean.class, OBJECT);
+    private static final MethodHandle VALUE = find("value", Object.class, OBJECT);
+    private static final MethodHandle MATCHES = find("matches", boolean.class, OBJECT, Object.class);
+    private static final MethodHandle CASE = find("select", int.class, Map.class, int.class, Object.class);
+    private static final MethodHandle LOGICAL = find("logical", OBJECT, OBJECT, boolean.class);
+    private static final MethodHandle GLOBAL = find("global", Environment.Variable.class, Environment.Variable[].class, int.class);
+    private static final MethodHandle MUTABLE = find("mutable", Environment.Variable.class, Environment.Variable.class);
+    private static final MethodHandle LOAD = find("load", OBJECT, Environment.Variable.class);
+    private static final MethodHandle STORE = find("store", void.class, Environment.Variable.class, OBJECT);
+    private static final MethodHandle ELEMENT = find("element", OBJECT, OBJECT, OBJECT);
+    private static final MethodHandle INDEX = find("index", OBJECT, OBJECT, OBJECT);
+    private static final MethodHandle SET_ELEMENT = find("setElement", void.class, OBJECT, OBJECT, OBJECT);
+    private static final MethodHandle SET_INDEX = find("setIndex", void.class, OBJECT, OBJECT, OBJECT);
+    private static final MethodHandle LIST = find("create", OBJECT, FRAME);
+    private static final MethodHandle ENTER = find("enter", FRAME, int.class, FRAME);
+    private static final MethodHandle NIL = find("nil", OBJECT, OBJECT);
+    private static final MethodHandle CALL = find("call", OBJECT, MutableCallSite.class, FRAME);
+
+    private final Scope parent;
+    private final Map<String, MutableCallSite> functions = new HashMap<>();
+    private final List<String> interpreted = new ArrayList<>();
+    private Environment.Variable[] globals;
+
+    // the scope of the current execution
+    private Scope scope;
+
+    public MethodHandleCompiler(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the functions left to the Interpreter, such as {@code f/1}, in
+     * order.
+     */
+    public List<String> getInterpretedFunctions() {
+        return interpreted;
+    }
+
+    /**
+     * Compiles the source, returning a supplier that runs its {@code main}
+     * function with freshly initialized globals each time it is called.
+     */
+    public Supplier<Environment.PlcObject> compile(Ast.Source ast) {
+        for (Ast.Function function : ast.getFunctions()) {
+            if (function.getFrameSize() < 0)
+                throw new RuntimeException("The function " + function.getName() + "/" + function.getParameters().size() + " must be analyzed before it is compiled.");
+            functions.put(function.getName() + "/" + function.getParameters().size(), new MutableCallSite(MethodType.methodType(OBJECT, FRAME)));
+        }
+        globals = new Environment.Variable[ast.getGlobals().size()];
+        for (Ast.Function function : ast.getFunctions()) {
+            MutableCallSite site = functions.get(function.getName() + "/" + function.getParameters().size());
+            try {
+                MethodHandle body = MethodHandles.filterReturnValue(compile(function.getStatements()), NIL);
+                site.setTarget(MethodHandles.filterArguments(body, 0, MethodHandles.insertArguments(ENTER, 0, function.getFrameSize())));
+            } catch (RuntimeException e) {
+                interpreted.add(function.getName() + "/" + function.getParameters().size());
+                site.setTarget(MethodHandles.insertArguments(bind("invoke", OBJECT, String.class, FRAME), 0, function.getName()));
+            }
+        }
+        return () -> execute(ast);
+    }
+
+    private Environment.PlcObject execute(Ast.Source ast) {
+        Interpreter interpreter = new Interpreter(parent);
+        scope = interpreter.getScope();
+        for (Ast.Global global : ast.getGlobals()) {
+            interpreter.visit(global);
+            if (global.getSlot() >= 0)
+                globals[global.getSlot()] = scope.lookupVariable(global.getName());
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            String key = function.getName() + "/" + function.getParameters().size();
+            if (interpreted.contains(key)) {
+                interpreter.visit(function);
+                continue;
+            }
+            MutableCallSite site = functions.get(key);
+            scope.defineFunction(function.getName(), function.getParameters().size(), arguments -> call(site, arguments.toArray(new Environment.PlcObject[0])));
+        }
+        return scope.lookupFunction("main", 0).invoke(new ArrayList<>());
+    }
+
+    /**
+     * Sequences the statements, folding each into the rest of the block so
+     * that it runs first. A statement that may return is followed by a
+     * guard that returns its value if it is not null.
+     */
+    private MethodHandle compile(List<Ast.Statement> statements) {
+        MethodHandle block = CONTINUE;
+        for (Ast.Statement ast : statements.reversed()) {
+            // the Interpreter ignores expression statements other than calls
+            if (ast instanceof Ast.Statement.Expression expression && !(expression.getExpression() instanceof Ast.Expression.Function))
+                continue;
+            MethodHandle statement = compile(ast);
+            if (statement.type().returnType() == void.class)
+                block = MethodHandles.foldArguments(block, statement);
+            else if (block == CONTINUE)
+                block = statement;
+            else
+                block = MethodHandles.foldArguments(MethodHandles.guardWithTest(RETURNED, RESULT, MethodHandles.dropArguments(block, 0, OBJECT)), statement);
+        }
+        return block;
+    }
+
+    /**
+     * Returns a handle taking the frame, which returns nothing for a
+     * statement that cannot return.
+     */
+    private MethodHandle compile(Ast.Statement ast) {
+        switch (ast) {
+            case Ast.Statement.Expression statement:
+                return MethodHandles.dropReturn(compile(statement.getExpression()));
+            case Ast.Statement.Declaration declaration: {
+                MethodHandle value = declaration.getValue().isPresent()
+                        ? compile(declaration.getValue().get())
+                        : constant(Environment.NIL);
+                return apply(setter(declaration.getSlot()), MethodHandles.identity(FRAME), value);
+            }
+            case Ast.Statement.Assignment assignment:
+                return assignment(assignment);
+            case Ast.Statement.If statement: {
+                MethodHandle condition = MethodHandles.filterReturnValue(compile(statement.getCondition()), TEST);
+                return MethodHandles.guardWithTest(condition, compile(statement.getThenStatements()), compile(statement.getElseStatements()));
+            }
+            case Ast.Statement.Switch statement:
+                return switchStatement(statement);
+            case Ast.Statement.While statement: {
+                // the loop variable is the value returned by the body, ending the loop once it is not null
+                MethodHandle condition = MethodHandles.dropArguments(MethodHandles.filterReturnValue(compile(statement.getCondition()), TEST), 0, OBJECT);
+                MethodHandle predicate = MethodHandles.guardWithTest(RETURNED, MethodHandles.empty(MethodType.methodType(boolean.class, OBJECT, FRAME)), condition);
+                MethodHandle body = MethodHandles.dropArguments(compile(statement.getStatements()), 0, OBJECT);
+                return MethodHandles.whileLoop(CONTINUE, entry(predicate), entry(body));
+            }
+            case Ast.Statement.Return statement:
+                return compile(statement.getValue());
+            default:
+                throw new RuntimeException("Unknown statement " + ast);
+        }
+    }
+
+    private MethodHandle assignment(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access receiver))
+            throw new RuntimeException("Expected Access Type");
+        MethodHandle value = compile(ast.getValue());
+        boolean local = receiver.hasAddress() && receiver.getDepth() == Ast.Expression.Access.LOCAL;
+        if (receiver.getOffset().isEmpty() && local)
+            return apply(setter(receiver.getSlot()), MethodHandles.identity(FRAME), value);
+        // the variable is checked to be mutable before the value is evaluated
+        MethodHandle variable = local ? null : MethodHandles.filterReturnValue(variable(receiver), MUTABLE);
+        if (receiver.getOffset().isEmpty())
+            return MethodHandles.foldArguments(MethodHandles.filterArguments(STORE, 1, value), variable);
+        MethodHandle list = local ? getter(receiver.getSlot()) : MethodHandles.filterReturnValue(variable, LOAD);
+        return apply(receiver.isInBounds() ? SET_ELEMENT : SET_INDEX, list, compile(receiver.getOffset().get()), value);
+    }
+
+    private MethodHandle switchStatement(Ast.Statement.Switch ast) {
+        MethodHandle condition = MethodHandles.filterReturnValue(compile(ast.getCondition()), VALUE);
+        List<Ast.Statement.Case> cases = ast.getCases();
+        MethodHandle[] bodies = new MethodHandle[cases.size()];
+        for (int i = 0; i < cases.size(); i++)
+            bodies[i] = compile(cases.get(i).getStatements());
+        int last = bodies.length - 1;
+        if (ast.getTable().isPresent()) {
+            MethodHandle index = MethodHandles.filterReturnValue(condition, MethodHandles.insertArguments(CASE, 0, ast.getTable().get(), last));
+            MethodHandle[] targets = Arrays.stream(bodies).map(body -> MethodHandles.dropArguments(body, 0, int.class)).toArray(MethodHandle[]::new);
+            return MethodHandles.foldArguments(MethodHandles.tableSwitch(targets[last], targets), index);
+        }
+        // the last case runs if no other matched, as in the Interpreter
+        MethodHandle chain = MethodHandles.dropArguments(bodies[last], 0, Object.class);
+        for (int i = last - 1; i >= 0; i--) {
+            if (cases.get(i).getValue().isEmpty())
+                continue;
+            MethodHandle test = MethodHandles.filterArguments(MATCHES, 0, compile(cases.get(i).getValue().get()));
+            test = MethodHandles.permuteArguments(test, MethodType.methodType(boolean.class, Object.class, FRAME), 1, 0);
+            chain = MethodHandles.guardWithTest(test, MethodHandles.dropArguments(bodies[i], 0, Object.class), chain);
+        }
+        return MethodHandles.foldArguments(chain, condition);
+    }
+
+    private MethodHandle compile(Ast.Expression ast) {
+        switch (ast) {
+            case Ast.Expression.Literal literal:
+                return constant(literal.getLiteral() == null ? Environment.NIL : Environment.create(literal.getLiteral()));
+            case Ast.Expression.Group group:
+                return compile(group.getExpression());
+            case Ast.Expression.Binary binary:
+                return binary(binary);
+            case Ast.Expression.Access access:
+                return access(access);
+            case Ast.Expression.Function call:
+                return call(call);
+            case Ast.Expression.PlcList list:
+                return MethodHandles.filterReturnValue(arguments(list.getValues()), LIST);
+            default:
+                throw new RuntimeException("Unknown expression " + ast);
+        }
+    }
+
+    private MethodHandle binary(Ast.Expression.Binary ast) {
+        MethodHandle left = compile(ast.getLeft());
+        MethodHandle right = compile(ast.getRight());
+        if (ast.getOperator().equals("&&") || ast.getOperator().equals("||")) {
+            if (!Rewriter.isPure(ast.getLeft(), true) || !Rewriter.isPure(ast.getRight(), true))
+                throw new RuntimeException("The operands of " + ast.getOperator() + " are evaluated repeatedly by the Interpreter.");
+            boolean and = ast.getOperator().equals("&&");
+            // a right operand that is not a Boolean gives the left one
+            MethodHandle rightHand = MethodHandles.filterReturnValue(right, MethodHandles.insertArguments(LOGICAL, 1, and));
+            MethodHandle leftHand = constant(and ? FALSE : TRUE);
+            return MethodHandles.guardWithTest(MethodHandles.filterReturnValue(left, TEST), and ? rightHand : leftHand, and ? leftHand : rightHand);
+        }
+        MethodHandle operation;
+        try {
+            operation = LOOKUP.findVirtual(BinaryNode.class, "execute", MethodType.methodType(OBJECT, OBJECT, OBJECT)).bindTo(new BinaryNode(ast));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        return apply(operation, left, right);
+    }
+
+    private MethodHandle access(Ast.Expression.Access ast) {
+        boolean local = ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.LOCAL;
+        MethodHandle load = local ? getter(ast.getSlot()) : MethodHandles.filterReturnValue(variable(ast), LOAD);
+        if (ast.getOffset().isEmpty())
+            return load;
+        return apply(ast.isInBounds() ? ELEMENT : INDEX, compile(ast.getOffset().get()), load);
+    }
+
+    /**
+     * Calls a function of the source through its call site, which takes the
+     * arguments, so recursive and mutually recursive functions can be
+     * linked, and others through the scope. The target of the site is
+     * invoked rather than inlined, so each function is compiled on its own
+     * like a JVM method; inlining a recursive function into itself would
+     * grow its compilation until the JVM gives up on it.
+     */
+    private MethodHandle call(Ast.Expression.Function ast) {
+        MethodHandle arguments = arguments(ast.getArguments());
+        MutableCallSite site = functions.get(ast.getName() + "/" + ast.getArguments().size());
+        if (site == null)
+            return MethodHandles.filterReturnValue(arguments, MethodHandles.insertArguments(bind("invoke", OBJECT, String.class, FRAME), 0, ast.getName()));
+        return MethodHandles.filterReturnValue(arguments, MethodHandles.insertArguments(CALL, 0, site));
+    }
+
+    /**
+     * Returns a handle collecting the values of the expressions into an
+     * array, evaluating them in order.
+     */
+    private MethodHandle arguments(List<Ast.Expression> expressions) {
+        MethodHandle collector = MethodHandles.identity(FRAME).asCollector(FRAME, expressions.size());
+        return apply(collector, expressions.stream().map(this::compile).toArray(MethodHandle[]::new));
+    }
+
+    /**
+     * Returns a handle for the variable accessed, by its global slot if the
+     * Analyzer resolved one and by name otherwise.
+     */
+    private MethodHandle variable(Ast.Expression.Access ast) {
+        MethodHandle variable = ast.hasAddress() && ast.getDepth() == Ast.Expression.Access.GLOBAL
+                ? MethodHandles.insertArguments(GLOBAL, 0, globals, ast.getSlot())
+                : MethodHandles.insertArguments(bind("lookup", Environment.Variable.class, String.class), 0, ast.getName());
+        return MethodHandles.dropArguments(variable, 0, FRAME);
+    }
+
+    /**
+     * Applies the target to the values of the operands, each a handle taking
+     * the frame, giving a handle taking the frame. The operands are
+     * evaluated from left to right.
+     */
+    private static MethodHandle apply(MethodHandle target, MethodHandle... operands) {
+        MethodHandle filtered = MethodHandles.filterArguments(target, 0, operands);
+        return MethodHandles.permuteArguments(filtered, MethodType.methodType(target.type().returnType(), FRAME), new int[operands.length]);
+    }
+
+    /**
+     * Returns a handle invoking the handle through an exact invoker. A loop
+     * run hot in a shared, uncustomized form of its enclosing tree, such as
+     * the loop of a main function called once, sees its clauses as
+     * variables, and invoking them exactly lets the JVM customize and inline
+     * each of them.
+     */
+    private static MethodHandle entry(MethodHandle handle) {
+        return MethodHandles.exactInvoker(handle.type()).bindTo(handle);
+    }
+
+    private static MethodHandle constant(Environment.PlcObject value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(OBJECT, value), 0, FRAME);
+    }
+
+    private static MethodHandle getter(int slot) {
+        return MethodHandles.insertArguments(MethodHandles.arrayElementGetter(FRAME), 1, slot);
+    }
+
+    private static MethodHandle setter(int slot) {
+        return MethodHandles.insertArguments(MethodHandles.arrayElementSetter(FRAME), 1, slot);
+    }
+
+    private static MethodHandle find(String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return LOOKUP.findStatic(MethodHandleCompiler.class, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private MethodHandle bind(String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return LOOKUP.findVirtual(MethodHandleCompiler.class, name, MethodType.methodType(returnType, parameters)).bindTo(this);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean returned(Environment.PlcObject value) {
+        return value != null;
+    }
+
+    private static boolean test(Environment.PlcObject value) {
+        return Interpreter.requireType(Boolean.class, value);
+    }
+
+    private static Object value(Environment.PlcObject value) {
+        return value.getValue();
+    }
+
+    private static boolean matches(Environment.PlcObject value, Object condition) {
+        return value.getValue().equals(condition);
+    }
+
+    private static int select(Map<Object, Integer> table, int last, Object value) {
+        Integer index = table.get(value);
+        return index != null ? index : last;
+    }
+
+    private static Environment.PlcObject logical(Environment.PlcObject right, boolean left) {
+        return right.getValue() instanceof Boolean value ? bool(value) : bool(left);
+    }
+
+    private static Environment.Variable global(Environment.Variable[] globals, int slot) {
+        return globals[slot];
+    }
+
+    private Environment.Variable lookup(String name) {
+        return scope.lookupVariable(name);
+    }
+
+    private static Environment.Variable mutable(Environment.Variable variable) {
+        if (!variable.getMutable())
+            throw new RuntimeException("Modification of Immutable Type");
+        return variable;
+    }
+
+    private static Environment.PlcObject load(Environment.Variable variable) {
+        return variable.getValue();
+    }
+
+    private static void store(Environment.Variable variable, Environment.PlcObject value) {
+        variable.setValue(value);
+    }
+
+    private static Environment.PlcObject element(Environment.PlcObject offset, Environment.PlcObject list) {
+        return Environment.create(list(list).get(((BigInteger) offset.getValue()).intValue()));
+    }
+
+    private static Environment.PlcObject index(Environment.PlcObject offset, Environment.PlcObject list) {
+        if (!(offset.getValue() instanceof BigInteger index))
+            throw new RuntimeException("Expected BigDecimal type for offset access");
+        @SuppressWarnings("unchecked")
+        List<Object> values = Interpreter.requireType(List.class, list);
+        if (index.intValue() < 0 || index.intValue() >= values.size())
+            throw new RuntimeException("Offset is out of list bounds");
+        return Environment.create(values.get(index.intValue()));
+    }
+
+    private static void setElement(Environment.PlcObject list, Environment.PlcObject offset, Environment.PlcObject value) {
+        list(list).set(((BigInteger) offset.getValue()).intValue(), value.getValue());
+    }
+
+    private static void setIndex(Environment.PlcObject list, Environment.PlcObject offset, Environment.PlcObject value) {
+        if (!(offset.getValue() instanceof BigInteger index))
+            throw new RuntimeException("Expected BigInteger type for offset");
+        @SuppressWarnings("unchecked")
+        List<Object> values = Interpreter.requireType(List.class, list);
+        values.set(index.intValue(), value.getValue());
+    }
+
+    private static Environment.PlcObject create(Environment.PlcObject[] values) {
+        List<Object> elements = new ArrayList<>();
+        for (Environment.PlcObject value : values)
+            elements.add(value.getValue());
+        return Environment.create(elements);
+    }
+
+    private static Environment.PlcObject[] enter(int frameSize, Environment.PlcObject[] arguments) {
+        return Arrays.copyOf(arguments, frameSize);
+    }
+
+    private static Environment.PlcObject nil(Environment.PlcObject value) {
+        return value != null ? value : Environment.NIL;
+    }
+
+    private static Environment.PlcObject call(MutableCallSite site, Environment.PlcObject[] arguments) {
+        try {
+            return (Environment.PlcObject) site.getTarget().invokeExact(arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Environment.PlcObject invoke(String name, Environment.PlcObject[] arguments) {
+        return scope.lookupFunction(name, arguments.length).invoke(Arrays.asList(arguments));
+    }
+
+    private static Environment.PlcObject bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Environment.PlcObject object) {
+        return (List<Object>) object.getValue();
+    }
+
+}
@@ -0,0 +1,293 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proves which variables are definitely assigned a value other than NIL
+ * before they are read, and annotates each {@link Ast.Expression.Access} with
+ * that fact so backends can skip their NIL handling.
+ *
+ * The analysis is flow-sensitive over local variables: a variable is
+ * assigned after an {@code IF} or {@code SWITCH} only if it is assigned on
+ * every branch, and a {@code WHILE} body may not run at all. NIL can only be
+ * written as a literal of type Nil, returned by a function of type Nil or
+ * Any, or read from a variable that was never assigned, so values of any
+ * other type are assumed not to be NIL. That assumption holds unless one of
+ * the {@link #getWarnings() warnings} reports a read of a local variable
+ * before its assignment, or a function that may finish without returning. If
+ * one does, the source is analyzed again without it, so parameters, mutable
+ * globals, list elements and the results of the program's functions are no
+ * longer proven to hold other values.
+ *
+ * Globals without a value may be assigned by any function before they are
+ * read, so they are never proven assigned and never warned about.
+ */
+public final class NilAnalyzer implements Ast.Visitor<Boolean> {
+
+    private final Map<Environment.Variable, Boolean> globals = new IdentityHashMap<>();
+    private final Set<Environment.Function> returning = identitySet();
+    private final Set<Environment.Function> defined = identitySet();
+    private final List<String> functionWarnings = new ArrayList<>();
+    private final List<Ast.Expression.Access> reads = new ArrayList<>();
+    private final Set<Ast.Expression.Access> unassigned = identitySet();
+    private Set<Environment.Variable> locals = identitySet();
+    // whether values of types other than Nil and Any are assumed not to be NIL
+    private boolean typed = true;
+    /**
+     * Whether each assigned local variable holds a value other than NIL, or
+     * null where control cannot reach.
+     */
+    private Map<Environment.Variable, Boolean> assigned = new IdentityHashMap<>();
+
+    /**
+     * Returns a message for each read of a local variable that may not be
+     * assigned yet and each function that may finish without returning a
+     * value, in source order.
+     */
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<>(functionWarnings);
+        Set<Ast.Expression.Access> reported = identitySet();
+        for (Ast.Expression.Access read : reads) {
+            if (unassigned.contains(read) && reported.add(read))
+                warnings.add("The variable " + read.getName() + " may be read before it is assigned.");
+        }
+        return warnings;
+    }
+
+    @Override
+    public Boolean visit(Ast.Source ast) {
+        for (Ast.Function function : ast.getFunctions()) {
+            defined.add(function.getFunction());
+            if (Rewriter.terminates(function.getStatements()))
+                returning.add(function.getFunction());
+        }
+        ast.getGlobals().forEach(this::visit);
+        ast.getFunctions().forEach(this::visit);
+        if (typed && !getWarnings().isEmpty()) {
+            // NIL may reach values of any type, so every read is marked again
+            typed = false;
+            globals.clear();
+            ast.getGlobals().forEach(this::visit);
+            ast.getFunctions().forEach(this::visit);
+        }
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Global ast) {
+        boolean nonNil = ast.getValue().isPresent() && visit(ast.getValue().get());
+        // mutable globals may later be assigned any value of their type
+        globals.put(ast.getVariable(), nonNil && (!ast.getMutable() || typed && isNonNil(ast.getVariable().getType())));
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Function ast) {
+        locals = identitySet();
+        assigned = new IdentityHashMap<>();
+        visit(ast.getStatements());
+        if (typed && !returning.contains(ast.getFunction()) && !ast.getFunction().getReturnType().equals(Environment.Type.NIL))
+            functionWarnings.add("The function " + ast.getName() + " may finish without returning a value.");
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.Declaration ast) {
+        locals.add(ast.getVariable());
+        if (ast.getValue().isPresent())
+            assigned.put(ast.getVariable(), visit(ast.getValue().get()));
+        else
+            assigned.remove(ast.getVariable());
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.Assignment ast) {
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        if (receiver.getOffset().isPresent())
+            visit(receiver);
+        boolean nonNil = visit(ast.getValue());
+        if (receiver.getOffset().isEmpty() && !globals.containsKey(receiver.getVariable()))
+            assigned.put(receiver.getVariable(), nonNil);
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.If ast) {
+        visit(ast.getCondition());
+        Map<Environment.Variable, Boolean> before = assigned;
+        assigned = copy(before);
+        visit(ast.getThenStatements());
+        Map<Environment.Variable, Boolean> then = assigned;
+        assigned = copy(before);
+        visit(ast.getElseStatements());
+        assigned = join(then, assigned);
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.Switch ast) {
+        visit(ast.getCondition());
+        Map<Environment.Variable, Boolean> before = assigned;
+        Map<Environment.Variable, Boolean> after = null;
+        // the Analyzer requires a default case, so some case always runs
+        for (Ast.Statement.Case currCase : ast.getCases()) {
+            assigned = copy(before);
+            visit(currCase);
+            after = join(after, assigned);
+        }
+        assigned = after;
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.Case ast) {
+        ast.getValue().ifPresent(this::visit);
+        visit(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.While ast) {
+        Map<Environment.Variable, Boolean> head = assigned;
+        while (true) {
+            assigned = copy(head);
+            visit(ast.getCondition());
+            visit(ast.getStatements());
+            // variables only ever leave the map or lose their proof, so this
+            // reaches a fixed point
+            Map<Environment.Variable, Boolean> next = join(head, assigned);
+            if (next.equals(head))
+                break;
+            head = next;
+        }
+        // the body may not run at all
+        assigned = head;
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Statement.Return ast) {
+        visit(ast.getValue());
+        assigned = null;
+        return null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Expression.Literal ast) {
+        return ast.getLiteral() != null;
+    }
+
+    @Override
+    public Boolean visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Boolean visit(Ast.Expression.Binary ast) {
+        boolean left = visit(ast.getLeft());
+        boolean right = visit(ast.getRight());
+        // comparisons of values of different classes, or with NIL, evaluate to NIL
+        return switch (ast.getOperator()) {
+            case "<", ">", "==", "!=" -> left && right && ast.getLeft().getType().equals(ast.getRight().getType())
+                    && !ast.getLeft().getType().equals(Environment.Type.COMPARABLE) && isNonNil(ast.getLeft().getType());
+            default -> true;
+        };
+    }
+
+    @Override
+    public Boolean visit(Ast.Expression.Access ast) {
+        ast.getOffset().ifPresent(this::visit);
+        boolean nonNil = lookup(ast);
+        if (ast.getOffset().isPresent())
+            nonNil = nonNil && typed && isNonNil(ast.getType());
+        ast.setNonNil(nonNil);
+        return nonNil;
+    }
+
+    @Override
+    public Boolean visit(Ast.Expression.Function ast) {
+        ast.getArguments().forEach(this::visit);
+        Environment.Function function = ast.getFunction();
+        return isNonNil(function.getReturnType()) && (!defined.contains(function) || typed && returning.contains(function));
+    }
+
+    @Override
+    public Boolean visit(Ast.Expression.PlcList ast) {
+        ast.getValues().forEach(this::visit);
+        return true;
+    }
+
+    private void visit(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            // statements after a RETURN are never run
+            if (assigned == null)
+                return;
+            visit(statement);
+        }
+    }
+
+    /**
+     * Returns true if the accessed variable holds a value other than NIL,
+     * recording reads of local variables that may not be assigned. Loop
+     * bodies are analyzed again until they are stable, so records from
+     * earlier iterations are replaced.
+     */
+    private boolean lookup(Ast.Expression.Access access) {
+        Environment.Variable variable = access.getVariable();
+        if (globals.containsKey(variable))
+            return globals.get(variable);
+        if (!locals.contains(variable)) {
+            // parameters are assigned by the call
+            return assigned.getOrDefault(variable, typed && isNonNil(variable.getType()));
+        }
+        reads.add(access);
+        if (!assigned.containsKey(variable)) {
+            unassigned.add(access);
+            return false;
+        }
+        unassigned.remove(access);
+        return assigned.get(variable);
+    }
+
+    private static boolean isNonNil(Environment.Type type) {
+        return !type.equals(Environment.Type.NIL) && !type.equals(Environment.Type.ANY);
+    }
+
+    /**
+     * Returns the variables assigned on both paths, which hold values other
+     * than NIL only if they do on both.
+     */
+    private static Map<Environment.Variable, Boolean> join(Map<Environment.Variable, Boolean> first, Map<Environment.Variable, Boolean> second) {
+        if (first == null)
+            return copy(second);
+        if (second == null)
+            return copy(first);
+        Map<Environment.Variable, Boolean> joined = new IdentityHashMap<>();
+        first.forEach((variable, nonNil) -> {
+            if (second.containsKey(variable))
+                joined.put(variable, nonNil && second.get(variable));
+        });
+        return joined;
+    }
+
+    private static Map<Environment.Variable, Boolean> copy(Map<Environment.Variable, Boolean> assigned) {
+        return assigned == null ? null : new IdentityHashMap<>(assigned);
+    }
+
+    private static <T> Set<T> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
@@ -0,0 +1,242 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs a pipeline of passes over an analyzed source, recording the time each
+ * pass took and the size of the tree, as counted by {@link Rewriter#size},
+ * before and after it. The standard pipelines are chosen by {@link Level}.
+ *
+ * In debug mode the tree is checked after every pass: each expression must
+ * still have a type, each access and call must be resolved, and frame slots
+ * must lie within their function's frame. A pass that breaks one of these
+ * fails the pipeline with its name, rather than leaving a backend to fail
+ * later.
+ */
+public final class Optimizer {
+
+    public enum Level {
+
+        /**
+         * No passes, for one-shot scripts where compile time dominates.
+         */
+        O0,
+        /**
+         * Cheap passes: folding constants, removing dead code and inferring
+         * ranges for the backends.
+         */
+        O1,
+        /**
+         * Every pass, for long-running programs.
+         */
+        O2;
+
+        /**
+         * Returns the level named by a flag such as {@code -O2}.
+         */
+        public static Level parse(String flag) {
+            for (Level level : values()) {
+                if (flag.equals("-" + level.name()) || flag.equals(level.name()))
+                    return level;
+            }
+            throw new IllegalArgumentException("Unknown optimization level " + flag + ".");
+        }
+
+    }
+
+    /**
+     * A step of a pipeline, which returns the transformed source or the same
+     * source with new annotations.
+     */
+    public interface Pass {
+
+        String getName();
+
+        Ast.Source apply(Ast.Source source);
+
+    }
+
+    /**
+     * The time a pass took and the size of the tree before and after it.
+     */
+    public record Report(String pass, long nanos, int sizeBefore, int sizeAfter) {
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.3f ms, %d -> %d nodes", pass, nanos / 1e6, sizeBefore, sizeAfter);
+        }
+
+    }
+
+    private final List<Pass> passes;
+    private final List<Report> reports = new ArrayList<>();
+    private boolean debug = false;
+
+    public Optimizer(Level level) {
+        this(passes(level));
+    }
+
+    public Optimizer(List<Pass> passes) {
+        this.passes = passes;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * Returns a report for each pass run by the last call to
+     * {@link #optimize}, in order.
+     */
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    public Ast.Source optimize(Ast.Source source) {
+        reports.clear();
+        if (debug)
+            verify(source, "analysis");
+        for (Pass pass : passes) {
+            int sizeBefore = Rewriter.size(source);
+            long start = System.nanoTime();
+            source = pass.apply(source);
+            long nanos = System.nanoTime() - start;
+            reports.add(new Report(pass.getName(), nanos, sizeBefore, Rewriter.size(source)));
+            if (debug)
+                verify(source, pass.getName());
+        }
+        return source;
+    }
+
+    /**
+     * Returns the passes run at the given level. NIL analysis runs first, as
+     * passes only remove or move arithmetic on variables it proved assigned.
+     * Ranges are inferred again after the passes that rewrite the tree, since
+     * new nodes are not annotated.
+     */
+    public static List<Pass> passes(Level level) {
+        return switch (level) {
+            case O0 -> List.of();
+            case O1 -> List.of(
+                    analysis("NilAnalyzer", source -> new NilAnalyzer().visit(source)),
+                    rewriter("ConstantFolder", ConstantFolder::new),
+                    rewriter("DeadCodeEliminator", DeadCodeEliminator::new),
+                    analysis("RangeAnalyzer", source -> new RangeAnalyzer().visit(source))
+            );
+            case O2 -> List.of(
+                    analysis("NilAnalyzer", source -> new NilAnalyzer().visit(source)),
+                    rewriter("Inliner", Inliner::new),
+                    rewriter("FunctionSpecializer", FunctionSpecializer::new),
+                    rewriter("ConstantFolder", ConstantFolder::new),
+                    analysis("RangeAnalyzer", source -> new RangeAnalyzer().visit(source)),
+                    rewriter("StrengthReducer", StrengthReducer::new),
+                    rewriter("CommonSubexpressionEliminator", CommonSubexpressionEliminator::new),
+                    rewriter("LoopInvariantMotion", LoopInvariantMotion::new),
+                    rewriter("ConstantFolder", ConstantFolder::new),
+                    rewriter("DeadCodeEliminator", DeadCodeEliminator::new),
+                    analysis("RangeAnalyzer", source -> new RangeAnalyzer().visit(source)),
+                    analysis("NilAnalyzer", source -> new NilAnalyzer().visit(source))
+            );
+        };
+    }
+
+    /**
+     * Returns a pass running a new instance of a {@link Rewriter}.
+     */
+    public static Pass rewriter(String name, Supplier<Rewriter> rewriter) {
+        return new Pass() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Ast.Source apply(Ast.Source source) {
+                return (Ast.Source) rewriter.get().visit(source);
+            }
+        };
+    }
+
+    /**
+     * Returns a pass that only annotates the source.
+     */
+    public static Pass analysis(String name, Consumer<Ast.Source> analysis) {
+        return new Pass() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Ast.Source apply(Ast.Source source) {
+                analysis.accept(source);
+                return source;
+            }
+        };
+    }
+
+    /**
+     * Checks the annotations every backend relies on, naming the pass that
+     * produced the source if one is missing.
+     */
+    public static void verify(Ast.Source source, String pass) {
+        new Rewriter() {
+
+            private Ast.Function function = null;
+
+            @Override
+            public Ast visit(Ast.Function ast) {
+                check(() -> ast.getFunction());
+                function = ast;
+                Ast result = super.visit(ast);
+                function = null;
+                return result;
+            }
+
+            @Override
+            public Ast visit(Ast.Global ast) {
+                check(() -> ast.getVariable());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast visit(Ast.Statement.Declaration ast) {
+                check(() -> ast.getVariable());
+                if (function != null && function.getFrameSize() >= 0 && (ast.getSlot() < 0 || ast.getSlot() >= function.getFrameSize()))
+                    fail("the declaration of " + ast.getName() + " is outside the frame of " + function.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            protected Ast.Expression rewrite(Ast.Expression expression) {
+                check(() -> expression.getType());
+                return super.rewrite(expression);
+            }
+
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (function != null && function.getFrameSize() >= 0 && ast.hasAddress()
+                        && ast.getDepth() == Ast.Expression.Access.LOCAL && ast.getSlot() >= function.getFrameSize())
+                    fail("the access to " + ast.getName() + " is outside the frame of " + function.getName());
+                return super.visit(ast);
+            }
+
+            private void check(Runnable annotation) {
+                try {
+                    annotation.run();
+                } catch (IllegalStateException e) {
+                    fail(e.getMessage());
+                }
+            }
+
+            private void fail(String message) {
+                throw new IllegalStateException("After " + pass + ": " + message + ".");
+            }
+
+        }.visit(source);
+    }
+
+}
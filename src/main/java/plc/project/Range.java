@@ -0,0 +1,183 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * An interval of Integer values. Either bound may be missing, meaning the
+ * interval is unbounded in that direction. The arithmetic methods return an
+ * interval containing every result of the operation on values from the
+ * operands, following the semantics of the {@link Interpreter}.
+ */
+public final class Range {
+
+    public static final Range UNBOUNDED = new Range(null, null);
+    public static final Range INT = of(BigInteger.valueOf(Integer.MIN_VALUE), BigInteger.valueOf(Integer.MAX_VALUE));
+    public static final Range LONG = of(BigInteger.valueOf(Long.MIN_VALUE), BigInteger.valueOf(Long.MAX_VALUE));
+
+    private final BigInteger min;
+    private final BigInteger max;
+
+    private Range(BigInteger min, BigInteger max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    public static Range of(BigInteger value) {
+        return new Range(value, value);
+    }
+
+    /**
+     * Returns the range between the given bounds, where a null bound leaves
+     * the range unbounded in that direction.
+     */
+    public static Range of(BigInteger min, BigInteger max) {
+        return new Range(min, max);
+    }
+
+    public Optional<BigInteger> getMin() {
+        return Optional.ofNullable(min);
+    }
+
+    public Optional<BigInteger> getMax() {
+        return Optional.ofNullable(max);
+    }
+
+    public boolean contains(Range other) {
+        return (min == null || other.min != null && min.compareTo(other.min) <= 0)
+                && (max == null || other.max != null && max.compareTo(other.max) >= 0);
+    }
+
+    public boolean contains(BigInteger value) {
+        return contains(of(value));
+    }
+
+    /**
+     * Returns true if every value in the range fits in a Java {@code int}.
+     */
+    public boolean isInt() {
+        return INT.contains(this);
+    }
+
+    /**
+     * Returns true if every value in the range fits in a Java {@code long}.
+     */
+    public boolean isLong() {
+        return LONG.contains(this);
+    }
+
+    /**
+     * Returns the smallest range containing both ranges.
+     */
+    public Range union(Range other) {
+        return new Range(min == null || other.min == null ? null : min.min(other.min),
+                max == null || other.max == null ? null : max.max(other.max));
+    }
+
+    /**
+     * Returns the values in both ranges, or an empty result if there are
+     * none.
+     */
+    public Optional<Range> intersect(Range other) {
+        BigInteger low = min == null ? other.min : other.min == null ? min : min.max(other.min);
+        BigInteger high = max == null ? other.max : other.max == null ? max : max.min(other.max);
+        if (low != null && high != null && low.compareTo(high) > 0)
+            return Optional.empty();
+        return Optional.of(new Range(low, high));
+    }
+
+    /**
+     * Widens this range towards the next one, dropping each bound the next
+     * range exceeds so that repeated widening reaches a fixed point.
+     */
+    public Range widen(Range next) {
+        return new Range(min == null || next.min == null || next.min.compareTo(min) < 0 ? null : min,
+                max == null || next.max == null || next.max.compareTo(max) > 0 ? null : max);
+    }
+
+    public Range add(Range other) {
+        return new Range(min == null || other.min == null ? null : min.add(other.min),
+                max == null || other.max == null ? null : max.add(other.max));
+    }
+
+    public Range subtract(Range other) {
+        return new Range(min == null || other.max == null ? null : min.subtract(other.max),
+                max == null || other.min == null ? null : max.subtract(other.min));
+    }
+
+    public Range multiply(Range other) {
+        if (!isBounded() || !other.isBounded())
+            return UNBOUNDED;
+        return corners(min.multiply(other.min), min.multiply(other.max), max.multiply(other.min), max.multiply(other.max));
+    }
+
+    /**
+     * Truncating division, which is monotonic in each operand as long as the
+     * divisor does not include zero.
+     */
+    public Range divide(Range other) {
+        if (!isBounded() || !other.isBounded() || other.contains(BigInteger.ZERO))
+            return UNBOUNDED;
+        return corners(min.divide(other.min), min.divide(other.max), max.divide(other.min), max.divide(other.max));
+    }
+
+    /**
+     * Exponentiation by a single non-negative exponent that fits in an int.
+     */
+    public Range pow(Range other) {
+        if (!isBounded() || !other.isBounded() || !other.min.equals(other.max)
+                || other.min.signum() < 0 || other.min.bitLength() > 31)
+            return UNBOUNDED;
+        int exponent = other.min.intValue();
+        // keeps the analysis itself from computing huge powers
+        if (exponent > 64 && (min.abs().compareTo(BigInteger.ONE) > 0 || max.abs().compareTo(BigInteger.ONE) > 0))
+            return UNBOUNDED;
+        Range range = corners(min.pow(exponent), max.pow(exponent));
+        // an even power of a range spanning zero has its minimum at zero
+        return contains(BigInteger.ZERO) ? range.union(of(BigInteger.ZERO)) : range;
+    }
+
+    /**
+     * Arithmetic shift right by a single non-negative amount, which floors
+     * and so is monotonic in the shifted value.
+     */
+    public Range shiftRight(Range other) {
+        if (other.min == null || !other.min.equals(other.max) || other.min.signum() < 0 || other.min.bitLength() > 31)
+            return UNBOUNDED;
+        int shift = other.min.intValue();
+        return new Range(min == null ? null : min.shiftRight(shift), max == null ? null : max.shiftRight(shift));
+    }
+
+    private boolean isBounded() {
+        return min != null && max != null;
+    }
+
+    private static Range corners(BigInteger... values) {
+        BigInteger low = values[0];
+        BigInteger high = values[0];
+        for (BigInteger value : values) {
+            low = low.min(value);
+            high = high.max(value);
+        }
+        return new Range(low, high);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Range &&
+                Objects.equals(min, ((Range) obj).min) &&
+                Objects.equals(max, ((Range) obj).max);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(min, max);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (min == null ? "-inf" : min) + ", " + (max == null ? "+inf" : max) + "]";
+    }
+
+}
@@ -0,0 +1,343 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Infers the values Integer expressions may take and annotates each Integer
+ * {@link Ast.Expression.Binary} and {@link Ast.Expression.Access} with its
+ * {@link Range}, so backends can use primitive arithmetic where the result is
+ * proven to fit and overflow checks elsewhere.
+ *
+ * The analysis is flow-sensitive over local variables. Conditions of
+ * {@code IF} and {@code WHILE} statements comparing a variable narrow its
+ * range in each branch, and loops are iterated to a fixed point, widening
+ * bounds that keep growing. Globals are only tracked when they are
+ * immutable, since any call may assign the others; parameters, function
+ * results and list elements are unbounded.
+ *
+ * Lists never change length, so accesses to a {@code LIST} global that is
+ * never reassigned as a whole are marked in bounds when the range of the
+ * offset lies within the list.
+ */
+public final class RangeAnalyzer implements Ast.Visitor<Range> {
+
+    /**
+     * Loop iterations before bounds that keep changing are widened.
+     */
+    private static final int WIDENING_DELAY = 2;
+
+    private final Map<Environment.Variable, Range> globals = new IdentityHashMap<>();
+    private final Map<Environment.Variable, Range> offsets = new IdentityHashMap<>();
+    private Map<Environment.Variable, Range> ranges = new IdentityHashMap<>();
+
+    @Override
+    public Range visit(Ast.Source ast) {
+        for (Ast.Global global : ast.getGlobals()) {
+            if (global.getValue().isPresent() && global.getValue().get() instanceof Ast.Expression.PlcList list)
+                offsets.put(global.getVariable(), Range.of(BigInteger.ZERO, BigInteger.valueOf(list.getValues().size() - 1)));
+        }
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Statement.Assignment ast) {
+                if (((Ast.Expression.Access) ast.getReceiver()).getOffset().isEmpty())
+                    offsets.remove(((Ast.Expression.Access) ast.getReceiver()).getVariable());
+                return ast;
+            }
+        }.visit(ast);
+        ast.getGlobals().forEach(this::visit);
+        ast.getFunctions().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Global ast) {
+        Range range = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Range.UNBOUNDED;
+        globals.put(ast.getVariable(), ast.getMutable() ? Range.UNBOUNDED : range);
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Function ast) {
+        ranges = new IdentityHashMap<>();
+        visit(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.Declaration ast) {
+        // a declaration without a value holds NIL, which no arithmetic accepts
+        Range range = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Range.UNBOUNDED;
+        ranges.put(ast.getVariable(), range);
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.Assignment ast) {
+        Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+        receiver.getOffset().ifPresent(offset -> bound(receiver, visit(offset)));
+        Range range = visit(ast.getValue());
+        if (receiver.getOffset().isEmpty() && isLocal(receiver))
+            ranges.put(receiver.getVariable(), range);
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.If ast) {
+        visit(ast.getCondition());
+        Map<Environment.Variable, Range> before = ranges;
+        ranges = refine(before, ast.getCondition(), true);
+        visit(ast.getThenStatements());
+        Map<Environment.Variable, Range> thenRanges = ranges;
+        ranges = refine(before, ast.getCondition(), false);
+        visit(ast.getElseStatements());
+        ranges = join(thenRanges, ranges);
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.Switch ast) {
+        visit(ast.getCondition());
+        Map<Environment.Variable, Range> before = ranges;
+        Map<Environment.Variable, Range> after = null;
+        for (Ast.Statement.Case currCase : ast.getCases()) {
+            ranges = copy(before);
+            visit(currCase);
+            after = join(after, ranges);
+        }
+        ranges = after;
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.Case ast) {
+        ast.getValue().ifPresent(this::visit);
+        visit(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.While ast) {
+        Map<Environment.Variable, Range> head = ranges;
+        for (int iteration = 0; ; iteration++) {
+            ranges = copy(head);
+            visit(ast.getCondition());
+            ranges = refine(head, ast.getCondition(), true);
+            visit(ast.getStatements());
+            Map<Environment.Variable, Range> next = join(head, ranges);
+            if (iteration >= WIDENING_DELAY)
+                next = widen(head, next);
+            if (same(next, head))
+                break;
+            head = next;
+        }
+        // The body was last analyzed from the fixed point, so its
+        // annotations hold on every iteration.
+        ranges = refine(head, ast.getCondition(), false);
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Statement.Return ast) {
+        visit(ast.getValue());
+        ranges = null;
+        return null;
+    }
+
+    @Override
+    public Range visit(Ast.Expression.Literal ast) {
+        return ast.getLiteral() instanceof BigInteger value ? Range.of(value) : Range.UNBOUNDED;
+    }
+
+    @Override
+    public Range visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Range visit(Ast.Expression.Binary ast) {
+        Range left = visit(ast.getLeft());
+        Range right = visit(ast.getRight());
+        if (!ast.getType().equals(Environment.Type.INTEGER))
+            return Range.UNBOUNDED;
+        Range range = switch (ast.getOperator()) {
+            case "+" -> left.add(right);
+            case "-" -> left.subtract(right);
+            case "*" -> left.multiply(right);
+            case "/" -> left.divide(right);
+            case "^" -> left.pow(right);
+            case ">>" -> left.shiftRight(right);
+            default -> Range.UNBOUNDED;
+        };
+        ast.setRange(range);
+        return range;
+    }
+
+    @Override
+    public Range visit(Ast.Expression.Access ast) {
+        ast.getOffset().ifPresent(offset -> bound(ast, visit(offset)));
+        if (ast.getOffset().isPresent() || !ast.getType().equals(Environment.Type.INTEGER))
+            return Range.UNBOUNDED;
+        Range range = lookup(ranges, ast.getVariable());
+        ast.setRange(range);
+        return range;
+    }
+
+    @Override
+    public Range visit(Ast.Expression.Function ast) {
+        ast.getArguments().forEach(this::visit);
+        return Range.UNBOUNDED;
+    }
+
+    @Override
+    public Range visit(Ast.Expression.PlcList ast) {
+        ast.getValues().forEach(this::visit);
+        return Range.UNBOUNDED;
+    }
+
+    private void visit(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            // statements after a RETURN are never run
+            if (ranges == null)
+                return;
+            visit(statement);
+        }
+    }
+
+    /**
+     * Marks a list access in bounds if its offset always is. Loop bodies are
+     * analyzed again until their ranges are stable, so marks set on earlier
+     * iterations are replaced.
+     */
+    private void bound(Ast.Expression.Access access, Range offset) {
+        access.setInBounds(offsets.containsKey(access.getVariable()) && offsets.get(access.getVariable()).contains(offset));
+    }
+
+    private boolean isLocal(Ast.Expression.Access access) {
+        return access.getDepth() != Ast.Expression.Access.GLOBAL && !globals.containsKey(access.getVariable());
+    }
+
+    private Range lookup(Map<Environment.Variable, Range> ranges, Environment.Variable variable) {
+        if (ranges != null && ranges.containsKey(variable))
+            return ranges.get(variable);
+        return globals.getOrDefault(variable, Range.UNBOUNDED);
+    }
+
+    /**
+     * Returns the ranges that hold when the condition has the given value,
+     * or null if it never can.
+     */
+    private Map<Environment.Variable, Range> refine(Map<Environment.Variable, Range> ranges, Ast.Expression condition, boolean value) {
+        if (ranges == null)
+            return null;
+        switch (condition) {
+            case Ast.Expression.Literal literal when literal.getLiteral() instanceof Boolean b:
+                return b == value ? copy(ranges) : null;
+            case Ast.Expression.Group group:
+                return refine(ranges, group.getExpression(), value);
+            case Ast.Expression.Binary binary when binary.getOperator().equals(value ? "&&" : "||"):
+                return refine(refine(ranges, binary.getLeft(), value), binary.getRight(), value);
+            case Ast.Expression.Binary binary when binary.getOperator().equals(value ? "||" : "&&"):
+                return join(refine(ranges, binary.getLeft(), value), refine(ranges, binary.getRight(), value));
+            case Ast.Expression.Binary binary:
+                Map<Environment.Variable, Range> refined = copy(ranges);
+                String operator = value ? binary.getOperator() : negate(binary.getOperator());
+                if (operator == null)
+                    return refined;
+                if (!narrow(refined, binary.getLeft(), operator, binary.getRight())
+                        || !narrow(refined, binary.getRight(), mirror(operator), binary.getLeft()))
+                    return null;
+                return refined;
+            default:
+                return copy(ranges);
+        }
+    }
+
+    /**
+     * Narrows the range of a variable compared with another expression,
+     * returning false if the comparison can never hold.
+     */
+    private boolean narrow(Map<Environment.Variable, Range> ranges, Ast.Expression expression, String operator, Ast.Expression other) {
+        if (!(expression instanceof Ast.Expression.Access access) || access.getOffset().isPresent()
+                || !access.getType().equals(Environment.Type.INTEGER) || !isLocal(access))
+            return true;
+        Range bound = other instanceof Ast.Expression.Literal literal && literal.getLiteral() instanceof BigInteger value ? Range.of(value)
+                : other instanceof Ast.Expression.Access otherAccess && otherAccess.getOffset().isEmpty() && otherAccess.getType().equals(Environment.Type.INTEGER)
+                ? lookup(ranges, otherAccess.getVariable()) : null;
+        if (bound == null)
+            return true;
+        Range limit = switch (operator) {
+            case "<" -> Range.of(null, bound.getMax().map(max -> max.subtract(BigInteger.ONE)).orElse(null));
+            case "<=" -> Range.of(null, bound.getMax().orElse(null));
+            case ">" -> Range.of(bound.getMin().map(min -> min.add(BigInteger.ONE)).orElse(null), null);
+            case ">=" -> Range.of(bound.getMin().orElse(null), null);
+            case "==" -> bound;
+            default -> Range.UNBOUNDED;
+        };
+        Optional<Range> range = lookup(ranges, access.getVariable()).intersect(limit);
+        range.ifPresent(narrowed -> ranges.put(access.getVariable(), narrowed));
+        return range.isPresent();
+    }
+
+    /**
+     * Returns the comparison that holds when the given one does not, or null
+     * if the negation tells nothing about the operands.
+     */
+    private static String negate(String operator) {
+        return switch (operator) {
+            case "<" -> ">=";
+            case ">" -> "<=";
+            case "!=" -> "==";
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns the comparison with its operands swapped.
+     */
+    private static String mirror(String operator) {
+        return switch (operator) {
+            case "<" -> ">";
+            case ">" -> "<";
+            case "<=" -> ">=";
+            case ">=" -> "<=";
+            default -> operator;
+        };
+    }
+
+    private Map<Environment.Variable, Range> join(Map<Environment.Variable, Range> first, Map<Environment.Variable, Range> second) {
+        if (first == null)
+            return second == null ? null : copy(second);
+        if (second == null)
+            return copy(first);
+        Map<Environment.Variable, Range> joined = new IdentityHashMap<>();
+        first.forEach((variable, range) -> joined.put(variable, range.union(lookup(second, variable))));
+        second.forEach((variable, range) -> joined.putIfAbsent(variable, range.union(lookup(first, variable))));
+        return joined;
+    }
+
+    private static Map<Environment.Variable, Range> widen(Map<Environment.Variable, Range> previous, Map<Environment.Variable, Range> next) {
+        Map<Environment.Variable, Range> widened = new IdentityHashMap<>();
+        next.forEach((variable, range) -> widened.put(variable, previous.containsKey(variable) ? previous.get(variable).widen(range) : range));
+        return widened;
+    }
+
+    private static boolean same(Map<Environment.Variable, Range> first, Map<Environment.Variable, Range> second) {
+        return first.size() == second.size()
+                && first.entrySet().stream().allMatch(entry -> entry.getValue().equals(second.get(entry.getKey())));
+    }
+
+    private static Map<Environment.Variable, Range> copy(Map<Environment.Variable, Range> ranges) {
+        return ranges == null ? null : new IdentityHashMap<>(ranges);
+    }
+
+}
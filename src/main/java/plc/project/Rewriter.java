@@ -0,0 +1,539 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Base class for passes that transform an analyzed AST. Each visit method
+ * returns the rewritten node; by default nodes are rebuilt only when one of
+ * their children changed, and rebuilt nodes keep the annotations set by the
+ * {@link Analyzer} (types, variables, functions and frame slots) and the
+ * {@link RangeAnalyzer} (ranges and bounds) and {@link NilAnalyzer}.
+ */
+public abstract class Rewriter implements Ast.Visitor<Ast> {
+
+    // The operators that do not fail when an operand is NIL.
+    private static final Set<String> NIL_OPERATORS = Set.of("+", "<", ">", "==", "!=");
+
+    // The function being rewritten, its frame size including slots taken by
+    // temporaries, and the names declared in it (computed when needed).
+    private Ast.Function current = null;
+    private int frameSize = -1;
+    private Set<String> names = null;
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        List<Ast.Global> globals = new ArrayList<>();
+        ast.getGlobals().forEach(global -> globals.add((Ast.Global) visit(global)));
+        List<Ast.Function> functions = new ArrayList<>();
+        ast.getFunctions().forEach(function -> functions.add((Ast.Function) visit(function)));
+        if (same(globals, ast.getGlobals()) && same(functions, ast.getFunctions()))
+            return ast;
+        return new Ast.Source(globals, functions);
+    }
+
+    @Override
+    public Ast visit(Ast.Global ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        if (same(value, ast.getValue()))
+            return ast;
+        Ast.Global global = new Ast.Global(ast.getName(), ast.getTypeName(), ast.getMutable(), value);
+        global.setVariable(ast.getVariable());
+        global.setSlot(ast.getSlot());
+        return global;
+    }
+
+    @Override
+    public Ast visit(Ast.Function ast) {
+        Ast.Function outer = current;
+        int outerFrameSize = frameSize;
+        Set<String> outerNames = names;
+        current = ast;
+        frameSize = ast.getFrameSize();
+        names = null;
+        try {
+            List<Ast.Statement> statements = rewrite(ast.getStatements());
+            if (same(statements, ast.getStatements()) && frameSize == ast.getFrameSize())
+                return ast;
+            Ast.Function function = function(ast, statements);
+            function.setFrameSize(frameSize);
+            return function;
+        } finally {
+            current = outer;
+            frameSize = outerFrameSize;
+            names = outerNames;
+        }
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Expression ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        return expression == ast.getExpression() ? ast : new Ast.Statement.Expression(expression);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Declaration ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        if (same(value, ast.getValue()))
+            return ast;
+        return declaration(ast, value);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Assignment ast) {
+        Ast.Expression receiver = rewrite(ast.getReceiver());
+        Ast.Expression value = rewrite(ast.getValue());
+        if (receiver == ast.getReceiver() && value == ast.getValue())
+            return ast;
+        return new Ast.Statement.Assignment(receiver, value);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.If ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement> thenStatements = rewrite(ast.getThenStatements());
+        List<Ast.Statement> elseStatements = rewrite(ast.getElseStatements());
+        if (condition == ast.getCondition() && same(thenStatements, ast.getThenStatements()) && same(elseStatements, ast.getElseStatements()))
+            return ast;
+        return new Ast.Statement.If(condition, thenStatements, elseStatements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Switch ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement.Case> cases = new ArrayList<>();
+        ast.getCases().forEach(currCase -> cases.add((Ast.Statement.Case) visit(currCase)));
+        if (condition == ast.getCondition() && same(cases, ast.getCases()))
+            return ast;
+        return switchStatement(ast, condition, cases);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Case ast) {
+        Optional<Ast.Expression> value = rewrite(ast.getValue());
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (same(value, ast.getValue()) && same(statements, ast.getStatements()))
+            return ast;
+        return new Ast.Statement.Case(value, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.While ast) {
+        Ast.Expression condition = rewrite(ast.getCondition());
+        List<Ast.Statement> statements = rewrite(ast.getStatements());
+        if (condition == ast.getCondition() && same(statements, ast.getStatements()))
+            return ast;
+        return whileStatement(condition, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Return ast) {
+        Ast.Expression value = rewrite(ast.getValue());
+        return value == ast.getValue() ? ast : new Ast.Statement.Return(value);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Group ast) {
+        Ast.Expression expression = rewrite(ast.getExpression());
+        if (expression == ast.getExpression())
+            return ast;
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        group.setType(ast.getType());
+        return group;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Binary ast) {
+        Ast.Expression left = rewrite(ast.getLeft());
+        Ast.Expression right = rewrite(ast.getRight());
+        if (left == ast.getLeft() && right == ast.getRight())
+            return ast;
+        Ast.Expression.Binary binary = binary(ast.getOperator(), left, right, ast.getType());
+        ast.getRange().ifPresent(binary::setRange);
+        return binary;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Access ast) {
+        Optional<Ast.Expression> offset = rewrite(ast.getOffset());
+        if (same(offset, ast.getOffset()))
+            return ast;
+        return access(ast, offset);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        List<Ast.Expression> arguments = new ArrayList<>();
+        ast.getArguments().forEach(argument -> arguments.add(rewrite(argument)));
+        if (same(arguments, ast.getArguments()))
+            return ast;
+        Ast.Expression.Function function = new Ast.Expression.Function(ast.getName(), arguments);
+        function.setFunction(ast.getFunction());
+        return function;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.PlcList ast) {
+        List<Ast.Expression> values = new ArrayList<>();
+        ast.getValues().forEach(value -> values.add(rewrite(value)));
+        if (same(values, ast.getValues()))
+            return ast;
+        Ast.Expression.PlcList list = new Ast.Expression.PlcList(values);
+        list.setType(ast.getType());
+        return list;
+    }
+
+    /**
+     * Rewrites a block of statements. Passes that add or remove statements
+     * override this method; the default rewrites each statement in place.
+     */
+    protected List<Ast.Statement> rewrite(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>();
+        statements.forEach(statement -> result.add((Ast.Statement) visit(statement)));
+        return result;
+    }
+
+    protected Ast.Expression rewrite(Ast.Expression expression) {
+        return (Ast.Expression) visit(expression);
+    }
+
+    protected Optional<Ast.Expression> rewrite(Optional<Ast.Expression> expression) {
+        return expression.isPresent() ? Optional.of(rewrite(expression.get())) : expression;
+    }
+
+    /**
+     * Returns a name starting with the prefix that is not declared in the
+     * function being rewritten. Names contain {@code $}, which PLC
+     * identifiers cannot, so they never clash with the program's own.
+     */
+    protected String fresh(String prefix) {
+        if (names == null) {
+            names = new HashSet<>();
+            if (current != null) {
+                current.getParameters().forEach(this::reserve);
+                new Rewriter() {
+                    @Override
+                    public Ast visit(Ast.Statement.Declaration ast) {
+                        reserve(ast.getName());
+                        return super.visit(ast);
+                    }
+                }.visit(current);
+            }
+        }
+        int n = 1;
+        while (names.contains(prefix + "$" + n)) {
+            n++;
+        }
+        reserve(prefix + "$" + n);
+        return prefix + "$" + n;
+    }
+
+    private void reserve(String name) {
+        // also reserves the prefixes of names built from a fresh name
+        for (int i = name.indexOf('$'); i >= 0; i = name.indexOf('$', i + 1)) {
+            names.add(name.substring(0, i));
+        }
+        names.add(name);
+    }
+
+    /**
+     * Creates a declaration of a new variable holding a value computed by the
+     * pass, taking the next slot of the function's frame if it is resolved.
+     */
+    protected Ast.Statement.Declaration temporary(String name, Environment.Type type, Ast.Expression value) {
+        Environment.Variable variable = new Environment.Variable(name, name, type, true, Environment.NIL);
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(name, Optional.of(type.getName()), Optional.of(value));
+        declaration.setVariable(variable);
+        declaration.setSlot(frameSize >= 0 ? frameSize++ : -1);
+        return declaration;
+    }
+
+    /**
+     * Creates an access to the variable of a declaration, which can never
+     * read NIL if the declaration's value cannot evaluate to it.
+     */
+    public static Ast.Expression.Access access(Ast.Statement.Declaration declaration) {
+        Ast.Expression.Access access = new Ast.Expression.Access(Optional.empty(), declaration.getName());
+        access.setVariable(declaration.getVariable());
+        if (declaration.getSlot() >= 0)
+            access.setAddress(Ast.Expression.Access.LOCAL, declaration.getSlot());
+        access.setNonNil(declaration.getValue().isPresent() && isNonNil(declaration.getValue().get()));
+        return access;
+    }
+
+    /**
+     * Creates a literal with the type the Analyzer would have assigned it.
+     */
+    public static Ast.Expression.Literal literal(Object value) {
+        Ast.Expression.Literal literal = new Ast.Expression.Literal(value);
+        switch (value) {
+            case Boolean b : literal.setType(Environment.Type.BOOLEAN); break;
+            case BigInteger i : literal.setType(Environment.Type.INTEGER); break;
+            case BigDecimal d : literal.setType(Environment.Type.DECIMAL); break;
+            case Character c : literal.setType(Environment.Type.CHARACTER); break;
+            case String s : literal.setType(Environment.Type.STRING); break;
+            case null : literal.setType(Environment.Type.NIL); break;
+            default : literal.setType(Environment.Type.ANY);
+        }
+        return literal;
+    }
+
+    public static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right, Environment.Type type) {
+        Ast.Expression.Binary binary = new Ast.Expression.Binary(operator, left, right);
+        binary.setType(type);
+        return binary;
+    }
+
+    public static Ast.Expression.Access access(Ast.Expression.Access ast, Optional<Ast.Expression> offset) {
+        Ast.Expression.Access access = new Ast.Expression.Access(offset, ast.getName());
+        access.setVariable(ast.getVariable());
+        access.setAddress(ast.getDepth(), ast.getSlot());
+        ast.getRange().ifPresent(access::setRange);
+        access.setInBounds(ast.isInBounds());
+        access.setNonNil(ast.isNonNil());
+        return access;
+    }
+
+    public static Ast.Statement.Declaration declaration(Ast.Statement.Declaration ast, Optional<Ast.Expression> value) {
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(ast.getName(), ast.getTypeName(), value);
+        declaration.setVariable(ast.getVariable());
+        declaration.setSlot(ast.getSlot());
+        return declaration;
+    }
+
+    /**
+     * Creates a switch with new cases, keeping its case table up to date if
+     * the Analyzer built one.
+     */
+    public static Ast.Statement.Switch switchStatement(Ast.Statement.Switch ast, Ast.Expression condition, List<Ast.Statement.Case> cases) {
+        Ast.Statement.Switch switchStatement = new Ast.Statement.Switch(condition, cases);
+        if (ast.getTable().isPresent())
+            Analyzer.table(cases).ifPresent(switchStatement::setTable);
+        return switchStatement;
+    }
+
+    /**
+     * Creates a loop with a new condition and body, recognizing its counter
+     * again since rewriting may have added or removed one.
+     */
+    public static Ast.Statement.While whileStatement(Ast.Expression condition, List<Ast.Statement> statements) {
+        Ast.Statement.While whileStatement = new Ast.Statement.While(condition, statements);
+        CountedLoop.of(whileStatement).ifPresent(whileStatement::setCounter);
+        return whileStatement;
+    }
+
+    public static Ast.Function function(Ast.Function ast, List<Ast.Statement> statements) {
+        Ast.Function function = new Ast.Function(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), statements);
+        function.setFunction(ast.getFunction());
+        function.setFrameSize(ast.getFrameSize());
+        return function;
+    }
+
+    /**
+     * Returns the variables that are the receiver of an assignment anywhere
+     * within the given tree, including assignments to list elements.
+     */
+    public static Set<Environment.Variable> assigned(Ast ast) {
+        Set<Environment.Variable> variables = Collections.newSetFromMap(new IdentityHashMap<>());
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Statement.Assignment ast) {
+                variables.add(((Ast.Expression.Access) ast.getReceiver()).getVariable());
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return variables;
+    }
+
+    /**
+     * Returns the number of statements and expressions in the given tree,
+     * which passes use to estimate code size.
+     */
+    public static int size(Ast ast) {
+        int[] size = {0};
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast ast) {
+                size[0]++;
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast visit(Ast.Statement.Case ast) {
+                size[0]++;
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return size[0];
+    }
+
+    /**
+     * Returns the variables accessed anywhere within the given tree, either
+     * read or as the receiver of an assignment.
+     */
+    public static Set<Environment.Variable> accessed(Ast ast) {
+        Set<Environment.Variable> variables = Collections.newSetFromMap(new IdentityHashMap<>());
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                variables.add(ast.getVariable());
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return variables;
+    }
+
+    /**
+     * Returns true if the given tree reads or assigns a variable that is not
+     * local to its function.
+     */
+    public static boolean readsGlobals(Ast ast) {
+        boolean[] globals = {false};
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (ast.getDepth() != Ast.Expression.Access.LOCAL)
+                    globals[0] = true;
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return globals[0];
+    }
+
+    /**
+     * Returns true if the given tree calls a function that may write
+     * globals.
+     */
+    public static boolean writesGlobals(Ast ast) {
+        boolean[] writes = {false};
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Function ast) {
+                if (ast.getFunction().getEffects().contains(Environment.Effect.WRITE))
+                    writes[0] = true;
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return writes[0];
+    }
+
+    /**
+     * Returns true if evaluating the expression has no side effects and
+     * cannot fail, so it may be removed, duplicated or moved.
+     *
+     * Reading a variable that holds NIL cannot fail, but every operator
+     * other than {@code +}, comparisons and equality fails on NIL, and so may
+     * a function given NIL. Their operands must therefore be proven not to be
+     * NIL: a variable only is once a {@link NilAnalyzer} has marked the read,
+     * so until one has run, no arithmetic on a variable is pure.
+     */
+    public static boolean isPure(Ast.Expression expression) {
+        return isPure(expression, false);
+    }
+
+    /**
+     * Returns true if the expression is pure, assuming every variable it
+     * reads holds a value other than NIL if {@code nonNil} is set. Without
+     * side effects, an expression that fails on NIL fails the first time it
+     * is evaluated, so backends use this to decide whether they may evaluate
+     * operands fewer times than the Interpreter does.
+     */
+    public static boolean isPure(Ast.Expression expression, boolean nonNil) {
+        switch (expression) {
+            case Ast.Expression.Literal literal:
+                return true;
+            case Ast.Expression.Group group:
+                return isPure(group.getExpression(), nonNil);
+            case Ast.Expression.Access access:
+                // list offsets can be out of bounds
+                return access.getOffset().isEmpty();
+            case Ast.Expression.Binary binary:
+                // only literal divisors and exponents are known not to throw
+                Object right = binary.getRight() instanceof Ast.Expression.Literal literal ? literal.getLiteral() : null;
+                if (binary.getOperator().equals("/") && !(right instanceof BigInteger i && i.signum() != 0 || right instanceof BigDecimal d && d.signum() != 0))
+                    return false;
+                if (binary.getOperator().equals("^") && !(right instanceof BigInteger i && i.signum() >= 0))
+                    return false;
+                if (!nonNil && !NIL_OPERATORS.contains(binary.getOperator()) && !(isNonNil(binary.getLeft()) && isNonNil(binary.getRight())))
+                    return false;
+                return isPure(binary.getLeft(), nonNil) && isPure(binary.getRight(), nonNil);
+            case Ast.Expression.PlcList list:
+                return list.getValues().stream().allMatch(value -> isPure(value, nonNil));
+            case Ast.Expression.Function call:
+                return call.getFunction().getEffects().isEmpty()
+                        && call.getArguments().stream().allMatch(argument -> isPure(argument, nonNil) && (nonNil || isNonNil(argument)));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if the expression never evaluates to NIL, when it does not
+     * fail.
+     */
+    public static boolean isNonNil(Ast.Expression expression) {
+        return switch (expression) {
+            case Ast.Expression.Literal literal -> literal.getLiteral() != null;
+            case Ast.Expression.Group group -> isNonNil(group.getExpression());
+            case Ast.Expression.Access access -> access.isNonNil();
+            // comparisons of values of different classes evaluate to NIL
+            case Ast.Expression.Binary binary when NIL_OPERATORS.contains(binary.getOperator()) && !binary.getOperator().equals("+") ->
+                    isNonNil(binary.getLeft()) && isNonNil(binary.getRight()) && binary.getLeft().getType().equals(binary.getRight().getType())
+                            && !binary.getLeft().getType().equals(Environment.Type.COMPARABLE) && !binary.getLeft().getType().equals(Environment.Type.ANY);
+            // the others fail rather than evaluate to NIL
+            case Ast.Expression.Binary binary -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Returns true if control never continues past the statement, because
+     * it returns on every path.
+     */
+    public static boolean terminates(Ast.Statement statement) {
+        switch (statement) {
+            case Ast.Statement.Return ret:
+                return true;
+            case Ast.Statement.If ifStatement:
+                return terminates(ifStatement.getThenStatements()) && terminates(ifStatement.getElseStatements());
+            case Ast.Statement.Switch switchStatement:
+                return switchStatement.getCases().stream().allMatch(currCase -> terminates(currCase.getStatements()));
+            default:
+                return false;
+        }
+    }
+
+    public static boolean terminates(List<Ast.Statement> statements) {
+        return statements.stream().anyMatch(Rewriter::terminates);
+    }
+
+    /**
+     * Returns true if both lists hold the same nodes, compared by identity.
+     */
+    protected static boolean same(List<? extends Ast> rewritten, List<? extends Ast> original) {
+        if (rewritten.size() != original.size())
+            return false;
+        for (int i = 0; i < rewritten.size(); i++) {
+            if (rewritten.get(i) != original.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    protected static boolean same(Optional<Ast.Expression> rewritten, Optional<Ast.Expression> original) {
+        return rewritten.isPresent() == original.isPresent() && (rewritten.isEmpty() || rewritten.get() == original.get());
+    }
+
+}
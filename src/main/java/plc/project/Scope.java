@@ -25,12 +25,19 @@ public final class Scope {
     }
 
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, boolean mutable, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
-            throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+        return defineVariable(new Environment.Variable(name, jvmName, type, mutable, value));
+    }
+
+    /**
+     * Defines an existing variable, for analyses that keep annotations
+     * referring to it across runs.
+     */
+    public Environment.Variable defineVariable(Environment.Variable variable) {
+        if (variables.containsKey(variable.getName())) {
+            throw new RuntimeException("The variable " + variable.getName() + " is already defined in this scope.");
         } else {
-            Environment.Variable variable = new Environment.Variable(name, jvmName, type, mutable, value);
             variables.put(variable.getName(), variable);
-            return variables.get(name);
+            return variable;
         }
     }
 
@@ -53,15 +60,35 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
-            throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
+        return defineFunction(new Environment.Function(name, jvmName, parameterTypes, returnType, function));
+    }
+
+    /**
+     * Defines an existing function, for analyses that keep annotations
+     * referring to it across runs.
+     */
+    public Environment.Function defineFunction(Environment.Function function) {
+        String key = function.getName() + "/" + function.getParameterTypes().size();
+        if (functions.containsKey(key)) {
+            throw new RuntimeException("The function " + key + " is already defined in this scope.");
         } else {
-            Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
-            return func;
+            functions.put(key, function);
+            return function;
         }
     }
 
+    /**
+     * Replaces a function already defined in this scope, such as with its
+     * compiled code.
+     */
+    public void replaceFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
+        String key = name + "/" + arity;
+        if (!functions.containsKey(key))
+            throw new RuntimeException("The function " + key + " is not defined in this scope.");
+        Environment.Function existing = functions.get(key);
+        functions.put(key, new Environment.Function(name, existing.getJvmName(), existing.getParameterTypes(), existing.getReturnType(), function));
+    }
+
     public Environment.Function lookupFunction(String name, int arity) {
         if (functions.containsKey(name + "/" + arity)) {
             return functions.get(name + "/" + arity);
@@ -0,0 +1,131 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.function.BinaryOperator;
+
+/**
+ * Replaces Integer operations with cheaper ones computing the same value:
+ * small constant powers of a variable or literal become multiplications,
+ * doubling becomes an addition, and division of a value known to be
+ * non-negative by a power of two becomes a right shift ({@code >>}, an
+ * operator only this pass produces, which both backends support).
+ *
+ * The shift relies on the ranges set by the {@link RangeAnalyzer}, so that
+ * pass should run first; without ranges divisions are left alone. Rewritten
+ * operations keep the range of the original, so the {@link Generator} still
+ * checks for overflow where it did before.
+ *
+ * Raising NIL to the first power, dividing it by one or doubling it fails,
+ * while the variable alone or added to itself does not, so those operations
+ * are only reduced where the operand is known not to be NIL, as marked by the
+ * {@link NilAnalyzer}.
+ */
+public final class StrengthReducer extends Rewriter {
+
+    /**
+     * The largest exponent expanded into a chain of multiplications.
+     */
+    private static final int MAX_POWER = 4;
+
+    @Override
+    public Ast visit(Ast.Expression.Binary ast) {
+        Ast.Expression.Binary binary = (Ast.Expression.Binary) super.visit(ast);
+        if (!binary.getType().equals(Environment.Type.INTEGER))
+            return binary;
+        Ast.Expression left = binary.getLeft();
+        BigInteger right = binary.getRight() instanceof Ast.Expression.Literal literal
+                && literal.getLiteral() instanceof BigInteger value ? value : null;
+        switch (binary.getOperator()) {
+            case "^":
+                if (right == null || right.signum() <= 0 || right.compareTo(BigInteger.valueOf(MAX_POWER)) > 0)
+                    break;
+                if (right.equals(BigInteger.ONE))
+                    return isNonNil(left) ? left : binary;
+                if (!isLeaf(left))
+                    break;
+                Ast.Expression product = left;
+                for (int i = 1; i < right.intValue(); i++) {
+                    product = reduced("*", product, copy(left), Range::multiply);
+                }
+                ((Ast.Expression.Binary) product).setRange(binary.getRange().orElse(null));
+                return product;
+            case "*":
+                if (isTwo(binary.getRight()) && isLeaf(left) && isNonNil(left))
+                    return group(reduced("+", left, copy(left), binary));
+                if (isTwo(left) && isLeaf(binary.getRight()) && isNonNil(binary.getRight()))
+                    return group(reduced("+", binary.getRight(), copy(binary.getRight()), binary));
+                break;
+            case "/":
+                if (right == null || right.signum() <= 0 || right.bitCount() != 1 || !isNonNegative(left))
+                    break;
+                if (right.equals(BigInteger.ONE))
+                    return isNonNil(left) ? left : binary;
+                // the shift binds more loosely than the operators around it
+                return group(reduced(">>", left, literal(BigInteger.valueOf(right.getLowestSetBit())), binary));
+        }
+        return binary;
+    }
+
+    /**
+     * Returns true if the expression is a variable or literal, which can be
+     * evaluated twice for the cost of once.
+     */
+    private static boolean isLeaf(Ast.Expression expression) {
+        return expression instanceof Ast.Expression.Literal
+                || expression instanceof Ast.Expression.Access access && access.getOffset().isEmpty();
+    }
+
+    private static boolean isTwo(Ast.Expression expression) {
+        return expression instanceof Ast.Expression.Literal literal && BigInteger.TWO.equals(literal.getLiteral());
+    }
+
+    private static boolean isNonNegative(Ast.Expression expression) {
+        return range(expression).flatMap(Range::getMin).map(min -> min.signum() >= 0).orElse(false);
+    }
+
+    private static Optional<Range> range(Ast.Expression expression) {
+        return switch (expression) {
+            case Ast.Expression.Literal literal when literal.getLiteral() instanceof BigInteger value -> Optional.of(Range.of(value));
+            case Ast.Expression.Group group -> range(group.getExpression());
+            case Ast.Expression.Binary binary -> binary.getRange();
+            case Ast.Expression.Access access -> access.getOffset().isEmpty() ? access.getRange() : Optional.empty();
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * Creates an Integer operation with the range of the one it replaces.
+     */
+    private static Ast.Expression.Binary reduced(String operator, Ast.Expression left, Ast.Expression right, Ast.Expression.Binary original) {
+        Ast.Expression.Binary binary = binary(operator, left, right, Environment.Type.INTEGER);
+        original.getRange().ifPresent(binary::setRange);
+        return binary;
+    }
+
+    /**
+     * Creates an Integer operation whose range, if both operands have one, is
+     * computed from theirs.
+     */
+    private static Ast.Expression.Binary reduced(String operator, Ast.Expression left, Ast.Expression right, BinaryOperator<Range> range) {
+        Ast.Expression.Binary binary = binary(operator, left, right, Environment.Type.INTEGER);
+        range(left).ifPresent(l -> range(right).ifPresent(r -> binary.setRange(range.apply(l, r))));
+        return binary;
+    }
+
+    private static Ast.Expression.Group group(Ast.Expression expression) {
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        group.setType(expression.getType());
+        return group;
+    }
+
+    /**
+     * Copies a leaf, so the rewritten tree shares no nodes.
+     */
+    private static Ast.Expression copy(Ast.Expression leaf) {
+        if (leaf instanceof Ast.Expression.Literal literal)
+            return literal(literal.getLiteral());
+        return access((Ast.Expression.Access) leaf, Optional.empty());
+    }
+
+}
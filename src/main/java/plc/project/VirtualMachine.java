@@ -0,0 +1,215 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a {@link Bytecode.Program} with a dispatch loop over the code of each
+ * chunk, calling functions of the same program directly with a fresh frame
+ * of registers. Names are looked up in the scope of the machine, which has
+ * the functions of the {@link Interpreter}, such as {@code print}, and
+ * operators other than the common Integer ones are delegated to it.
+ *
+ * Every instruction executed is counted, and exceeding the limit set with
+ * {@link #setInstructionLimit(long)} fails with a RuntimeException.
+ */
+public final class VirtualMachine {
+
+    private static final String[] OPERATORS = new String[Bytecode.NE + 1];
+    private static final Environment.PlcObject TRUE = Environment.create(true);
+    private static final Environment.PlcObject FALSE = Environment.create(false);
+
+    static {
+        OPERATORS[Bytecode.ADD] = "+";
+        OPERATORS[Bytecode.SUB] = "-";
+        OPERATORS[Bytecode.MUL] = "*";
+        OPERATORS[Bytecode.DIV] = "/";
+        OPERATORS[Bytecode.POW] = "^";
+        OPERATORS[Bytecode.SHR] = ">>";
+        OPERATORS[Bytecode.LT] = "<";
+        OPERATORS[Bytecode.GT] = ">";
+        OPERATORS[Bytecode.EQ] = "==";
+        OPERATORS[Bytecode.NE] = "!=";
+    }
+
+    private final Scope scope;
+    private long limit = Long.MAX_VALUE;
+    private long instructions = 0;
+
+    public VirtualMachine(Scope parent) {
+        scope = new Interpreter(parent).getScope();
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public void setInstructionLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    public Environment.PlcObject execute(Bytecode.Program program) {
+        Bytecode.Chunk script = program.getScript();
+        return run(program, script, new Environment.PlcObject[script.getRegisters()]);
+    }
+
+    private Environment.PlcObject call(Bytecode.Program program, Bytecode.Chunk chunk, Environment.PlcObject[] arguments, int start) {
+        Environment.PlcObject[] frame = new Environment.PlcObject[chunk.getRegisters()];
+        System.arraycopy(arguments, start, frame, 0, chunk.getParameters());
+        return run(program, chunk, frame);
+    }
+
+    private Environment.PlcObject run(Bytecode.Program program, Bytecode.Chunk chunk, Environment.PlcObject[] r) {
+        int[] code = chunk.getCode();
+        Environment.PlcObject[] values = chunk.getValues();
+        List<String> names = chunk.getNames();
+        int pc = 0;
+        while (true) {
+            if (++instructions > limit)
+                throw new RuntimeException("The instruction limit of " + limit + " was exceeded.");
+            switch (code[pc]) {
+                case Bytecode.CONST -> {
+                    r[code[pc + 1]] = values[code[pc + 2]];
+                    pc += 3;
+                }
+                case Bytecode.NIL -> {
+                    r[code[pc + 1]] = Environment.NIL;
+                    pc += 2;
+                }
+                case Bytecode.MOVE -> {
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    pc += 3;
+                }
+                case Bytecode.LOAD_GLOBAL -> {
+                    r[code[pc + 1]] = scope.lookupVariable(names.get(code[pc + 2])).getValue();
+                    pc += 3;
+                }
+                case Bytecode.STORE_GLOBAL -> {
+                    scope.lookupVariable(names.get(code[pc + 1])).setValue(r[code[pc + 2]]);
+                    pc += 3;
+                }
+                case Bytecode.CHECK_MUTABLE -> {
+                    if (!scope.lookupVariable(names.get(code[pc + 1])).getMutable())
+                        throw new RuntimeException("Modification of Immutable Type");
+                    pc += 2;
+                }
+                case Bytecode.DEFINE_GLOBAL -> {
+                    scope.defineVariable(names.get(code[pc + 1]), code[pc + 3] == 1, r[code[pc + 2]]);
+                    pc += 4;
+                }
+                case Bytecode.DEFINE_FUNCTION -> {
+                    Bytecode.Chunk function = program.getFunctions().get(code[pc + 1]);
+                    scope.defineFunction(function.getName(), function.getParameters(),
+                            args -> call(program, function, args.toArray(new Environment.PlcObject[0]), 0));
+                    pc += 2;
+                }
+                case Bytecode.ADD, Bytecode.SUB, Bytecode.MUL, Bytecode.DIV, Bytecode.POW,
+                        Bytecode.SHR, Bytecode.LT, Bytecode.GT, Bytecode.EQ, Bytecode.NE -> {
+                    r[code[pc + 1]] = binary(code[pc], r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                }
+                case Bytecode.AND, Bytecode.OR -> {
+                    boolean left = Interpreter.requireType(Boolean.class, r[code[pc + 2]]);
+                    if (r[code[pc + 3]].getValue() instanceof Boolean right)
+                        left = code[pc] == Bytecode.AND ? left && right : left || right;
+                    r[code[pc + 1]] = left ? TRUE : FALSE;
+                    pc += 4;
+                }
+                case Bytecode.BOOLEAN -> {
+                    Interpreter.requireType(Boolean.class, r[code[pc + 1]]);
+                    pc += 2;
+                }
+                case Bytecode.JUMP -> pc = code[pc + 1];
+                case Bytecode.JUMP_FALSE -> pc = Interpreter.requireType(Boolean.class, r[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                case Bytecode.JUMP_TRUE -> pc = Interpreter.requireType(Boolean.class, r[code[pc + 1]]) ? code[pc + 2] : pc + 3;
+                case Bytecode.JUMP_EQUAL -> pc = r[code[pc + 1]].getValue().equals(r[code[pc + 2]].getValue()) ? code[pc + 3] : pc + 4;
+                case Bytecode.SWITCH -> {
+                    Map<Object, Integer> table = chunk.getTables().get(code[pc + 2]);
+                    Integer index = table.get(r[code[pc + 1]].getValue());
+                    pc = code[pc + 4 + (index != null ? index : code[pc + 3] - 1)];
+                }
+                case Bytecode.CALL -> {
+                    int start = code[pc + 4];
+                    int count = code[pc + 5];
+                    if (code[pc + 3] >= 0) {
+                        r[code[pc + 1]] = call(program, program.getFunctions().get(code[pc + 3]), r, start);
+                    } else {
+                        Environment.Function function = scope.lookupFunction(names.get(code[pc + 2]), count);
+                        List<Environment.PlcObject> arguments = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++)
+                            arguments.add(r[start + i]);
+                        r[code[pc + 1]] = function.invoke(arguments);
+                    }
+                    pc += 6;
+                }
+                case Bytecode.LIST -> {
+                    List<Object> list = new ArrayList<>(code[pc + 3]);
+                    for (int i = 0; i < code[pc + 3]; i++)
+                        list.add(r[code[pc + 2] + i].getValue());
+                    r[code[pc + 1]] = Environment.create(list);
+                    pc += 4;
+                }
+                case Bytecode.INDEX -> {
+                    if (!(r[code[pc + 3]].getValue() instanceof BigInteger offset))
+                        throw new RuntimeException("Expected BigDecimal type for offset access");
+                    List<?> list = Interpreter.requireType(List.class, r[code[pc + 2]]);
+                    if (offset.intValue() < 0 || offset.intValue() >= list.size())
+                        throw new RuntimeException("Offset is out of list bounds");
+                    r[code[pc + 1]] = Environment.create(list.get(offset.intValue()));
+                    pc += 4;
+                }
+                case Bytecode.INDEX_UNCHECKED -> {
+                    List<?> list = (List<?>) r[code[pc + 2]].getValue();
+                    r[code[pc + 1]] = Environment.create(list.get(((BigInteger) r[code[pc + 3]].getValue()).intValue()));
+                    pc += 4;
+                }
+                case Bytecode.SET_INDEX, Bytecode.SET_INDEX_UNCHECKED -> {
+                    if (!(r[code[pc + 3]].getValue() instanceof BigInteger offset))
+                        throw new RuntimeException("Expected BigInteger type for offset");
+                    @SuppressWarnings("unchecked")
+                    List<Object> list = Interpreter.requireType(List.class, r[code[pc + 2]]);
+                    list.set(offset.intValue(), r[code[pc + 1]].getValue());
+                    pc += 4;
+                }
+                case Bytecode.RETURN -> {
+                    return r[code[pc + 1]];
+                }
+                case Bytecode.RETURN_NIL -> {
+                    return Environment.NIL;
+                }
+                default -> throw new AssertionError("Unknown opcode " + code[pc] + ".");
+            }
+        }
+    }
+
+    private static Environment.PlcObject binary(int opcode, Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.getValue() instanceof BigInteger l && right.getValue() instanceof BigInteger r) {
+            switch (opcode) {
+                case Bytecode.ADD -> {
+                    return Environment.create(l.add(r));
+                }
+                case Bytecode.SUB -> {
+                    return Environment.create(l.subtract(r));
+                }
+                case Bytecode.MUL -> {
+                    return Environment.create(l.multiply(r));
+                }
+                case Bytecode.LT -> {
+                    return l.compareTo(r) < 0 ? TRUE : FALSE;
+                }
+                case Bytecode.GT -> {
+                    return l.compareTo(r) > 0 ? TRUE : FALSE;
+                }
+                default -> {}
+            }
+        }
+        return Interpreter.evaluate(null, OPERATORS[opcode], left, right);
+    }
+
+}
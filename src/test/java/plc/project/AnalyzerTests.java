@@ -1,6 +1,7 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -9,7 +10,12 @@ import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -508,6 +514,141 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testLexicalAddressing() {
+        // VAR count: Integer = 0;
+        // FUN main(): Integer DO
+        //     LET x = 1;
+        //     IF TRUE DO LET y = x; ELSE LET z = count; END
+        //     RETURN x;
+        // END
+        Ast.Expression.Access x = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast.Expression.Access count = new Ast.Expression.Access(Optional.empty(), "count");
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration("x", Optional.of(new Ast.Expression.Literal(BigInteger.ONE)));
+        Ast.Statement.Declaration y = new Ast.Statement.Declaration("y", Optional.of(x));
+        Ast.Statement.Declaration z = new Ast.Statement.Declaration("z", Optional.of(count));
+        Ast.Function main = new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                declaration,
+                new Ast.Statement.If(new Ast.Expression.Literal(true), Arrays.asList(y), Arrays.asList(z)),
+                new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "x"))
+        ));
+        Ast.Global global = new Ast.Global("count", "Integer", true, Optional.of(new Ast.Expression.Literal(BigInteger.ZERO)));
+        new Analyzer(new Scope(null)).visit(new Ast.Source(Arrays.asList(global), Arrays.asList(main)));
+
+        Assertions.assertEquals(0, global.getSlot());
+        Assertions.assertEquals(0, declaration.getSlot());
+        Assertions.assertEquals(Ast.Expression.Access.LOCAL, x.getDepth());
+        Assertions.assertEquals(0, x.getSlot());
+        Assertions.assertEquals(Ast.Expression.Access.GLOBAL, count.getDepth());
+        Assertions.assertEquals(0, count.getSlot());
+        // sibling blocks reuse the same slot
+        Assertions.assertEquals(1, y.getSlot());
+        Assertions.assertEquals(1, z.getSlot());
+        Assertions.assertEquals(2, main.getFrameSize());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    public void testEffects(String test, String input, Set<Environment.Effect> expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Environment.Function function = ast.getFunctions().stream()
+                .filter(f -> f.getName().equals("f")).findFirst().get().getFunction();
+        Assertions.assertEquals(expected, function.getEffects());
+        Assertions.assertEquals(expected.stream().allMatch(Environment.Effect.FAIL::equals), function.isPure());
+    }
+
+    @Test
+    public void testConcurrentAnalysis() {
+        StringBuilder input = new StringBuilder("VAR total: Integer = 0;");
+        for (int i = 0; i < 32; i++) {
+            input.append(" FUN f").append(i).append("(x: Integer): Integer DO LET y = x * ").append(i).append("; total = total + y; RETURN y; END");
+        }
+        input.append(" FUN main(): Integer DO RETURN f31(1); END");
+        Ast.Source sequential = new Parser(new Lexer(input.toString()).lex()).parseSource();
+        Ast.Source concurrent = new Parser(new Lexer(input.toString()).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(sequential);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new Analyzer(new Scope(null)).visit(concurrent, executor);
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(sequential, concurrent);
+        for (int i = 0; i < concurrent.getFunctions().size(); i++) {
+            Assertions.assertEquals(sequential.getFunctions().get(i).getFrameSize(), concurrent.getFunctions().get(i).getFrameSize());
+            Assertions.assertEquals(sequential.getFunctions().get(i).getFunction().getEffects(), concurrent.getFunctions().get(i).getFunction().getEffects());
+        }
+    }
+
+    @Test
+    public void testConcurrentAnalysisErrors() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            input.append(" FUN f").append(i).append("(): Integer DO RETURN undefined").append(i).append("; END");
+        }
+        input.append(" FUN main(): Integer DO RETURN later(); END FUN later(): Integer DO RETURN 1; END");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int run = 0; run < 8; run++) {
+                Ast.Source ast = new Parser(new Lexer(input.toString()).lex()).parseSource();
+                RuntimeException exception = Assertions.assertThrows(RuntimeException.class,
+                        () -> new Analyzer(new Scope(null)).visit(ast, executor));
+                Assertions.assertEquals("The variable undefined0 is not defined in this scope.", exception.getMessage());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testEffects() {
+        String main = " FUN main(): Integer DO RETURN 0; END";
+        return Stream.of(
+                Arguments.of("Pure", "VAL k: Integer = 2; FUN f(x: Integer): Integer DO RETURN x * k; END" + main,
+                        EnumSet.noneOf(Environment.Effect.class)),
+                Arguments.of("Read Global", "VAR k: Integer = 2; FUN f(x: Integer): Integer DO RETURN x * k; END" + main,
+                        EnumSet.of(Environment.Effect.READ)),
+                Arguments.of("Write Global", "VAR k: Integer = 2; FUN f(x: Integer) DO k = x; END" + main,
+                        EnumSet.of(Environment.Effect.WRITE)),
+                Arguments.of("Print", "FUN f(x: Integer) DO print(x); END" + main,
+                        EnumSet.of(Environment.Effect.IO)),
+                Arguments.of("Division", "FUN f(x: Integer): Integer DO RETURN 1 / x; END" + main,
+                        EnumSet.of(Environment.Effect.FAIL)),
+                Arguments.of("Transitive", "FUN g(): Integer DO print(1); RETURN 1; END FUN f(): Integer DO RETURN g(); END" + main,
+                        EnumSet.of(Environment.Effect.IO)),
+                Arguments.of("Recursive", "FUN f(n: Integer): Integer DO IF n < 1 DO RETURN 0; END RETURN f(n - 1); END" + main,
+                        EnumSet.of(Environment.Effect.FAIL)),
+                Arguments.of("List Element", "LIST xs: Integer = [1]; FUN f() DO xs[0] = 2; END" + main,
+                        EnumSet.of(Environment.Effect.READ, Environment.Effect.WRITE, Environment.Effect.FAIL))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    public void testSwitchTable(String test, String input, Map<Object, Integer> expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Statement.Switch switchStatement = (Ast.Statement.Switch) ast.getFunctions().getFirst().getStatements().get(2);
+        Assertions.assertEquals(Optional.ofNullable(expected), switchStatement.getTable());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testSwitchTable() {
+        String function = "FUN main(): Integer DO LET x = %s; LET r = 0; SWITCH x %s DEFAULT r = 9; END RETURN r; END";
+        return Stream.of(
+                Arguments.of("Integer", String.format(function, "2", "CASE 1: r = 1; CASE 2: r = 2;"),
+                        Map.of(BigInteger.ONE, 0, BigInteger.TWO, 1), BigInteger.TWO),
+                Arguments.of("Character", String.format(function, "'b'", "CASE 'a': r = 1; CASE 'b': r = 2; CASE 'c': r = 3;"),
+                        Map.of('a', 0, 'b', 1, 'c', 2), BigInteger.TWO),
+                Arguments.of("String Default", String.format(function, "\"z\"", "CASE \"a\": r = 1;"),
+                        Map.of("a", 0), BigInteger.valueOf(9)),
+                Arguments.of("Duplicate Values", String.format(function, "1", "CASE 1: r = 1; CASE 1: r = 2;"),
+                        null, BigInteger.ONE),
+                Arguments.of("Variable Value", String.format(function, "1", "CASE x: r = 1;"),
+                        null, BigInteger.ONE)
+        );
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     public void testRequireAssignable(String test, Environment.Type target, Environment.Type type, boolean success) {
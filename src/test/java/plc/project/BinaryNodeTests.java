@@ -0,0 +1,97 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class BinaryNodeTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testSpecialization(String test, String operator, List<Object[]> operands, String expected) {
+        Ast.Expression.Binary ast = new Ast.Expression.Binary(operator, new Ast.Expression.Literal(null), new Ast.Expression.Literal(null));
+        BinaryNode node = new BinaryNode(ast);
+        Assertions.assertEquals("Uninitialized", node.getSpecialization());
+        for (Object[] pair : operands) {
+            Environment.PlcObject left = Environment.create(pair[0]);
+            Environment.PlcObject right = Environment.create(pair[1]);
+            Assertions.assertEquals(Interpreter.evaluate(ast, operator, left, right).getValue(), node.execute(left, right).getValue());
+        }
+        Assertions.assertEquals(expected, node.getSpecialization());
+    }
+
+    private static Stream<Arguments> testSpecialization() {
+        return Stream.of(
+                Arguments.of("Integer Addition", "+",
+                        pairs(BigInteger.ONE, BigInteger.TWO, BigInteger.TEN, BigInteger.ONE), "IntAdd"
+                ),
+                Arguments.of("Integer Comparison", "<",
+                        pairs(BigInteger.ONE, BigInteger.TWO, BigInteger.TEN, BigInteger.ONE), "IntLt"
+                ),
+                Arguments.of("Decimal Comparison", "<",
+                        pairs(new BigDecimal("1.5"), new BigDecimal("2.5")), "DecimalLt"
+                ),
+                Arguments.of("Decimal Division", "/",
+                        pairs(new BigDecimal("1.0"), new BigDecimal("3.0")), "DecimalDiv"
+                ),
+                Arguments.of("Concatenation", "+",
+                        pairs("a", BigInteger.ONE, "b", 'c', BigInteger.TWO, "d"), "StringConcat"
+                ),
+                Arguments.of("Equality", "==",
+                        pairs('a', 'a', 'a', 'b'), "CharacterEq"
+                ),
+                Arguments.of("Guard Failure", "+",
+                        pairs(BigInteger.ONE, BigInteger.TWO, "a", BigInteger.ONE, BigInteger.ONE, BigInteger.TWO), "Generic"
+                ),
+                Arguments.of("Unspecialized", "<",
+                        pairs('a', 'b'), "Generic"
+                )
+        );
+    }
+
+    @Test
+    void testDivisionByZero() {
+        BinaryNode node = new BinaryNode(new Ast.Expression.Binary("/", new Ast.Expression.Literal(null), new Ast.Expression.Literal(null)));
+        Assertions.assertEquals(BigInteger.TWO, node.execute(Environment.create(BigInteger.TEN), Environment.create(BigInteger.valueOf(5))).getValue());
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class,
+                () -> node.execute(Environment.create(BigInteger.ONE), Environment.create(BigInteger.ZERO)));
+        Assertions.assertEquals("Divide by Zero", exception.getMessage());
+        Assertions.assertEquals("IntDiv", node.getSpecialization());
+    }
+
+    @Test
+    void testInterpreter() {
+        Ast.Source ast = new Parser(new Lexer("FUN main(): Integer DO LET sum = 0; LET i = 0; WHILE i < 10 DO sum = sum + i; i = i + 1; END RETURN sum; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.setJitThreshold(Long.MAX_VALUE);
+        Assertions.assertEquals(BigInteger.valueOf(45), interpreter.visit(ast).getValue());
+
+        List<String> specializations = new ArrayList<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Binary ast) {
+                specializations.add(ast.getNode().map(BinaryNode::getSpecialization).orElse("None"));
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        // the counted loop runs its condition and increment on longs
+        Assertions.assertEquals(List.of("None", "IntAdd", "None"), specializations);
+    }
+
+    private static List<Object[]> pairs(Object... values) {
+        List<Object[]> pairs = new ArrayList<>();
+        for (int i = 0; i < values.length; i += 2)
+            pairs.add(new Object[] {values[i], values[i + 1]});
+        return pairs;
+    }
+
+}
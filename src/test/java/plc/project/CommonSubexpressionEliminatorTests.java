@@ -0,0 +1,202 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class CommonSubexpressionEliminatorTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testMain(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        Ast.Source eliminated = (Ast.Source) new CommonSubexpressionEliminator().visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(eliminated.getFunctions().getLast());
+        Assertions.assertEquals(expected, writer.toString());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(eliminated).getValue());
+    }
+
+    private static Stream<Arguments> testMain() {
+        return Stream.of(
+                Arguments.of("Same Expression",
+                        "FUN main(): Integer DO LET a = 3; LET b = 4; RETURN a * b + (a * b); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 3;",
+                                "    int b = 4;",
+                                "    int common$1 = a * b;",
+                                "    return common$1 + common$1;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(24)
+                ),
+                Arguments.of("Across Statements",
+                        "FUN main(): Integer DO LET a = 3; LET x = (a + 1) * 2; LET y = (a + 1) * 2 + 1; RETURN x + y; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 3;",
+                                "    int common$1 = (a + 1) * 2;",
+                                "    int x = common$1;",
+                                "    int y = common$1 + 1;",
+                                "    return x + y;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(17)
+                ),
+                Arguments.of("Invalidated",
+                        "FUN main(): Integer DO LET a = 3; LET x = a * a; a = 4; LET y = a * a; RETURN x + y; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 3;",
+                                "    int x = a * a;",
+                                "    a = 4;",
+                                "    int y = a * a;",
+                                "    return x + y;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(25)
+                ),
+                Arguments.of("Condition and Body",
+                        "FUN main(): Integer DO LET a = 3; IF a * 5 > 10 DO RETURN a * 5; END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 3;",
+                                "    int common$1 = a * 5;",
+                                "    if (common$1 > 10) {",
+                                "        return common$1;",
+                                "    }",
+                                "    return 0;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(15)
+                ),
+                Arguments.of("Assigned In Loop",
+                        "FUN main(): Integer DO LET i = 0; LET sum = i + 1; WHILE i + 1 < 5 DO sum = sum + (i + 1); i = i + 1; END RETURN sum; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int i = 0;",
+                                "    int sum = i + 1;",
+                                "    while (i + 1 < 5) {",
+                                "        int common$1 = i + 1;",
+                                "        sum = sum + common$1;",
+                                "        i = common$1;",
+                                "    }",
+                                "    return sum;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(11)
+                ),
+                Arguments.of("Pure Call",
+                        "FUN square(x: Integer): Integer DO RETURN x * x; END FUN main(): Integer DO LET a = 3; RETURN square(a) + square(a); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 3;",
+                                "    int common$1 = square(a);",
+                                "    return common$1 + common$1;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(18)
+                ),
+                Arguments.of("Impure Call",
+                        "VAR count: Integer = 0; FUN next(): Integer DO count = count + 1; RETURN count; END FUN main(): Integer DO RETURN next() + next(); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return next() + next();",
+                                "}"
+                        ),
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Call In Statement",
+                        "VAR g: Integer = 2; FUN bump(): Integer DO g = g * 2; RETURN 0; END FUN main(): Integer DO LET a = g * 3 + bump() + g * 3; RETURN a; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = g * 3 + bump() + g * 3;",
+                                "    return a;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(18)
+                ),
+                Arguments.of("Before Call In Statement",
+                        "VAR g: Integer = 2; FUN bump(): Integer DO g = g * 2; RETURN 0; END FUN main(): Integer DO LET a = g * 3 + g * 3 + bump() + g * 3; RETURN a; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int common$1 = g * 3;",
+                                "    int a = common$1 + common$1 + bump() + g * 3;",
+                                "    return a;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(24)
+                ),
+                Arguments.of("Call In Logical Operands",
+                        // the Interpreter evaluates the left operand of the outer && again after bump()
+                        "VAR g: Integer = 10; FUN bump(): Integer DO g = 20; RETURN 0; END FUN main(): Integer DO IF g * 2 > 0 && bump() == 0 && g * 2 > 30 DO RETURN 1; END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    if (g * 2 > 0 && bump() == 0 && g * 2 > 30) {",
+                                "        return 1;",
+                                "    }",
+                                "    return 0;",
+                                "}"
+                        ),
+                        BigInteger.ONE
+                ),
+                Arguments.of("Call In Arguments",
+                        "VAR g: Integer = 1; FUN bump(): Integer DO g = g * 2; RETURN 0; END FUN add(x: Integer, y: Integer): Integer DO RETURN x + y; END FUN main(): Integer DO LET a = add(g * 3, bump() + g * 3); RETURN a; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = add(g * 3, bump() + g * 3);",
+                                "    return a;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(9)
+                )
+        );
+    }
+
+    @Test
+    void testShadowed() {
+        Ast.Source ast = new Parser(new Lexer("VAR g: Integer = 1; FUN f(x: Integer): Integer DO LET a = x * 3 + x * 3; IF a > 0 DO LET x = a + 1; print(x * 3); END RETURN a; END FUN main(): Integer DO RETURN f(g); END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        Ast.Source eliminated = (Ast.Source) new CommonSubexpressionEliminator().visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(eliminated.getFunctions().getFirst());
+        // the x declared in the IF is another variable
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "int f(int x) {",
+                "    int common$1 = x * 3;",
+                "    int a = common$1 + common$1;",
+                "    if (a > 0) {",
+                "        int x = a + 1;",
+                "        System.out.println(x * 3);",
+                "    }",
+                "    return a;",
+                "}"
+        ), writer.toString());
+
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            Assertions.assertEquals(BigInteger.valueOf(6), new Interpreter(new Scope(null)).visit(eliminated).getValue());
+            Assertions.assertEquals("21" + System.lineSeparator(), out.toString());
+        } finally {
+            System.setOut(sysout);
+        }
+    }
+
+}
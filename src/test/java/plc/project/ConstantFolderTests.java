@@ -0,0 +1,153 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class ConstantFolderTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testExpression(String test, String input, String expected) {
+        Ast.Expression ast = new Parser(new Lexer(input).lex()).parseExpression();
+        Scope scope = new Scope(null);
+        scope.defineVariable("x", "x", Environment.Type.INTEGER, true, Environment.NIL);
+        new Analyzer(scope).visit(ast);
+        Assertions.assertEquals(expected, generate(new ConstantFolder().visit(ast)));
+    }
+
+    private static Stream<Arguments> testExpression() {
+        return Stream.of(
+                Arguments.of("Integer Arithmetic", "1 + 2 * 3", "7"),
+                Arguments.of("Decimal Arithmetic", "1.5 * 2.0", "1.5 * 2.0"),
+                Arguments.of("Concatenation", "\"a\" + 1 + 'c'", "\"a1c\""),
+                Arguments.of("Comparison", "1 < 2", "true"),
+                Arguments.of("Exponent", "2 ^ 10", "Math.pow(2, 10)"),
+                Arguments.of("Group", "(1 + 2) * x", "3 * x"),
+                Arguments.of("Short Circuit", "FALSE && x > 1", "false"),
+                Arguments.of("Integer Overflow", "2147483647 + 1", "2147483647 + 1"),
+                Arguments.of("Divide by Zero", "1 / 0", "1 / 0")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testPropagation(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source folded = (Ast.Source) new ConstantFolder().visit(ast);
+        Assertions.assertEquals(expected, generate(folded.getFunctions().getLast()));
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(folded).getValue());
+    }
+
+    private static Stream<Arguments> testPropagation() {
+        return Stream.of(
+                Arguments.of("Immutable Global",
+                        "VAL size: Integer = 4; FUN main(): Integer DO RETURN size * size; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 16;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(16)
+                ),
+                Arguments.of("Local Constant",
+                        "FUN main(): Integer DO LET a = 2; LET b = a + 1; RETURN a * b; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 2;",
+                                "    int b = 3;",
+                                "    return 6;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(6)
+                ),
+                Arguments.of("Reassigned Local",
+                        "FUN main(): Integer DO LET a = 2; a = a + 1; RETURN a; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int a = 2;",
+                                "    a = a + 1;",
+                                "    return a;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Frozen List",
+                        "LIST xs: Integer = [2, 3]; FUN main(): Integer DO RETURN xs[0] * xs[1]; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 6;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(6)
+                ),
+                Arguments.of("List Mutated Through Alias",
+                        "LIST xs: Integer = [2, 3]; FUN main(): Integer DO LET ys = xs; ys[0] = 5; RETURN xs[0]; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int ys = xs;",
+                                "    ys[0] = 5;",
+                                "    return xs[0];",
+                                "}"
+                        ),
+                        BigInteger.valueOf(5)
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testGenerated(String test, String input, String expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source folded = (Ast.Source) new ConstantFolder().visit(ast);
+        // the generated Java computes these on doubles, so they are left as written
+        Assertions.assertEquals(expected, generate(folded.getFunctions().getLast()));
+    }
+
+    private static Stream<Arguments> testGenerated() {
+        return Stream.of(
+                Arguments.of("Decimal Division",
+                        "FUN main(): Integer DO print(1.0 / 3.0); RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    System.out.println(1.0 / 3.0);",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Decimal Addition",
+                        "FUN main(): Integer DO print(0.1 + 0.2); RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    System.out.println(0.1 + 0.2);",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Exponent",
+                        "FUN main(): Integer DO print(10 ^ 3); RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    System.out.println(Math.pow(10, 3));",
+                                "    return 0;",
+                                "}"
+                        )
+                )
+        );
+    }
+
+    private static String generate(Ast ast) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,72 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class CountedLoopTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testCounter(String test, String input, Long step, Boolean read, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+
+        List<Ast.Statement.While> loops = new ArrayList<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Statement.While ast) {
+                loops.add(ast);
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        if (step == null) {
+            Assertions.assertTrue(loops.getFirst().getCounter().isEmpty());
+        } else {
+            CountedLoop counter = loops.getFirst().getCounter().orElseThrow();
+            Assertions.assertEquals(step, counter.getStep());
+            Assertions.assertEquals(read, counter.isRead());
+        }
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testCounter() {
+        return Stream.of(
+                Arguments.of("Counting Up",
+                        "FUN main(): Integer DO LET sum = 0; LET i = 0; WHILE i < 10 DO sum = sum + i; i = i + 1; END RETURN sum + i; END",
+                        1L, true, BigInteger.valueOf(55)
+                ),
+                Arguments.of("Counting Down",
+                        "FUN main(): Integer DO LET n = 0; LET i = 10; WHILE i > 0 DO n = n + 1; i = i - 3; END RETURN n * 100 + i; END",
+                        -3L, false, BigInteger.valueOf(398)
+                ),
+                Arguments.of("Variable Bound",
+                        "FUN f(n: Integer): Integer DO LET sum = 0; LET i = 0; WHILE i < n DO sum = sum + 2; i = i + 1; END RETURN sum; END FUN main(): Integer DO RETURN f(4); END",
+                        1L, false, BigInteger.valueOf(8)
+                ),
+                Arguments.of("Large Bound",
+                        "FUN f(n: Integer): Integer DO LET i = n - 2; WHILE i < n DO i = i + 1; END RETURN i - n; END FUN main(): Integer DO RETURN f(2147483647 * 2147483647 * 2147483647); END",
+                        1L, false, BigInteger.ZERO
+                ),
+                Arguments.of("Assigned Bound",
+                        "FUN main(): Integer DO LET n = 10; LET i = 0; WHILE i < n DO n = n - 1; i = i + 1; END RETURN i; END",
+                        null, null, BigInteger.valueOf(5)
+                ),
+                Arguments.of("Assigned Counter",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 10 DO i = i * 2; i = i + 1; END RETURN i; END",
+                        null, null, BigInteger.valueOf(15)
+                ),
+                Arguments.of("Wrong Direction",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 10 DO i = i - 1; i = i + 2; END RETURN i; END",
+                        null, null, BigInteger.valueOf(10)
+                )
+        );
+    }
+
+}
@@ -0,0 +1,140 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.stream.Stream;
+
+final class DeadCodeEliminatorTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testFunction(String test, String input, String expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        Ast.Source folded = (Ast.Source) new ConstantFolder().visit(ast);
+        Ast.Source eliminated = (Ast.Source) new DeadCodeEliminator().visit(folded);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(eliminated.getFunctions().getLast());
+        Assertions.assertEquals(expected, writer.toString());
+    }
+
+    private static Stream<Arguments> testFunction() {
+        return Stream.of(
+                Arguments.of("After Return",
+                        "FUN main(): Integer DO RETURN 1; print(\"unreachable\"); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 1;",
+                                "}"
+                        )
+                ),
+                Arguments.of("After Returning If",
+                        "FUN main(): Integer DO IF 1 < 2 DO RETURN 1; ELSE RETURN 2; END RETURN 3; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 1;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Constant If",
+                        "VAL DEBUG: Boolean = FALSE; FUN main(): Integer DO IF DEBUG DO print(\"debug\"); ELSE print(\"release\"); END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    System.out.println(\"release\");",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Scoped Branch",
+                        "FUN main(): Integer DO IF TRUE DO LET y: Integer = 1; y = 2; print(y); END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    if (true) {",
+                                "        int y = 1;",
+                                "        y = 2;",
+                                "        System.out.println(y);",
+                                "    }",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("False While",
+                        "FUN main(): Integer DO WHILE 1 > 2 DO print(1); END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Constant Switch",
+                        "FUN main(): Integer DO LET c = 'b'; SWITCH c CASE 'a': print(1); CASE 'b': print(2); DEFAULT print(3); END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    System.out.println(2);",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Duplicate Case",
+                        "VAR c: Character = 'a'; FUN main(): Integer DO SWITCH c CASE 'a': print(1); CASE 'a': print(2); DEFAULT print(3); END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    switch (c) {",
+                                "        case 'a':",
+                                "            System.out.println(1);",
+                                "            break;",
+                                "        default:",
+                                "            System.out.println(3);",
+                                "    }",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Unused Declarations",
+                        "FUN main(): Integer DO LET unused = 1 + 2; LET x = 5; LET y: Integer; RETURN x; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 5;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Failing Declaration",
+                        "LIST values: Integer = [1]; FUN main(): Integer DO LET unused = values[5]; RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int unused = values[5];",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Nil Operand",
+                        "FUN main(): Integer DO LET x: Integer; LET y = x * 3; RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    int y = x * 3;",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Nil Argument",
+                        "FUN square(n: Integer): Integer DO RETURN n * n; END FUN main(): Integer DO LET x: Integer; LET y = square(x); RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    int y = square(x);",
+                                "    return 0;",
+                                "}"
+                        )
+                )
+        );
+    }
+
+}
@@ -39,6 +39,34 @@ final class EndToEndInterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testAnalyzedSource(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testAnalyzedSource() {
+        return Stream.of(
+                // VAR total: Integer = 0; FUN main(): Integer DO LET i = 0; WHILE i < 10 DO total = total + i; i = i + 1; END RETURN total; END
+                Arguments.of("Loop",
+                        "VAR total: Integer = 0; FUN main(): Integer DO LET i = 0; WHILE i < 10 DO total = total + i; i = i + 1; END RETURN total; END",
+                        BigInteger.valueOf(45)
+                ),
+                // FUN fact(n: Integer): Integer DO IF n < 2 DO RETURN 1; END RETURN n * fact(n - 1); END FUN main(): Integer DO RETURN fact(5); END
+                Arguments.of("Recursion",
+                        "FUN fact(n: Integer): Integer DO IF n < 2 DO RETURN 1; END RETURN n * fact(n - 1); END FUN main(): Integer DO RETURN fact(5); END",
+                        BigInteger.valueOf(120)
+                ),
+                // FUN main(): Integer DO LET x = 1; IF TRUE DO LET y = 2; x = x + y; ELSE LET z = 3; x = z; END RETURN x; END
+                Arguments.of("Sibling Blocks",
+                        "FUN main(): Integer DO LET x = 1; IF TRUE DO LET y = 2; x = x + y; ELSE LET z = 3; x = z; END RETURN x; END",
+                        BigInteger.valueOf(3)
+                )
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testGlobal(String test, String input, Object expected, String variableName) {
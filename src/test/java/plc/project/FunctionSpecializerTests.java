@@ -0,0 +1,99 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class FunctionSpecializerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testSpecialize(String test, String input, List<String> functions, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source specialized = (Ast.Source) new FunctionSpecializer().visit(ast);
+        Optimizer.verify(specialized, "FunctionSpecializer");
+
+        Assertions.assertEquals(functions, specialized.getFunctions().stream().map(Ast.Function::getName).toList());
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        for (Ast.Function function : specialized.getFunctions()) {
+            if (function.getName().contains("$"))
+                generator.visit(function);
+        }
+        Assertions.assertEquals(expected, writer.toString());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(specialized).getValue());
+    }
+
+    private static Stream<Arguments> testSpecialize() {
+        return Stream.of(
+                Arguments.of("Flag",
+                        String.join(System.lineSeparator(),
+                                "FUN scale(x: Integer, double: Boolean): Integer DO",
+                                "    IF double DO RETURN 2 * x; ELSE RETURN x; END",
+                                "END",
+                                "FUN main(): Integer DO LET y = 3; RETURN scale(y, TRUE) + scale(y + 1, TRUE); END"
+                        ),
+                        List.of("scale", "scale$1", "main"),
+                        String.join(System.lineSeparator(),
+                                "int scale$1(int x) {",
+                                "    return 2 * x;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(14)
+                ),
+                Arguments.of("Distinct Literals",
+                        String.join(System.lineSeparator(),
+                                "FUN pick(n: Integer): Integer DO",
+                                "    IF n > 0 DO RETURN n * 10; ELSE RETURN 0 - n; END",
+                                "END",
+                                "FUN main(): Integer DO RETURN pick(1) + pick(0 - 2) + pick(1); END"
+                        ),
+                        List.of("pick", "pick$1", "main"),
+                        String.join(System.lineSeparator(),
+                                "int pick$1() {",
+                                "    return 10;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(22)
+                ),
+                Arguments.of("Not Smaller",
+                        String.join(System.lineSeparator(),
+                                "FUN add(a: Integer, b: Integer): Integer DO RETURN a + b; END",
+                                "FUN main(): Integer DO LET y = 1; RETURN add(y, 2); END"
+                        ),
+                        List.of("add", "main"),
+                        "",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Recursive",
+                        String.join(System.lineSeparator(),
+                                "FUN count(n: Integer, step: Integer): Integer DO",
+                                "    IF step == 0 DO RETURN 0; END",
+                                "    IF n < 1 DO RETURN 0; END",
+                                "    RETURN 1 + count(n - step, step);",
+                                "END",
+                                "FUN main(): Integer DO LET n = 10; RETURN count(n, 2); END"
+                        ),
+                        List.of("count", "count$1", "main"),
+                        String.join(System.lineSeparator(),
+                                "int count$1(int n) {",
+                                "    if (n < 1) {",
+                                "        return 0;",
+                                "    }",
+                                "    return 1 + count$1(n - 2);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(5)
+                )
+        );
+    }
+
+}
@@ -0,0 +1,83 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class IncrementalAnalyzerTests {
+
+    private static final String ORIGINAL = String.join(System.lineSeparator(),
+            "VAR count: Integer = 0;",
+            "VAL step: Integer = 2;",
+            "FUN next(): Integer DO count = count + step; RETURN count; END",
+            "FUN twice(x: Integer): Integer DO RETURN x * 2; END",
+            "FUN main(): Integer DO RETURN twice(next()); END"
+    );
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testEdit(String test, String edited, List<String> analyzed) {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        Ast.Source original = analyzer.analyze(parse(ORIGINAL));
+        Ast.Source incremental = analyzer.analyze(parse(edited));
+        Assertions.assertEquals(analyzed, analyzer.getAnalyzed());
+
+        Ast.Source full = parse(edited);
+        new Analyzer(new Scope(null)).visit(full);
+        Assertions.assertEquals(full, incremental);
+        // declarations that were not analyzed again are the same nodes
+        for (Ast.Function function : incremental.getFunctions()) {
+            String key = function.getName() + "/" + function.getParameters().size();
+            boolean reused = original.getFunctions().stream().anyMatch(previous -> previous == function);
+            Assertions.assertEquals(!analyzed.contains(key), reused, key);
+        }
+    }
+
+    private static Stream<Arguments> testEdit() {
+        return Stream.of(
+                Arguments.of("Unchanged", ORIGINAL, Arrays.asList()),
+                Arguments.of("Function Body",
+                        ORIGINAL.replace("RETURN x * 2;", "RETURN x + x;"),
+                        Arrays.asList("twice/1")
+                ),
+                Arguments.of("Function Signature",
+                        ORIGINAL.replace("FUN twice(x: Integer): Integer DO RETURN x * 2; END", "FUN twice(x: Any): Integer DO RETURN 2; END"),
+                        Arrays.asList("twice/1", "main/0")
+                ),
+                Arguments.of("Global Value",
+                        ORIGINAL.replace("VAL step: Integer = 2;", "VAL step: Integer = 3;"),
+                        Arrays.asList("step")
+                ),
+                Arguments.of("Global Type",
+                        ORIGINAL.replace("VAR count: Integer = 0;", "VAR count: Decimal = 0.0;")
+                                .replace("count + step", "count + 1.0").replace("RETURN count;", "RETURN 1;"),
+                        Arrays.asList("count", "next/0")
+                ),
+                Arguments.of("Inserted Global",
+                        ORIGINAL.replace("VAL step", "VAL unused: Integer = 1; VAL step"),
+                        Arrays.asList("unused", "step", "next/0")
+                )
+        );
+    }
+
+    @Test
+    void testInvalidEdit() {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        analyzer.analyze(parse(ORIGINAL));
+        Assertions.assertThrows(RuntimeException.class, () -> analyzer.analyze(parse(ORIGINAL.replace("FUN twice(x: Integer): Integer DO RETURN x * 2; END", ""))));
+        // the failed edit is not remembered
+        analyzer.analyze(parse(ORIGINAL.replace("RETURN x * 2;", "RETURN x + x;")));
+        Assertions.assertEquals(Arrays.asList("twice/1"), analyzer.getAnalyzed());
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
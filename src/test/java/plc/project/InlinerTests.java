@@ -0,0 +1,130 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class InlinerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testFunction(String test, int maxSize, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        Ast.Source inlined = (Ast.Source) new Inliner(maxSize, 256).visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(inlined.getFunctions().getLast());
+        Assertions.assertEquals(expected, writer.toString());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(inlined).getValue());
+    }
+
+    private static Stream<Arguments> testFunction() {
+        return Stream.of(
+                Arguments.of("Expression", 24,
+                        "FUN add(a: Integer, b: Integer): Integer DO RETURN a + b; END FUN main(): Integer DO RETURN 2 * add(3, 4); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 2 * (3 + 4);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(14)
+                ),
+                Arguments.of("Fresh Variables", 24,
+                        "FUN norm(a: Integer, b: Integer): Integer DO LET s = a * a + b * b; RETURN s; END FUN main(): Integer DO LET y = 2; RETURN norm(y + 1, 4); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int y = 2;",
+                                "    int norm$1$a = y + 1;",
+                                "    int norm$1$s = norm$1$a * norm$1$a + 4 * 4;",
+                                "    return norm$1$s;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(25)
+                ),
+                Arguments.of("Discarded Result", 24,
+                        "FUN one(): Integer DO RETURN 1; END FUN main(): Integer DO one(); RETURN one(); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return 1;",
+                                "}"
+                        ),
+                        BigInteger.ONE
+                ),
+                Arguments.of("Recursive", 24,
+                        "FUN fact(n: Integer): Integer DO IF n < 2 DO RETURN 1; END RETURN n * fact(n - 1); END FUN main(): Integer DO RETURN fact(3); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return fact(3);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(6)
+                ),
+                Arguments.of("Side Effects", 24,
+                        "FUN log(x: Integer): Integer DO print(x); RETURN x; END FUN main(): Integer DO RETURN log(1); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return log(1);",
+                                "}"
+                        ),
+                        BigInteger.ONE
+                ),
+                Arguments.of("Over Budget", 2,
+                        "FUN add(a: Integer, b: Integer): Integer DO RETURN a + b; END FUN main(): Integer DO RETURN add(3, 4); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    return add(3, 4);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(7)
+                ),
+                Arguments.of("While Condition", 24,
+                        "FUN limit(): Integer DO RETURN 3; END FUN main(): Integer DO LET i = 0; WHILE i < limit() DO i = i + 1; END RETURN i; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int i = 0;",
+                                "    while (i < limit()) {",
+                                "        i = i + 1;",
+                                "    }",
+                                "    return i;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Write Before Call", 24,
+                        "VAR g: Integer = 1; FUN bump(): Integer DO g = g + 1; RETURN 0; END FUN id(x: Integer): Integer DO LET y = x; RETURN y; END FUN main(): Integer DO LET r = bump() + id(g); RETURN r * 10 + id(g); END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int r = bump() + id(g);",
+                                // the first call was not inlined after its name was reserved
+                                "    int id$2$y = g;",
+                                "    return r * 10 + id$2$y;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(22)
+                ),
+                Arguments.of("Write In Logical Operands", 24,
+                        // the Interpreter evaluates id(g) again after bump()
+                        "VAR g: Integer = 1; FUN bump(): Integer DO g = g + 1; RETURN 0; END FUN id(x: Integer): Integer DO LET y = x; RETURN y; END FUN main(): Integer DO LET r = id(g) == 1 && bump() == 0; IF r DO RETURN 1; END RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    boolean r = id(g) == 1 && bump() == 0;",
+                                "    if (r) {",
+                                "        return 1;",
+                                "    }",
+                                "    return 0;",
+                                "}"
+                        ),
+                        BigInteger.ZERO
+                )
+        );
+    }
+
+}
@@ -395,6 +395,20 @@ final class InterpreterTests {
                         ),
                         "ab"
                 ),
+                // 1 + 2 + "a" + 3
+                Arguments.of("Concatenation Chain",
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Binary("+",
+                                        new Ast.Expression.Binary("+",
+                                                new Ast.Expression.Literal(BigInteger.ONE),
+                                                new Ast.Expression.Literal(BigInteger.TWO)
+                                        ),
+                                        new Ast.Expression.Literal("a")
+                                ),
+                                new Ast.Expression.Literal(BigInteger.valueOf(3))
+                        ),
+                        "3a3"
+                ),
                 // 1 + 10
                 Arguments.of("Addition",
                         new Ast.Expression.Binary("+",
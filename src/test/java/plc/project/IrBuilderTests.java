@@ -0,0 +1,176 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class IrBuilderTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testMain(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        IrBuilder builder = new IrBuilder();
+        builder.visit(ast);
+        Ir.Program program = builder.getProgram();
+
+        Assertions.assertEquals(expected, program.getFunctions().getLast().toString());
+        IrVerifier.verify(program);
+        Assertions.assertEquals(result, new IrInterpreter(new Scope(null)).execute(program).getValue());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testMain() {
+        return Stream.of(
+                Arguments.of("Loop",
+                        "FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 5 DO sum = sum + i; i = i + 1; END RETURN sum; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    goto block1",
+                                "block1:",
+                                "    v1 = phi [0, block0], [v6, block2]",
+                                "    v2 = phi [0, block0], [v5, block2]",
+                                "    v3 = v1 < 5",
+                                "    if v3 goto block2 else block3",
+                                "block2:",
+                                "    v5 = v2 + v1",
+                                "    v6 = v1 + 1",
+                                "    goto block1",
+                                "block3:",
+                                "    return v2"
+                        ),
+                        BigInteger.valueOf(10)
+                ),
+                Arguments.of("Swap",
+                        "FUN main(): Integer DO LET a = 1; LET b = 2; LET i = 0; WHILE i < 3 DO LET t = a; a = b; b = t; i = i + 1; END RETURN a; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    goto block1",
+                                "block1:",
+                                "    v1 = phi [0, block0], [v6, block2]",
+                                "    v2 = phi [1, block0], [v3, block2]",
+                                "    v3 = phi [2, block0], [v2, block2]",
+                                "    v4 = v1 < 3",
+                                "    if v4 goto block2 else block3",
+                                "block2:",
+                                "    v6 = v1 + 1",
+                                "    goto block1",
+                                "block3:",
+                                "    return v2"
+                        ),
+                        BigInteger.valueOf(2)
+                ),
+                Arguments.of("Short Circuit",
+                        "FUN main(): Integer DO LET x = 3; IF x > 2 && x < 5 DO x = x * 2; END RETURN x; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    v0 = 3 > 2",
+                                "    if v0 goto block1 else block2",
+                                "block1:",
+                                "    v2 = 3 < 5",
+                                "    goto block2",
+                                "block2:",
+                                "    v4 = phi [false, block0], [v2, block1]",
+                                "    if v4 goto block3 else block4",
+                                "block3:",
+                                "    v6 = 3 * 2",
+                                "    goto block5",
+                                "block4:",
+                                "    goto block5",
+                                "block5:",
+                                "    v9 = phi [v6, block3], [3, block4]",
+                                "    return v9"
+                        ),
+                        BigInteger.valueOf(6)
+                ),
+                Arguments.of("Switch",
+                        "FUN main(): Integer DO LET x: Integer; SWITCH 2 CASE 1: x = 10; DEFAULT x = 20; END RETURN x; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    v0 = 2 == 1",
+                                "    if v0 goto block2 else block3",
+                                "block1:",
+                                "    v2 = phi [10, block2], [20, block3]",
+                                "    return v2",
+                                "block2:",
+                                "    goto block1",
+                                "block3:",
+                                "    goto block1"
+                        ),
+                        BigInteger.valueOf(20)
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testLogical(String test, String input, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(ast).getValue());
+        // the operators leave the block they start in, so whatever uses their value is added to the join
+        for (boolean fold : List.of(false, true)) {
+            IrBuilder builder = new IrBuilder();
+            builder.visit(ast);
+            Ir.Program program = builder.getProgram();
+            if (fold)
+                program.getFunctions().forEach(new IrFolder()::fold);
+            IrVerifier.verify(program);
+            Assertions.assertEquals(result, new IrInterpreter(new Scope(null)).execute(program).getValue());
+        }
+    }
+
+    private static Stream<Arguments> testLogical() {
+        return Stream.of(
+                Arguments.of("Return",
+                        "FUN logic(a: Boolean, b: Boolean): Boolean DO RETURN a && b; END FUN main(): Integer DO IF logic(TRUE, TRUE) DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Global Store",
+                        "VAR g: Boolean = FALSE; FUN set(a: Boolean, b: Boolean): Integer DO g = a || b; RETURN 0; END FUN main(): Integer DO set(FALSE, TRUE); IF g DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Element Store",
+                        "LIST xs: Boolean = [FALSE, FALSE]; FUN set(a: Boolean, b: Boolean): Integer DO xs[1] = a && b; RETURN 0; END FUN main(): Integer DO set(TRUE, TRUE); IF xs[1] DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Declaration",
+                        "FUN f(a: Boolean, b: Boolean): Integer DO LET c = a || b; LET d = a && b; IF c DO IF d DO RETURN 2; END RETURN 1; END RETURN 0; END FUN main(): Integer DO RETURN f(TRUE, FALSE) * 10 + f(TRUE, TRUE); END",
+                        BigInteger.valueOf(12)
+                ),
+                Arguments.of("Impure Operands",
+                        // the Interpreter evaluates each operand several times, so the counts show the order
+                        "VAR n: Integer = 0; FUN t(): Boolean DO n = n * 10 + 1; RETURN TRUE; END FUN f(): Boolean DO n = n * 10 + 2; RETURN FALSE; END "
+                                + "FUN main(): Integer DO LET a = t() && f(); LET b = f() || t(); IF a || b DO RETURN n * 10 + 1; END RETURN n * 10; END",
+                        new BigInteger("11212221211")
+                )
+        );
+    }
+
+    @Test
+    void testUncaughtRightOperand() {
+        // f fails the second time it is called, which the Interpreter catches and the IR does not
+        String input = "VAR n: Integer = 0; FUN f(): Boolean DO n = n + 1; RETURN 1 / (2 - n) == 1; END "
+                + "FUN main(): Integer DO IF FALSE || f() DO RETURN 1; END RETURN 2; END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertEquals(BigInteger.TWO, new Interpreter(new Scope(null)).visit(ast).getValue());
+        IrBuilder builder = new IrBuilder();
+        builder.visit(ast);
+        Ir.Program program = builder.getProgram();
+        IrVerifier.verify(program);
+        Assertions.assertThrows(RuntimeException.class, () -> new IrInterpreter(new Scope(null)).execute(program));
+    }
+
+}
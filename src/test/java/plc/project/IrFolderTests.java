@@ -0,0 +1,78 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class IrFolderTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testMain(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        IrBuilder builder = new IrBuilder();
+        builder.visit(ast);
+        Ir.Program program = builder.getProgram();
+        program.getFunctions().forEach(new IrFolder()::fold);
+
+        Assertions.assertEquals(expected, program.getFunctions().getLast().toString());
+        IrVerifier.verify(program);
+        Assertions.assertEquals(result, new IrInterpreter(new Scope(null)).execute(program).getValue());
+    }
+
+    private static Stream<Arguments> testMain() {
+        return Stream.of(
+                Arguments.of("Constant Condition",
+                        "FUN main(): Integer DO LET x = 2 * 3; IF x > 5 DO RETURN x + 1; ELSE RETURN 0; END END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    return 7"
+                        ),
+                        BigInteger.valueOf(7)
+                ),
+                Arguments.of("Short Circuit",
+                        "FUN main(): Integer DO LET x = 3; IF x > 2 && x < 5 DO x = x * 2; END RETURN x; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    return 6"
+                        ),
+                        BigInteger.valueOf(6)
+                ),
+                Arguments.of("Loop Bound",
+                        "FUN main(): Integer DO LET i = 0; LET n = 2 + 3; WHILE i < n DO i = i + 1; END RETURN i; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    goto block1",
+                                "block1:",
+                                "    v1 = phi [0, block0], [v4, block2]",
+                                "    v2 = v1 < 5",
+                                "    if v2 goto block2 else block3",
+                                "block2:",
+                                "    v4 = v1 + 1",
+                                "    goto block1",
+                                "block3:",
+                                "    return v1"
+                        ),
+                        BigInteger.valueOf(5)
+                ),
+                Arguments.of("Division By Zero",
+                        "FUN main(): Integer DO IF FALSE DO RETURN 1 / 0; END RETURN 1; END",
+                        String.join(System.lineSeparator(),
+                                "function main():",
+                                "block0:",
+                                "    return 1"
+                        ),
+                        BigInteger.valueOf(1)
+                )
+        );
+    }
+
+}
@@ -0,0 +1,122 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.stream.Stream;
+
+final class IrGeneratorTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testSource(String test, String input, String expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        IrBuilder builder = new IrBuilder();
+        builder.visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new IrGenerator(new PrintWriter(writer)).generate(builder.getProgram());
+        Assertions.assertEquals(expected, writer.toString());
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Swapped Phi Nodes",
+                        "VAR total: Integer = 0; FUN main(): Integer DO LET a = 1; LET b = 2; WHILE total < 3 DO LET t = a; a = b; b = t; total = total + 1; END RETURN a; END",
+                        String.join(System.lineSeparator(),
+                                "public class Main {",
+                                "",
+                                "    int total = 0;",
+                                "",
+                                "    public static void main(String[] args) {",
+                                "        System.exit(new Main().main());",
+                                "    }",
+                                "",
+                                "    int main() {",
+                                "        int v$1 = 0;",
+                                "        int v$2 = 0;",
+                                "        int v$3 = 0;",
+                                "        boolean v$4 = false;",
+                                "        int v$6 = 0;",
+                                "        int v$7 = 0;",
+                                "        int block$ = 0;",
+                                "        while (true) {",
+                                "            switch (block$) {",
+                                "                case 0: {",
+                                "                    v$1 = 1;",
+                                "                    v$2 = 2;",
+                                "                    block$ = 1;",
+                                "                    continue;",
+                                "                }",
+                                "                case 1: {",
+                                "                    v$3 = total;",
+                                "                    v$4 = v$3 < 3;",
+                                "                    if (v$4) {",
+                                "                        block$ = 2;",
+                                "                    } else {",
+                                "                        block$ = 3;",
+                                "                    }",
+                                "                    continue;",
+                                "                }",
+                                "                case 2: {",
+                                "                    v$6 = total;",
+                                "                    v$7 = v$6 + 1;",
+                                "                    total = v$7;",
+                                "                    int v$1$ = v$2;",
+                                "                    int v$2$ = v$1;",
+                                "                    v$1 = v$1$;",
+                                "                    v$2 = v$2$;",
+                                "                    block$ = 1;",
+                                "                    continue;",
+                                "                }",
+                                "                case 3: {",
+                                "                    return v$1;",
+                                "                }",
+                                "            }",
+                                "        }",
+                                "    }",
+                                "",
+                                "}"
+                        )
+                ),
+                Arguments.of("List",
+                        "LIST xs: Integer = [1, 2]; FUN main(): Integer DO LET ys = xs; ys[0] = 3; RETURN xs[0]; END",
+                        String.join(System.lineSeparator(),
+                                "public class Main {",
+                                "",
+                                "    int[] xs = {1, 2};",
+                                "",
+                                "    public static void main(String[] args) {",
+                                "        System.exit(new Main().main());",
+                                "    }",
+                                "",
+                                "    int main() {",
+                                "        int[] v$0 = null;",
+                                "        int[] v$2 = null;",
+                                "        int v$3 = 0;",
+                                "        int block$ = 0;",
+                                "        while (true) {",
+                                "            switch (block$) {",
+                                "                case 0: {",
+                                "                    v$0 = xs;",
+                                "                    v$0[0] = 3;",
+                                "                    v$2 = xs;",
+                                "                    v$3 = v$2[0];",
+                                "                    return v$3;",
+                                "                }",
+                                "            }",
+                                "        }",
+                                "    }",
+                                "",
+                                "}"
+                        )
+                )
+        );
+    }
+
+}
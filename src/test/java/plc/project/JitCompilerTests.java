@@ -0,0 +1,135 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class JitCompilerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testCompile(String test, String input, Object expected, List<String> compiled) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+
+        Interpreter interpreted = new Interpreter(new Scope(null));
+        interpreted.setJitThreshold(Long.MAX_VALUE);
+        Assertions.assertEquals(expected, interpreted.visit(ast).getValue());
+        Assertions.assertEquals(List.of(), interpreted.getCompiledFunctions());
+
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.setJitThreshold(1);
+        Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+        Assertions.assertEquals(compiled, interpreter.getCompiledFunctions());
+    }
+
+    private static Stream<Arguments> testCompile() {
+        return Stream.of(
+                Arguments.of("Loop",
+                        "FUN main(): Integer DO LET sum = 0; LET i = 0; WHILE i < 100 DO sum = sum + i * i; i = i + 1; END RETURN sum; END",
+                        BigInteger.valueOf(328350), List.of("main")
+                ),
+                Arguments.of("Recursion",
+                        "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END FUN main(): Integer DO RETURN fib(15); END",
+                        BigInteger.valueOf(610), List.of("main", "fib")
+                ),
+                Arguments.of("Globals",
+                        "VAR total: Integer = 1; FUN double(): Integer DO total = total * 2; RETURN total; END FUN main(): Integer DO double(); double(); RETURN total; END",
+                        BigInteger.valueOf(4), List.of("main", "double")
+                ),
+                Arguments.of("Lists",
+                        "LIST xs: Integer = [3, 1, 2]; FUN main(): Integer DO xs[1] = xs[0] + xs[2]; RETURN xs[1]; END",
+                        BigInteger.valueOf(5), List.of("main")
+                ),
+                Arguments.of("Concatenation",
+                        "FUN f(n: Integer): String DO RETURN \"n = \" + n + \", \" + 1.5 + 'c'; END FUN main(): Integer DO IF f(2) == \"n = 2, 1.5c\" DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE, List.of("main", "f")
+                ),
+                Arguments.of("Switch",
+                        "FUN f(c: Character): Integer DO SWITCH c CASE 'a': RETURN 1; CASE 'b': RETURN 2; DEFAULT RETURN 3; END END FUN main(): Integer DO RETURN f('a') * 100 + f('b') * 10 + f('z'); END",
+                        BigInteger.valueOf(123), List.of("main", "f")
+                ),
+                Arguments.of("Logical",
+                        "FUN f(x: Integer): Boolean DO RETURN x > 1 && x < 5 || x == 10; END FUN main(): Integer DO LET a = f(3); LET b = f(7); LET c = f(10); IF a && b DO RETURN 2; END IF a && c DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE, List.of("main", "f")
+                ),
+                Arguments.of("Impure Operands",
+                        // the Interpreter evaluates the left operand three times and the right twice
+                        "VAR count: Integer = 0; FUN tick(): Boolean DO count = count + 1; RETURN TRUE; END FUN main(): Integer DO IF tick() && tick() DO RETURN count; END RETURN 0; END",
+                        BigInteger.valueOf(5), List.of("tick")
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testOnStackReplacement(String test, String input, Object expected, List<String> loops) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+
+        Interpreter interpreted = new Interpreter(new Scope(null));
+        interpreted.setJitThreshold(Long.MAX_VALUE);
+        Assertions.assertEquals(expected, interpreted.visit(ast).getValue());
+
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.setJitThreshold(100);
+        Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+        Assertions.assertEquals(loops, interpreter.getCompiledLoops());
+        Assertions.assertEquals(List.of(), interpreter.getCompiledFunctions());
+    }
+
+    private static Stream<Arguments> testOnStackReplacement() {
+        return Stream.of(
+                Arguments.of("Loop",
+                        "FUN main(): Integer DO LET sum = 0; LET i = 0; WHILE i < 1000 DO sum = sum + i; i = i * 1 + 1; END RETURN sum * 10000 + i; END",
+                        BigInteger.valueOf(4995001000L), List.of("main")
+                ),
+                Arguments.of("Counted Loop",
+                        "FUN main(): Integer DO LET sum = 0; LET i = 0; WHILE i < 1000 DO sum = sum + i; i = i + 1; END RETURN sum * 10000 + i; END",
+                        BigInteger.valueOf(4995001000L), List.of("main")
+                ),
+                Arguments.of("Return",
+                        "FUN main(): Integer DO LET i = 0; WHILE TRUE DO IF i == 500 DO RETURN i; END i = i + 1; END RETURN 0; END",
+                        BigInteger.valueOf(500), List.of("main")
+                ),
+                Arguments.of("Nested Loops",
+                        // the inner loop is compiled in the fourth iteration of the outer one and entered directly afterwards
+                        "FUN main(): Integer DO LET n = 0; LET i = 0; WHILE i < 30 DO LET j = 0; WHILE j < 30 DO n = n + i * j; j = j + 1; END i = i + 1; END RETURN n; END",
+                        BigInteger.valueOf(189225), List.of("main")
+                ),
+                Arguments.of("Declared In Loop",
+                        "VAR total: Integer = 0; FUN main(): Integer DO LET i = 0; WHILE i < 200 DO LET square = i * i; total = total + square; i = i + 1; END RETURN total; END",
+                        BigInteger.valueOf(2646700), List.of("main")
+                )
+        );
+    }
+
+    @Test
+    void testThreshold() {
+        Ast.Source ast = new Parser(new Lexer("FUN f(n: Integer): Integer DO RETURN n + 1; END FUN main(): Integer DO LET i = 0; WHILE i < 10 DO i = f(i); END RETURN i; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.setJitThreshold(5);
+        Assertions.assertEquals(BigInteger.TEN, interpreter.visit(ast).getValue());
+        Assertions.assertEquals(List.of("f"), interpreter.getCompiledFunctions());
+        Assertions.assertEquals(List.of("main"), interpreter.getCompiledLoops());
+    }
+
+    @Test
+    void testDivisionByZero() {
+        Ast.Source ast = new Parser(new Lexer("FUN main(): Integer DO LET x = 0; RETURN 1 / x; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.setJitThreshold(1);
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        Assertions.assertEquals("Divide by Zero", exception.getMessage());
+        Assertions.assertEquals(List.of("main"), interpreter.getCompiledFunctions());
+    }
+
+}
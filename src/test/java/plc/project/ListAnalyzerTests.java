@@ -0,0 +1,61 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final class ListAnalyzerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testList(String test, String input, boolean mutated, boolean escapes, Set<String> aliases) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        ListAnalyzer analyzer = new ListAnalyzer();
+        analyzer.visit(ast);
+
+        Environment.Variable list = ast.getGlobals().getFirst().getVariable();
+        Assertions.assertEquals(mutated, analyzer.isMutated(list));
+        Assertions.assertEquals(escapes, analyzer.escapes(list));
+        Assertions.assertEquals(aliases, analyzer.getAliases(list).stream().map(Environment.Variable::getName).collect(Collectors.toSet()));
+    }
+
+    private static Stream<Arguments> testList() {
+        return Stream.of(
+                Arguments.of("Read Only",
+                        "LIST xs: Integer = [1, 2]; FUN main(): Integer DO RETURN xs[0] + xs[1]; END",
+                        false, false, Set.of()
+                ),
+                Arguments.of("Element Assignment",
+                        "LIST xs: Integer = [1, 2]; FUN main(): Integer DO xs[0] = 3; RETURN xs[0]; END",
+                        true, false, Set.of()
+                ),
+                Arguments.of("Local Alias",
+                        "LIST xs: Integer = [1, 2]; FUN main(): Integer DO LET ys = xs; ys[0] = 3; RETURN xs[0]; END",
+                        true, false, Set.of("ys")
+                ),
+                Arguments.of("Parameter",
+                        "LIST xs: Integer = [1, 2]; FUN set(p: Integer) DO p[0] = 3; END FUN main(): Integer DO set(xs); RETURN xs[0]; END",
+                        true, false, Set.of("p")
+                ),
+                Arguments.of("Returned",
+                        "LIST xs: Integer = [1, 2]; FUN get(): Integer DO RETURN xs; END FUN main(): Integer DO LET ys = get(); ys[1] = 0; RETURN xs[1]; END",
+                        true, false, Set.of("ys")
+                ),
+                Arguments.of("Passed To Builtin",
+                        "LIST xs: Integer = [1, 2]; FUN main(): Integer DO print(xs); RETURN 0; END",
+                        true, true, Set.of()
+                ),
+                Arguments.of("Other List Mutated",
+                        "LIST xs: Integer = [1, 2]; LIST ys: Integer = [3]; FUN main(): Integer DO LET zs = ys; zs[0] = xs[0]; RETURN zs[0]; END",
+                        false, false, Set.of()
+                )
+        );
+    }
+
+}
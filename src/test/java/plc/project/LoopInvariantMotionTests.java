@@ -0,0 +1,149 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class LoopInvariantMotionTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testFunction(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        Ast.Source moved = (Ast.Source) new LoopInvariantMotion().visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(moved.getFunctions().getLast());
+        Assertions.assertEquals(expected, writer.toString());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(moved).getValue());
+    }
+
+    private static Stream<Arguments> testFunction() {
+        return Stream.of(
+                Arguments.of("Condition and Body",
+                        "FUN main(): Integer DO LET n = 10; LET k = 3; LET i = 0; LET sum = 0; WHILE i < n * 2 DO sum = sum + k * k + i; i = i + 1; END RETURN sum; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int n = 10;",
+                                "    int k = 3;",
+                                "    int i = 0;",
+                                "    int sum = 0;",
+                                "    int loop$1 = n * 2;",
+                                "    int loop$2 = k * k;",
+                                "    while (i < loop$1) {",
+                                "        sum = sum + loop$2 + i;",
+                                "        i = i + 1;",
+                                "    }",
+                                "    return sum;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(370)
+                ),
+                Arguments.of("Shared Temporary",
+                        "FUN main(): Integer DO LET k = 2; LET i = 0; WHILE i < (k + 1) * 4 DO i = i + (k + 1); END RETURN i; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int k = 2;",
+                                "    int i = 0;",
+                                "    int loop$1 = (k + 1) * 4;",
+                                "    int loop$2 = k + 1;",
+                                "    while (i < loop$1) {",
+                                "        i = i + loop$2;",
+                                "    }",
+                                "    return i;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(12)
+                ),
+                Arguments.of("Nested Loops",
+                        "FUN main(): Integer DO LET n = 3; LET i = 0; LET sum = 0; WHILE i < n DO LET j = 0; WHILE j < n DO sum = sum + n * n + i; j = j + 1; END i = i + 1; END RETURN sum; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int n = 3;",
+                                "    int i = 0;",
+                                "    int sum = 0;",
+                                "    int loop$1 = n * n;",
+                                "    while (i < n) {",
+                                "        int j = 0;",
+                                "        while (j < n) {",
+                                "            sum = sum + loop$1 + i;",
+                                "            j = j + 1;",
+                                "        }",
+                                "        i = i + 1;",
+                                "    }",
+                                "    return sum;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(90)
+                ),
+                Arguments.of("Not Invariant",
+                        "VAR total: Integer = 0; FUN add(x: Integer) DO total = total + x; END FUN main(): Integer DO LET d = 2; LET i = 0; WHILE i < 4 DO add(total * 2); i = i + 10 / d; END RETURN total; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int d = 2;",
+                                "    int i = 0;",
+                                "    while (i < 4) {",
+                                "        add(total * 2);",
+                                "        i = i + 10 / d;",
+                                "    }",
+                                "    return total;",
+                                "}"
+                        ),
+                        BigInteger.ZERO
+                ),
+                Arguments.of("Zero Iterations",
+                        "FUN main(): Integer DO LET x: Integer; LET i = 0; WHILE i < 0 DO i = x * 3; END RETURN i; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    int i = 0;",
+                                "    while (i < 0) {",
+                                "        i = x * 3;",
+                                "    }",
+                                "    return i;",
+                                "}"
+                        ),
+                        BigInteger.ZERO
+                ),
+                Arguments.of("Zero Iterations Call",
+                        "FUN square(n: Integer): Integer DO RETURN n * n; END FUN main(): Integer DO LET y: Integer; LET i = 0; WHILE i < 0 DO i = square(y); END RETURN i; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int y;",
+                                "    int i = 0;",
+                                "    while (i < 0) {",
+                                "        i = square(y);",
+                                "    }",
+                                "    return i;",
+                                "}"
+                        ),
+                        BigInteger.ZERO
+                ),
+                Arguments.of("Assigned Before Loop",
+                        "FUN main(): Integer DO LET x: Integer; x = 5; LET i = 0; WHILE i < 0 DO i = x * 3; END RETURN i; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    x = 5;",
+                                "    int i = 0;",
+                                "    int loop$1 = x * 3;",
+                                "    while (i < 0) {",
+                                "        i = loop$1;",
+                                "    }",
+                                "    return i;",
+                                "}"
+                        ),
+                        BigInteger.ZERO
+                )
+        );
+    }
+
+}
@@ -0,0 +1,100 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+final class MethodHandleCompilerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testCompile(String test, String input, Object expected, List<String> interpreted) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        MethodHandleCompiler compiler = new MethodHandleCompiler(new Scope(null));
+        Supplier<Environment.PlcObject> program = compiler.compile(ast);
+
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(ast).getValue());
+        Assertions.assertEquals(expected, program.get().getValue());
+        // globals are initialized again for each run
+        Assertions.assertEquals(expected, program.get().getValue());
+        Assertions.assertEquals(interpreted, compiler.getInterpretedFunctions());
+    }
+
+    private static Stream<Arguments> testCompile() {
+        return Stream.of(
+                Arguments.of("Loop",
+                        "FUN main(): Integer DO LET sum = 0; LET i = 0; WHILE i < 100 DO sum = sum + i * i; i = i + 1; END RETURN sum; END",
+                        BigInteger.valueOf(328350), List.of()
+                ),
+                Arguments.of("Recursion",
+                        "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END FUN main(): Integer DO RETURN fib(15); END",
+                        BigInteger.valueOf(610), List.of()
+                ),
+                Arguments.of("Globals",
+                        "VAR total: Integer = 1; FUN double(): Integer DO total = total * 2; RETURN total; END FUN main(): Integer DO double(); double(); RETURN total; END",
+                        BigInteger.valueOf(4), List.of()
+                ),
+                Arguments.of("Lists",
+                        "LIST xs: Integer = [3, 1, 2]; FUN main(): Integer DO xs[1] = xs[0] + xs[2]; RETURN xs[1]; END",
+                        BigInteger.valueOf(5), List.of()
+                ),
+                Arguments.of("Concatenation",
+                        "FUN f(n: Integer): String DO RETURN \"n = \" + n + \", \" + 1.5 + 'c'; END FUN main(): Integer DO IF f(2) == \"n = 2, 1.5c\" DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE, List.of()
+                ),
+                Arguments.of("Switch",
+                        "FUN f(c: Character): Integer DO SWITCH c CASE 'a': RETURN 1; CASE 'b': RETURN 2; DEFAULT RETURN 3; END END FUN main(): Integer DO RETURN f('a') * 100 + f('b') * 10 + f('z'); END",
+                        BigInteger.valueOf(123), List.of()
+                ),
+                Arguments.of("Logical",
+                        "FUN f(x: Integer): Boolean DO RETURN x > 1 && x < 5 || x == 10; END FUN main(): Integer DO LET a = f(3); LET b = f(7); LET c = f(10); IF a && b DO RETURN 2; END IF a && c DO RETURN 1; END RETURN 0; END",
+                        BigInteger.ONE, List.of()
+                ),
+                Arguments.of("Return From Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE TRUE DO IF i == 7 DO RETURN i; END i = i + 1; END RETURN 0; END",
+                        BigInteger.valueOf(7), List.of()
+                ),
+                Arguments.of("Impure Operands",
+                        // the Interpreter evaluates the left operand three times and the right twice
+                        "VAR count: Integer = 0; FUN tick(): Boolean DO count = count + 1; RETURN TRUE; END FUN main(): Integer DO IF tick() && tick() DO RETURN count; END RETURN 0; END",
+                        BigInteger.valueOf(5), List.of("main/0")
+                ),
+                Arguments.of("Interpreted Callee",
+                        "VAR count: Integer = 0; FUN tick(): Boolean DO count = count + 1; RETURN TRUE; END FUN twice(): Boolean DO RETURN tick() || tick(); END FUN main(): Integer DO twice(); twice(); RETURN count; END",
+                        BigInteger.valueOf(4), List.of("twice/0")
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("plc.project.EndToEndInterpreterTests#testAnalyzedSource")
+    void testAnalyzedSource(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertEquals(expected, new MethodHandleCompiler(new Scope(null)).compile(ast).get().getValue());
+    }
+
+    @Test
+    void testDivisionByZero() {
+        Ast.Source ast = new Parser(new Lexer("FUN main(): Integer DO LET x = 0; RETURN 1 / x; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Supplier<Environment.PlcObject> program = new MethodHandleCompiler(new Scope(null)).compile(ast);
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, program::get);
+        Assertions.assertEquals("Divide by Zero", exception.getMessage());
+    }
+
+    @Test
+    void testUnanalyzed() {
+        Ast.Source ast = new Parser(new Lexer("FUN main(): Integer DO RETURN 1; END").lex()).parseSource();
+        Assertions.assertThrows(RuntimeException.class, () -> new MethodHandleCompiler(new Scope(null)).compile(ast));
+    }
+
+}
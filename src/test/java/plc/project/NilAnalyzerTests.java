@@ -0,0 +1,74 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class NilAnalyzerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testNil(String test, String input, boolean nonNil, List<String> warnings) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        NilAnalyzer analyzer = new NilAnalyzer();
+        analyzer.visit(ast);
+
+        List<Ast.Expression.Access> accesses = new ArrayList<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (ast.getName().equals("x"))
+                    accesses.add(ast);
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        Assertions.assertEquals(nonNil, accesses.getLast().isNonNil());
+        Assertions.assertEquals(warnings, analyzer.getWarnings());
+        Assertions.assertEquals(BigInteger.ONE, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testNil() {
+        return Stream.of(
+                Arguments.of("Assigned",
+                        "FUN main(): Integer DO LET x: Integer; x = 1; RETURN x; END",
+                        true, List.of()
+                ),
+                Arguments.of("Both Branches",
+                        "FUN main(): Integer DO LET x: Integer; IF TRUE DO x = 1; ELSE x = 2; END RETURN x; END",
+                        true, List.of()
+                ),
+                Arguments.of("One Branch",
+                        "FUN main(): Integer DO LET x: Integer; IF TRUE DO x = 1; END RETURN x; END",
+                        false, List.of("The variable x may be read before it is assigned.")
+                ),
+                Arguments.of("Loop Body",
+                        "FUN main(): Integer DO LET x: Integer; LET i = 0; WHILE i < 1 DO x = 1; i = i + 1; END RETURN x; END",
+                        false, List.of("The variable x may be read before it is assigned.")
+                ),
+                Arguments.of("Assigned Nil",
+                        "FUN main(): Integer DO LET x: Any = 1; x = NIL; LET y: Any = x; RETURN 1; END",
+                        false, List.of()
+                ),
+                Arguments.of("Parameter",
+                        "FUN f(x: Integer): Integer DO RETURN x; END FUN main(): Integer DO RETURN f(1); END",
+                        true, List.of()
+                ),
+                Arguments.of("Parameter Given Nil",
+                        "FUN f(x: Integer): Integer DO RETURN x; END FUN main(): Integer DO LET y: Integer; f(y); RETURN 1; END",
+                        false, List.of("The variable y may be read before it is assigned.")
+                ),
+                Arguments.of("Missing Return",
+                        "FUN f(): Integer DO IF TRUE DO RETURN 1; END END FUN main(): Integer DO LET x = f(); RETURN x; END",
+                        false, List.of("The function f may finish without returning a value.")
+                )
+        );
+    }
+
+}
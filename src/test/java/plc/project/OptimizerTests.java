@@ -0,0 +1,84 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class OptimizerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testLevel(String test, String input, Optimizer.Level level, List<String> passes, BigInteger expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        int size = Rewriter.size(ast);
+        Optimizer optimizer = new Optimizer(level);
+        optimizer.setDebug(true);
+        Ast.Source optimized = optimizer.optimize(ast);
+
+        List<Optimizer.Report> reports = optimizer.getReports();
+        Assertions.assertEquals(passes, reports.stream().map(Optimizer.Report::pass).toList());
+        if (!reports.isEmpty()) {
+            Assertions.assertEquals(size, reports.getFirst().sizeBefore());
+            Assertions.assertEquals(Rewriter.size(optimized), reports.getLast().sizeAfter());
+        }
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(optimized).getValue());
+    }
+
+    private static Stream<Arguments> testLevel() {
+        String input = String.join(System.lineSeparator(),
+                "VAR total: Integer = 0;",
+                "FUN square(x: Integer): Integer DO RETURN x * x; END",
+                "FUN main(): Integer DO",
+                "    LET i = 0;",
+                "    WHILE i < 10 DO",
+                "        total = total + square(i) + 2 * 3;",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN total;",
+                "END"
+        );
+        return Stream.of(
+                Arguments.of("O0", input, Optimizer.Level.O0, List.of(), BigInteger.valueOf(345)),
+                Arguments.of("O1", input, Optimizer.Level.O1,
+                        List.of("NilAnalyzer", "ConstantFolder", "DeadCodeEliminator", "RangeAnalyzer"),
+                        BigInteger.valueOf(345)
+                ),
+                Arguments.of("O2", input, Optimizer.Level.O2,
+                        List.of("NilAnalyzer", "Inliner", "FunctionSpecializer", "ConstantFolder", "RangeAnalyzer", "StrengthReducer", "CommonSubexpressionEliminator",
+                                "LoopInvariantMotion", "ConstantFolder", "DeadCodeEliminator", "RangeAnalyzer", "NilAnalyzer"),
+                        BigInteger.valueOf(345)
+                )
+        );
+    }
+
+    @Test
+    void testBrokenPass() {
+        Ast.Source ast = new Parser(new Lexer("FUN main(): Integer DO RETURN 1; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Optimizer optimizer = new Optimizer(List.of(Optimizer.rewriter("Broken", () -> new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Literal ast) {
+                return new Ast.Expression.Literal(ast.getLiteral());
+            }
+        })));
+        Assertions.assertDoesNotThrow(() -> optimizer.optimize(ast));
+        optimizer.setDebug(true);
+        IllegalStateException exception = Assertions.assertThrows(IllegalStateException.class, () -> optimizer.optimize(ast));
+        Assertions.assertTrue(exception.getMessage().startsWith("After Broken: "), exception.getMessage());
+    }
+
+    @Test
+    void testParse() {
+        Assertions.assertEquals(Optimizer.Level.O2, Optimizer.Level.parse("-O2"));
+        Assertions.assertEquals(Optimizer.Level.O0, Optimizer.Level.parse("O0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Optimizer.Level.parse("-O3"));
+    }
+
+}
@@ -0,0 +1,131 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class RangeAnalyzerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testFunction(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new RangeAnalyzer().visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast.getFunctions().getFirst());
+        Assertions.assertEquals(expected, writer.toString());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testFunction() {
+        return Stream.of(
+                Arguments.of("Counted Loop",
+                        "FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 10 DO sum = sum + i; i = i + 1; END RETURN sum; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int i = 0;",
+                                "    int sum = 0;",
+                                "    while (i < 10) {",
+                                "        sum = Math.addExact(sum, i);",
+                                "        i = i + 1;",
+                                "    }",
+                                "    return sum;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(45)
+                ),
+                Arguments.of("Parameter",
+                        "FUN twice(x: Integer): Integer DO RETURN x * 2; END FUN main(): Integer DO RETURN twice(21); END",
+                        String.join(System.lineSeparator(),
+                                "int twice(int x) {",
+                                "    return Math.multiplyExact(x, 2);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(42)
+                ),
+                Arguments.of("Branch Refinement",
+                        "FUN clamp(x: Integer): Integer DO IF x > 100 DO RETURN 100; END IF x < 0 DO RETURN 0; END RETURN x * 1000; END FUN main(): Integer DO RETURN clamp(7); END",
+                        String.join(System.lineSeparator(),
+                                "int clamp(int x) {",
+                                "    if (x > 100) {",
+                                "        return 100;",
+                                "    }",
+                                "    if (x < 0) {",
+                                "        return 0;",
+                                "    }",
+                                "    return x * 1000;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(7000)
+                ),
+                Arguments.of("Long Result",
+                        "FUN main(): Integer DO LET big = 2147483647; RETURN big + 1; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int big = 2147483647;",
+                                "    return Math.addExact(big, 1);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(2147483648L)
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testBounds(String test, String input, boolean expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new RangeAnalyzer().visit(ast);
+
+        List<Ast.Expression.Access> accesses = new ArrayList<>();
+        new Rewriter() {
+            @Override
+            public Ast visit(Ast.Expression.Access ast) {
+                if (ast.getOffset().isPresent())
+                    accesses.add(ast);
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        Assertions.assertFalse(accesses.isEmpty());
+        accesses.forEach(access -> Assertions.assertEquals(expected, access.isInBounds(), access.toString()));
+        Assertions.assertEquals(BigInteger.valueOf(10), new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    private static Stream<Arguments> testBounds() {
+        String list = "LIST xs: Integer = [1, 2, 3, 4]; LIST ys: Integer = [1, 2, 3, 4];";
+        return Stream.of(
+                Arguments.of("Counted Loop",
+                        list + " FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 4 DO sum = sum + xs[i]; xs[i] = 0; i = i + 1; END RETURN sum; END",
+                        true
+                ),
+                Arguments.of("Guarded",
+                        list + " FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 10 DO IF i < 4 DO sum = sum + xs[i]; END i = i + 1; END RETURN sum; END",
+                        true
+                ),
+                Arguments.of("Past The End",
+                        list + " FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 5 DO IF i != 4 DO sum = sum + xs[i]; END i = i + 1; END RETURN sum; END",
+                        false
+                ),
+                Arguments.of("Reassigned List",
+                        list + " FUN main(): Integer DO xs = ys; LET i = 0; LET sum = 0; WHILE i < 4 DO sum = sum + xs[i]; i = i + 1; END RETURN sum; END",
+                        false
+                ),
+                Arguments.of("Parameter Offset",
+                        list + " FUN at(i: Integer): Integer DO RETURN xs[i]; END FUN main(): Integer DO RETURN at(0) + at(1) + at(2) + at(3); END",
+                        false
+                )
+        );
+    }
+
+}
@@ -0,0 +1,150 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class StrengthReducerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testFunction(String test, String input, String expected, Object result) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        new RangeAnalyzer().visit(ast);
+        Ast.Source reduced = (Ast.Source) new StrengthReducer().visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(reduced.getFunctions().getFirst());
+        Assertions.assertEquals(expected, writer.toString());
+        Assertions.assertEquals(result, new Interpreter(new Scope(null)).visit(reduced).getValue());
+    }
+
+    private static Stream<Arguments> testFunction() {
+        return Stream.of(
+                Arguments.of("Powers",
+                        "FUN poly(x: Integer): Integer DO RETURN x ^ 2 + x ^ 3 + x ^ 1; END FUN main(): Integer DO RETURN poly(5); END",
+                        String.join(System.lineSeparator(),
+                                "int poly(int x) {",
+                                "    return Math.addExact(Math.addExact(Math.multiplyExact(x, x), Math.multiplyExact(Math.multiplyExact(x, x), x)), x);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(155)
+                ),
+                Arguments.of("Large Power",
+                        "FUN main(): Integer DO LET x = 3; RETURN x ^ 5; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x = 3;",
+                                "    return Math.pow(x, 5);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(243)
+                ),
+                Arguments.of("Doubling",
+                        "FUN main(): Integer DO LET x = 21; RETURN 1 + x * 2; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x = 21;",
+                                "    return 1 + (x + x);",
+                                "}"
+                        ),
+                        BigInteger.valueOf(43)
+                ),
+                Arguments.of("Non-Negative Division",
+                        "FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 10 DO sum = sum + i / 4; i = i + 1; END RETURN sum; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int i = 0;",
+                                "    int sum = 0;",
+                                "    while (i < 10) {",
+                                "        sum = Math.addExact(sum, (i >> 2));",
+                                "        i = i + 1;",
+                                "    }",
+                                "    return sum;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(8)
+                ),
+                Arguments.of("Signed Division",
+                        "FUN main(): Integer DO LET x = -7; RETURN x / 2; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x = -7;",
+                                "    return x / 2;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(-3)
+                ),
+                Arguments.of("Non-Leaf Operand",
+                        "FUN main(): Integer DO LET x = 3; RETURN (x + 1) * 2; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x = 3;",
+                                "    return (x + 1) * 2;",
+                                "}"
+                        ),
+                        BigInteger.valueOf(8)
+                )
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testNil(String test, String input, String expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new NilAnalyzer().visit(ast);
+        new RangeAnalyzer().visit(ast);
+        Ast.Source reduced = (Ast.Source) new StrengthReducer().visit(ast);
+
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(reduced.getFunctions().getFirst());
+        Assertions.assertEquals(expected, writer.toString());
+        // reading x alone or adding it to itself would not fail
+        Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(new Scope(null)).visit(reduced));
+    }
+
+    private static Stream<Arguments> testNil() {
+        return Stream.of(
+                Arguments.of("First Power",
+                        "FUN main(): Integer DO LET x: Integer; LET y = x ^ 1; RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    int y = Math.pow(x, 1);",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Division by One",
+                        "FUN main(): Integer DO LET x: Integer; LET y = x / 1; RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    int y = x / 1;",
+                                "    return 0;",
+                                "}"
+                        )
+                ),
+                Arguments.of("Doubling",
+                        "FUN main(): Integer DO LET x: Integer; LET y = x * 2; RETURN 0; END",
+                        String.join(System.lineSeparator(),
+                                "int main() {",
+                                "    int x;",
+                                "    int y = Math.multiplyExact(x, 2);",
+                                "    return 0;",
+                                "}"
+                        )
+                )
+        );
+    }
+
+}
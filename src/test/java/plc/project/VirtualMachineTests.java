@@ -0,0 +1,209 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runs the scenarios of the {@link EndToEndInterpreterTests} on the
+ * {@link VirtualMachine}.
+ */
+final class VirtualMachineTests {
+
+    private static final String SCENARIOS = "plc.project.EndToEndInterpreterTests#";
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testSource")
+    void testSource(String test, String input, Object expected) {
+        test(input, expected, new Scope(null), Parser::parseSource);
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testAnalyzedSource")
+    void testAnalyzedSource(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertEquals(expected, new VirtualMachine(new Scope(null)).execute(new BytecodeCompiler().compile(ast)).getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testGlobal")
+    void testGlobal(String test, String input, Object expected, String variableName) {
+        Scope scope = test(input, Environment.NIL.getValue(), new Scope(null), Parser::parseGlobal);
+        Assertions.assertEquals(expected, scope.lookupVariable(variableName).getValue().getValue());
+    }
+
+    @Test
+    void testList() {
+        List<Object> expected = Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.TEN);
+        Scope scope = test("LIST list: Integer = [1, 5, 10];", Environment.NIL.getValue(), new Scope(null), Parser::parseGlobal);
+        Assertions.assertEquals(expected, scope.lookupVariable("list").getValue().getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testFunction")
+    void testFunction(String test, String input, List<Environment.PlcObject> args, Object expected, String functionName) {
+        Scope scope = test(input, Environment.NIL.getValue(), new Scope(null), Parser::parseFunction);
+        Assertions.assertEquals(expected, scope.lookupFunction(functionName, args.size()).invoke(args).getValue());
+    }
+
+    @Test
+    void testExpressionStatement() {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            test("print(\"Hello, World!\");", Environment.NIL.getValue(), new Scope(null), Parser::parseStatement);
+            Assertions.assertEquals("Hello, World!" + System.lineSeparator(), out.toString());
+        } finally {
+            System.setOut(sysout);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testDeclarationStatement")
+    void testDeclarationStatement(String test, String input, Object expected, String variableName) {
+        Scope scope = test(input, Environment.NIL.getValue(), new Scope(null), Parser::parseStatement);
+        Assertions.assertEquals(expected, scope.lookupVariable(variableName).getValue().getValue());
+    }
+
+    @Test
+    void testVariableAssignmentStatement() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("variable", true, Environment.create("variable"));
+        test("variable = 1;", Environment.NIL.getValue(), scope, Parser::parseStatement);
+        Assertions.assertEquals(BigInteger.ONE, scope.lookupVariable("variable").getValue().getValue());
+    }
+
+    @Test
+    void testListAssignmentStatement() {
+        List<Object> expected = Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.valueOf(3));
+        List<Object> list = Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.TEN);
+
+        Scope scope = new Scope(null);
+        scope.defineVariable("list", true, Environment.create(list));
+        test("list[2] = 3;", Environment.NIL.getValue(), scope, Parser::parseStatement);
+        Assertions.assertEquals(expected, scope.lookupVariable("list").getValue().getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testIfStatement")
+    void testIfStatement(String test, String input, Object expected) {
+        Scope scope = new Scope(null);
+        scope.defineVariable("num", true, Environment.NIL);
+        test(input, Environment.NIL.getValue(), scope, Parser::parseStatement);
+        Assertions.assertEquals(expected, scope.lookupVariable("num").getValue().getValue());
+    }
+
+    @Test
+    void testSwitchStatement() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("letter", true, Environment.create('y'));
+
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            test("SWITCH letter CASE 'y': print(\"yes\"); letter = 'n'; DEFAULT print(\"no\"); END", Environment.NIL.getValue(), scope, Parser::parseStatement);
+            Assertions.assertEquals("yes" + System.lineSeparator(), out.toString());
+        } finally {
+            System.setOut(sysout);
+        }
+        Assertions.assertEquals('n', scope.lookupVariable("letter").getValue().getValue());
+    }
+
+    @Test
+    void testWhileStatement() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("num", true, Environment.create(BigInteger.ZERO));
+        test("WHILE num < 10 DO num = num + 1; END", Environment.NIL.getValue(), scope, Parser::parseStatement);
+        Assertions.assertEquals(BigInteger.TEN, scope.lookupVariable("num").getValue().getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testLiteralExpression")
+    void testLiteralExpression(String test, String input, Object expected) {
+        test(input, expected, new Scope(null), Parser::parseExpression);
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testGroupExpression")
+    void testGroupExpression(String test, String input, Object expected) {
+        test(input, expected, new Scope(null), Parser::parseExpression);
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testBinaryExpression")
+    void testBinaryExpression(String test, String input, Object expected) {
+        test(input, expected, new Scope(null), Parser::parseExpression);
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testAccessExpression")
+    void testAccessExpression(String test, String input, Object expected) {
+        Scope scope = new Scope(null);
+        scope.defineVariable("variable", true, Environment.create("variable"));
+        test(input, expected, scope, Parser::parseExpression);
+    }
+
+    @Test
+    void testListAccessExpression() {
+        List<Object> list = Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.TEN);
+        Scope scope = new Scope(null);
+        scope.defineVariable("list", true, Environment.create(list));
+        test("list[1]", BigInteger.valueOf(5), scope, Parser::parseExpression);
+    }
+
+    @ParameterizedTest
+    @MethodSource(SCENARIOS + "testFunctionExpression")
+    void testFunctionExpression(String test, String input, Object expected) {
+        Scope scope = new Scope(null);
+        scope.defineFunction("function", 0, args -> Environment.create("function"));
+        test(input, expected, scope, Parser::parseExpression);
+    }
+
+    @Test
+    void testSerialization() throws IOException {
+        Ast.Source ast = new Parser(new Lexer("FUN f(c: Character): Integer DO SWITCH c CASE 'a': RETURN 1; DEFAULT RETURN 2; END END FUN main(): Integer DO RETURN f('a') * 10 + f('b'); END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BytecodeCompiler().compile(ast).write(new DataOutputStream(bytes));
+
+        Bytecode.Program program = Bytecode.Program.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(BigInteger.valueOf(12), new VirtualMachine(new Scope(null)).execute(program).getValue());
+    }
+
+    @Test
+    void testInstructionLimit() {
+        Ast.Source ast = new Parser(new Lexer("FUN main(): Integer DO WHILE TRUE DO END RETURN 0; END").lex()).parseSource();
+        VirtualMachine machine = new VirtualMachine(new Scope(null));
+        machine.setInstructionLimit(1000);
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> machine.execute(new BytecodeCompiler().compile(ast)));
+        Assertions.assertEquals("The instruction limit of 1000 was exceeded.", exception.getMessage());
+        Assertions.assertEquals(1001, machine.getInstructionCount());
+    }
+
+    private static <T extends Ast> Scope test(String input, Object expected, Scope scope, Function<Parser, T> function) {
+        Ast ast = function.apply(new Parser(new Lexer(input).lex()));
+        VirtualMachine machine = new VirtualMachine(scope);
+        if (expected != null) {
+            Assertions.assertEquals(expected, machine.execute(new BytecodeCompiler().compile(ast)).getValue());
+        } else {
+            Assertions.assertThrows(RuntimeException.class, () -> machine.execute(new BytecodeCompiler().compile(ast)));
+        }
+        return machine.getScope();
+    }
+
+}